@@ -76,6 +76,8 @@ public interface Constants {
 
     String KEY_SCHEMA_VERSION = "SCHEMA_VERSION";
 
+    String KEY_QUEST_INDEXES_VERSION = "QUEST_INDEXES_VERSION";
+
     String IPOLI_EMAIL = "hi@ipoli.io";
 
     String API_RESOURCE_SOURCE = "ipoli-android";
@@ -148,8 +150,14 @@ public interface Constants {
     int REVIVE_PET_COST = 300;
     String PREDEFINED_CHALLENGE_INDEX = "predefined_challenge_index";
     int RANDOM_SEED = 42; // duh!
+    int DAY_SCHEDULING_TIME_BUDGET_MILLIS = 200;
+    int SCHEDULING_HORIZON_DAYS = 7;
     int MAX_TIMES_A_DAY_COUNT = 8;
     int SCHEMA_VERSION = 2;
+    int QUEST_INDEXES_VERSION = 2;
+    int DAY_QUESTS_RETENTION_DAYS = 14;
+    int QUEST_REMINDERS_RETENTION_DAYS = 1;
+    int DELETED_QUESTS_RETENTION_DAYS = 30;
 
     double MAX_PENALTY_COEFFICIENT = 0.5;
     double NO_QUESTS_PENALTY_COEFFICIENT = 0.3;
@@ -161,6 +169,10 @@ public interface Constants {
     String KEY_AVATAR_SLEEP_START_MINUTE = "KEY_AVATAR_SLEEP_START_MINUTE";
     String KEY_AVATAR_SLEEP_END_MINUTE = "KEY_AVATAR_SLEEP_END_MINUTE";
     String KEY_AVATAR_MOST_PRODUCTIVE_TIMES = "KEY_AVATAR_MOST_PRODUCTIVE_TIMES";
+    String KEY_COMPLETION_HISTORY = "KEY_COMPLETION_HISTORY";
+    String KEY_COMPLETION_HISTORY_NAMES = "KEY_COMPLETION_HISTORY_NAMES";
+    String KEY_COMPLETION_HISTORY_CATEGORY_PREFIX = "KEY_COMPLETION_HISTORY_CATEGORY_";
+    String KEY_COMPLETION_HISTORY_NAME_PREFIX = "KEY_COMPLETION_HISTORY_NAME_";
 
     int DEFAULT_QUEST_PRIORITY = Quest.PRIORITY_NOT_IMPORTANT_NOT_URGENT;
 
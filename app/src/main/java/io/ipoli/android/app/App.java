@@ -31,10 +31,8 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
@@ -51,6 +49,7 @@ import io.ipoli.android.app.activities.QuickAddActivity;
 import io.ipoli.android.app.events.AppErrorEvent;
 import io.ipoli.android.app.events.CalendarDayChangedEvent;
 import io.ipoli.android.app.events.DateChangedEvent;
+import io.ipoli.android.app.events.DayScheduledEvent;
 import io.ipoli.android.app.events.EventSource;
 import io.ipoli.android.app.events.InitAppEvent;
 import io.ipoli.android.app.events.PlayerCreatedEvent;
@@ -60,6 +59,9 @@ import io.ipoli.android.app.events.VersionUpdatedEvent;
 import io.ipoli.android.app.exceptions.PetNotFoundException;
 import io.ipoli.android.app.modules.AppModule;
 import io.ipoli.android.app.receivers.DateChangedReceiver;
+import io.ipoli.android.app.scheduling.CompletionHistory;
+import io.ipoli.android.app.scheduling.PosteriorCache;
+import io.ipoli.android.app.scheduling.SchedulingService;
 import io.ipoli.android.app.services.AnalyticsService;
 import io.ipoli.android.app.settings.events.DailyChallengeStartTimeChangedEvent;
 import io.ipoli.android.app.settings.events.OngoingNotificationChangeEvent;
@@ -112,14 +114,17 @@ import io.ipoli.android.quest.generators.RewardProvider;
 import io.ipoli.android.quest.persistence.OnChangeListener;
 import io.ipoli.android.quest.persistence.OnDataChangedListener;
 import io.ipoli.android.quest.persistence.QuestPersistenceService;
+import io.ipoli.android.quest.persistence.QuestStoreSync;
 import io.ipoli.android.quest.persistence.RepeatingQuestPersistenceService;
 import io.ipoli.android.quest.receivers.CompleteQuestReceiver;
 import io.ipoli.android.quest.receivers.ScheduleNextRemindersReceiver;
+import io.ipoli.android.quest.receivers.ScheduleRepeatingQuestsReceiver;
 import io.ipoli.android.quest.receivers.StartQuestReceiver;
 import io.ipoli.android.quest.receivers.StopQuestReceiver;
 import io.ipoli.android.quest.schedulers.QuestNotificationScheduler;
 import io.ipoli.android.quest.schedulers.QuestScheduler;
 import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+import io.ipoli.android.quest.schedulers.RepeatingQuestUpdatePlanner;
 import io.ipoli.android.quest.ui.events.UpdateRepeatingQuestEvent;
 import io.ipoli.android.quest.widgets.AgendaWidgetProvider;
 
@@ -142,18 +147,33 @@ public class App extends MultiDexApplication {
     @Inject
     RepeatingQuestScheduler repeatingQuestScheduler;
 
+    @Inject
+    RepeatingQuestUpdatePlanner repeatingQuestUpdatePlanner;
+
     @Inject
     QuestScheduler questScheduler;
 
     @Inject
     AnalyticsService analyticsService;
 
+    @Inject
+    PosteriorCache posteriorCache;
+
+    @Inject
+    CompletionHistory completionHistory;
+
+    @Inject
+    SchedulingService schedulingService;
+
     @Inject
     QuestPersistenceService questPersistenceService;
 
     @Inject
     RepeatingQuestPersistenceService repeatingQuestPersistenceService;
 
+    @Inject
+    QuestStoreSync questStoreSync;
+
     @Inject
     ChallengePersistenceService challengePersistenceService;
 
@@ -204,6 +224,7 @@ public class App extends MultiDexApplication {
         repeatingQuestPersistenceService.removeAllListeners();
         listenForWidgetQuestsChange();
         listenForReminderChange();
+        startScheduling();
         if (localStorage.readBool(Constants.KEY_ONGOING_NOTIFICATION_ENABLED, Constants.DEFAULT_ONGOING_NOTIFICATION_ENABLED)) {
             listenForDailyQuestsChange();
         }
@@ -287,6 +308,13 @@ public class App extends MultiDexApplication {
         return decreasePercentage;
     }
 
+    /**
+     * Restarted with the listeners, so the horizon moves with the date
+     */
+    private void startScheduling() {
+        schedulingService.start((date, proposals) -> eventBus.post(new DayScheduledEvent(date, proposals)));
+    }
+
     private void listenForDailyQuestsChange() {
         questPersistenceService.listenForAllNonAllDayForDate(LocalDate.now(), dailyQuestsChangedListener);
     }
@@ -424,8 +452,18 @@ public class App extends MultiDexApplication {
             }
         }
 
+        questStoreSync.start();
+        if (localStorage.readInt(Constants.KEY_QUEST_INDEXES_VERSION) != Constants.QUEST_INDEXES_VERSION) {
+            questPersistenceService.rebuildIndexes(isWritten -> {
+                if (isWritten) {
+                    localStorage.saveInt(Constants.KEY_QUEST_INDEXES_VERSION, Constants.QUEST_INDEXES_VERSION);
+                }
+            });
+        }
+        questPersistenceService.compact();
         scheduleDateChanged();
         scheduleNextReminder();
+        scheduleQuestsFor4WeeksAhead();
         listenForChanges();
     }
 
@@ -447,7 +485,7 @@ public class App extends MultiDexApplication {
     }
 
     private void scheduleQuestsFor4WeeksAhead() {
-        repeatingQuestPersistenceService.findAllNonAllDayActiveRepeatingQuests(this::scheduleRepeatingQuests);
+        sendBroadcast(new Intent(ScheduleRepeatingQuestsReceiver.ACTION_SCHEDULE_REPEATING_QUESTS));
     }
 
     private void moveIncompleteQuestsToInbox() {
@@ -469,6 +507,9 @@ public class App extends MultiDexApplication {
 
     private void registerServices() {
         eventBus.register(analyticsService);
+        eventBus.register(posteriorCache);
+        eventBus.register(completionHistory);
+        eventBus.register(schedulingService);
         eventBus.register(this);
     }
 
@@ -639,21 +680,12 @@ public class App extends MultiDexApplication {
     @Subscribe
     public void onUpdateRepeatingQuest(UpdateRepeatingQuestEvent e) {
         RepeatingQuest repeatingQuest = e.repeatingQuest;
-        questPersistenceService.findAllUpcomingForRepeatingQuest(new LocalDate(), repeatingQuest.getId(), questsToRemove -> {
-            for (Quest quest : questsToRemove) {
+        questPersistenceService.findAllUpcomingForRepeatingQuest(new LocalDate(), repeatingQuest.getId(), upcomingQuests -> {
+            RepeatingQuestUpdatePlanner.Plan plan = repeatingQuestUpdatePlanner.plan(repeatingQuest, upcomingQuests, LocalDate.now());
+            for (Quest quest : plan.getQuestsWithChangedNotifications()) {
                 QuestNotificationScheduler.cancelAll(quest, this);
             }
-
-            long todayStartOfDay = DateUtils.toStartOfDayUTC(LocalDate.now()).getTime();
-            List<String> periodsToDelete = new ArrayList<>();
-            for (String periodEnd : repeatingQuest.getScheduledPeriodEndDates().keySet()) {
-                if (Long.valueOf(periodEnd) >= todayStartOfDay) {
-                    periodsToDelete.add(periodEnd);
-                }
-            }
-            repeatingQuest.getScheduledPeriodEndDates().keySet().removeAll(periodsToDelete);
-            List<Quest> questsToCreate = repeatingQuestScheduler.scheduleAhead(repeatingQuest, DateUtils.toStartOfDayUTC(LocalDate.now()));
-            repeatingQuestPersistenceService.update(repeatingQuest, questsToRemove, questsToCreate);
+            repeatingQuestPersistenceService.update(repeatingQuest, plan.getQuestsToRemove(), plan.getQuestsToUpdate(), plan.getQuestsToCreate());
         });
     }
 
@@ -753,15 +785,6 @@ public class App extends MultiDexApplication {
         });
     }
 
-    private void scheduleRepeatingQuests(List<RepeatingQuest> repeatingQuests) {
-        Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests = new HashMap<>();
-        for (RepeatingQuest repeatingQuest : repeatingQuests) {
-            List<Quest> quests = repeatingQuestScheduler.scheduleAhead(repeatingQuest, DateUtils.toStartOfDayUTC(LocalDate.now()));
-            repeatingQuestToScheduledQuests.put(repeatingQuest, quests);
-        }
-        repeatingQuestPersistenceService.saveScheduledRepeatingQuests(repeatingQuestToScheduledQuests);
-    }
-
     private void scheduleNextReminder() {
         sendBroadcast(new Intent(ScheduleNextRemindersReceiver.ACTION_SCHEDULE_REMINDERS));
     }
@@ -814,22 +837,7 @@ public class App extends MultiDexApplication {
     }
 
     private void listenForWidgetQuestsChange() {
-        questPersistenceService.listenForDayQuestChange(LocalDate.now(), new OnChangeListener<Void>() {
-            @Override
-            public void onNew(Void data) {
-                requestWidgetUpdate();
-            }
-
-            @Override
-            public void onChanged(Void data) {
-                requestWidgetUpdate();
-            }
-
-            @Override
-            public void onDeleted() {
-                requestWidgetUpdate();
-            }
-        });
+        questPersistenceService.listenForAllNonAllDayForDate(LocalDate.now(), quests -> requestWidgetUpdate());
     }
 
     private void requestWidgetUpdate() {
@@ -868,6 +876,7 @@ public class App extends MultiDexApplication {
             updatePet(-getDecreasePercentage(quests), "date_change");
             scheduleQuestsFor4WeeksAhead();
             moveIncompleteQuestsToInbox();
+            questPersistenceService.compact();
             scheduleDateChanged();
             requestWidgetUpdate();
             listenForChanges();
@@ -54,6 +54,7 @@ import io.ipoli.android.quest.fragments.RepeatingQuestListFragment;
 import io.ipoli.android.quest.receivers.CompleteQuestReceiver;
 import io.ipoli.android.quest.receivers.RemindStartQuestReceiver;
 import io.ipoli.android.quest.receivers.ScheduleNextRemindersReceiver;
+import io.ipoli.android.quest.receivers.ScheduleRepeatingQuestsReceiver;
 import io.ipoli.android.quest.receivers.ShowQuestCompleteNotificationReceiver;
 import io.ipoli.android.quest.receivers.SnoozeQuestReceiver;
 import io.ipoli.android.quest.receivers.StartQuestReceiver;
@@ -165,6 +166,8 @@ public interface AppComponent {
 
     void inject(ScheduleNextRemindersReceiver scheduleNextRemindersReceiver);
 
+    void inject(ScheduleRepeatingQuestsReceiver scheduleRepeatingQuestsReceiver);
+
     void inject(SignInActivity signInActivity);
 
     void inject(PetActivity petActivity);
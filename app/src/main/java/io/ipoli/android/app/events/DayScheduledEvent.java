@@ -0,0 +1,18 @@
+package io.ipoli.android.app.events;
+
+import org.joda.time.LocalDate;
+
+import java.util.List;
+
+import io.ipoli.android.app.scheduling.DayScheduler;
+import io.ipoli.android.quest.data.Quest;
+
+public class DayScheduledEvent {
+    public final LocalDate date;
+    public final List<DayScheduler.Proposal<Quest>> proposals;
+
+    public DayScheduledEvent(LocalDate date, List<DayScheduler.Proposal<Quest>> proposals) {
+        this.date = date;
+        this.proposals = proposals;
+    }
+}
@@ -0,0 +1,7 @@
+package io.ipoli.android.app.exceptions;
+
+public class RepeatingQuestExpansionException extends RuntimeException {
+    public RepeatingQuestExpansionException(String repeatingQuestId, Throwable cause) {
+        super(String.format("Repeating quest %s could not be scheduled ahead", repeatingQuestId), cause);
+    }
+}
@@ -1,23 +1,42 @@
 package io.ipoli.android.app.modules;
 
+import android.content.Context;
+
 import com.squareup.otto.Bus;
 
+import java.io.File;
+
+import javax.inject.Singleton;
+
 import dagger.Module;
 import dagger.Provides;
+import io.ipoli.android.app.persistence.BatchWriter;
+import io.ipoli.android.app.persistence.FileDatabase;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.persistence.QueryListenerRegistry;
 import io.ipoli.android.app.utils.LocalStorage;
 import io.ipoli.android.avatar.persistence.AvatarPersistenceService;
 import io.ipoli.android.avatar.persistence.FirebaseAvatarPersistenceService;
+import io.ipoli.android.avatar.persistence.InMemoryAvatarPersistenceService;
 import io.ipoli.android.challenge.persistence.ChallengePersistenceService;
 import io.ipoli.android.challenge.persistence.FirebaseChallengePersistenceService;
+import io.ipoli.android.challenge.persistence.InMemoryChallengePersistenceService;
 import io.ipoli.android.pet.persistence.FirebasePetPersistenceService;
+import io.ipoli.android.pet.persistence.InMemoryPetPersistenceService;
 import io.ipoli.android.pet.persistence.PetPersistenceService;
 import io.ipoli.android.player.persistence.FirebasePlayerPersistenceService;
+import io.ipoli.android.player.persistence.InMemoryPlayerPersistenceService;
 import io.ipoli.android.player.persistence.PlayerPersistenceService;
-import io.ipoli.android.quest.persistence.FirebaseQuestPersistenceService;
 import io.ipoli.android.quest.persistence.FirebaseRepeatingQuestPersistenceService;
+import io.ipoli.android.quest.persistence.InMemoryQuestPersistenceService;
+import io.ipoli.android.quest.persistence.InMemoryRepeatingQuestPersistenceService;
+import io.ipoli.android.quest.persistence.LocalFirstQuestPersistenceService;
 import io.ipoli.android.quest.persistence.QuestPersistenceService;
+import io.ipoli.android.quest.persistence.QuestStore;
+import io.ipoli.android.quest.persistence.QuestStoreSync;
 import io.ipoli.android.quest.persistence.RepeatingQuestPersistenceService;
 import io.ipoli.android.reward.persistence.FirebaseRewardPersistenceService;
+import io.ipoli.android.reward.persistence.InMemoryRewardPersistenceService;
 import io.ipoli.android.reward.persistence.RewardPersistenceService;
 
 /**
@@ -27,38 +46,118 @@ import io.ipoli.android.reward.persistence.RewardPersistenceService;
 @Module
 public class PersistenceModule {
 
+    /**
+     * Where the persistence services keep their data. MEMORY and FILE reproduce the Firebase
+     * layout and queries without Firebase, e.g. for benchmarks and tests on a plain JVM.
+     */
+    public enum Backend {
+        FIREBASE, MEMORY, FILE
+    }
+
+    private final Backend backend;
+    private final InMemoryDatabase database;
+    private final String playerId;
+
+    public PersistenceModule() {
+        this(Backend.FIREBASE, null, null);
+    }
+
+    /**
+     * @param databaseFile the JSON file of the FILE backend
+     * @param playerId     the player of the MEMORY and FILE backends, or null for the signed in player
+     */
+    public PersistenceModule(Backend backend, File databaseFile, String playerId) {
+        this.backend = backend;
+        this.playerId = playerId;
+        switch (backend) {
+            case MEMORY:
+                this.database = new InMemoryDatabase();
+                break;
+            case FILE:
+                this.database = new FileDatabase(databaseFile);
+                break;
+            default:
+                this.database = null;
+        }
+    }
+
+    @Provides
+    @Singleton
+    public QueryListenerRegistry provideQueryListenerRegistry() {
+        return new QueryListenerRegistry();
+    }
+
+    @Provides
+    @Singleton
+    public BatchWriter provideBatchWriter() {
+        return new BatchWriter();
+    }
+
+    @Provides
+    @Singleton
+    public QuestStore provideQuestStore(Context context) {
+        return new QuestStore(context);
+    }
+
+    @Provides
+    @Singleton
+    public QuestStoreSync provideQuestStoreSync(QuestStore questStore) {
+        return new QuestStoreSync(questStore);
+    }
+
     @Provides
-    public QuestPersistenceService provideQuestPersistenceService(Bus eventBus) {
-        return new FirebaseQuestPersistenceService(eventBus);
+    public QuestPersistenceService provideQuestPersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter, QuestStore questStore) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryQuestPersistenceService(database, playerId);
+        }
+        return new LocalFirstQuestPersistenceService(eventBus, listenerRegistry, batchWriter, questStore);
     }
 
     @Provides
-    public RepeatingQuestPersistenceService provideRepeatingQuestPersistenceService(Bus eventBus, QuestPersistenceService questPersistenceService) {
-        return new FirebaseRepeatingQuestPersistenceService(eventBus, questPersistenceService);
+    public RepeatingQuestPersistenceService provideRepeatingQuestPersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter, QuestPersistenceService questPersistenceService) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryRepeatingQuestPersistenceService(database, playerId, questPersistenceService);
+        }
+        return new FirebaseRepeatingQuestPersistenceService(eventBus, listenerRegistry, batchWriter, questPersistenceService);
     }
 
     @Provides
     public PlayerPersistenceService providePlayerPersistenceService(Bus eventBus) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryPlayerPersistenceService(database, playerId);
+        }
         return new FirebasePlayerPersistenceService(eventBus);
     }
 
     @Provides
     public AvatarPersistenceService provideAvatarPersistenceService(Bus eventBus) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryAvatarPersistenceService(database, playerId);
+        }
         return new FirebaseAvatarPersistenceService(eventBus);
     }
 
     @Provides
     public PetPersistenceService providePetPersistenceService(Bus eventBus, LocalStorage localStorage) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryPetPersistenceService(database, playerId, localStorage);
+        }
         return new FirebasePetPersistenceService(eventBus, localStorage);
     }
 
     @Provides
     public ChallengePersistenceService provideChallengePersistenceService(Bus eventBus) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryChallengePersistenceService(database, playerId);
+        }
         return new FirebaseChallengePersistenceService(eventBus);
     }
 
     @Provides
     public RewardPersistenceService provideRewardPersistenceService(Bus eventBus) {
+        if (backend != Backend.FIREBASE) {
+            return new InMemoryRewardPersistenceService(database, playerId);
+        }
         return new FirebaseRewardPersistenceService(eventBus);
     }
 }
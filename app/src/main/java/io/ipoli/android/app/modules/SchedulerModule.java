@@ -1,11 +1,24 @@
 package io.ipoli.android.app.modules;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.squareup.otto.Bus;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import io.ipoli.android.app.scheduling.CompletionHistory;
+import io.ipoli.android.app.scheduling.PosteriorCache;
+import io.ipoli.android.app.scheduling.SchedulingService;
+import io.ipoli.android.app.utils.LocalStorage;
+import io.ipoli.android.quest.persistence.QuestPersistenceService;
 import io.ipoli.android.quest.schedulers.QuestScheduler;
+import io.ipoli.android.quest.schedulers.RepeatingQuestExpander;
 import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+import io.ipoli.android.quest.schedulers.RepeatingQuestUpdatePlanner;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
@@ -14,15 +27,53 @@ import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
 @Module
 public class SchedulerModule {
 
+    private static final int MAX_EXPANSION_THREADS = 4;
+
     @Provides
     @Singleton
     public RepeatingQuestScheduler provideRepeatingQuestScheduler() {
         return new RepeatingQuestScheduler();
     }
 
+    @Provides
+    @Singleton
+    public RepeatingQuestExpander provideRepeatingQuestExpander(RepeatingQuestScheduler repeatingQuestScheduler, Bus eventBus) {
+        int threadCount = Math.max(1, Math.min(MAX_EXPANSION_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        return new RepeatingQuestExpander(repeatingQuestScheduler, threadCount, mainHandler::post, eventBus);
+    }
+
+    @Provides
+    @Singleton
+    public RepeatingQuestUpdatePlanner provideRepeatingQuestUpdatePlanner(RepeatingQuestScheduler repeatingQuestScheduler) {
+        return new RepeatingQuestUpdatePlanner(repeatingQuestScheduler);
+    }
+
     @Provides
     @Singleton
     public QuestScheduler provideQuestScheduler() {
         return new QuestScheduler();
     }
+
+    @Provides
+    @Singleton
+    public PosteriorCache providePosteriorCache() {
+        return new PosteriorCache();
+    }
+
+    @Provides
+    @Singleton
+    public CompletionHistory provideCompletionHistory(LocalStorage localStorage, Gson gson) {
+        return new CompletionHistory(localStorage, gson);
+    }
+
+    /**
+     * Quest persistence services are not scoped, so the injected one is used only by the planner
+     */
+    @Provides
+    @Singleton
+    public SchedulingService provideSchedulingService(QuestPersistenceService questPersistenceService, LocalStorage localStorage,
+                                                      PosteriorCache posteriorCache, CompletionHistory completionHistory) {
+        return new SchedulingService(questPersistenceService, localStorage, posteriorCache, completionHistory);
+    }
 }
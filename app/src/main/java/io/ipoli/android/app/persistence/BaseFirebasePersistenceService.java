@@ -12,6 +12,7 @@ import com.squareup.otto.Bus;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,7 +20,10 @@ import java.util.Map;
 import io.ipoli.android.Constants;
 import io.ipoli.android.app.App;
 import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.mapper.MapperUtils;
+import io.ipoli.android.mapper.ModelMapper;
 import io.ipoli.android.quest.persistence.OnDataChangedListener;
+import io.ipoli.android.quest.persistence.OnListChangedListener;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
@@ -32,14 +36,26 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
     private final Map<ValueEventListener, Query> valueListeners;
     protected final Map<ChildEventListener, Query> childListeners;
     private final Map<OnDataChangedListener<?>, ValueEventListener> listenerToValueListener;
+    private final Map<OnListChangedListener<?>, ChildEventListener> listenerToChildListener;
+    private final QueryListenerRegistry listenerRegistry;
+    private final BatchWriter batchWriter;
+    private final Map<OnDataChangedListener<?>, SharedSubscription> sharedSubscriptions;
     private DatabaseReference playerRef;
 
     public BaseFirebasePersistenceService(Bus eventBus) {
+        this(eventBus, null, null);
+    }
+
+    public BaseFirebasePersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter) {
         this.eventBus = eventBus;
+        this.listenerRegistry = listenerRegistry;
+        this.batchWriter = batchWriter;
+        this.sharedSubscriptions = new HashMap<>();
         this.database = FirebaseDatabase.getInstance();
         this.valueListeners = new HashMap<>();
         this.childListeners = new HashMap<>();
         this.listenerToValueListener = new HashMap<>();
+        this.listenerToChildListener = new HashMap<>();
         this.playerRef = null;
     }
 
@@ -54,7 +70,8 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
                 collectionRef.push() :
                 collectionRef.child(obj.getId());
         obj.setId(objRef.getKey());
-        objRef.setValue(obj);
+        ModelMapper<T> mapper = getModelMapper();
+        objRef.setValue(mapper != null ? mapper.toMap(obj) : obj);
     }
 
     @Override
@@ -95,10 +112,21 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
             query.removeEventListener(childEventListener);
         }
         childListeners.clear();
+        listenerToChildListener.clear();
+
+        for (SharedSubscription subscription : sharedSubscriptions.values()) {
+            listenerRegistry.unsubscribe(subscription.key, subscription.subscriber);
+        }
+        sharedSubscriptions.clear();
     }
 
     @Override
     public void removeDataChangedListener(OnDataChangedListener<?> listener) {
+        if (sharedSubscriptions.containsKey(listener)) {
+            SharedSubscription subscription = sharedSubscriptions.remove(listener);
+            listenerRegistry.unsubscribe(subscription.key, subscription.subscriber);
+            return;
+        }
         if (!listenerToValueListener.containsKey(listener)) {
             return;
         }
@@ -110,6 +138,19 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         listenerToValueListener.remove(listener);
     }
 
+    @Override
+    public void removeListChangedListener(OnListChangedListener<?> listener) {
+        if (!listenerToChildListener.containsKey(listener)) {
+            return;
+        }
+        ChildEventListener childEventListener = listenerToChildListener.get(listener);
+        Query query = childListeners.get(childEventListener);
+        query.removeEventListener(childEventListener);
+
+        childListeners.remove(childEventListener);
+        listenerToChildListener.remove(listener);
+    }
+
     protected abstract Class<T> getModelClass();
 
     protected abstract String getCollectionName();
@@ -123,6 +164,35 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         return playerRef;
     }
 
+    /**
+     * Writes through the shared {@link BatchWriter} when there is one, so bursts of
+     * mutations end up in one atomic multi-path update
+     */
+    protected void updatePlayerData(Map<String, Object> data) {
+        if (batchWriter == null) {
+            getPlayerReference().updateChildren(data);
+            return;
+        }
+        batchWriter.write(getPlayerReference(), data);
+    }
+
+    protected void updatePlayerData(Map<String, Object> data, BatchWriter.OnWriteCompleteListener listener) {
+        if (batchWriter == null) {
+            getPlayerReference().updateChildren(data, (error, ref) -> listener.onWriteComplete(error));
+            return;
+        }
+        batchWriter.write(getPlayerReference(), data, listener);
+    }
+
+    /**
+     * Single reads must observe the writes made before them
+     */
+    protected void flushPendingWrites() {
+        if (batchWriter != null) {
+            batchWriter.flush();
+        }
+    }
+
     protected void listenForListChange(Query query, OnDataChangedListener<List<T>> listener) {
         listenForQuery(query, createListListener(listener), listener);
     }
@@ -135,6 +205,48 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         listenForQuery(query, createSortedListListener(listener, predicate, querySort), listener);
     }
 
+    /**
+     * Shares one Firebase listener and one decoded snapshot of the node with every other
+     * subscriber in the process. Every subscriber gets its own model instances, built from the
+     * shared snapshot by the generated mapper, so it can change them freely. Models without a
+     * mapper are not shared.
+     */
+    protected void listenForSharedListChange(DatabaseReference ref, OnDataChangedListener<List<T>> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        ModelMapper<T> mapper = getModelMapper();
+        if (listenerRegistry == null || mapper == null) {
+            listenForListChange(ref, listener, predicate, querySort);
+            return;
+        }
+        String key = ref.toString();
+        OnDataChangedListener<List<Map<String, Object>>> subscriber = values -> {
+            List<T> result = new ArrayList<>(values.size());
+            for (Map<String, Object> value : values) {
+                T obj = mapper.fromMap(value);
+                obj.markClean();
+                if (predicate == null || predicate.shouldInclude(obj)) {
+                    result.add(obj);
+                }
+            }
+            if (querySort != null) {
+                Collections.sort(result, querySort::sort);
+            }
+            listener.onDataChanged(result);
+        };
+        sharedSubscriptions.put(listener, new SharedSubscription(key, subscriber));
+        listenerRegistry.subscribe(key, ref, this::getValuesFromMapSnapshot, subscriber);
+    }
+
+    /**
+     * Keeps a live, filtered and sorted list from child events, so a single changed child
+     * costs one decode and one binary search instead of decoding and sorting the whole query
+     */
+    protected void listenForIncrementalListChange(Query query, OnListChangedListener<T> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        ChildEventListener childListener = new IncrementalListListener(listener, predicate, querySort);
+        listenerToChildListener.put(listener, childListener);
+        childListeners.put(childListener, query);
+        query.addChildEventListener(childListener);
+    }
+
     protected void listenForModelChange(Query query, OnDataChangedListener<T> listener) {
         listenForQuery(query, createModelListener(listener), listener);
     }
@@ -146,14 +258,17 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
     }
 
     protected void listenForSingleChange(Query query, ValueEventListener valueListener) {
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(valueListener);
     }
 
     protected void listenForSingleListChange(Query query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate) {
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(createListListener(listener, predicate));
     }
 
     protected void listenForSingleListChange(Query query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(createSortedListListener(listener, predicate, querySort));
     }
 
@@ -162,10 +277,12 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
     }
 
     protected void listenForSingleModelChange(Query query, OnDataChangedListener<T> listener) {
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(createModelListener(listener));
     }
 
     protected void listenForSingleCountChange(Query query, OnDataChangedListener<Long> listener, Predicate<T> predicate) {
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(createCountListener(listener, predicate));
     }
 
@@ -173,12 +290,51 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         if (dataSnapshot.getChildrenCount() == 0) {
             return new ArrayList<>();
         }
-        return new ArrayList<>(dataSnapshot.getValue(getGenericMapIndicator()).values());
+        ModelMapper<T> mapper = getModelMapper();
+        List<T> result;
+        if (mapper != null) {
+            result = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
+                result.add(mapper.fromMap(MapperUtils.toMapValue(child.getValue())));
+            }
+        } else {
+            result = new ArrayList<>(dataSnapshot.getValue(getGenericMapIndicator()).values());
+        }
+        for (T obj : result) {
+            obj.markClean();
+        }
+        return result;
     }
 
+    private List<Map<String, Object>> getValuesFromMapSnapshot(DataSnapshot dataSnapshot) {
+        List<Map<String, Object>> result = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            result.add(MapperUtils.toMapValue(child.getValue()));
+        }
+        return result;
+    }
+
+    protected T getModelFromSnapshot(DataSnapshot dataSnapshot) {
+        ModelMapper<T> mapper = getModelMapper();
+        T obj = mapper != null ?
+                mapper.fromMap(MapperUtils.toMapValue(dataSnapshot.getValue())) :
+                dataSnapshot.getValue(getModelClass());
+        if (obj != null) {
+            obj.markClean();
+        }
+        return obj;
+    }
 
     protected abstract GenericTypeIndicator<Map<String, T>> getGenericMapIndicator();
 
+    /**
+     * Generated mapper of the model. Snapshots are decoded through it instead of the
+     * reflective Firebase mapper when there is one.
+     */
+    protected ModelMapper<T> getModelMapper() {
+        return null;
+    }
+
     private ValueEventListener createListListener(OnDataChangedListener<List<T>> listener) {
         return createListListener(listener, null);
     }
@@ -249,7 +405,7 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         return new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot dataSnapshot) {
-                listener.onDataChanged(dataSnapshot.getValue(getModelClass()));
+                listener.onDataChanged(getModelFromSnapshot(dataSnapshot));
             }
 
             @Override
@@ -259,6 +415,119 @@ public abstract class BaseFirebasePersistenceService<T extends PersistedObject>
         };
     }
 
+    private class IncrementalListListener implements ChildEventListener {
+
+        private final OnListChangedListener<T> listener;
+        private final Predicate<T> predicate;
+        private final Comparator<T> comparator;
+        private final List<T> items;
+        private final Map<String, T> keyToItem;
+
+        IncrementalListListener(OnListChangedListener<T> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+            this.listener = listener;
+            this.predicate = predicate;
+            this.comparator = (o1, o2) -> {
+                int result = querySort != null ? querySort.sort(o1, o2) : 0;
+                if (result != 0) {
+                    return result;
+                }
+                // ties are broken by id, so every item has exactly one position
+                return String.valueOf(o1.getId()).compareTo(String.valueOf(o2.getId()));
+            };
+            this.items = new ArrayList<>();
+            this.keyToItem = new HashMap<>();
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, String previousName) {
+            T item = getModelFromSnapshot(dataSnapshot);
+            if (!shouldInclude(item)) {
+                return;
+            }
+            int position = insert(dataSnapshot.getKey(), item);
+            listener.onItemInserted(position, item);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, String previousName) {
+            String key = dataSnapshot.getKey();
+            T item = getModelFromSnapshot(dataSnapshot);
+            if (!keyToItem.containsKey(key)) {
+                if (shouldInclude(item)) {
+                    listener.onItemInserted(insert(key, item), item);
+                }
+                return;
+            }
+
+            int oldPosition = remove(key);
+            if (!shouldInclude(item)) {
+                listener.onItemRemoved(oldPosition);
+                return;
+            }
+
+            int newPosition = insert(key, item);
+            if (newPosition == oldPosition) {
+                listener.onItemChanged(newPosition, item);
+            } else {
+                listener.onItemMoved(oldPosition, newPosition, item);
+            }
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+            String key = dataSnapshot.getKey();
+            if (!keyToItem.containsKey(key)) {
+                return;
+            }
+            listener.onItemRemoved(remove(key));
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, String previousName) {
+            // the list is ordered by its own sort, not by the query order
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+
+        }
+
+        private boolean shouldInclude(T item) {
+            return item != null && (predicate == null || predicate.shouldInclude(item));
+        }
+
+        private int insert(String key, T item) {
+            int position = Collections.binarySearch(items, item, comparator);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            items.add(position, item);
+            keyToItem.put(key, item);
+            return position;
+        }
+
+        private int remove(String key) {
+            T item = keyToItem.remove(key);
+            int position = Collections.binarySearch(items, item, comparator);
+            if (position < 0 || items.get(position) != item) {
+                // the item was modified in place after it was handed out
+                position = items.indexOf(item);
+            }
+            items.remove(position);
+            return position;
+        }
+    }
+
+    private static class SharedSubscription {
+        private final String key;
+        private final OnDataChangedListener<?> subscriber;
+
+        SharedSubscription(String key, OnDataChangedListener<?> subscriber) {
+            this.key = key;
+            this.subscriber = subscriber;
+        }
+    }
+
     protected interface Predicate<T> {
         boolean shouldInclude(T obj);
     }
@@ -0,0 +1,304 @@
+package io.ipoli.android.app.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.App;
+import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.quest.persistence.OnChangeListener;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+import io.ipoli.android.quest.persistence.OnListChangedListener;
+
+/**
+ * Counterpart of {@link BaseFirebasePersistenceService} on top of an {@link InMemoryDatabase}.
+ * Services keep the Firebase layout, every player lives under /{API_VERSION}/players/{playerId}.
+ */
+public abstract class BaseInMemoryPersistenceService<T extends PersistedObject> implements PersistenceService<T> {
+
+    protected final InMemoryDatabase database;
+    private final String playerId;
+    private final Map<OnDataChangedListener<?>, InMemoryDatabase.ValueListener> listenerToValueListener;
+    private final Map<OnListChangedListener<?>, InMemoryDatabase.ValueListener> listenerToListListener;
+    private final List<InMemoryDatabase.ValueListener> childListeners;
+
+    /**
+     * @param playerId the player to read and write, or null for the signed in player
+     */
+    public BaseInMemoryPersistenceService(InMemoryDatabase database, String playerId) {
+        this.database = database;
+        this.playerId = playerId;
+        this.listenerToValueListener = new HashMap<>();
+        this.listenerToListListener = new HashMap<>();
+        this.childListeners = new ArrayList<>();
+    }
+
+    @Override
+    public void save(T obj) {
+        boolean isNew = StringUtils.isEmpty(obj.getId());
+        if (!isNew) {
+            obj.markUpdated();
+        }
+        obj.setId(isNew ? database.push() : obj.getId());
+        database.setValue(getCollectionReference().child(obj.getId()).getPath(), obj);
+    }
+
+    @Override
+    public void findById(String id, OnDataChangedListener<T> listener) {
+        if (StringUtils.isEmpty(id)) {
+            listener.onDataChanged(null);
+            return;
+        }
+        listenForSingleModelChange(getCollectionReference().child(id), listener);
+    }
+
+    @Override
+    public void listenById(String id, OnDataChangedListener<T> listener) {
+        if (StringUtils.isEmpty(id)) {
+            listener.onDataChanged(null);
+            return;
+        }
+        listenForModelChange(getCollectionReference().child(id), listener);
+    }
+
+    @Override
+    public void delete(T object) {
+        database.setValue(getCollectionReference().child(object.getId()).getPath(), null);
+    }
+
+    @Override
+    public void removeAllListeners() {
+        for (InMemoryDatabase.ValueListener valueListener : listenerToValueListener.values()) {
+            database.removeValueListener(valueListener);
+        }
+        listenerToValueListener.clear();
+
+        for (InMemoryDatabase.ValueListener valueListener : listenerToListListener.values()) {
+            database.removeValueListener(valueListener);
+        }
+        listenerToListListener.clear();
+
+        for (InMemoryDatabase.ValueListener valueListener : childListeners) {
+            database.removeValueListener(valueListener);
+        }
+        childListeners.clear();
+    }
+
+    @Override
+    public void removeDataChangedListener(OnDataChangedListener<?> listener) {
+        InMemoryDatabase.ValueListener valueListener = listenerToValueListener.remove(listener);
+        if (valueListener != null) {
+            database.removeValueListener(valueListener);
+        }
+    }
+
+    @Override
+    public void removeListChangedListener(OnListChangedListener<?> listener) {
+        InMemoryDatabase.ValueListener valueListener = listenerToListListener.remove(listener);
+        if (valueListener != null) {
+            database.removeValueListener(valueListener);
+        }
+    }
+
+    protected abstract Class<T> getModelClass();
+
+    protected abstract String getCollectionName();
+
+    protected InMemoryQuery getCollectionReference() {
+        return getPlayerReference().child(getCollectionName());
+    }
+
+    protected InMemoryQuery getPlayerReference() {
+        return database.getReference(Constants.API_VERSION).child("players").child(getPlayerId());
+    }
+
+    protected String getPlayerId() {
+        return playerId != null ? playerId : App.getPlayerId();
+    }
+
+    protected void updatePlayerData(Map<String, Object> data) {
+        database.updateChildren(getPlayerReference().getPath(), data);
+    }
+
+    protected void listenForListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener) {
+        listenForListChange(query, listener, null, null);
+    }
+
+    protected void listenForListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate) {
+        listenForListChange(query, listener, predicate, null);
+    }
+
+    protected void listenForListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        listenForQuery(query, value -> listener.onDataChanged(getList(value, predicate, querySort)), listener);
+    }
+
+    /**
+     * Re-reads the query on every change and reports the difference to the previous result
+     * item by item, in the order of the given sort
+     */
+    protected void listenForIncrementalListChange(InMemoryQuery query, OnListChangedListener<T> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        InMemoryDatabase.ValueListener valueListener = new IncrementalListListener(listener, predicate, querySort);
+        listenerToListListener.put(listener, valueListener);
+        database.addValueListener(query, valueListener);
+    }
+
+    /**
+     * Reports added, changed and removed children like a Firebase ChildEventListener,
+     * starting with one added event per existing child
+     */
+    protected void listenForChildChange(InMemoryQuery query, OnChangeListener<Void> onChangeListener) {
+        Map<String, Object> previousChildren = new HashMap<>();
+        InMemoryDatabase.ValueListener valueListener = value -> {
+            Map<String, Object> children = getChildren(value);
+            for (String key : new ArrayList<>(previousChildren.keySet())) {
+                if (!children.containsKey(key)) {
+                    previousChildren.remove(key);
+                    onChangeListener.onDeleted();
+                }
+            }
+            for (Map.Entry<String, Object> child : children.entrySet()) {
+                if (!previousChildren.containsKey(child.getKey())) {
+                    onChangeListener.onNew(null);
+                } else if (!Objects.equals(previousChildren.get(child.getKey()), child.getValue())) {
+                    onChangeListener.onChanged(null);
+                }
+                previousChildren.put(child.getKey(), child.getValue());
+            }
+        };
+        childListeners.add(valueListener);
+        database.addValueListener(query, valueListener);
+    }
+
+    protected void listenForModelChange(InMemoryQuery query, OnDataChangedListener<T> listener) {
+        listenForQuery(query, value -> listener.onDataChanged(getModel(value)), listener);
+    }
+
+    protected void listenForQuery(InMemoryQuery query, InMemoryDatabase.ValueListener valueListener, OnDataChangedListener<?> listener) {
+        listenerToValueListener.put(listener, valueListener);
+        database.addValueListener(query, valueListener);
+    }
+
+    protected void listenForSingleChange(InMemoryQuery query, InMemoryDatabase.ValueListener valueListener) {
+        database.addListenerForSingleValueEvent(query, valueListener);
+    }
+
+    protected void listenForSingleListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener) {
+        listenForSingleListChange(query, listener, null, null);
+    }
+
+    protected void listenForSingleListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate) {
+        listenForSingleListChange(query, listener, predicate, null);
+    }
+
+    protected void listenForSingleListChange(InMemoryQuery query, OnDataChangedListener<List<T>> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+        listenForSingleChange(query, value -> listener.onDataChanged(getList(value, predicate, querySort)));
+    }
+
+    protected void listenForSingleModelChange(InMemoryQuery query, OnDataChangedListener<T> listener) {
+        listenForSingleChange(query, value -> listener.onDataChanged(getModel(value)));
+    }
+
+    protected List<T> getList(Object value, Predicate<T> predicate, QuerySort<T> querySort) {
+        List<T> result = new ArrayList<>();
+        for (Object child : getChildren(value).values()) {
+            T obj = getModel(child);
+            if (obj != null && (predicate == null || predicate.shouldInclude(obj))) {
+                result.add(obj);
+            }
+        }
+        if (querySort != null) {
+            Collections.sort(result, querySort::sort);
+        }
+        return result;
+    }
+
+    protected T getModel(Object value) {
+        T obj = database.toModel(value, getModelClass());
+        if (obj != null) {
+            obj.markClean();
+        }
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Map<String, Object> getChildren(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : new HashMap<>();
+    }
+
+    private class IncrementalListListener implements InMemoryDatabase.ValueListener {
+
+        private final OnListChangedListener<T> listener;
+        private final Predicate<T> predicate;
+        private final QuerySort<T> querySort;
+        private final List<String> keys;
+        private final Map<String, Object> keyToValue;
+
+        IncrementalListListener(OnListChangedListener<T> listener, Predicate<T> predicate, QuerySort<T> querySort) {
+            this.listener = listener;
+            this.predicate = predicate;
+            this.querySort = querySort;
+            this.keys = new ArrayList<>();
+            this.keyToValue = new HashMap<>();
+        }
+
+        @Override
+        public void onDataChange(Object value) {
+            Map<String, Object> children = getChildren(value);
+            List<T> items = new ArrayList<>();
+            Map<String, T> keyToItem = new HashMap<>();
+            for (Map.Entry<String, Object> child : children.entrySet()) {
+                T item = getModel(child.getValue());
+                if (item != null && (predicate == null || predicate.shouldInclude(item))) {
+                    items.add(item);
+                    keyToItem.put(child.getKey(), item);
+                }
+            }
+            Map<T, String> itemToKey = new IdentityHashMap<>();
+            for (Map.Entry<String, T> entry : keyToItem.entrySet()) {
+                itemToKey.put(entry.getValue(), entry.getKey());
+            }
+            Collections.sort(items, (o1, o2) -> {
+                int result = querySort != null ? querySort.sort(o1, o2) : 0;
+                return result != 0 ? result : itemToKey.get(o1).compareTo(itemToKey.get(o2));
+            });
+
+            for (int i = keys.size() - 1; i >= 0; i--) {
+                if (!keyToItem.containsKey(keys.get(i))) {
+                    keyToValue.remove(keys.remove(i));
+                    listener.onItemRemoved(i);
+                }
+            }
+
+            for (int position = 0; position < items.size(); position++) {
+                T item = items.get(position);
+                String key = itemToKey.get(item);
+                Object childValue = children.get(key);
+                int oldPosition = keys.indexOf(key);
+                if (oldPosition < 0) {
+                    keys.add(position, key);
+                    listener.onItemInserted(position, item);
+                } else if (oldPosition != position) {
+                    keys.remove(oldPosition);
+                    keys.add(position, key);
+                    listener.onItemMoved(oldPosition, position, item);
+                } else if (!Objects.equals(keyToValue.get(key), childValue)) {
+                    listener.onItemChanged(position, item);
+                }
+                keyToValue.put(key, childValue);
+            }
+        }
+    }
+
+    protected interface Predicate<T> {
+        boolean shouldInclude(T obj);
+    }
+
+    protected interface QuerySort<T> {
+        int sort(T obj1, T obj2);
+    }
+}
@@ -0,0 +1,180 @@
+package io.ipoli.android.app.persistence;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Coalesces multi-path updates into a single atomic updateChildren call.
+ * <p>
+ * Writes are buffered for a short window (or until {@link #flush()}) and merged by path,
+ * the last writer wins. Writing a path drops every buffered write below it. Writing below a
+ * buffered path can't be merged into one update, so the buffer is committed first.
+ * Values are serialized by Firebase when the batch is committed, not when they are written.
+ */
+public class BatchWriter {
+
+    private static final String TAG = "BatchWriter";
+    private static final long WRITE_WINDOW_MILLIS = 50;
+
+    private final Handler handler;
+    private final Runnable flushRunnable;
+
+    private DatabaseReference root;
+    private TreeMap<String, Object> pendingData;
+    private List<OnWriteCompleteListener> pendingListeners;
+    private int pendingOperationCount;
+
+    private long committedBatchCount;
+    private long committedOperationCount;
+    private long committedPathCount;
+    private int maxBatchPathCount;
+    private long totalCommitLatencyMillis;
+    private long maxCommitLatencyMillis;
+    private long failedBatchCount;
+
+    public interface OnWriteCompleteListener {
+        void onWriteComplete(DatabaseError error);
+    }
+
+    public BatchWriter() {
+        this.handler = new Handler(Looper.getMainLooper());
+        this.flushRunnable = this::flush;
+        resetBuffer();
+    }
+
+    public void write(DatabaseReference root, Map<String, Object> data) {
+        write(root, data, null);
+    }
+
+    public synchronized void write(DatabaseReference root, Map<String, Object> data, OnWriteCompleteListener listener) {
+        if (this.root != null && !this.root.toString().equals(root.toString())) {
+            flush();
+        }
+        if (hasBufferedAncestor(data)) {
+            flush();
+        }
+        this.root = root;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            String path = normalize(entry.getKey());
+            pendingData.subMap(path + "/", path + "0").clear();
+            pendingData.put(path, entry.getValue());
+        }
+        if (listener != null) {
+            pendingListeners.add(listener);
+        }
+        pendingOperationCount++;
+
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, WRITE_WINDOW_MILLIS);
+    }
+
+    public synchronized void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingData.isEmpty()) {
+            List<OnWriteCompleteListener> listeners = pendingListeners;
+            resetBuffer();
+            for (OnWriteCompleteListener l : listeners) {
+                l.onWriteComplete(null);
+            }
+            return;
+        }
+        Map<String, Object> data = new HashMap<>(pendingData);
+        List<OnWriteCompleteListener> listeners = pendingListeners;
+        int operationCount = pendingOperationCount;
+        DatabaseReference batchRoot = root;
+        resetBuffer();
+
+        long startTime = SystemClock.elapsedRealtime();
+        batchRoot.updateChildren(data, (error, ref) -> {
+            onBatchCommitted(data.size(), operationCount, SystemClock.elapsedRealtime() - startTime, error);
+            Log.d(TAG, getStatsSummary());
+            for (OnWriteCompleteListener l : listeners) {
+                l.onWriteComplete(error);
+            }
+        });
+    }
+
+    public synchronized long getCommittedBatchCount() {
+        return committedBatchCount;
+    }
+
+    public synchronized long getCommittedOperationCount() {
+        return committedOperationCount;
+    }
+
+    public synchronized long getFailedBatchCount() {
+        return failedBatchCount;
+    }
+
+    public synchronized int getMaxBatchPathCount() {
+        return maxBatchPathCount;
+    }
+
+    public synchronized double getAverageBatchPathCount() {
+        return committedBatchCount == 0 ? 0 : (double) committedPathCount / committedBatchCount;
+    }
+
+    public synchronized double getAverageCommitLatencyMillis() {
+        return committedBatchCount == 0 ? 0 : (double) totalCommitLatencyMillis / committedBatchCount;
+    }
+
+    public synchronized long getMaxCommitLatencyMillis() {
+        return maxCommitLatencyMillis;
+    }
+
+    public synchronized String getStatsSummary() {
+        return String.format(Locale.US, "batches=%d failed=%d operations=%d avgPaths=%.1f maxPaths=%d avgCommitMs=%.1f maxCommitMs=%d",
+                committedBatchCount, failedBatchCount, committedOperationCount, getAverageBatchPathCount(), maxBatchPathCount,
+                getAverageCommitLatencyMillis(), maxCommitLatencyMillis);
+    }
+
+    private synchronized void onBatchCommitted(int pathCount, int operationCount, long latencyMillis, DatabaseError error) {
+        if (error != null) {
+            failedBatchCount++;
+        }
+        committedBatchCount++;
+        committedOperationCount += operationCount;
+        committedPathCount += pathCount;
+        maxBatchPathCount = Math.max(maxBatchPathCount, pathCount);
+        totalCommitLatencyMillis += latencyMillis;
+        maxCommitLatencyMillis = Math.max(maxCommitLatencyMillis, latencyMillis);
+    }
+
+    private boolean hasBufferedAncestor(Map<String, Object> data) {
+        for (String key : data.keySet()) {
+            String path = normalize(key);
+            int separator = path.indexOf('/', 1);
+            while (separator > 0) {
+                if (pendingData.containsKey(path.substring(0, separator))) {
+                    return true;
+                }
+                separator = path.indexOf('/', separator + 1);
+            }
+        }
+        return false;
+    }
+
+    private String normalize(String path) {
+        String result = path.startsWith("/") ? path : "/" + path;
+        return result.endsWith("/") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    private void resetBuffer() {
+        root = null;
+        pendingData = new TreeMap<>();
+        pendingListeners = new ArrayList<>();
+        pendingOperationCount = 0;
+    }
+}
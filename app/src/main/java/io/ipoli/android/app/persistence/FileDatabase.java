@@ -0,0 +1,168 @@
+package io.ipoli.android.app.persistence;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link InMemoryDatabase} persisted as a JSON snapshot file and a log of the updates made
+ * since. An update appends one line to the log. The snapshot is rewritten, through a temporary
+ * file and a rename, when the database is opened with a log and when the log reaches
+ * {@link #MAX_LOGGED_UPDATES} updates.
+ * <p>
+ * Replaying an update that is already in the snapshot changes nothing, and a last line cut off
+ * by a crash is skipped, so a crashed run loses at most its last update.
+ */
+public class FileDatabase extends InMemoryDatabase {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final int MAX_LOGGED_UPDATES = 500;
+
+    private final File file;
+    private final File logFile;
+    private Writer logWriter;
+    private int loggedUpdateCount;
+    private boolean isReplaying;
+
+    public FileDatabase(File file) {
+        super(load(file));
+        this.file = file;
+        this.logFile = getLogFile(file);
+        if (logFile.exists()) {
+            replayLog();
+            writeSnapshot();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public static File getLogFile(File file) {
+        return new File(file.getPath() + ".log");
+    }
+
+    @Override
+    protected void onDataWritten(Map<String, Object> writes) {
+        if (isReplaying) {
+            return;
+        }
+        if (loggedUpdateCount >= MAX_LOGGED_UPDATES) {
+            writeSnapshot();
+            return;
+        }
+        JsonArray update = new JsonArray();
+        for (Map.Entry<String, Object> write : writes.entrySet()) {
+            JsonArray pathValue = new JsonArray();
+            pathValue.add(new JsonPrimitive(write.getKey()));
+            pathValue.add(toJson(write.getValue()));
+            update.add(pathValue);
+        }
+        try {
+            if (logWriter == null) {
+                logWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), CHARSET));
+            }
+            logWriter.write(getGson().toJson(update));
+            logWriter.write('\n');
+            logWriter.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't append to database log " + logFile, e);
+        }
+        loggedUpdateCount++;
+    }
+
+    private void replayLog() {
+        isReplaying = true;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), CHARSET))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Map<String, Object> writes = parseUpdate(line);
+                if (writes == null) {
+                    break;
+                }
+                updateChildren("", writes);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read database log " + logFile, e);
+        } finally {
+            isReplaying = false;
+        }
+    }
+
+    /**
+     * @return the writes of a logged update, or null for a line cut off by a crash
+     */
+    private static Map<String, Object> parseUpdate(String line) {
+        try {
+            JsonArray update = new JsonParser().parse(line).getAsJsonArray();
+            Map<String, Object> writes = new LinkedHashMap<>();
+            for (JsonElement write : update) {
+                JsonArray pathValue = write.getAsJsonArray();
+                writes.put(pathValue.get(0).getAsString(), pathValue.get(1));
+            }
+            return writes;
+        } catch (JsonParseException | IllegalStateException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private void writeSnapshot() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), CHARSET)) {
+            getGson().toJson(toJson(getRoot()), writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write database file " + tempFile, e);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IllegalStateException("Can't replace database file " + file);
+        }
+        closeLog();
+        if (logFile.exists() && !logFile.delete()) {
+            throw new IllegalStateException("Can't delete database log " + logFile);
+        }
+        loggedUpdateCount = 0;
+    }
+
+    private void closeLog() {
+        if (logWriter == null) {
+            return;
+        }
+        try {
+            logWriter.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't close database log " + logFile, e);
+        } finally {
+            logWriter = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), CHARSET)) {
+            JsonElement json = new JsonParser().parse(reader);
+            Object tree = toTree(json);
+            return tree instanceof Map ? (Map<String, Object>) tree : null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read database file " + file, e);
+        }
+    }
+}
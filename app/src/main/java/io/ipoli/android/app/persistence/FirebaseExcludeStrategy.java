@@ -0,0 +1,22 @@
+package io.ipoli.android.app.persistence;
+
+import com.google.firebase.database.Exclude;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+
+/**
+ * Skips the fields the Firebase mapper ignores (previousScheduledDate, previousChallengeId),
+ * so an object serialized with Gson looks exactly like a decoded snapshot
+ */
+public class FirebaseExcludeStrategy implements ExclusionStrategy {
+
+    @Override
+    public boolean shouldSkipField(FieldAttributes f) {
+        return f.getAnnotation(Exclude.class) != null;
+    }
+
+    @Override
+    public boolean shouldSkipClass(Class<?> clazz) {
+        return false;
+    }
+}
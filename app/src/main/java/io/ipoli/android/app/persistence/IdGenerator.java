@@ -0,0 +1,9 @@
+package io.ipoli.android.app.persistence;
+
+/**
+ * Source of new child keys, e.g. Firebase push ids
+ */
+public interface IdGenerator {
+
+    String generateId();
+}
@@ -0,0 +1,619 @@
+package io.ipoli.android.app.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * JSON tree with the path layout and query semantics of the Firebase Realtime Database,
+ * so the persistence services can run (and be measured) on a plain JVM.
+ * <p>
+ * Values are stored the way Firebase stores them: objects become maps through their fields
+ * (honoring {@code @Exclude}), lists become maps keyed by index, whole numbers become longs and
+ * empty nodes disappear. Children are ordered like Firebase orders them: nulls, false, true,
+ * numbers, strings and then objects, ties broken by key.
+ * <p>
+ * Unlike Firebase, listeners are called synchronously on the writing thread, outside the
+ * database lock. A listener is called only when the result of its query has changed.
+ */
+public class InMemoryDatabase {
+
+    private static final String PUSH_CHARS = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+    private static final Gson GSON = new GsonBuilder().setExclusionStrategies(new FirebaseExcludeStrategy()).create();
+
+    private Map<String, Object> root;
+    private final List<Registration> registrations;
+    private final Random random;
+    private final int[] lastRandomChars;
+    private long lastPushTime;
+
+    public interface ValueListener {
+        void onDataChange(Object value);
+    }
+
+    public InMemoryDatabase() {
+        this(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected InMemoryDatabase(Map<String, Object> data) {
+        Object tree = toTree(data);
+        this.root = tree != null ? (Map<String, Object>) tree : new LinkedHashMap<>();
+        this.registrations = new ArrayList<>();
+        this.random = new Random();
+        this.lastRandomChars = new int[12];
+        this.lastPushTime = 0;
+    }
+
+    public InMemoryQuery getReference(String path) {
+        return new InMemoryQuery(normalizePath(path));
+    }
+
+    public synchronized Object getValue(String path) {
+        return deepCopy(getNode(normalizePath(path)));
+    }
+
+    public synchronized Object getValue(InMemoryQuery query) {
+        return evaluate(query);
+    }
+
+    public void setValue(String path, Object value) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put(path, value);
+        updateChildren("", data);
+    }
+
+    /**
+     * Applies all writes atomically, like {@code DatabaseReference.updateChildren}.
+     * A path may not be written together with one of its descendants.
+     */
+    public void updateChildren(String path, Map<String, Object> data) {
+        List<Runnable> notifications;
+        synchronized (this) {
+            TreeMap<String, Object> writes = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                writes.put(normalizePath(path + "/" + entry.getKey()), toTree(entry.getValue()));
+            }
+            for (String writePath : writes.keySet()) {
+                String ancestor = parentPath(writePath);
+                while (ancestor != null) {
+                    if (writes.containsKey(ancestor)) {
+                        throw new IllegalArgumentException("Path '" + ancestor + "' is an ancestor of '" + writePath + "' in an update");
+                    }
+                    ancestor = parentPath(ancestor);
+                }
+            }
+            for (Map.Entry<String, Object> write : writes.entrySet()) {
+                writeNode(write.getKey(), write.getValue());
+            }
+            onDataWritten(writes);
+            notifications = collectNotifications(writes.keySet());
+        }
+        for (Runnable notification : notifications) {
+            notification.run();
+        }
+    }
+
+    /**
+     * Chronologically ordered, collision resistant key, generated like a Firebase push id
+     */
+    public synchronized String push() {
+        long now = System.currentTimeMillis();
+        boolean duplicateTime = now == lastPushTime;
+        lastPushTime = now;
+
+        char[] timeChars = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            timeChars[i] = PUSH_CHARS.charAt((int) (now % 64));
+            now = now / 64;
+        }
+        StringBuilder id = new StringBuilder(new String(timeChars));
+
+        if (!duplicateTime) {
+            for (int i = 0; i < lastRandomChars.length; i++) {
+                lastRandomChars[i] = random.nextInt(64);
+            }
+        } else {
+            // same millisecond, increment the random part so ids stay ordered
+            int i = lastRandomChars.length - 1;
+            while (i >= 0 && lastRandomChars[i] == 63) {
+                lastRandomChars[i] = 0;
+                i--;
+            }
+            if (i >= 0) {
+                lastRandomChars[i]++;
+            }
+        }
+        for (int randomChar : lastRandomChars) {
+            id.append(PUSH_CHARS.charAt(randomChar));
+        }
+        return id.toString();
+    }
+
+    public void addValueListener(InMemoryQuery query, ValueListener listener) {
+        Object value;
+        synchronized (this) {
+            Registration registration = new Registration(query, listener);
+            registration.lastValue = evaluate(query);
+            registrations.add(registration);
+            value = registration.lastValue;
+        }
+        listener.onDataChange(value);
+    }
+
+    public void addListenerForSingleValueEvent(InMemoryQuery query, ValueListener listener) {
+        listener.onDataChange(getValue(query));
+    }
+
+    public synchronized void removeValueListener(ValueListener listener) {
+        for (int i = registrations.size() - 1; i >= 0; i--) {
+            if (registrations.get(i).listener == listener) {
+                registrations.remove(i);
+            }
+        }
+    }
+
+    public synchronized int getListenerCount() {
+        return registrations.size();
+    }
+
+    public <T> T toModel(Object value, Class<T> modelClass) {
+        return value == null ? null : GSON.fromJson(toJson(value), modelClass);
+    }
+
+    public <T> T toModel(Object value, Type type) {
+        return value == null ? null : GSON.fromJson(toJson(value), type);
+    }
+
+    /**
+     * Called with the lock held after every update, with the normalized paths it wrote and
+     * their values (null for removed nodes)
+     */
+    protected void onDataWritten(Map<String, Object> writes) {
+    }
+
+    protected Map<String, Object> getRoot() {
+        return root;
+    }
+
+    protected static Gson getGson() {
+        return GSON;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeNode(String path, Object value) {
+        if (path.isEmpty()) {
+            root = value instanceof Map ? (Map<String, Object>) value : new LinkedHashMap<>();
+            return;
+        }
+        String[] segments = path.split("/");
+        if (value == null) {
+            removeNode(root, segments, 0);
+            return;
+        }
+        Map<String, Object> node = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            Object child = node.get(segments[i]);
+            if (!(child instanceof Map)) {
+                child = new LinkedHashMap<String, Object>();
+                node.put(segments[i], child);
+            }
+            node = (Map<String, Object>) child;
+        }
+        node.put(segments[segments.length - 1], value);
+    }
+
+    /**
+     * Removes the node and every ancestor it leaves empty
+     */
+    @SuppressWarnings("unchecked")
+    private boolean removeNode(Map<String, Object> node, String[] segments, int index) {
+        String key = segments[index];
+        if (index == segments.length - 1) {
+            node.remove(key);
+        } else {
+            Object child = node.get(key);
+            if (!(child instanceof Map)) {
+                return node.isEmpty();
+            }
+            if (removeNode((Map<String, Object>) child, segments, index + 1)) {
+                node.remove(key);
+            }
+        }
+        return node.isEmpty();
+    }
+
+    private Object getNode(String path) {
+        return getChild(root, path);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getChild(Object node, String path) {
+        if (path == null || path.isEmpty()) {
+            return node;
+        }
+        for (String segment : path.split("/")) {
+            if (!(node instanceof Map)) {
+                return null;
+            }
+            node = ((Map<String, Object>) node).get(segment);
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object evaluate(InMemoryQuery query) {
+        Object node = getNode(query.path);
+        if (!query.isFiltered()) {
+            return deepCopy(node);
+        }
+        if (!(node instanceof Map)) {
+            return null;
+        }
+
+        List<Map.Entry<String, Object>> children = new ArrayList<>(((Map<String, Object>) node).entrySet());
+        Collections.sort(children, createOrderComparator(query));
+
+        List<Map.Entry<String, Object>> matching = new ArrayList<>();
+        for (Map.Entry<String, Object> child : children) {
+            if (query.hasStart && isBeforeStart(query, child)) {
+                continue;
+            }
+            if (query.hasEnd && compareToBound(query, child, query.endValue) > 0) {
+                continue;
+            }
+            matching.add(child);
+        }
+
+        if (query.limitToFirst > 0 && matching.size() > query.limitToFirst) {
+            matching = matching.subList(0, query.limitToFirst);
+        }
+        if (query.limitToLast > 0 && matching.size() > query.limitToLast) {
+            matching = matching.subList(matching.size() - query.limitToLast, matching.size());
+        }
+
+        if (matching.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> child : matching) {
+            result.put(child.getKey(), deepCopy(child.getValue()));
+        }
+        return result;
+    }
+
+    private Comparator<Map.Entry<String, Object>> createOrderComparator(InMemoryQuery query) {
+        return (c1, c2) -> {
+            if (query.orderBy != InMemoryQuery.OrderBy.KEY) {
+                int result = compareValues(getOrderValue(query, c1), getOrderValue(query, c2));
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return compareKeys(c1.getKey(), c2.getKey());
+        };
+    }
+
+    private boolean isBeforeStart(InMemoryQuery query, Map.Entry<String, Object> child) {
+        int result = compareToBound(query, child, query.startValue);
+        if (result == 0 && query.startKey != null && query.orderBy != InMemoryQuery.OrderBy.KEY) {
+            return compareKeys(child.getKey(), query.startKey) < 0;
+        }
+        return result < 0;
+    }
+
+    private int compareToBound(InMemoryQuery query, Map.Entry<String, Object> child, Object bound) {
+        if (query.orderBy == InMemoryQuery.OrderBy.KEY) {
+            return compareKeys(child.getKey(), String.valueOf(bound));
+        }
+        return compareValues(getOrderValue(query, child), bound);
+    }
+
+    private Object getOrderValue(InMemoryQuery query, Map.Entry<String, Object> child) {
+        if (query.orderBy == InMemoryQuery.OrderBy.VALUE) {
+            return child.getValue();
+        }
+        return getChild(child.getValue(), normalizePath(query.orderByChildPath));
+    }
+
+    private List<Runnable> collectNotifications(Collection<String> writtenPaths) {
+        List<Runnable> notifications = new ArrayList<>();
+        for (Registration registration : registrations) {
+            if (!isAffected(registration.query.path, writtenPaths)) {
+                continue;
+            }
+            Object value = evaluate(registration.query);
+            if (Objects.equals(value, registration.lastValue)) {
+                continue;
+            }
+            registration.lastValue = value;
+            Object delivered = deepCopy(value);
+            notifications.add(() -> registration.listener.onDataChange(delivered));
+        }
+        return notifications;
+    }
+
+    private boolean isAffected(String queryPath, Collection<String> writtenPaths) {
+        for (String writtenPath : writtenPaths) {
+            if (queryPath.isEmpty() || writtenPath.isEmpty() ||
+                    writtenPath.equals(queryPath) ||
+                    writtenPath.startsWith(queryPath + "/") ||
+                    queryPath.startsWith(writtenPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String normalizePath(String path) {
+        if (path == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append('/');
+            }
+            result.append(segment);
+        }
+        return result.toString();
+    }
+
+    private static String parentPath(String path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+        int separator = path.lastIndexOf('/');
+        return separator < 0 ? "" : path.substring(0, separator);
+    }
+
+    static int compareValues(Object v1, Object v2) {
+        int rank1 = getTypeRank(v1);
+        int rank2 = getTypeRank(v2);
+        if (rank1 != rank2) {
+            return Integer.compare(rank1, rank2);
+        }
+        if (v1 instanceof Number) {
+            if (v1 instanceof Long && v2 instanceof Long) {
+                return Long.compare((Long) v1, (Long) v2);
+            }
+            return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+        }
+        if (v1 instanceof String) {
+            return ((String) v1).compareTo((String) v2);
+        }
+        return 0;
+    }
+
+    private static int getTypeRank(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 2 : 1;
+        }
+        if (value instanceof Number) {
+            return 3;
+        }
+        if (value instanceof String) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * Keys that are 32-bit integers come first in numeric order, all other keys follow in lexicographic order
+     */
+    static int compareKeys(String k1, String k2) {
+        Integer i1 = parseIntKey(k1);
+        Integer i2 = parseIntKey(k2);
+        if (i1 != null && i2 != null) {
+            return Integer.compare(i1, i2);
+        }
+        if (i1 != null) {
+            return -1;
+        }
+        if (i2 != null) {
+            return 1;
+        }
+        return k1.compareTo(k2);
+    }
+
+    private static Integer parseIntKey(String key) {
+        if (key.isEmpty() || key.length() > 11) {
+            return null;
+        }
+        try {
+            long value = Long.parseLong(key);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE || !String.valueOf(value).equals(key)) {
+                return null;
+            }
+            return (int) value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a value to the stored form: maps of strings, booleans, longs and doubles
+     */
+    @SuppressWarnings("unchecked")
+    static Object toTree(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Number) {
+            return normalizeNumber((Number) value);
+        }
+        if (value instanceof Character || value instanceof Enum) {
+            return value.toString();
+        }
+        if (value instanceof Map) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                Object child = toTree(entry.getValue());
+                if (child != null) {
+                    result.put(String.valueOf(entry.getKey()), child);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+        if (value instanceof Collection) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            int index = 0;
+            for (Object item : (Collection<Object>) value) {
+                Object child = toTree(item);
+                if (child != null) {
+                    result.put(String.valueOf(index), child);
+                }
+                index++;
+            }
+            return result.isEmpty() ? null : result;
+        }
+        if (value instanceof JsonElement) {
+            return fromJson((JsonElement) value);
+        }
+        return fromJson(GSON.toJsonTree(value));
+    }
+
+    private static Object fromJson(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            if (primitive.isNumber()) {
+                String number = primitive.getAsString();
+                if (number.contains(".") || number.contains("e") || number.contains("E")) {
+                    return normalizeNumber(primitive.getAsDouble());
+                }
+                return primitive.getAsLong();
+            }
+            return primitive.getAsString();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                Object child = fromJson(array.get(i));
+                if (child != null) {
+                    result.put(String.valueOf(i), child);
+                }
+            }
+        } else {
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                Object child = fromJson(entry.getValue());
+                if (child != null) {
+                    result.put(entry.getKey(), child);
+                }
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private static Object normalizeNumber(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        double value = number.doubleValue();
+        if (value == Math.rint(value) && Math.abs(value) < (1L << 53)) {
+            return (long) value;
+        }
+        return value;
+    }
+
+    /**
+     * Converts a stored value back to JSON. Maps keyed by (mostly) consecutive indexes become arrays,
+     * the way Firebase decodes them.
+     */
+    @SuppressWarnings("unchecked")
+    static JsonElement toJson(Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+        if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+        if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+        if (value instanceof String) {
+            return new JsonPrimitive((String) value);
+        }
+        Map<String, Object> map = (Map<String, Object>) value;
+        int maxIndex = getMaxIndex(map);
+        if (maxIndex >= 0 && maxIndex < 2 * map.size()) {
+            JsonArray array = new JsonArray();
+            for (int i = 0; i <= maxIndex; i++) {
+                array.add(toJson(map.get(String.valueOf(i))));
+            }
+            return array;
+        }
+        JsonObject object = new JsonObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            object.add(entry.getKey(), toJson(entry.getValue()));
+        }
+        return object;
+    }
+
+    private static int getMaxIndex(Map<String, Object> map) {
+        int maxIndex = -1;
+        for (String key : map.keySet()) {
+            Integer index = parseIntKey(key);
+            if (index == null || index < 0) {
+                return -1;
+            }
+            maxIndex = Math.max(maxIndex, index);
+        }
+        return maxIndex;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object deepCopy(Object value) {
+        if (!(value instanceof Map)) {
+            return value;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+            copy.put(entry.getKey(), deepCopy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static class Registration {
+        private final InMemoryQuery query;
+        private final ValueListener listener;
+        private Object lastValue;
+
+        Registration(InMemoryQuery query, ValueListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+    }
+}
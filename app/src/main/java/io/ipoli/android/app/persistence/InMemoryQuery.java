@@ -0,0 +1,112 @@
+package io.ipoli.android.app.persistence;
+
+/**
+ * Immutable description of a read from an {@link InMemoryDatabase}, built like a Firebase {@code Query}:
+ * a location, an optional order (by key, child or value), optional bounds and an optional limit.
+ */
+public class InMemoryQuery {
+
+    enum OrderBy {
+        KEY, CHILD, VALUE
+    }
+
+    final String path;
+    final OrderBy orderBy;
+    final String orderByChildPath;
+    final boolean hasStart;
+    final Object startValue;
+    final String startKey;
+    final boolean hasEnd;
+    final Object endValue;
+    final int limitToFirst;
+    final int limitToLast;
+
+    InMemoryQuery(String path) {
+        this(path, OrderBy.KEY, null, false, null, null, false, null, 0, 0);
+    }
+
+    private InMemoryQuery(String path, OrderBy orderBy, String orderByChildPath, boolean hasStart, Object startValue,
+                          String startKey, boolean hasEnd, Object endValue, int limitToFirst, int limitToLast) {
+        this.path = path;
+        this.orderBy = orderBy;
+        this.orderByChildPath = orderByChildPath;
+        this.hasStart = hasStart;
+        this.startValue = startValue;
+        this.startKey = startKey;
+        this.hasEnd = hasEnd;
+        this.endValue = endValue;
+        this.limitToFirst = limitToFirst;
+        this.limitToLast = limitToLast;
+    }
+
+    public InMemoryQuery child(String child) {
+        if (isFiltered()) {
+            throw new IllegalStateException("Can't create a child of an ordered or filtered query");
+        }
+        return new InMemoryQuery(InMemoryDatabase.normalizePath(path + "/" + child));
+    }
+
+    public InMemoryQuery orderByKey() {
+        return new InMemoryQuery(path, OrderBy.KEY, null, hasStart, startValue, startKey, hasEnd, endValue, limitToFirst, limitToLast);
+    }
+
+    public InMemoryQuery orderByChild(String childPath) {
+        return new InMemoryQuery(path, OrderBy.CHILD, childPath, hasStart, startValue, startKey, hasEnd, endValue, limitToFirst, limitToLast);
+    }
+
+    public InMemoryQuery orderByValue() {
+        return new InMemoryQuery(path, OrderBy.VALUE, null, hasStart, startValue, startKey, hasEnd, endValue, limitToFirst, limitToLast);
+    }
+
+    public InMemoryQuery startAt(Object value) {
+        return startAt(value, null);
+    }
+
+    /**
+     * Among the children equal to the bound, starts at the given key, like Firebase's
+     * {@code startAt(value, key)}
+     */
+    public InMemoryQuery startAt(Object value, String key) {
+        return new InMemoryQuery(path, orderBy, orderByChildPath, true, InMemoryDatabase.toTree(value), key, hasEnd, endValue, limitToFirst, limitToLast);
+    }
+
+    public InMemoryQuery endAt(Object value) {
+        return new InMemoryQuery(path, orderBy, orderByChildPath, hasStart, startValue, startKey, true, InMemoryDatabase.toTree(value), limitToFirst, limitToLast);
+    }
+
+    public InMemoryQuery equalTo(Object value) {
+        return startAt(value).endAt(value);
+    }
+
+    public InMemoryQuery limitToFirst(int limit) {
+        return new InMemoryQuery(path, orderBy, orderByChildPath, hasStart, startValue, startKey, hasEnd, endValue, limit, 0);
+    }
+
+    public InMemoryQuery limitToLast(int limit) {
+        return new InMemoryQuery(path, orderBy, orderByChildPath, hasStart, startValue, startKey, hasEnd, endValue, 0, limit);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getKey() {
+        return path.isEmpty() ? null : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    boolean isFiltered() {
+        return orderBy != OrderBy.KEY || hasStart || hasEnd || limitToFirst > 0 || limitToLast > 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isFiltered()) {
+            return path;
+        }
+        return path + "?orderBy=" + orderBy + (orderByChildPath != null ? ":" + orderByChildPath : "") +
+                (hasStart ? "&startAt=" + startValue + (startKey != null ? "," + startKey : "") : "") +
+                (hasEnd ? "&endAt=" + endValue : "") +
+                (limitToFirst > 0 ? "&limitToFirst=" + limitToFirst : "") +
+                (limitToLast > 0 ? "&limitToLast=" + limitToLast : "");
+    }
+}
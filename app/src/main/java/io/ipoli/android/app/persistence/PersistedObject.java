@@ -1,5 +1,10 @@
 package io.ipoli.android.app.persistence;
 
+import com.google.firebase.database.Exclude;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import io.ipoli.android.app.utils.DateUtils;
 
 /**
@@ -12,6 +17,9 @@ public abstract class PersistedObject {
     protected Long createdAt;
     protected Long updatedAt;
 
+    @Exclude
+    private transient Map<String, Object> dirtyFields;
+
     public abstract void setId(String id);
 
     public abstract String getId();
@@ -28,4 +36,31 @@ public abstract class PersistedObject {
     public void markUpdated() {
         setUpdatedAt(DateUtils.nowUTC().getTime());
     }
+
+    /**
+     * Starts (or restarts) recording changed fields. Call it right after the object is
+     * decoded or written, objects that were never marked clean are not tracked.
+     */
+    public void markClean() {
+        dirtyFields = new HashMap<>();
+    }
+
+    @Exclude
+    public boolean isTracked() {
+        return dirtyFields != null;
+    }
+
+    /**
+     * Changed persisted fields by their database names, with their current values
+     */
+    @Exclude
+    public Map<String, Object> getDirtyFields() {
+        return dirtyFields != null ? new HashMap<>(dirtyFields) : new HashMap<>();
+    }
+
+    protected void markDirty(String field, Object value) {
+        if (dirtyFields != null) {
+            dirtyFields.put(field, value);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package io.ipoli.android.app.persistence;
 
 import io.ipoli.android.quest.persistence.OnDataChangedListener;
+import io.ipoli.android.quest.persistence.OnListChangedListener;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
@@ -19,4 +20,6 @@ public interface PersistenceService<T extends PersistedObject> {
     void removeAllListeners();
 
     void removeDataChangedListener(OnDataChangedListener<?> listener);
+
+    void removeListChangedListener(OnListChangedListener<?> listener);
 }
@@ -0,0 +1,107 @@
+package io.ipoli.android.app.persistence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+
+/**
+ * Process-wide multiplexer of Firebase value listeners.
+ * <p>
+ * All subscribers of the same key share one underlying {@link ValueEventListener} and one
+ * decoded result. The listener is attached with the first subscriber and detached with the last one.
+ * Subscribers must treat the shared result as read-only and copy it before changing it.
+ */
+public class QueryListenerRegistry {
+
+    private final Map<String, SharedQuery<?>> queries;
+    private final Handler mainHandler;
+
+    public interface Decoder<R> {
+        R decode(DataSnapshot dataSnapshot);
+    }
+
+    public QueryListenerRegistry() {
+        this.queries = new HashMap<>();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> void subscribe(String key, Query query, Decoder<R> decoder, OnDataChangedListener<R> listener) {
+        SharedQuery<R> sharedQuery = (SharedQuery<R>) queries.get(key);
+        if (sharedQuery == null) {
+            sharedQuery = new SharedQuery<>(query, decoder);
+            queries.put(key, sharedQuery);
+            sharedQuery.subscribers.add(listener);
+            query.addValueEventListener(sharedQuery);
+            return;
+        }
+        sharedQuery.subscribers.add(listener);
+        if (sharedQuery.hasResult) {
+            // keep delivery asynchronous, like a freshly attached Firebase listener
+            SharedQuery<R> cachedQuery = sharedQuery;
+            mainHandler.post(() -> {
+                if (cachedQuery.subscribers.contains(listener)) {
+                    listener.onDataChanged(cachedQuery.result);
+                }
+            });
+        }
+    }
+
+    public void unsubscribe(String key, OnDataChangedListener<?> listener) {
+        SharedQuery<?> sharedQuery = queries.get(key);
+        if (sharedQuery == null) {
+            return;
+        }
+        sharedQuery.subscribers.remove(listener);
+        if (sharedQuery.subscribers.isEmpty()) {
+            sharedQuery.query.removeEventListener(sharedQuery);
+            queries.remove(key);
+        }
+    }
+
+    public int getSubscriberCount(String key) {
+        SharedQuery<?> sharedQuery = queries.get(key);
+        return sharedQuery == null ? 0 : sharedQuery.subscribers.size();
+    }
+
+    private static class SharedQuery<R> implements ValueEventListener {
+
+        private final Query query;
+        private final Decoder<R> decoder;
+        private final List<OnDataChangedListener<R>> subscribers;
+        private R result;
+        private boolean hasResult;
+
+        SharedQuery(Query query, Decoder<R> decoder) {
+            this.query = query;
+            this.decoder = decoder;
+            this.subscribers = new ArrayList<>();
+            this.hasResult = false;
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            result = decoder.decode(dataSnapshot);
+            hasResult = true;
+            for (OnDataChangedListener<R> subscriber : new ArrayList<>(subscribers)) {
+                subscriber.onDataChanged(result);
+            }
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+
+        }
+    }
+}
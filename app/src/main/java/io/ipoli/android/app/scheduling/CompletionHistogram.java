@@ -0,0 +1,83 @@
+package io.ipoli.android.app.scheduling;
+
+/**
+ * Exponentially decayed histogram of the minutes of the day at which quests were completed.
+ * Instead of decaying every bin each day, newer completions are added with a weight that grows
+ * by {@link #HALF_LIFE_DAYS}, so recording a completion touches a single bin.
+ */
+public class CompletionHistogram {
+
+    public static final int BIN_MINUTES = 15;
+    public static final int BIN_COUNT = 24 * 60 / BIN_MINUTES;
+    public static final int HALF_LIFE_DAYS = 28;
+
+    private static final double RESCALE_WEIGHT = 1e6;
+
+    private float[] bins;
+    private double totalWeight;
+    private int referenceDay;
+
+    public CompletionHistogram() {
+        bins = new float[BIN_COUNT];
+    }
+
+    /**
+     * @param day days since the epoch, completions of earlier days weigh less
+     */
+    public void add(int minute, int day) {
+        if (totalWeight == 0) {
+            referenceDay = day;
+        }
+        double weight = weightAt(day);
+        if (weight > RESCALE_WEIGHT) {
+            rescaleTo(day);
+            weight = 1;
+        }
+        int bin = Math.min(BIN_COUNT - 1, Math.max(0, minute / BIN_MINUTES));
+        bins[bin] += weight;
+        totalWeight += weight;
+    }
+
+    /**
+     * @return the number of completions, each counted with its decayed weight at day
+     */
+    public double getCount(int day) {
+        return totalWeight / weightAt(day);
+    }
+
+    /**
+     * Weights for every minute of the day with a mean of 1. The observed completion times
+     * are blended with a uniform prior of priorCount completions, so a few completions
+     * only nudge the posterior while a long history dominates it.
+     */
+    public double[] createMinuteWeights(int day, double priorCount) {
+        double count = getCount(day);
+        double confidence = count / (count + priorCount);
+        double[] minuteWeights = new double[BIN_COUNT * BIN_MINUTES];
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            double smoothed = (bins[(bin + BIN_COUNT - 1) % BIN_COUNT] + 2 * bins[bin] + bins[(bin + 1) % BIN_COUNT]) / 4;
+            double weight = (1 - confidence) + confidence * BIN_COUNT * smoothed / totalWeight;
+            for (int minute = bin * BIN_MINUTES; minute < (bin + 1) * BIN_MINUTES; minute++) {
+                minuteWeights[minute] = weight;
+            }
+        }
+        return minuteWeights;
+    }
+
+    public boolean isEmpty() {
+        return totalWeight == 0;
+    }
+
+    private double weightAt(int day) {
+        return Math.pow(2, (double) (day - referenceDay) / HALF_LIFE_DAYS);
+    }
+
+    private void rescaleTo(int day) {
+        double scale = 1 / weightAt(day);
+        for (int i = 0; i < BIN_COUNT; i++) {
+            bins[i] *= scale;
+        }
+        totalWeight *= scale;
+        referenceDay = day;
+    }
+}
@@ -0,0 +1,196 @@
+package io.ipoli.android.app.scheduling;
+
+import android.text.TextUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.squareup.otto.Subscribe;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.utils.LocalStorage;
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.events.QuestCompletedEvent;
+
+/**
+ * When quests actually get completed, per category and per quest name. Updated as quests
+ * are completed and kept in local storage, the quest history is never read again. Every
+ * histogram has a key of its own, so a completion writes only the two histograms it changed
+ * and the names in access order.
+ */
+public class CompletionHistory {
+
+    private static final int MAX_NAME_HISTOGRAMS = 100;
+    private static final int MIN_NAME_COMPLETIONS = 3;
+    private static final double PRIOR_COMPLETIONS = 10;
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+    /**
+     * Single key format of older versions, moved to a key per histogram on first load
+     */
+    private static class Histograms {
+        Map<String, CompletionHistogram> categories = new HashMap<>();
+        Map<String, CompletionHistogram> names = new HashMap<>();
+    }
+
+    private final LocalStorage localStorage;
+    private final Gson gson;
+    private final Map<String, CompletionHistogram> categoryHistograms;
+    private final Map<String, CompletionHistogram> nameHistograms;
+    private final Set<String> changedCategories = new HashSet<>();
+    private final Set<String> changedNames = new HashSet<>();
+    private final Set<String> evictedNames = new HashSet<>();
+    private int version;
+
+    public CompletionHistory(LocalStorage localStorage, Gson gson) {
+        this.localStorage = localStorage;
+        this.gson = gson;
+        categoryHistograms = new HashMap<>();
+        nameHistograms = new LinkedHashMap<String, CompletionHistogram>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletionHistogram> eldest) {
+                if (size() > MAX_NAME_HISTOGRAMS) {
+                    evictedNames.add(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        load();
+    }
+
+    @Subscribe
+    public void onQuestCompleted(QuestCompletedEvent e) {
+        Quest quest = e.quest;
+        if (quest.getCompletedAtMinute() == null || quest.getCompletedAtDate() == null) {
+            return;
+        }
+        add(quest, quest.getCompletedAtMinute(), new LocalDate(quest.getCompletedAtDate()));
+        save();
+    }
+
+    public synchronized void add(Quest quest, int completedAtMinute, LocalDate completedAt) {
+        int day = toDay(completedAt);
+        String category = quest.getCategoryType().name();
+        String name = toNameKey(quest);
+        getOrCreate(categoryHistograms, category).add(completedAtMinute, day);
+        getOrCreate(nameHistograms, name).add(completedAtMinute, day);
+        changedCategories.add(category);
+        changedNames.add(name);
+        evictedNames.remove(name);
+        version++;
+    }
+
+    /**
+     * @return per minute weights for the quest, from the completions of quests with the same name
+     * when there are enough of them, otherwise from the completions in its category, or null
+     * when nothing similar was completed yet
+     */
+    public synchronized double[] createMinuteWeights(Quest quest, LocalDate date) {
+        int day = toDay(date);
+        CompletionHistogram histogram = nameHistograms.get(toNameKey(quest));
+        if (histogram == null || histogram.getCount(day) < MIN_NAME_COMPLETIONS) {
+            histogram = categoryHistograms.get(quest.getCategoryType().name());
+        }
+        if (histogram == null || histogram.isEmpty()) {
+            return null;
+        }
+        return histogram.createMinuteWeights(day, PRIOR_COMPLETIONS);
+    }
+
+    /**
+     * Changes whenever a completion is recorded
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    private void load() {
+        String json = localStorage.readString(Constants.KEY_COMPLETION_HISTORY);
+        if (!TextUtils.isEmpty(json)) {
+            Histograms histograms = gson.fromJson(json, Histograms.class);
+            categoryHistograms.putAll(histograms.categories);
+            nameHistograms.putAll(histograms.names);
+            changedCategories.addAll(categoryHistograms.keySet());
+            changedNames.addAll(nameHistograms.keySet());
+            save();
+            localStorage.remove(Constants.KEY_COMPLETION_HISTORY);
+            return;
+        }
+
+        for (Category category : Category.values()) {
+            CompletionHistogram histogram = readHistogram(Constants.KEY_COMPLETION_HISTORY_CATEGORY_PREFIX + category.name());
+            if (histogram != null) {
+                categoryHistograms.put(category.name(), histogram);
+            }
+        }
+        // least recently used first, so putting them in order restores the access order
+        for (String name : readNames()) {
+            CompletionHistogram histogram = readHistogram(Constants.KEY_COMPLETION_HISTORY_NAME_PREFIX + name);
+            if (histogram != null) {
+                nameHistograms.put(name, histogram);
+            }
+        }
+    }
+
+    private synchronized void save() {
+        for (String category : changedCategories) {
+            localStorage.saveString(Constants.KEY_COMPLETION_HISTORY_CATEGORY_PREFIX + category, gson.toJson(categoryHistograms.get(category)));
+        }
+        for (String name : changedNames) {
+            if (nameHistograms.containsKey(name)) {
+                localStorage.saveString(Constants.KEY_COMPLETION_HISTORY_NAME_PREFIX + name, gson.toJson(nameHistograms.get(name)));
+            }
+        }
+        for (String name : evictedNames) {
+            localStorage.remove(Constants.KEY_COMPLETION_HISTORY_NAME_PREFIX + name);
+        }
+        localStorage.saveString(Constants.KEY_COMPLETION_HISTORY_NAMES, gson.toJson(new ArrayList<>(nameHistograms.keySet())));
+        changedCategories.clear();
+        changedNames.clear();
+        evictedNames.clear();
+    }
+
+    private CompletionHistogram readHistogram(String key) {
+        String json = localStorage.readString(key);
+        return TextUtils.isEmpty(json) ? null : gson.fromJson(json, CompletionHistogram.class);
+    }
+
+    private List<String> readNames() {
+        String json = localStorage.readString(Constants.KEY_COMPLETION_HISTORY_NAMES);
+        if (TextUtils.isEmpty(json)) {
+            return new ArrayList<>();
+        }
+        return gson.fromJson(json, new TypeToken<List<String>>() {
+        }.getType());
+    }
+
+    private CompletionHistogram getOrCreate(Map<String, CompletionHistogram> histograms, String key) {
+        CompletionHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new CompletionHistogram();
+            histograms.put(key, histogram);
+        }
+        return histogram;
+    }
+
+    private static String toNameKey(Quest quest) {
+        return quest.getName().trim().toLowerCase(Locale.getDefault());
+    }
+
+    private static int toDay(LocalDate date) {
+        return Days.daysBetween(EPOCH, date).getDays();
+    }
+}
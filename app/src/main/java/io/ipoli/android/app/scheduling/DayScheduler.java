@@ -0,0 +1,196 @@
+package io.ipoli.android.app.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proposes slots for all unscheduled tasks of a day in one pass. Candidate slots are ranked once
+ * per task, tasks with the fewest candidates are placed first and, while the time budget lasts,
+ * a task that found no free slot may move one already placed task to another of its candidates.
+ * The slots of every request are ranked with their own stream split from the random by the
+ * request key, so ranking one request never changes the ranking of another and a request keeps
+ * its ranking when other requests are added, removed or reordered.
+ * Runs on the calling thread and stops early when the thread is interrupted.
+ */
+public class DayScheduler<T> {
+
+    public static class Request<T> {
+        private final T item;
+        private final String key;
+        private final int duration;
+        private final DiscreteDistribution posterior;
+
+        /**
+         * @param key stable id of the item, unique among the requests of a day
+         */
+        public Request(T item, String key, int duration, DiscreteDistribution posterior) {
+            this.item = item;
+            this.key = key;
+            this.duration = duration;
+            this.posterior = posterior;
+        }
+
+        public T getItem() {
+            return item;
+        }
+    }
+
+    public static class Proposal<T> {
+        private final T item;
+        private final TimeBlock slot;
+        private final List<TimeBlock> alternatives;
+
+        Proposal(T item, TimeBlock slot, List<TimeBlock> alternatives) {
+            this.item = item;
+            this.slot = slot;
+            this.alternatives = alternatives;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public TimeBlock getSlot() {
+            return slot;
+        }
+
+        public List<TimeBlock> getAlternatives() {
+            return alternatives;
+        }
+    }
+
+    private static class Placement<T> {
+        final Request<T> request;
+        final List<TimeBlock> candidates;
+        TimeBlock slot;
+
+        Placement(Request<T> request, List<TimeBlock> candidates) {
+            this.request = request;
+            this.candidates = candidates;
+        }
+
+        boolean overlaps(TimeBlock other) {
+            return slot != null && slot.getStartMinute() < other.getEndMinute()
+                    && other.getStartMinute() < slot.getEndMinute();
+        }
+    }
+
+    private final ProbabilisticTaskScheduler taskScheduler;
+    private final int minTimeInterval;
+    private final SchedulingRandom random;
+
+    public DayScheduler(int startHour, int endHour, List<Task> scheduledTasks, int minTimeInterval, SchedulingRandom random) {
+        this.taskScheduler = new ProbabilisticTaskScheduler(startHour, endHour, scheduledTasks, random);
+        this.minTimeInterval = minTimeInterval;
+        this.random = random;
+    }
+
+    /**
+     * @return proposals in the order of the requests, without the requests that did not fit
+     */
+    public List<Proposal<T>> schedule(List<Request<T>> requests, long timeBudgetMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+
+        List<Placement<T>> placements = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (isCancelled()) {
+                return new ArrayList<>();
+            }
+            Request<T> request = requests.get(i);
+            placements.add(new Placement<>(request, taskScheduler.chooseSlotsFor(new Task(request.duration),
+                    minTimeInterval, request.posterior, random.split(request.key))));
+        }
+
+        List<Placement<T>> mostConstrainedFirst = new ArrayList<>(placements);
+        Collections.sort(mostConstrainedFirst, (p1, p2) -> Integer.compare(p1.candidates.size(), p2.candidates.size()));
+
+        FreeTimeModel freeTime = taskScheduler.getFreeTimeModel();
+        List<Placement<T>> unplaced = new ArrayList<>();
+        for (Placement<T> placement : mostConstrainedFirst) {
+            if (!place(placement, freeTime)) {
+                unplaced.add(placement);
+            }
+        }
+
+        for (Placement<T> placement : unplaced) {
+            if (isCancelled() || System.nanoTime() > deadline) {
+                break;
+            }
+            repair(placement, placements, freeTime);
+        }
+
+        List<Proposal<T>> proposals = new ArrayList<>();
+        for (Placement<T> placement : placements) {
+            if (placement.slot != null) {
+                List<TimeBlock> alternatives = new ArrayList<>(placement.candidates);
+                alternatives.remove(placement.slot);
+                proposals.add(new Proposal<>(placement.request.item, placement.slot, alternatives));
+            }
+        }
+        return proposals;
+    }
+
+    private boolean place(Placement<T> placement, FreeTimeModel freeTime) {
+        int duration = placement.request.duration;
+        for (TimeBlock candidate : placement.candidates) {
+            if (freeTime.isFree(candidate.getStartMinute(), candidate.getStartMinute() + duration)) {
+                placement.slot = candidate;
+                freeTime.add(candidate.getStartMinute(), duration);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries the candidates of the unplaced task that are blocked by a single placed task,
+     * which is moved when it has another free candidate
+     */
+    private void repair(Placement<T> unplaced, List<Placement<T>> placements, FreeTimeModel freeTime) {
+        int duration = unplaced.request.duration;
+        for (TimeBlock candidate : unplaced.candidates) {
+            Placement<T> blocker = findSingleBlocker(candidate, placements);
+            if (blocker == null) {
+                continue;
+            }
+            TimeBlock blockerSlot = blocker.slot;
+            freeTime.remove(blockerSlot.getStartMinute(), blocker.request.duration);
+            if (!freeTime.isFree(candidate.getStartMinute(), candidate.getStartMinute() + duration)) {
+                freeTime.add(blockerSlot.getStartMinute(), blocker.request.duration);
+                continue;
+            }
+            freeTime.add(candidate.getStartMinute(), duration);
+            blocker.slot = null;
+            List<TimeBlock> blockerCandidates = new ArrayList<>(blocker.candidates);
+            blockerCandidates.remove(blockerSlot);
+            Placement<T> moved = new Placement<>(blocker.request, blockerCandidates);
+            if (place(moved, freeTime)) {
+                blocker.slot = moved.slot;
+                unplaced.slot = candidate;
+                return;
+            }
+            freeTime.remove(candidate.getStartMinute(), duration);
+            freeTime.add(blockerSlot.getStartMinute(), blocker.request.duration);
+            blocker.slot = blockerSlot;
+        }
+    }
+
+    private Placement<T> findSingleBlocker(TimeBlock candidate, List<Placement<T>> placements) {
+        Placement<T> blocker = null;
+        for (Placement<T> placement : placements) {
+            if (placement.overlaps(candidate)) {
+                if (blocker != null) {
+                    return null;
+                }
+                blocker = placement;
+            }
+        }
+        return blocker;
+    }
+
+    private boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,44 @@
+package io.ipoli.android.app.scheduling;
+
+import org.joda.time.LocalDate;
+
+import java.util.HashSet;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.utils.LocalStorage;
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Settings, random streams and request keys shared by everything that schedules a day, so the
+ * day view and {@link SchedulingService} propose the same slots for the same day
+ */
+public class DaySchedulingSupport {
+
+    public static PosteriorEstimator.PosteriorSettings createPosteriorSettings(LocalStorage localStorage) {
+        return PosteriorEstimator.PosteriorSettings.create()
+                .setWorkDays(localStorage.readIntSet(Constants.KEY_AVATAR_WORK_DAYS, new HashSet<>(Constants.DEFAULT_PLAYER_WORK_DAYS)))
+                .setSleepStartMinute(localStorage.readInt(Constants.KEY_AVATAR_SLEEP_START_MINUTE, Constants.DEFAULT_PLAYER_SLEEP_START_MINUTE))
+                .setSleepEndMinute(localStorage.readInt(Constants.KEY_AVATAR_SLEEP_END_MINUTE, Constants.DEFAULT_PLAYER_SLEEP_END_MINUTE))
+                .setWorkStartMinute(localStorage.readInt(Constants.KEY_AVATAR_WORK_START_MINUTE, Constants.DEFAULT_PLAYER_WORK_START_MINUTE))
+                .setWorkEndMinute(localStorage.readInt(Constants.KEY_AVATAR_WORK_END_MINUTE, Constants.DEFAULT_PLAYER_WORK_END_MINUTE))
+                .setMostProductiveTimesOfDay(localStorage.readStringSet(Constants.KEY_AVATAR_MOST_PRODUCTIVE_TIMES, Constants.DEFAULT_PLAYER_PRODUCTIVE_TIME_NAMES));
+    }
+
+    /**
+     * Days are split by date from a single seed, so a day gets the same random streams
+     * whenever it is scheduled
+     */
+    public static SchedulingRandom createDayRandom(LocalDate date) {
+        return new SchedulingRandom(Constants.RANDOM_SEED).split(date.toString());
+    }
+
+    /**
+     * Placeholder quests are not saved yet, so they are keyed by their repeating quest
+     */
+    public static String createRequestKey(Quest quest) {
+        if (quest.getId() != null) {
+            return quest.getId();
+        }
+        return quest.getRepeatingQuestId() != null ? quest.getRepeatingQuestId() : quest.getName();
+    }
+}
@@ -1,30 +1,28 @@
 package io.ipoli.android.app.scheduling;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
+/**
+ * Discrete distribution over the indices of its values. Probabilities are kept in a single
+ * primitive array, the alias table used for sampling is built only on the first {@link #sample()}.
+ */
 public class DiscreteDistribution {
 
-    private final WeightedRandomSampler<Integer> randomSampler;
-    private final List<Double> frequencies;
+    private final double[] frequencies;
     private final Random random;
 
+    private double[] aliasProbabilities;
+    private volatile int[] aliases;
+
     public DiscreteDistribution(double[] values, Random random) {
         this.random = random;
-
-        frequencies = new ArrayList<>();
         double total = 0;
         for (double value : values) {
             total += value;
         }
-        for (double value : values) {
-            frequencies.add((value / total));
-        }
-
-        randomSampler = new WeightedRandomSampler<>(random);
+        frequencies = new double[values.length];
         for (int i = 0; i < values.length; i++) {
-            randomSampler.add(i, values[i]);
+            frequencies[i] = values[i] / total;
         }
     }
 
@@ -32,27 +30,117 @@ public class DiscreteDistribution {
         this(values, new Random());
     }
 
+    /**
+     * Takes ownership of the already computed values, used by joint and add to skip a copy
+     */
+    private DiscreteDistribution(Random random, double[] values) {
+        this.random = random;
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i] / total;
+        }
+        this.frequencies = values;
+    }
+
     public int sample() {
-        return randomSampler.sample();
+        if (aliases == null) {
+            buildAliasTable();
+        }
+        double value = random.nextDouble() * frequencies.length;
+        int column = Math.min((int) value, frequencies.length - 1);
+        return value - column < aliasProbabilities[column] ? column : aliases[column];
     }
 
     public double at(int position) {
-        return frequencies.get(position);
+        return frequencies[position];
+    }
+
+    public int size() {
+        return frequencies.length;
     }
 
     public DiscreteDistribution joint(DiscreteDistribution distribution) {
-        double[] values = new double[distribution.frequencies.size()];
+        double[] values = new double[distribution.frequencies.length];
         for (int i = 0; i < values.length; i++) {
-            values[i] = at(i) * distribution.at(i);
+            values[i] = frequencies[i] * distribution.frequencies[i];
         }
-        return new DiscreteDistribution(values, random);
+        return new DiscreteDistribution(random, values);
     }
 
     public DiscreteDistribution add(DiscreteDistribution distribution) {
-        double[] values = new double[distribution.frequencies.size()];
+        double[] values = new double[distribution.frequencies.length];
         for (int i = 0; i < values.length; i++) {
-            values[i] = at(i) + distribution.at(i);
+            values[i] = frequencies[i] + distribution.frequencies[i];
+        }
+        return new DiscreteDistribution(random, values);
+    }
+
+    /**
+     * Vose's alias method. Values with zero probability always alias to one with a positive
+     * probability, so rounding can never make them samplable.
+     */
+    private synchronized void buildAliasTable() {
+        if (aliases != null) {
+            return;
+        }
+        int n = frequencies.length;
+        double[] probabilities = new double[n];
+        int[] aliasTable = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        int mostLikely = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (frequencies[i] > frequencies[mostLikely]) {
+                mostLikely = i;
+            }
+            scaled[i] = frequencies[i] * n;
+            if (scaled[i] >= 1) {
+                large[largeCount++] = i;
+            } else if (scaled[i] > 0) {
+                small[smallCount++] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (!(scaled[i] > 0)) {
+                small[smallCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = scaled[less] > 0 ? scaled[less] : 0;
+            aliasTable[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
         }
-        return new DiscreteDistribution(values, random);
+        while (largeCount > 0) {
+            int more = large[--largeCount];
+            probabilities[more] = 1;
+            aliasTable[more] = more;
+        }
+        while (smallCount > 0) {
+            int less = small[--smallCount];
+            if (scaled[less] > 0) {
+                probabilities[less] = 1;
+                aliasTable[less] = less;
+            } else {
+                aliasTable[less] = mostLikely;
+            }
+        }
+
+        aliasProbabilities = probabilities;
+        aliases = aliasTable;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package io.ipoli.android.app.scheduling;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Minute resolution occupancy of a day. A minute stays busy while at least one task covers it,
+ * so overlapping tasks can be added and removed independently.
+ */
+public class FreeTimeModel {
+
+    public static final int MINUTES_IN_DAY = 24 * 60;
+
+    private final int startMinute;
+    private final int endMinute;
+    private final BitSet busyMinutes = new BitSet(MINUTES_IN_DAY);
+    private final short[] taskCounts = new short[MINUTES_IN_DAY];
+
+    /**
+     * @param endMinute exclusive
+     */
+    public FreeTimeModel(int startMinute, int endMinute) {
+        this.startMinute = Math.max(0, startMinute);
+        this.endMinute = Math.min(MINUTES_IN_DAY, endMinute);
+    }
+
+    public FreeTimeModel copy() {
+        FreeTimeModel copy = new FreeTimeModel(startMinute, endMinute);
+        copy.busyMinutes.or(busyMinutes);
+        System.arraycopy(taskCounts, 0, copy.taskCounts, 0, taskCounts.length);
+        return copy;
+    }
+
+    public void add(int startMinute, int duration) {
+        int from = Math.max(this.startMinute, startMinute);
+        int to = Math.min(endMinute, startMinute + duration);
+        for (int i = from; i < to; i++) {
+            taskCounts[i]++;
+        }
+        if (from < to) {
+            busyMinutes.set(from, to);
+        }
+    }
+
+    public void remove(int startMinute, int duration) {
+        int from = Math.max(this.startMinute, startMinute);
+        int to = Math.min(endMinute, startMinute + duration);
+        for (int i = from; i < to; i++) {
+            if (taskCounts[i] > 0) {
+                taskCounts[i]--;
+            }
+            if (taskCounts[i] == 0) {
+                busyMinutes.clear(i);
+            }
+        }
+    }
+
+    public void add(Task task) {
+        add(task.getStartMinute(), task.getDuration());
+    }
+
+    public void remove(Task task) {
+        remove(task.getStartMinute(), task.getDuration());
+    }
+
+    public boolean isFree(int startMinute, int endMinute) {
+        if (startMinute < this.startMinute || endMinute > this.endMinute) {
+            return false;
+        }
+        int nextBusy = busyMinutes.nextSetBit(startMinute);
+        return nextBusy < 0 || nextBusy >= endMinute;
+    }
+
+    /**
+     * Free runs of at least minDuration minutes, in order. A block ends at the minute
+     * the next task starts.
+     */
+    public List<TimeBlock> getFreeBlocks(int minDuration) {
+        List<TimeBlock> freeBlocks = new ArrayList<>();
+        int start = busyMinutes.nextClearBit(startMinute);
+        while (start < endMinute) {
+            int end = busyMinutes.nextSetBit(start);
+            if (end < 0 || end > endMinute) {
+                end = endMinute;
+            }
+            if (end - start >= minDuration) {
+                freeBlocks.add(new TimeBlock(start, end));
+            }
+            start = busyMinutes.nextClearBit(end);
+        }
+        return freeBlocks;
+    }
+}
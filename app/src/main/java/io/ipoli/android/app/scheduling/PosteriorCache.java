@@ -0,0 +1,65 @@
+package io.ipoli.android.app.scheduling;
+
+import com.squareup.otto.Subscribe;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.ipoli.android.app.settings.events.MostProductiveTimesChangedEvent;
+import io.ipoli.android.app.settings.events.SleepHoursChangedEvent;
+import io.ipoli.android.app.settings.events.WorkDaysChangedEvent;
+import io.ipoli.android.app.settings.events.WorkHoursChangedEvent;
+
+/**
+ * Keeps the distributions built by {@link PosteriorEstimator} for the current
+ * {@link PosteriorEstimator.PosteriorSettings}, so scheduling a day reuses a handful of them instead of
+ * rebuilding a new one per quest. Distributions are immutable and only read through
+ * {@link DiscreteDistribution#at(int)} while scheduling, which makes them safe to share.
+ */
+public class PosteriorCache {
+
+    public interface Factory {
+        DiscreteDistribution create();
+    }
+
+    private final Map<String, DiscreteDistribution> distributions = new HashMap<>();
+    private PosteriorEstimator.PosteriorSettings settings;
+
+    public synchronized DiscreteDistribution get(PosteriorEstimator.PosteriorSettings settings, String key, Factory factory) {
+        if (!settings.equals(this.settings)) {
+            distributions.clear();
+            this.settings = settings;
+        }
+        DiscreteDistribution distribution = distributions.get(key);
+        if (distribution == null) {
+            distribution = factory.create();
+            distributions.put(key, distribution);
+        }
+        return distribution;
+    }
+
+    public synchronized void invalidate() {
+        distributions.clear();
+        settings = null;
+    }
+
+    @Subscribe
+    public void onSleepHoursChanged(SleepHoursChangedEvent e) {
+        invalidate();
+    }
+
+    @Subscribe
+    public void onWorkHoursChanged(WorkHoursChangedEvent e) {
+        invalidate();
+    }
+
+    @Subscribe
+    public void onWorkDaysChanged(WorkDaysChangedEvent e) {
+        invalidate();
+    }
+
+    @Subscribe
+    public void onMostProductiveTimesChanged(MostProductiveTimesChangedEvent e) {
+        invalidate();
+    }
+}
@@ -5,6 +5,8 @@ import android.support.annotation.NonNull;
 import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -29,15 +31,31 @@ public class PosteriorEstimator {
     private final PosteriorSettings posteriorSettings;
     private final LocalDate currentDate;
     private final Random random;
+    private final PosteriorCache posteriorCache;
+    private final CompletionHistory completionHistory;
 
-    public PosteriorEstimator(PosteriorSettings posteriorSettings, LocalDate currentDate, Random random) {
+    public PosteriorEstimator(PosteriorSettings posteriorSettings, LocalDate currentDate, Random random, PosteriorCache posteriorCache, CompletionHistory completionHistory) {
         this.posteriorSettings = posteriorSettings;
         this.currentDate = currentDate;
         this.random = random;
+        this.posteriorCache = posteriorCache;
+        this.completionHistory = completionHistory;
+    }
+
+    public PosteriorEstimator(PosteriorSettings posteriorSettings, LocalDate currentDate, Random random, PosteriorCache posteriorCache) {
+        this(posteriorSettings, currentDate, random, posteriorCache, null);
+    }
+
+    public PosteriorEstimator(PosteriorSettings posteriorSettings, LocalDate currentDate, Random random) {
+        this(posteriorSettings, currentDate, random, new PosteriorCache());
+    }
+
+    private DiscreteDistribution getCached(String key, PosteriorCache.Factory factory) {
+        return posteriorCache.get(posteriorSettings, key, factory);
     }
 
     @NonNull
-    private DiscreteDistribution getSleepDistribution() {
+    private DiscreteDistribution createSleepDistribution() {
         double[] values = createEmptyWholeDayValues();
 
         int sleepStartMinute = posteriorSettings.getSleepStartMinute();
@@ -94,15 +112,28 @@ public class PosteriorEstimator {
     }
 
     public DiscreteDistribution posteriorFor(Quest quest) {
+        Category category = quest.getCategoryType();
+        boolean isWorkDay = isWorkDay(currentDate, posteriorSettings.getWorkDays());
+        DiscreteDistribution posterior = getCached("posterior_" + category.name() + "_" + isWorkDay, () -> createPosterior(category, isWorkDay));
+        if (completionHistory == null) {
+            return posterior;
+        }
+        double[] completionWeights = completionHistory.createMinuteWeights(quest, currentDate);
+        if (completionWeights == null) {
+            return posterior;
+        }
+        return posterior.joint(new DiscreteDistribution(completionWeights, random));
+    }
 
-        DiscreteDistribution posterior = getSleepDistribution();
+    private DiscreteDistribution createPosterior(Category category, boolean isWorkDay) {
 
-        DiscreteDistribution workDistribution = getWorkDistribution(posteriorSettings.getWorkStartMinute(), posteriorSettings.getWorkEndMinute());
-        DiscreteDistribution inverseWorkDistribution = inverseUniformDistribution(workDistribution);
+        DiscreteDistribution posterior = getCached("sleep", this::createSleepDistribution);
 
-        Category category = quest.getCategoryType();
+        DiscreteDistribution workDistribution = getCached("work", () ->
+                getWorkDistribution(posteriorSettings.getWorkStartMinute(), posteriorSettings.getWorkEndMinute()));
+        DiscreteDistribution inverseWorkDistribution = getCached("inverse_work", () -> inverseUniformDistribution(workDistribution));
 
-        if (category == Category.WORK && isWorkDay(currentDate, posteriorSettings.getWorkDays())) {
+        if (category == Category.WORK && isWorkDay) {
             // schedule work tasks only during work days & hours
             posterior = workDistribution;
         }
@@ -110,22 +141,22 @@ public class PosteriorEstimator {
         List<TimeOfDay> productiveTimesOfDay = posteriorSettings.getMostProductiveTimesOfDayList();
         if (!productiveTimesOfDay.contains(TimeOfDay.ANY_TIME) && (category == Category.WORK || category == Category.LEARNING)) {
             if (productiveTimesOfDay.contains(TimeOfDay.MORNING)) {
-                posterior = posterior.joint(createMorningProductiveDistribution());
+                posterior = posterior.joint(getCached("morning_productive", this::createMorningProductiveDistribution));
             }
             if (productiveTimesOfDay.contains(TimeOfDay.AFTERNOON)) {
-                posterior = posterior.joint(createAfternoonProductiveDistribution());
+                posterior = posterior.joint(getCached("afternoon_productive", this::createAfternoonProductiveDistribution));
             }
             if (productiveTimesOfDay.contains(TimeOfDay.EVENING)) {
-                posterior = posterior.joint(createEveningProductiveDistribution());
+                posterior = posterior.joint(getCached("evening_productive", this::createEveningProductiveDistribution));
             }
         }
 
         if (category == Category.FUN) {
-            posterior = posterior.joint(createFunDistribution());
+            posterior = posterior.joint(getCached("fun", this::createFunDistribution));
         }
 
         if ((category == Category.LEARNING || category == Category.WELLNESS || category == Category.PERSONAL || category == Category.CHORES)
-                && isWorkDay(currentDate, posteriorSettings.getWorkDays())) {
+                && isWorkDay) {
             posterior = posterior.joint(inverseWorkDistribution);
         }
 
@@ -262,6 +293,37 @@ public class PosteriorEstimator {
             return this;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PosteriorSettings that = (PosteriorSettings) o;
+            return toSet(mostProductiveTimesOfDay).equals(toSet(that.mostProductiveTimesOfDay))
+                    && toSet(workDays).equals(toSet(that.workDays))
+                    && equal(workStartMinute, that.workStartMinute)
+                    && equal(workEndMinute, that.workEndMinute)
+                    && equal(sleepStartMinute, that.sleepStartMinute)
+                    && equal(sleepEndMinute, that.sleepEndMinute);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{toSet(mostProductiveTimesOfDay), toSet(workDays),
+                    workStartMinute, workEndMinute, sleepStartMinute, sleepEndMinute});
+        }
+
+        private static <T> Set<T> toSet(List<T> values) {
+            return values == null ? new HashSet<>() : new HashSet<>(values);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
         public List<TimeOfDay> getMostProductiveTimesOfDayList() {
             List<TimeOfDay> timesOfDay = new ArrayList<>();
             if(mostProductiveTimesOfDay == null) {
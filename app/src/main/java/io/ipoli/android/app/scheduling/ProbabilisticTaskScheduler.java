@@ -3,6 +3,7 @@ package io.ipoli.android.app.scheduling;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -20,31 +21,48 @@ public class ProbabilisticTaskScheduler extends TaskScheduler {
     }
 
     public List<TimeBlock> chooseSlotsFor(Task task, int minTimeInterval, DiscreteDistribution posterior) {
+        return chooseSlotsFor(task, minTimeInterval, posterior, random);
+    }
+
+    /**
+     * Ranks the slots with the given random instead of the shared one, so tasks can be
+     * ranked independently of each other
+     */
+    public List<TimeBlock> chooseSlotsFor(Task task, int minTimeInterval, DiscreteDistribution posterior, Random random) {
         List<TimeBlock> availableSlots = getAvailableSlotsFor(task, minTimeInterval);
         List<TimeBlock> slotsToConsider = filterPossibleSlots(posterior, availableSlots);
-        return rankSlots(slotsToConsider);
+        return rankSlots(slotsToConsider, random);
     }
 
+    /**
+     * Efraimidis-Spirakis weighted random ordering: sorting by u^(1 / probability), compared here
+     * as log(u) / probability, gives the same order distribution as drawing the slots one by one
+     * without replacement, in a single sort.
+     */
     @NonNull
-    private List<TimeBlock> rankSlots(List<TimeBlock> slotsToConsider) {
-        List<TimeBlock> result = new ArrayList<>();
-        for (int i = 0; i < slotsToConsider.size(); i++) {
-            WeightedRandomSampler<TimeBlock> sampler = new WeightedRandomSampler<>(random);
-            for (TimeBlock slot : slotsToConsider) {
-                sampler.add(slot, slot.getProbability());
-            }
-            TimeBlock timeBlock = sampler.sample();
-            result.add(timeBlock);
-            slotsToConsider.remove(timeBlock);
+    private List<TimeBlock> rankSlots(List<TimeBlock> slotsToConsider, Random random) {
+        int slotCount = slotsToConsider.size();
+        double[] keys = new double[slotCount];
+        Integer[] order = new Integer[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            keys[i] = Math.log(random.nextDouble()) / slotsToConsider.get(i).getProbability();
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Double.compare(keys[i2], keys[i1]));
+
+        List<TimeBlock> result = new ArrayList<>(slotCount);
+        for (int index : order) {
+            result.add(slotsToConsider.get(index));
         }
         return result;
     }
 
     @NonNull
     private List<TimeBlock> filterPossibleSlots(DiscreteDistribution posterior, List<TimeBlock> slots) {
+        SlotProbabilities slotProbabilities = new SlotProbabilities(posterior);
         List<TimeBlock> slotsToConsider = new ArrayList<>();
         for (TimeBlock slot : slots) {
-            double slotProb = findSlotProbabilityDistribution(posterior, slot);
+            double slotProb = slotProbabilities.of(slot);
             slot.setProbability(slotProb);
             if (slotProb > 0) {
                 slotsToConsider.add(slot);
@@ -54,17 +72,39 @@ public class ProbabilisticTaskScheduler extends TaskScheduler {
     }
 
     /**
-     * If slot probability is not defined at any value - the total probability of the slot is 0
+     * Prefix sums of the posterior and of the minutes where it is not positive,
+     * so every slot is scored in constant time
      */
-    private double findSlotProbabilityDistribution(DiscreteDistribution posterior, TimeBlock slot) {
-        double slotProb = 0.0;
-        for (int i = slot.getStartMinute(); i <= slot.getEndMinute(); i++) {
-            double prob = posterior.at(i);
-            if (!(prob > 0)) {
+    private static class SlotProbabilities {
+
+        private final double[] probabilitySums;
+        private final int[] impossibleMinuteCounts;
+
+        SlotProbabilities(DiscreteDistribution posterior) {
+            int size = posterior.size();
+            probabilitySums = new double[size + 1];
+            impossibleMinuteCounts = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                double prob = posterior.at(i);
+                boolean isPossible = prob > 0;
+                probabilitySums[i + 1] = probabilitySums[i] + (isPossible ? prob : 0);
+                impossibleMinuteCounts[i + 1] = impossibleMinuteCounts[i] + (isPossible ? 0 : 1);
+            }
+        }
+
+        /**
+         * If slot probability is not defined at any value - the total probability of the slot is 0
+         */
+        double of(TimeBlock slot) {
+            int start = slot.getStartMinute();
+            int end = slot.getEndMinute() + 1;
+            if (start < 0 || end >= probabilitySums.length) {
+                return 0;
+            }
+            if (impossibleMinuteCounts[end] - impossibleMinuteCounts[start] > 0) {
                 return 0;
             }
-            slotProb += prob;
+            return probabilitySums[end] - probabilitySums[start];
         }
-        return slotProb;
     }
 }
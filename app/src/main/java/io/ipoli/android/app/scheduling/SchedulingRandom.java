@@ -0,0 +1,79 @@
+package io.ipoli.android.app.scheduling;
+
+import java.util.Random;
+
+/**
+ * SplitMix64 generator that derives independent streams from a single seed. A stream split by
+ * key depends only on the seed and the key, never on what was drawn before, so work scheduled
+ * per quest, day or repeating quest gives the same results in any order and on any thread.
+ * Instances are not thread safe, give every thread its own stream instead.
+ */
+public class SchedulingRandom extends Random {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long seed;
+    private long state;
+
+    public SchedulingRandom(long seed) {
+        super(seed);
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    public SchedulingRandom split(String key) {
+        return split(hash(key));
+    }
+
+    public SchedulingRandom split(long key) {
+        return new SchedulingRandom(mix(seed + GOLDEN_GAMMA * mix(key + GOLDEN_GAMMA)));
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 64 bit FNV-1a, String.hashCode collides too easily for dates and quest ids
+     */
+    private static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
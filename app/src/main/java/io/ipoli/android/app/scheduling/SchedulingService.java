@@ -0,0 +1,273 @@
+package io.ipoli.android.app.scheduling;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.squareup.otto.Subscribe;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.settings.events.MostProductiveTimesChangedEvent;
+import io.ipoli.android.app.settings.events.SleepHoursChangedEvent;
+import io.ipoli.android.app.settings.events.WorkDaysChangedEvent;
+import io.ipoli.android.app.settings.events.WorkHoursChangedEvent;
+import io.ipoli.android.app.utils.LocalStorage;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+import io.ipoli.android.quest.persistence.QuestPersistenceService;
+
+/**
+ * Plans the unscheduled quests of the next {@link Constants#SCHEDULING_HORIZON_DAYS} days,
+ * offering the inbox quests to the days in order, on a single background thread. Days are
+ * delivered one by one as they are planned. A day is planned again only when its quests, the
+ * inbox quests still offered to it or the settings that apply to it change.
+ * <p>
+ * The service listens through a {@link QuestPersistenceService} of its own, so screens that
+ * call {@link QuestPersistenceService#removeAllListeners()} on theirs do not stop it.
+ */
+public class SchedulingService {
+
+    public interface Listener {
+        void onDayScheduled(LocalDate date, List<DayScheduler.Proposal<Quest>> proposals);
+    }
+
+    private static class DayPlan {
+        final int inputHash;
+        final List<DayScheduler.Proposal<Quest>> proposals;
+        final Set<String> scheduledInboxQuestIds;
+
+        DayPlan(int inputHash, List<DayScheduler.Proposal<Quest>> proposals, Set<String> scheduledInboxQuestIds) {
+            this.inputHash = inputHash;
+            this.proposals = proposals;
+            this.scheduledInboxQuestIds = scheduledInboxQuestIds;
+        }
+    }
+
+    private final QuestPersistenceService questPersistenceService;
+    private final LocalStorage localStorage;
+    private final PosteriorCache posteriorCache;
+    private final CompletionHistory completionHistory;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+
+    // only touched from the executor thread
+    private final Map<LocalDate, DayPlan> dayPlans = new HashMap<>();
+
+    private SortedMap<LocalDate, List<Quest>> plannedQuests = new TreeMap<>();
+    private List<Quest> inboxQuests = new ArrayList<>();
+    private LocalDate startDate;
+    private Listener listener;
+    private Future<?> planFuture;
+    private int planGeneration;
+    private boolean shouldDeliverAllDays;
+
+    private final OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> plannedQuestsListener = quests -> {
+        plannedQuests = quests;
+        plan();
+    };
+
+    private final OnDataChangedListener<List<Quest>> inboxQuestsListener = quests -> {
+        inboxQuests = quests;
+        plan();
+    };
+
+    public SchedulingService(QuestPersistenceService questPersistenceService, LocalStorage localStorage, PosteriorCache posteriorCache,
+                             CompletionHistory completionHistory) {
+        this.questPersistenceService = questPersistenceService;
+        this.localStorage = localStorage;
+        this.posteriorCache = posteriorCache;
+        this.completionHistory = completionHistory;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardOldestPolicy());
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public void start(Listener listener) {
+        stop();
+        this.listener = listener;
+        startDate = LocalDate.now();
+        shouldDeliverAllDays = true;
+        questPersistenceService.listenForPlannedNonAllDayBetween(startDate,
+                startDate.plusDays(Constants.SCHEDULING_HORIZON_DAYS - 1), plannedQuestsListener);
+        questPersistenceService.listenForInboxQuests(inboxQuestsListener);
+    }
+
+    public void stop() {
+        cancelPlan();
+        questPersistenceService.removeDataChangedListener(plannedQuestsListener);
+        questPersistenceService.removeDataChangedListener(inboxQuestsListener);
+        listener = null;
+    }
+
+    @Subscribe
+    public void onSleepHoursChanged(SleepHoursChangedEvent e) {
+        planAfterSettingsSaved();
+    }
+
+    @Subscribe
+    public void onWorkHoursChanged(WorkHoursChangedEvent e) {
+        planAfterSettingsSaved();
+    }
+
+    @Subscribe
+    public void onWorkDaysChanged(WorkDaysChangedEvent e) {
+        planAfterSettingsSaved();
+    }
+
+    @Subscribe
+    public void onMostProductiveTimesChanged(MostProductiveTimesChangedEvent e) {
+        planAfterSettingsSaved();
+    }
+
+    /**
+     * Settings are posted before they are written to local storage
+     */
+    private void planAfterSettingsSaved() {
+        mainHandler.post(this::plan);
+    }
+
+    private void plan() {
+        if (listener == null) {
+            return;
+        }
+        cancelPlan();
+        int generation = planGeneration;
+        Listener listener = this.listener;
+        LocalDate startDate = this.startDate;
+        SortedMap<LocalDate, List<Quest>> plannedQuests = new TreeMap<>(this.plannedQuests);
+        List<Quest> inboxQuests = new ArrayList<>(this.inboxQuests);
+        PosteriorEstimator.PosteriorSettings settings = DaySchedulingSupport.createPosteriorSettings(localStorage);
+        boolean deliverAllDays = shouldDeliverAllDays;
+        shouldDeliverAllDays = false;
+
+        planFuture = executor.submit(() -> {
+            Set<String> scheduledInboxQuestIds = new HashSet<>();
+            for (int i = 0; i < Constants.SCHEDULING_HORIZON_DAYS; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                LocalDate date = startDate.plusDays(i);
+                List<Quest> questsForDate = plannedQuests.containsKey(date) ? plannedQuests.get(date) : new ArrayList<>();
+                List<Quest> offeredInboxQuests = new ArrayList<>();
+                for (Quest quest : inboxQuests) {
+                    if (!scheduledInboxQuestIds.contains(quest.getId())) {
+                        offeredInboxQuests.add(quest);
+                    }
+                }
+
+                int inputHash = createInputHash(date, questsForDate, offeredInboxQuests, settings);
+                DayPlan dayPlan = dayPlans.get(date);
+                boolean isReplanned = dayPlan == null || dayPlan.inputHash != inputHash;
+                if (isReplanned) {
+                    dayPlan = planDay(date, inputHash, questsForDate, offeredInboxQuests, settings);
+                    if (Thread.currentThread().isInterrupted()) {
+                        // DayScheduler stops early when interrupted, so the plan may be partial
+                        return;
+                    }
+                    dayPlans.put(date, dayPlan);
+                }
+                scheduledInboxQuestIds.addAll(dayPlan.scheduledInboxQuestIds);
+
+                if (isReplanned || deliverAllDays) {
+                    List<DayScheduler.Proposal<Quest>> proposals = dayPlan.proposals;
+                    mainHandler.post(() -> {
+                        if (generation == planGeneration) {
+                            listener.onDayScheduled(date, proposals);
+                        }
+                    });
+                }
+            }
+            removePlansOutside(startDate, startDate.plusDays(Constants.SCHEDULING_HORIZON_DAYS - 1));
+        });
+    }
+
+    private DayPlan planDay(LocalDate date, int inputHash, List<Quest> questsForDate, List<Quest> inboxQuests, PosteriorEstimator.PosteriorSettings settings) {
+        SchedulingRandom dayRandom = DaySchedulingSupport.createDayRandom(date);
+        PosteriorEstimator posteriorEstimator = new PosteriorEstimator(settings, date, dayRandom.split("posterior"), posteriorCache, completionHistory);
+        List<Task> tasks = new ArrayList<>();
+        List<DayScheduler.Request<Quest>> requests = new ArrayList<>();
+        for (Quest quest : questsForDate) {
+            if (quest.getStartMinute() >= 0) {
+                tasks.add(new Task(quest.getStartMinute(), quest.getDuration()));
+            } else if (!quest.isCompleted() && !quest.shouldBeDoneMultipleTimesPerDay()) {
+                requests.add(new DayScheduler.Request<>(quest, DaySchedulingSupport.createRequestKey(quest), quest.getDuration(), posteriorEstimator.posteriorFor(quest)));
+            }
+        }
+        for (Quest quest : inboxQuests) {
+            requests.add(new DayScheduler.Request<>(quest, DaySchedulingSupport.createRequestKey(quest), quest.getDuration(), posteriorEstimator.posteriorFor(quest)));
+        }
+
+        DayScheduler<Quest> dayScheduler = new DayScheduler<>(0, 24, tasks, 15, dayRandom.split("slots"));
+        List<DayScheduler.Proposal<Quest>> proposals = dayScheduler.schedule(requests, Constants.DAY_SCHEDULING_TIME_BUDGET_MILLIS);
+
+        Set<String> scheduledInboxQuestIds = new HashSet<>();
+        for (DayScheduler.Proposal<Quest> proposal : proposals) {
+            if (proposal.getItem().getScheduled() == null) {
+                scheduledInboxQuestIds.add(proposal.getItem().getId());
+            }
+        }
+        return new DayPlan(inputHash, proposals, scheduledInboxQuestIds);
+    }
+
+    /**
+     * Only the settings that apply to the date are part of it, so changing the work days
+     * replans just the days that became or stopped being work days
+     */
+    private int createInputHash(LocalDate date, List<Quest> questsForDate, List<Quest> inboxQuests, PosteriorEstimator.PosteriorSettings settings) {
+        List<Object> input = new ArrayList<>();
+        input.add(completionHistory.getVersion());
+        input.add(settings.getWorkDays().contains(date.getDayOfWeek()));
+        input.add(settings.getSleepStartMinute());
+        input.add(settings.getSleepEndMinute());
+        input.add(settings.getWorkStartMinute());
+        input.add(settings.getWorkEndMinute());
+        input.add(new HashSet<>(settings.getMostProductiveTimesOfDayList()));
+        for (Quest quest : questsForDate) {
+            input.add(createQuestInput(quest));
+        }
+        for (Quest quest : inboxQuests) {
+            input.add(createQuestInput(quest));
+        }
+        return input.hashCode();
+    }
+
+    private List<Object> createQuestInput(Quest quest) {
+        return Arrays.asList(quest.getId(), quest.getStartMinute(), quest.getDuration(),
+                quest.getCategory(), quest.isCompleted(), quest.getTimesADay());
+    }
+
+    private void removePlansOutside(LocalDate startDate, LocalDate endDate) {
+        Iterator<LocalDate> dates = dayPlans.keySet().iterator();
+        while (dates.hasNext()) {
+            LocalDate date = dates.next();
+            if (date.isBefore(startDate) || date.isAfter(endDate)) {
+                dates.remove();
+            }
+        }
+    }
+
+    private void cancelPlan() {
+        planGeneration++;
+        if (planFuture != null) {
+            planFuture.cancel(true);
+            planFuture = null;
+        }
+    }
+}
@@ -1,20 +1,17 @@
 package io.ipoli.android.app.scheduling;
 
-import android.support.annotation.NonNull;
-
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
 
 public class TaskScheduler {
-    private final int startHour;
-    private final int endHour;
-    private final TreeSet<Task> tasks;
+    private final FreeTimeModel freeTimeModel;
 
     public TaskScheduler(int startHour, int endHour, List<Task> tasks) {
-        this.startHour = startHour;
-        this.endHour = endHour;
-        this.tasks = new TreeSet<>(tasks);
+        int endMinute = endHour > 1 ? (endHour - 1) * 60 : 60;
+        this.freeTimeModel = new FreeTimeModel(startHour * 60, endMinute);
+        for (Task task : tasks) {
+            freeTimeModel.add(task);
+        }
     }
 
     public TaskScheduler(int startHour, int endHour) {
@@ -22,38 +19,8 @@ public class TaskScheduler {
     }
 
     public List<TimeBlock> getFreeBlocksFor(Task task) {
-        List<TimeBlock> freeBlocks = new ArrayList<>();
-        int endMinute = endHour > 1 ? (endHour - 1) * 60 : 60;
-        freeBlocks.add(new TimeBlock(startHour * 60, endMinute));
         int newTaskDuration = task != null ? task.getDuration() : 0;
-        for (Task t : tasks) {
-            freeBlocks = insertTaskInSchedule(freeBlocks, newTaskDuration, t);
-        }
-        return freeBlocks;
-    }
-
-    @NonNull
-    private List<TimeBlock> insertTaskInSchedule(List<TimeBlock> freeBlocks, int newTaskDuration, Task t) {
-        int startMinute = t.getStartMinute();
-        int endMinute = startMinute + t.getDuration();
-        for (TimeBlock tb : freeBlocks) {
-            List<TimeBlock> newBlocks = (List<TimeBlock>) ((ArrayList<TimeBlock>) freeBlocks).clone();
-            newBlocks.remove(tb);
-            if (startMinute >= tb.getStartMinute() && endMinute <= tb.getEndMinute()) {
-                TimeBlock b1 = new TimeBlock(tb.getStartMinute(), startMinute);
-                TimeBlock b2 = new TimeBlock(endMinute, tb.getEndMinute());
-                if (startMinute > tb.getStartMinute() && endMinute < tb.getEndMinute()) {
-                    addBlockIfHasEnoughDuration(newTaskDuration, newBlocks, b1);
-                    addBlockIfHasEnoughDuration(newTaskDuration, newBlocks, b2);
-                } else if (startMinute == tb.getStartMinute()) {
-                    addBlockIfHasEnoughDuration(newTaskDuration, newBlocks, b2);
-                } else if (endMinute == tb.getEndMinute()) {
-                    addBlockIfHasEnoughDuration(newTaskDuration, newBlocks, b1);
-                }
-                return newBlocks;
-            }
-        }
-        return freeBlocks;
+        return freeTimeModel.getFreeBlocks(newTaskDuration);
     }
 
     public List<TimeBlock> getAvailableSlotsFor(Task task, int minTimeInterval) {
@@ -72,17 +39,22 @@ public class TaskScheduler {
         return slots;
     }
 
-    private void addBlockIfHasEnoughDuration(int taskDuration, List<TimeBlock> newBlocks, TimeBlock b1) {
-        if (b1.getDuration() >= taskDuration) {
-            newBlocks.add(b1);
-        }
-    }
-
     public List<TimeBlock> getFreeBlocks() {
         return getFreeBlocksFor(null);
     }
 
     public void addTask(Task task) {
-        tasks.add(task);
+        freeTimeModel.add(task);
+    }
+
+    public void removeTask(Task task) {
+        freeTimeModel.remove(task);
+    }
+
+    /**
+     * A copy of the current occupancy, changes to it do not affect this scheduler
+     */
+    public FreeTimeModel getFreeTimeModel() {
+        return freeTimeModel.copy();
     }
 }
@@ -51,6 +51,18 @@ public class EmptyStateRecyclerView extends RecyclerView {
             super.onChanged();
             checkIfEmpty();
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            super.onItemRangeInserted(positionStart, itemCount);
+            checkIfEmpty();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            super.onItemRangeRemoved(positionStart, itemCount);
+            checkIfEmpty();
+        }
     };
 
     @Override
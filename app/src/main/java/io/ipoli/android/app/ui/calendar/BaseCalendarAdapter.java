@@ -1,5 +1,9 @@
 package io.ipoli.android.app.ui.calendar;
 
+import java.util.List;
+
+import io.ipoli.android.Constants;
+
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 2/17/16.
@@ -8,10 +12,31 @@ public abstract class BaseCalendarAdapter<E extends CalendarEvent> implements Ca
 
     protected CalendarDayView calendarDayView;
 
+    protected final CalendarConflictIndex<E> conflictIndex = new CalendarConflictIndex<>(Constants.CALENDAR_EVENT_MIN_DURATION);
+
     void setCalendarDayView(CalendarDayView calendarDayView) {
         this.calendarDayView = calendarDayView;
     }
 
+    CalendarConflictIndex<E> getConflictIndex() {
+        return conflictIndex;
+    }
+
+    /**
+     * Groups of events that overlap each other
+     */
+    public List<CalendarConflictIndex.OverlapGroup<E>> getConflicts() {
+        return conflictIndex.getConflicts();
+    }
+
+    /**
+     * Call after the start or duration of an event was changed outside of the calendar
+     */
+    public void onEventMoved(E calendarEvent) {
+        conflictIndex.update(calendarEvent);
+        notifyDataSetChanged();
+    }
+
     @Override
     public void notifyDataSetChanged() {
         calendarDayView.removeAllEvents();
@@ -0,0 +1,222 @@
+package io.ipoli.android.app.ui.calendar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Groups the events of a day that overlap, directly or through other events, as they are
+ * added, moved and removed. Groups are kept in a tree by start minute, so a change finds the
+ * groups it touches in O(log n) and only the events of those groups are looked at again.
+ */
+public class CalendarConflictIndex<E extends CalendarEvent> {
+
+    public static class OverlapGroup<E extends CalendarEvent> {
+        private int startMinute;
+        private int endMinute;
+        private final List<E> events = new ArrayList<>();
+        private final Map<E, int[]> intervals;
+        private Map<E, Integer> columns;
+        private int columnCount;
+
+        private OverlapGroup(int startMinute, int endMinute, Map<E, int[]> intervals) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.intervals = intervals;
+        }
+
+        public int getStartMinute() {
+            return startMinute;
+        }
+
+        /**
+         * @return exclusive
+         */
+        public int getEndMinute() {
+            return endMinute;
+        }
+
+        public List<E> getEvents() {
+            return Collections.unmodifiableList(events);
+        }
+
+        public boolean hasConflicts() {
+            return events.size() > 1;
+        }
+
+        public int getColumnCount() {
+            layoutColumns();
+            return columnCount;
+        }
+
+        public int getColumn(E event) {
+            layoutColumns();
+            Integer column = columns.get(event);
+            return column != null ? column : 0;
+        }
+
+        /**
+         * Every event takes the lowest column that is free at its start, which uses as many
+         * columns as there are events at the busiest minute of the group
+         */
+        private void layoutColumns() {
+            if (columns != null) {
+                return;
+            }
+            columns = new IdentityHashMap<>();
+            List<E> byStart = new ArrayList<>(events);
+            Collections.sort(byStart, (e1, e2) -> Integer.compare(intervals.get(e1)[0], intervals.get(e2)[0]));
+            PriorityQueue<int[]> busyColumns = new PriorityQueue<>(byStart.size() + 1, (c1, c2) -> Integer.compare(c1[0], c2[0]));
+            PriorityQueue<Integer> freeColumns = new PriorityQueue<>();
+            columnCount = 0;
+            for (E event : byStart) {
+                int[] interval = intervals.get(event);
+                while (!busyColumns.isEmpty() && busyColumns.peek()[0] <= interval[0]) {
+                    freeColumns.add(busyColumns.poll()[1]);
+                }
+                int column = freeColumns.isEmpty() ? columnCount++ : freeColumns.poll();
+                columns.put(event, column);
+                busyColumns.add(new int[]{interval[1], column});
+            }
+        }
+
+        private void invalidateColumns() {
+            columns = null;
+        }
+    }
+
+    private final int minDuration;
+    private final TreeMap<Integer, OverlapGroup<E>> groupsByStart = new TreeMap<>();
+    private final Map<E, int[]> indexedIntervals = new IdentityHashMap<>();
+    private final Map<E, OverlapGroup<E>> eventGroups = new IdentityHashMap<>();
+
+    /**
+     * @param minDuration shorter events are drawn, and so indexed, with this duration
+     */
+    public CalendarConflictIndex(int minDuration) {
+        this.minDuration = minDuration;
+    }
+
+    public void addAll(List<E> events) {
+        for (E event : events) {
+            add(event);
+        }
+    }
+
+    public void add(E event) {
+        if (indexedIntervals.containsKey(event)) {
+            remove(event);
+        }
+        int startMinute = event.getStartMinute();
+        int endMinute = startMinute + Math.max(1, Math.max(event.getDuration(), minDuration));
+        indexedIntervals.put(event, new int[]{startMinute, endMinute});
+
+        OverlapGroup<E> group = new OverlapGroup<>(startMinute, endMinute, indexedIntervals);
+        group.events.add(event);
+        eventGroups.put(event, group);
+        for (OverlapGroup<E> overlapping : removeGroupsOverlapping(startMinute, endMinute)) {
+            group = merge(group, overlapping);
+        }
+        groupsByStart.put(group.startMinute, group);
+    }
+
+    public void remove(E event) {
+        int[] interval = indexedIntervals.remove(event);
+        OverlapGroup<E> group = eventGroups.remove(event);
+        if (interval == null || group == null) {
+            return;
+        }
+        groupsByStart.remove(group.startMinute);
+        group.events.remove(event);
+        for (OverlapGroup<E> split : split(group.events)) {
+            groupsByStart.put(split.startMinute, split);
+        }
+    }
+
+    /**
+     * Call after the event was moved or resized, it is found by the interval it was indexed with
+     */
+    public void update(E event) {
+        remove(event);
+        add(event);
+    }
+
+    public void clear() {
+        groupsByStart.clear();
+        indexedIntervals.clear();
+        eventGroups.clear();
+    }
+
+    public OverlapGroup<E> getGroup(E event) {
+        return eventGroups.get(event);
+    }
+
+    public List<OverlapGroup<E>> getConflicts() {
+        List<OverlapGroup<E>> conflicts = new ArrayList<>();
+        for (OverlapGroup<E> group : groupsByStart.values()) {
+            if (group.hasConflicts()) {
+                conflicts.add(group);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Groups never overlap each other, so only the one that starts last before startMinute
+     * and those that start inside the interval can overlap it
+     */
+    private List<OverlapGroup<E>> removeGroupsOverlapping(int startMinute, int endMinute) {
+        List<OverlapGroup<E>> overlapping = new ArrayList<>();
+        Map.Entry<Integer, OverlapGroup<E>> before = groupsByStart.lowerEntry(startMinute);
+        if (before != null && before.getValue().endMinute > startMinute) {
+            overlapping.add(before.getValue());
+        }
+        overlapping.addAll(groupsByStart.subMap(startMinute, true, endMinute, false).values());
+        for (OverlapGroup<E> group : overlapping) {
+            groupsByStart.remove(group.startMinute);
+        }
+        return overlapping;
+    }
+
+    /**
+     * Moves the events of the smaller group into the larger one, so an event changes group
+     * O(log n) times at most
+     */
+    private OverlapGroup<E> merge(OverlapGroup<E> first, OverlapGroup<E> second) {
+        OverlapGroup<E> larger = first.events.size() >= second.events.size() ? first : second;
+        OverlapGroup<E> smaller = larger == first ? second : first;
+        for (E event : smaller.events) {
+            eventGroups.put(event, larger);
+        }
+        larger.events.addAll(smaller.events);
+        larger.startMinute = Math.min(larger.startMinute, smaller.startMinute);
+        larger.endMinute = Math.max(larger.endMinute, smaller.endMinute);
+        larger.invalidateColumns();
+        return larger;
+    }
+
+    /**
+     * Sweeps the events of a group, a new group starts wherever no event covers the minute
+     */
+    private List<OverlapGroup<E>> split(List<E> events) {
+        List<E> byStart = new ArrayList<>(events);
+        Collections.sort(byStart, (e1, e2) -> Integer.compare(indexedIntervals.get(e1)[0], indexedIntervals.get(e2)[0]));
+        List<OverlapGroup<E>> groups = new ArrayList<>();
+        OverlapGroup<E> group = null;
+        for (E event : byStart) {
+            int[] interval = indexedIntervals.get(event);
+            if (group == null || interval[0] >= group.endMinute) {
+                group = new OverlapGroup<>(interval[0], interval[1], indexedIntervals);
+                groups.add(group);
+            }
+            group.events.add(event);
+            group.endMinute = Math.max(group.endMinute, interval[1]);
+            eventGroups.put(event, group);
+        }
+        return groups;
+    }
+}
@@ -156,6 +156,11 @@ public class CalendarDayView extends FrameLayout {
     private RelativeLayout initEventsContainer(Context context) {
         eventsContainer = new RelativeLayout(context);
         eventsContainer.setLayoutParams(new RelativeLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        eventsContainer.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+            if (right - left != oldRight - oldLeft) {
+                eventsContainer.post(this::layoutEventColumns);
+            }
+        });
         return eventsContainer;
     }
 
@@ -191,10 +196,37 @@ public class CalendarDayView extends FrameLayout {
         RelativeLayout.LayoutParams qlp = (RelativeLayout.LayoutParams) eventView.getLayoutParams();
         qlp.topMargin = getYPositionFor(calendarEvent.getStartMinute());
         qlp.height = getHeightFor(Math.max(calendarEvent.getDuration(), Constants.CALENDAR_EVENT_MIN_DURATION));
+        setColumnLayoutParams(qlp, calendarEvent);
         eventsContainer.addView(eventView, qlp);
         eventViewToCalendarEvent.put(eventView, calendarEvent);
     }
 
+    /**
+     * Overlapping events share the width of the calendar, one column each
+     */
+    @SuppressWarnings("unchecked")
+    private void setColumnLayoutParams(RelativeLayout.LayoutParams layoutParams, CalendarEvent calendarEvent) {
+        CalendarConflictIndex.OverlapGroup group = adapter.getConflictIndex().getGroup(calendarEvent);
+        int width = eventsContainer.getWidth();
+        if (group == null || !group.hasConflicts() || width == 0) {
+            layoutParams.width = ViewGroup.LayoutParams.MATCH_PARENT;
+            layoutParams.leftMargin = 0;
+            return;
+        }
+        int columnWidth = width / group.getColumnCount();
+        layoutParams.width = columnWidth;
+        layoutParams.leftMargin = group.getColumn(calendarEvent) * columnWidth;
+    }
+
+    private void layoutEventColumns() {
+        for (Map.Entry<View, CalendarEvent> entry : eventViewToCalendarEvent.entrySet()) {
+            View eventView = entry.getKey();
+            RelativeLayout.LayoutParams layoutParams = (RelativeLayout.LayoutParams) eventView.getLayoutParams();
+            setColumnLayoutParams(layoutParams, entry.getValue());
+            eventView.setLayoutParams(layoutParams);
+        }
+    }
+
     public void onMinuteChanged() {
         RelativeLayout.LayoutParams p = (RelativeLayout.LayoutParams) timeLine.getLayoutParams();
         p.topMargin = getCurrentTimeYPosition();
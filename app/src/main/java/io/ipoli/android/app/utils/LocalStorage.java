@@ -107,5 +107,9 @@ public class LocalStorage {
         editor().putBoolean(key, value).apply();
     }
 
+    public void remove(String key) {
+        editor().remove(key).apply();
+    }
+
 
 }
@@ -0,0 +1,43 @@
+package io.ipoli.android.avatar.persistence;
+
+import java.util.List;
+
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.avatar.Avatar;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+
+/**
+ * {@link AvatarPersistenceService} on top of an {@link InMemoryDatabase}
+ */
+public class InMemoryAvatarPersistenceService extends BaseInMemoryPersistenceService<Avatar> implements AvatarPersistenceService {
+
+    public InMemoryAvatarPersistenceService(InMemoryDatabase database, String playerId) {
+        super(database, playerId);
+    }
+
+    @Override
+    public void find(OnDataChangedListener<Avatar> listener) {
+        listenForSingleChange(getCollectionReference(), value -> listener.onDataChanged(getFirst(value)));
+    }
+
+    @Override
+    public void listen(OnDataChangedListener<Avatar> listener) {
+        listenForQuery(getCollectionReference(), value -> listener.onDataChanged(getFirst(value)), listener);
+    }
+
+    @Override
+    protected Class<Avatar> getModelClass() {
+        return Avatar.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "avatars";
+    }
+
+    private Avatar getFirst(Object value) {
+        List<Avatar> data = getList(value, null, null);
+        return data.isEmpty() ? null : data.get(0);
+    }
+}
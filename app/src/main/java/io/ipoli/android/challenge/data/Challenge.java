@@ -16,6 +16,7 @@ import io.ipoli.android.Constants;
 import io.ipoli.android.app.persistence.PersistedObject;
 import io.ipoli.android.app.utils.DateUtils;
 import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.mapper.GenerateMapper;
 import io.ipoli.android.quest.data.Category;
 import io.ipoli.android.quest.data.PeriodHistory;
 import io.ipoli.android.quest.data.Quest;
@@ -29,6 +30,7 @@ import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 5/27/16.
  */
+@GenerateMapper
 public class Challenge extends PersistedObject implements RewardProvider {
 
     private String name;
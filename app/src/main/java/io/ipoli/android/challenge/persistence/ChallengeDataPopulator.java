@@ -0,0 +1,71 @@
+package io.ipoli.android.challenge.persistence;
+
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.challenge.data.Challenge;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestData;
+import io.ipoli.android.reminder.data.Reminder;
+
+/**
+ * Builds the multi-path update data of challenge deletes, relative to the player node
+ */
+public class ChallengeDataPopulator {
+
+    public void populateDeleteChallenge(Challenge challenge, Map<String, Object> data) {
+        Map<String, QuestData> questIds = challenge.getQuestsData();
+        for (String questId : questIds.keySet()) {
+            data.put("/quests/" + questId + "/challengeId", null);
+            data.put("/questIndexes/incompleteNotRepeating/" + questId + "/challengeId", null);
+            QuestData qd = questIds.get(questId);
+            if (qd.getScheduledDate() != null) {
+                data.put("/dayQuests/" + qd.getScheduledDate() + "/" + questId + "/challengeId", null);
+            } else {
+                data.put("/inboxQuests/" + questId + "/challengeId", null);
+            }
+        }
+
+        Map<String, Boolean> repeatingQuestIds = challenge.getRepeatingQuestIds();
+        for (String rqId : repeatingQuestIds.keySet()) {
+            data.put("/repeatingQuests/" + rqId + "/challengeId", null);
+        }
+
+        data.put("/challenges/" + challenge.getId(), null);
+    }
+
+    public void populateDeleteChallengeWithQuests(Challenge challenge, List<Quest> quests, Map<String, Object> data) {
+        for (Quest quest : quests) {
+            if (quest.isCompleted()) {
+                quest.setRepeatingQuestId(null);
+                quest.setChallengeId(null);
+                if (quest.getScheduled() != null) {
+                    data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), quest);
+                } else {
+                    data.put("/inboxQuests/" + quest.getId(), quest);
+                }
+            } else {
+                if (quest.getScheduled() != null) {
+                    data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), null);
+                } else {
+                    data.put("/inboxQuests/" + quest.getId(), null);
+                }
+
+                for (Reminder reminder : quest.getReminders()) {
+                    data.put("/questReminders/" + String.valueOf(reminder.getStart()) + "/" + quest.getId(), null);
+                }
+
+                data.put("/questIndexes/incompleteNotRepeating/" + quest.getId(), null);
+                data.put("/quests/" + quest.getId(), null);
+                data.put("/deletedQuests/" + quest.getId(), DateUtils.nowUTC().getTime());
+            }
+        }
+
+        for (String rqId : challenge.getRepeatingQuestIds().keySet()) {
+            data.put("/repeatingQuests/" + rqId, null);
+        }
+
+        data.put("/challenges/" + challenge.getId(), null);
+    }
+}
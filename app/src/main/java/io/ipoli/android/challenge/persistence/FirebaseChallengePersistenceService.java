@@ -11,10 +11,10 @@ import java.util.Map;
 
 import io.ipoli.android.app.persistence.BaseFirebasePersistenceService;
 import io.ipoli.android.challenge.data.Challenge;
+import io.ipoli.android.challenge.data.Challenge_Mapper;
+import io.ipoli.android.mapper.ModelMapper;
 import io.ipoli.android.quest.data.Quest;
-import io.ipoli.android.quest.data.QuestData;
 import io.ipoli.android.quest.persistence.OnDataChangedListener;
-import io.ipoli.android.reminder.data.Reminder;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
@@ -22,8 +22,11 @@ import io.ipoli.android.reminder.data.Reminder;
  */
 public class FirebaseChallengePersistenceService extends BaseFirebasePersistenceService<Challenge> implements ChallengePersistenceService {
 
+    private final ChallengeDataPopulator challengeDataPopulator;
+
     public FirebaseChallengePersistenceService(Bus eventBus) {
         super(eventBus);
+        this.challengeDataPopulator = new ChallengeDataPopulator();
     }
 
     @Override
@@ -32,6 +35,11 @@ public class FirebaseChallengePersistenceService extends BaseFirebasePersistence
         };
     }
 
+    @Override
+    protected ModelMapper<Challenge> getModelMapper() {
+        return Challenge_Mapper.INSTANCE;
+    }
+
     @Override
     protected Class<Challenge> getModelClass() {
         return Challenge.class;
@@ -56,62 +64,14 @@ public class FirebaseChallengePersistenceService extends BaseFirebasePersistence
     @Override
     public void delete(Challenge challenge) {
         Map<String, Object> data = new HashMap<>();
-
-        Map<String, QuestData> questIds = challenge.getQuestsData();
-        for (String questId : questIds.keySet()) {
-            data.put("/quests/" + questId + "/challengeId", null);
-            QuestData qd = questIds.get(questId);
-            if (qd.getScheduledDate() != null) {
-                data.put("/dayQuests/" + qd.getScheduledDate() + "/" + questId + "/challengeId", null);
-            } else {
-                data.put("/inboxQuests/" + questId + "/challengeId", null);
-            }
-        }
-
-        Map<String, Boolean> repeatingQuestIds = challenge.getRepeatingQuestIds();
-        for (String rqId : repeatingQuestIds.keySet()) {
-            data.put("/repeatingQuests/" + rqId + "/challengeId", null);
-        }
-
-        data.put("/challenges/" + challenge.getId(), null);
-
+        challengeDataPopulator.populateDeleteChallenge(challenge, data);
         getPlayerReference().updateChildren(data);
     }
 
     @Override
     public void deleteWithQuests(Challenge challenge, List<Quest> quests) {
         Map<String, Object> data = new HashMap<>();
-
-        for (Quest quest : quests) {
-            if (quest.isCompleted()) {
-                quest.setRepeatingQuestId(null);
-                quest.setChallengeId(null);
-                if (quest.getScheduled() != null) {
-                    data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), quest);
-                } else {
-                    data.put("/inboxQuests/" + quest.getId(), quest);
-                }
-            } else {
-                if (quest.getScheduled() != null) {
-                    data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), null);
-                } else {
-                    data.put("/inboxQuests/" + quest.getId(), null);
-                }
-
-                for (Reminder reminder : quest.getReminders()) {
-                    data.put("/questReminders/" + String.valueOf(reminder.getStart()) + "/" + quest.getId(), null);
-                }
-
-                data.put("/quests/" + quest.getId(), null);
-            }
-        }
-
-        for (String rqId : challenge.getRepeatingQuestIds().keySet()) {
-            data.put("/repeatingQuests/" + rqId, null);
-        }
-
-        data.put("/challenges/" + challenge.getId(), null);
-
+        challengeDataPopulator.populateDeleteChallengeWithQuests(challenge, quests, data);
         getPlayerReference().updateChildren(data);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package io.ipoli.android.challenge.persistence;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.persistence.InMemoryQuery;
+import io.ipoli.android.challenge.data.Challenge;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+
+/**
+ * {@link ChallengePersistenceService} on top of an {@link InMemoryDatabase}, with the same
+ * queries and writes as {@link FirebaseChallengePersistenceService}
+ */
+public class InMemoryChallengePersistenceService extends BaseInMemoryPersistenceService<Challenge> implements ChallengePersistenceService {
+
+    private final ChallengeDataPopulator challengeDataPopulator;
+
+    public InMemoryChallengePersistenceService(InMemoryDatabase database, String playerId) {
+        super(database, playerId);
+        this.challengeDataPopulator = new ChallengeDataPopulator();
+    }
+
+    @Override
+    protected Class<Challenge> getModelClass() {
+        return Challenge.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "challenges";
+    }
+
+    @Override
+    public void findAllNotCompleted(OnDataChangedListener<List<Challenge>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("end");
+        listenForListChange(query, listener, c -> c.getCompletedAtDate() == null);
+    }
+
+    @Override
+    public void delete(Challenge challenge) {
+        Map<String, Object> data = new HashMap<>();
+        challengeDataPopulator.populateDeleteChallenge(challenge, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void deleteWithQuests(Challenge challenge, List<Quest> quests) {
+        Map<String, Object> data = new HashMap<>();
+        challengeDataPopulator.populateDeleteChallengeWithQuests(challenge, quests, data);
+        updatePlayerData(data);
+    }
+}
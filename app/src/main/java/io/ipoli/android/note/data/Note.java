@@ -3,12 +3,14 @@ package io.ipoli.android.note.data;
 import com.google.firebase.database.Exclude;
 
 import io.ipoli.android.app.persistence.PersistedObject;
+import io.ipoli.android.mapper.GenerateMapper;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 9/21/16.
  */
 
+@GenerateMapper
 public class Note extends PersistedObject {
 
     public enum Type {TEXT, INTENT, URL}
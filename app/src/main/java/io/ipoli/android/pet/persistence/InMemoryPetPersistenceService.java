@@ -0,0 +1,60 @@
+package io.ipoli.android.pet.persistence;
+
+import java.util.List;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.utils.LocalStorage;
+import io.ipoli.android.pet.data.Pet;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+
+/**
+ * {@link PetPersistenceService} on top of an {@link InMemoryDatabase}
+ */
+public class InMemoryPetPersistenceService extends BaseInMemoryPersistenceService<Pet> implements PetPersistenceService {
+
+    private final LocalStorage localStorage;
+
+    /**
+     * @param localStorage where the pet bonuses are cached, or null off-device
+     */
+    public InMemoryPetPersistenceService(InMemoryDatabase database, String playerId, LocalStorage localStorage) {
+        super(database, playerId);
+        this.localStorage = localStorage;
+    }
+
+    @Override
+    public void find(OnDataChangedListener<Pet> listener) {
+        listenForSingleChange(getCollectionReference(), value -> listener.onDataChanged(getFirst(value)));
+    }
+
+    @Override
+    public void listen(OnDataChangedListener<Pet> listener) {
+        listenForQuery(getCollectionReference(), value -> listener.onDataChanged(getFirst(value)), listener);
+    }
+
+    @Override
+    public void save(Pet pet) {
+        super.save(pet);
+        if (localStorage != null) {
+            localStorage.saveInt(Constants.KEY_XP_BONUS_PERCENTAGE, pet.getExperienceBonusPercentage());
+            localStorage.saveInt(Constants.KEY_COINS_BONUS_PERCENTAGE, pet.getCoinsBonusPercentage());
+        }
+    }
+
+    @Override
+    protected Class<Pet> getModelClass() {
+        return Pet.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "pets";
+    }
+
+    private Pet getFirst(Object value) {
+        List<Pet> data = getList(value, null, null);
+        return data.isEmpty() ? null : data.get(0);
+    }
+}
@@ -37,10 +37,7 @@ import org.joda.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -58,7 +55,9 @@ import io.ipoli.android.app.utils.StringUtils;
 import io.ipoli.android.player.events.GrowthIntervalSelectedEvent;
 import io.ipoli.android.quest.data.Category;
 import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.persistence.CompletedQuestStream;
 import io.ipoli.android.quest.persistence.QuestPersistenceService;
+import io.ipoli.android.quest.persistence.QuestProjection;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
@@ -66,6 +65,8 @@ import io.ipoli.android.quest.persistence.QuestPersistenceService;
  */
 public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSelectedListener {
 
+    private static final int HISTORY_PAGE_SIZE = 200;
+
     @BindView(R.id.chart_container)
     View chartContainer;
 
@@ -100,6 +101,8 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
 
     private int currentDayCount;
 
+    private CompletedQuestStream completedQuestStream;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -130,30 +133,43 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
     }
 
     private void showCharts(int dayCount) {
-        questPersistenceService.findAllCompletedNonAllDayBetween(new LocalDate().minusDays(dayCount - 1), new LocalDate().plusDays(1), quests -> {
-            if (quests.isEmpty()) {
-                chartContainer.setVisibility(View.GONE);
-                emptyViewContainer.setVisibility(View.VISIBLE);
-            } else {
-                chartContainer.setVisibility(View.VISIBLE);
-                emptyViewContainer.setVisibility(View.GONE);
-                setUpSummaryStats(quests);
-                setUpTimeSpentChart(quests);
-                setUpExperienceChart(quests, dayCount);
+        if (completedQuestStream != null) {
+            completedQuestStream.cancel();
+        }
+        LocalDate startDate = new LocalDate().minusDays(dayCount - 1);
+        GrowthStats stats = new GrowthStats(startDate, dayCount);
+        completedQuestStream = new CompletedQuestStream(questPersistenceService, startDate, new LocalDate().plusDays(1),
+                HISTORY_PAGE_SIZE, QuestProjection.CHART);
+        completedQuestStream.start(new CompletedQuestStream.Listener() {
+            @Override
+            public void onPage(List<Quest> quests) {
+                for (Quest q : quests) {
+                    stats.add(q, getDurationForCompletedQuest(q));
+                }
+            }
+
+            @Override
+            public void onEnd() {
+                if (stats.questCount == 0) {
+                    chartContainer.setVisibility(View.GONE);
+                    emptyViewContainer.setVisibility(View.VISIBLE);
+                } else {
+                    chartContainer.setVisibility(View.VISIBLE);
+                    emptyViewContainer.setVisibility(View.GONE);
+                    setUpSummaryStats(stats);
+                    setUpTimeSpentChart(stats);
+                    setUpExperienceChart(stats, dayCount);
+                }
             }
         });
     }
 
-    private void setUpSummaryStats(List<Quest> quests) {
-        questsDone.setText(getString(R.string.summary_stats_quests_done, quests.size()));
-        int totalMin = 0;
-        for (Quest q : quests) {
-            totalMin += getDurationForCompletedQuest(q);
-        }
-        hoursSpent.setText(getString(R.string.summary_stats_hours_spent, totalMin / 60.0f));
+    private void setUpSummaryStats(GrowthStats stats) {
+        questsDone.setText(getString(R.string.summary_stats_quests_done, stats.questCount));
+        hoursSpent.setText(getString(R.string.summary_stats_hours_spent, stats.totalMinutes / 60.0f));
     }
 
-    private void setUpExperienceChart(List<Quest> quests, int dayCount) {
+    private void setUpExperienceChart(GrowthStats stats, int dayCount) {
         experienceChart.setDrawBarShadow(false);
         experienceChart.setDrawValueAboveBar(true);
 
@@ -197,12 +213,12 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
         l.setTextSize(10f);
         l.setTextColor(getColor(R.color.md_dark_text_87));
 
-        setExperienceChartData(quests, dayCount);
+        setExperienceChartData(stats, dayCount);
     }
 
-    private void setExperienceChartData(List<Quest> quests, int dayCount) {
+    private void setExperienceChartData(GrowthStats stats, int dayCount) {
 
-        if (quests.isEmpty()) {
+        if (stats.questCount == 0) {
             experienceChart.clear();
             return;
         }
@@ -211,25 +227,10 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
         for (int i = 0; i < dayCount; i++) {
             xVals.add(String.valueOf(i + 1));
         }
-        TreeMap<Date, List<Quest>> groupedByDate = new TreeMap<>();
-
-        for (LocalDate date = new LocalDate().minusDays(dayCount - 1); date.isBefore(new LocalDate().plusDays(1)); date = date.plusDays(1)) {
-            groupedByDate.put(date.toDate(), new ArrayList<>());
-        }
-
-        for (Quest q : quests) {
-            Date dateKey = new LocalDate(q.getCompletedAtDate().getTime()).toDate();
-            groupedByDate.get(dateKey).add(q);
-        }
-
         ArrayList<BarEntry> yVals1 = new ArrayList<>();
 
         int index = 0;
-        for (Map.Entry<Date, List<Quest>> pair : groupedByDate.entrySet()) {
-            int total = 0;
-            for (Quest q : pair.getValue()) {
-                total += q.getExperience();
-            }
+        for (Long total : stats.experienceByDate.values()) {
             yVals1.add(new BarEntry(total, index));
             index++;
         }
@@ -252,7 +253,7 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
         experienceChart.animateY(getResources().getInteger(android.R.integer.config_longAnimTime), Easing.EasingOption.EaseInOutQuad);
     }
 
-    private void setUpTimeSpentChart(List<Quest> quests) {
+    private void setUpTimeSpentChart(GrowthStats stats) {
         timeSpentChart.setTouchEnabled(false);
         timeSpentChart.setExtraOffsets(5, 0, 5, 5);
 
@@ -282,56 +283,34 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
         textPaint.setColor(getColor(R.color.md_dark_text_87));
         timeSpentChart.setNoDataText(getString(R.string.chart_no_data_to_display));
 
-        setData(quests);
+        setData(stats);
 
         timeSpentChart.animateY(getResources().getInteger(android.R.integer.config_longAnimTime), Easing.EasingOption.EaseInOutQuad);
     }
 
-    private void setData(List<Quest> quests) {
+    private void setData(GrowthStats stats) {
 
-        if (quests.isEmpty()) {
+        if (stats.questCount == 0) {
             timeSpentChart.clear();
             return;
         }
 
         ArrayList<Entry> yVals1 = new ArrayList<Entry>();
 
-        TreeMap<Category, List<Quest>> groupedByCategory = new TreeMap<>();
-
-        Set<Category> usedCategories = new TreeSet<>();
-        for (Quest q : quests) {
-            Category category = q.getCategoryType();
-            if (!groupedByCategory.containsKey(category)) {
-                groupedByCategory.put(category, new ArrayList<>());
-            }
-            groupedByCategory.get(category).add(q);
-            usedCategories.add(category);
-        }
-
         ArrayList<String> xVals = new ArrayList<String>();
         List<Integer> colors = new ArrayList<>();
-        for (Category usedCategory : usedCategories) {
+        for (Category usedCategory : stats.minutesByCategory.keySet()) {
             xVals.add(StringUtils.capitalize(usedCategory.name()));
             colors.add(getColor(usedCategory.color500));
         }
 
         int index = 0;
-        int total = 0;
-        long totalXP = 0;
-        long totalCoins = 0;
-        for (Map.Entry<Category, List<Quest>> pair : groupedByCategory.entrySet()) {
-            int sum = 0;
-            for (Quest q : pair.getValue()) {
-                totalXP += q.getExperience();
-                totalCoins += q.getCoins();
-                sum += getDurationForCompletedQuest(q);
-            }
-            total += sum;
+        for (Integer sum : stats.minutesByCategory.values()) {
             yVals1.add(new Entry(sum, index));
             index++;
         }
 
-        final int totalTimeSpent = total;
+        final int totalTimeSpent = stats.totalMinutes;
 
         PieDataSet dataSet = new PieDataSet(yVals1, "");
         dataSet.setSliceSpace(3f);
@@ -347,7 +326,7 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
         data.setValueTextColor(getColor(R.color.md_white));
         timeSpentChart.setData(data);
 
-        timeSpentChart.setCenterText(getString(R.string.chart_time_spent_center_text, totalXP, totalCoins));
+        timeSpentChart.setCenterText(getString(R.string.chart_time_spent_center_text, stats.totalExperience, stats.totalCoins));
         timeSpentChart.setCenterTextColor(getColor(R.color.md_dark_text_87));
         timeSpentChart.setCenterTextSize(12f);
     }
@@ -366,6 +345,9 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
 
     @Override
     public void onDestroyView() {
+        if (completedQuestStream != null) {
+            completedQuestStream.cancel();
+        }
         questPersistenceService.removeAllListeners();
         unbinder.unbind();
         super.onDestroyView();
@@ -410,4 +392,40 @@ public class GrowthFragment extends BaseFragment implements AdapterView.OnItemSe
     public void onNothingSelected(AdapterView<?> parent) {
 
     }
+
+    /**
+     * Chart totals, accumulated page by page while the completed quests stream in
+     */
+    private static class GrowthStats {
+        private final TreeMap<Date, Long> experienceByDate;
+        private final TreeMap<Category, Integer> minutesByCategory;
+        private int questCount;
+        private int totalMinutes;
+        private long totalExperience;
+        private long totalCoins;
+
+        GrowthStats(LocalDate startDate, int dayCount) {
+            experienceByDate = new TreeMap<>();
+            minutesByCategory = new TreeMap<>();
+            for (int i = 0; i < dayCount; i++) {
+                experienceByDate.put(startDate.plusDays(i).toDate(), 0L);
+            }
+        }
+
+        void add(Quest quest, int minutes) {
+            questCount++;
+            totalMinutes += minutes;
+            totalExperience += quest.getExperience();
+            totalCoins += quest.getCoins();
+
+            Date dateKey = new LocalDate(quest.getCompletedAtDate().getTime()).toDate();
+            if (experienceByDate.containsKey(dateKey)) {
+                experienceByDate.put(dateKey, experienceByDate.get(dateKey) + quest.getExperience());
+            }
+
+            Category category = quest.getCategoryType();
+            Integer categoryMinutes = minutesByCategory.get(category);
+            minutesByCategory.put(category, (categoryMinutes != null ? categoryMinutes : 0) + minutes);
+        }
+    }
 }
\ No newline at end of file
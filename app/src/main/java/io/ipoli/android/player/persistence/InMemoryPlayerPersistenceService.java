@@ -0,0 +1,60 @@
+package io.ipoli.android.player.persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.persistence.InMemoryQuery;
+import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.player.Player;
+
+/**
+ * {@link PlayerPersistenceService} on top of an {@link InMemoryDatabase}, with the same
+ * writes as {@link FirebasePlayerPersistenceService}
+ */
+public class InMemoryPlayerPersistenceService extends BaseInMemoryPersistenceService<Player> implements PlayerPersistenceService {
+
+    public InMemoryPlayerPersistenceService(InMemoryDatabase database, String playerId) {
+        super(database, playerId);
+    }
+
+    @Override
+    public void save(Player player) {
+        boolean isNew = StringUtils.isEmpty(player.getId());
+        Map<String, Object> data = new HashMap<>();
+        if (isNew) {
+            player.setId(database.push());
+            player.getPet().setId(database.push());
+            player.getAvatar().setId(database.push());
+
+            data.put("/id", player.getId());
+            data.put("/avatars/" + player.getAvatar().getId(), player.getAvatar());
+            data.put("/pets/" + player.getPet().getId(), player.getPet());
+            data.put("/schemaVersion", player.getSchemaVersion());
+            data.put("/updatedAt", player.getUpdatedAt());
+            data.put("/createdAt", player.getCreatedAt());
+        } else {
+            player.markUpdated();
+            data.put("updatedAt", player.getUpdatedAt());
+            data.put("createdAt", player.getCreatedAt());
+        }
+        database.updateChildren(getCollectionReference().child(player.getId()).getPath(), data);
+    }
+
+    @Override
+    protected Class<Player> getModelClass() {
+        return Player.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "players";
+    }
+
+    @Override
+    protected InMemoryQuery getCollectionReference() {
+        return database.getReference(Constants.API_VERSION).child(getCollectionName());
+    }
+}
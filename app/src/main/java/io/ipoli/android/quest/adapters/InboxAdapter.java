@@ -26,12 +26,13 @@ import io.ipoli.android.quest.events.CompleteQuestRequestEvent;
 import io.ipoli.android.quest.events.DeleteQuestRequestEvent;
 import io.ipoli.android.quest.events.EditQuestRequestEvent;
 import io.ipoli.android.quest.events.ScheduleQuestForTodayEvent;
+import io.ipoli.android.quest.persistence.OnListChangedListener;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 1/8/16.
  */
-public class InboxAdapter extends RecyclerView.Adapter<InboxAdapter.ViewHolder> {
+public class InboxAdapter extends RecyclerView.Adapter<InboxAdapter.ViewHolder> implements OnListChangedListener<Quest> {
 
     private Context context;
     private List<Quest> quests;
@@ -97,6 +98,32 @@ public class InboxAdapter extends RecyclerView.Adapter<InboxAdapter.ViewHolder>
         return quests;
     }
 
+    @Override
+    public void onItemInserted(int position, Quest quest) {
+        quests.add(position, quest);
+        notifyItemInserted(position);
+    }
+
+    @Override
+    public void onItemChanged(int position, Quest quest) {
+        quests.set(position, quest);
+        notifyItemChanged(position);
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition, Quest quest) {
+        quests.remove(fromPosition);
+        quests.add(toPosition, quest);
+        notifyItemMoved(fromPosition, toPosition);
+        notifyItemChanged(toPosition);
+    }
+
+    @Override
+    public void onItemRemoved(int position) {
+        quests.remove(position);
+        notifyItemRemoved(position);
+    }
+
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
         @BindView(R.id.content_layout)
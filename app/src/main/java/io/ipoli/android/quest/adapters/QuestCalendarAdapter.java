@@ -62,6 +62,7 @@ public class QuestCalendarAdapter extends BaseCalendarAdapter<QuestCalendarViewM
     public QuestCalendarAdapter(List<QuestCalendarViewModel> questCalendarViewModels, Bus eventBus) {
         this.questCalendarViewModels = questCalendarViewModels;
         this.eventBus = eventBus;
+        conflictIndex.addAll(questCalendarViewModels);
     }
 
 
@@ -199,6 +200,7 @@ public class QuestCalendarAdapter extends BaseCalendarAdapter<QuestCalendarViewM
 
     @Override
     public void onStartTimeUpdated(QuestCalendarViewModel calendarEvent, int oldStartTime) {
+        conflictIndex.update(calendarEvent);
         eventBus.post(new QuestAddedToCalendarEvent(calendarEvent));
         notifyDataSetChanged();
     }
@@ -206,6 +208,8 @@ public class QuestCalendarAdapter extends BaseCalendarAdapter<QuestCalendarViewM
     @Override
     public void updateEvents(List<QuestCalendarViewModel> calendarEvents) {
         this.questCalendarViewModels = calendarEvents;
+        conflictIndex.clear();
+        conflictIndex.addAll(calendarEvents);
         notifyDataSetChanged();
     }
 
@@ -237,6 +241,7 @@ public class QuestCalendarAdapter extends BaseCalendarAdapter<QuestCalendarViewM
     @Override
     public void removeEvent(QuestCalendarViewModel calendarEvent) {
         questCalendarViewModels.remove(calendarEvent);
+        conflictIndex.remove(calendarEvent);
         notifyDataSetChanged();
     }
 
@@ -9,6 +9,7 @@ import org.joda.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import io.ipoli.android.Constants;
@@ -17,6 +18,7 @@ import io.ipoli.android.app.utils.DateUtils;
 import io.ipoli.android.app.utils.StringUtils;
 import io.ipoli.android.app.utils.Time;
 import io.ipoli.android.app.utils.TimePreference;
+import io.ipoli.android.mapper.GenerateMapper;
 import io.ipoli.android.note.data.Note;
 import io.ipoli.android.quest.generators.RewardProvider;
 import io.ipoli.android.reminder.data.Reminder;
@@ -25,6 +27,7 @@ import io.ipoli.android.reminder.data.Reminder;
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 1/7/16.
  */
+@GenerateMapper
 public class Quest extends PersistedObject implements RewardProvider, BaseQuest {
 
     public static final int PRIORITY_MOST_IMPORTANT_FOR_DAY = 4;
@@ -89,6 +92,9 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     @Exclude
     private String previousChallengeId;
 
+    @Exclude
+    private String previousName;
+
     @Exclude
     private transient boolean isPlaceholder;
 
@@ -121,6 +127,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setOriginalScheduled(Long originalScheduled) {
         this.originalScheduled = originalScheduled;
+        markDirty("originalScheduled", originalScheduled);
     }
 
     public Long getScheduled() {
@@ -129,11 +136,12 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setScheduled(Long scheduled) {
         this.scheduled = scheduled;
+        markDirty("scheduled", scheduled);
     }
 
     @Exclude
     public void setOriginalScheduledDate(Date originalScheduledDate) {
-        originalScheduled = originalScheduledDate != null ? originalScheduledDate.getTime() : null;
+        setOriginalScheduled(originalScheduledDate != null ? originalScheduledDate.getTime() : null);
     }
 
     @Exclude
@@ -191,9 +199,24 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     public void setDuration(Integer duration) {
         if (duration == null) {
             this.duration = null;
-            return;
+        } else {
+            this.duration = (int) Math.min(TimeUnit.HOURS.toMinutes(Constants.MAX_QUEST_DURATION_HOURS), duration);
         }
-        this.duration = (int) Math.min(TimeUnit.HOURS.toMinutes(Constants.MAX_QUEST_DURATION_HOURS), duration);
+        markDirty("duration", this.duration);
+    }
+
+    /**
+     * List fields are always reported, because their elements are also changed in place
+     */
+    @Override
+    @Exclude
+    public Map<String, Object> getDirtyFields() {
+        Map<String, Object> dirtyFields = super.getDirtyFields();
+        dirtyFields.put("reminders", getReminders());
+        dirtyFields.put("subQuests", getSubQuests());
+        dirtyFields.put("notes", getNotes());
+        dirtyFields.put("reminderStartTimes", getReminderStartTimes());
+        return dirtyFields;
     }
 
     public List<Reminder> getReminders() {
@@ -205,6 +228,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setReminders(List<Reminder> reminders) {
         this.reminders = reminders;
+        markDirty("reminders", reminders);
     }
 
     public List<SubQuest> getSubQuests() {
@@ -216,10 +240,12 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setSubQuests(List<SubQuest> subQuests) {
         this.subQuests = subQuests;
+        markDirty("subQuests", subQuests);
     }
 
     public void setRawText(String rawText) {
         this.rawText = rawText;
+        markDirty("rawText", rawText);
     }
 
     public String getRawText() {
@@ -232,6 +258,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setStartMinute(Integer startMinute) {
         this.startMinute = startMinute;
+        markDirty("startMinute", startMinute);
     }
 
     public String getRepeatingQuestId() {
@@ -240,6 +267,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setRepeatingQuestId(String repeatingQuestId) {
         this.repeatingQuestId = repeatingQuestId;
+        markDirty("repeatingQuestId", repeatingQuestId);
     }
 
     @Exclude
@@ -253,6 +281,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setAllDay(boolean allDay) {
         this.allDay = allDay;
+        markDirty("allDay", allDay);
     }
 
     public int getPriority() {
@@ -261,6 +290,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setPriority(Integer priority) {
         this.priority = priority;
+        markDirty("priority", priority);
     }
 
     @Exclude
@@ -270,7 +300,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     @Exclude
     public void setStartDate(Date startDate) {
-        start = startDate != null ? startDate.getTime() : null;
+        setStart(startDate != null ? startDate.getTime() : null);
     }
 
     public Long getStart() {
@@ -279,6 +309,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setStart(Long start) {
         this.start = start;
+        markDirty("start", start);
     }
 
     @Exclude
@@ -313,10 +344,12 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     public void setEnd(Long end) {
         setPreviousScheduledDate(this.end);
         this.end = end;
+        markDirty("end", end);
     }
 
     public void setDifficulty(Integer difficulty) {
         this.difficulty = difficulty;
+        markDirty("difficulty", difficulty);
     }
 
     public Integer getDifficulty() {
@@ -328,7 +361,12 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     }
 
     public void setName(String name) {
+        if (previousName == null) {
+            // keeps the name that is stored, however many times it changes before the write
+            setPreviousName(this.name);
+        }
         this.name = name;
+        markDirty("name", name);
     }
 
     @Override
@@ -343,11 +381,13 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCreatedAt(Long createdAt) {
         this.createdAt = createdAt;
+        markDirty("createdAt", createdAt);
     }
 
     @Override
     public void setUpdatedAt(Long updatedAt) {
         this.updatedAt = updatedAt;
+        markDirty("updatedAt", updatedAt);
     }
 
     @Override
@@ -365,6 +405,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCategory(String category) {
         this.category = category;
+        markDirty("category", category);
     }
 
     public static Date getStartDateTime(Quest quest) {
@@ -382,7 +423,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     @Exclude
     public void setActualStartDate(Date actualStartDate) {
-        actualStart = actualStartDate != null ? actualStartDate.getTime() : null;
+        setActualStart(actualStartDate != null ? actualStartDate.getTime() : null);
     }
 
     public Long getActualStart() {
@@ -391,6 +432,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setActualStart(Long actualStart) {
         this.actualStart = actualStart;
+        markDirty("actualStart", actualStart);
     }
 
     public Integer getCompletedAtMinute() {
@@ -399,6 +441,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCompletedAtMinute(Integer completedAtMinute) {
         this.completedAtMinute = completedAtMinute;
+        markDirty("completedAtMinute", completedAtMinute);
     }
 
     @Exclude
@@ -408,7 +451,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     @Exclude
     public void setCompletedAtDate(Date completedAtDate) {
-        completedAt = completedAtDate != null ? completedAtDate.getTime() : null;
+        setCompletedAt(completedAtDate != null ? completedAtDate.getTime() : null);
     }
 
     public Long getCompletedAt() {
@@ -417,6 +460,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCompletedAt(Long completedAt) {
         this.completedAt = completedAt;
+        markDirty("completedAt", completedAt);
     }
 
     public static boolean isStarted(Quest quest) {
@@ -453,6 +497,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setSource(String source) {
         this.source = source;
+        markDirty("source", source);
     }
 
     @Exclude
@@ -484,6 +529,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setSourceMapping(SourceMapping sourceMapping) {
         this.sourceMapping = sourceMapping;
+        markDirty("sourceMapping", sourceMapping);
     }
 
     public Long getCoins() {
@@ -496,10 +542,12 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCoins(Long coins) {
         this.coins = coins;
+        markDirty("coins", coins);
     }
 
     public void setExperience(Long experience) {
         this.experience = experience;
+        markDirty("experience", experience);
     }
 
     @Exclude
@@ -519,6 +567,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     public void setChallengeId(String challengeId) {
         setPreviousChallengeId(this.challengeId);
         this.challengeId = challengeId;
+        markDirty("challengeId", challengeId);
     }
 
     @Exclude
@@ -546,6 +595,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setNotes(List<Note> notes) {
         this.notes = notes;
+        markDirty("notes", notes);
     }
 
     @Exclude
@@ -593,6 +643,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setReminderStartTimes(List<Long> reminderStartTimes) {
         this.reminderStartTimes = reminderStartTimes;
+        markDirty("reminderStartTimes", reminderStartTimes);
     }
 
     public Integer getTimesADay() {
@@ -602,6 +653,17 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
     public void setTimesADay(Integer timesADay) {
         setCompletedCount(Math.min(timesADay, getCompletedCount()));
         this.timesADay = timesADay;
+        markDirty("timesADay", timesADay);
+    }
+
+    @Exclude
+    public String getPreviousName() {
+        return previousName;
+    }
+
+    @Exclude
+    public void setPreviousName(String previousName) {
+        this.previousName = previousName;
     }
 
     @Exclude
@@ -621,10 +683,11 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setCompletedCount(int completedCount) {
         this.completedCount = completedCount;
+        markDirty("completedCount", completedCount);
     }
 
     public int getCompletedCount() {
-        return completedCount;
+        return completedCount != null ? completedCount : 0;
     }
 
     @Exclude
@@ -634,7 +697,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     @Exclude
     public void increaseCompletedCount() {
-        completedCount++;
+        setCompletedCount(completedCount + 1);
     }
 
     @Exclude
@@ -649,7 +712,7 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     @Exclude
     public void setCategoryType(Category category) {
-        this.category = category.name();
+        setCategory(category.name());
     }
 
     @Exclude
@@ -663,12 +726,13 @@ public class Quest extends PersistedObject implements RewardProvider, BaseQuest
 
     public void setPreferredStartTime(String preferredStartTime) {
         this.preferredStartTime = preferredStartTime;
+        markDirty("preferredStartTime", preferredStartTime);
     }
 
     @Exclude
     public void setStartTimePreference(TimePreference timePreference) {
         if (timePreference != null) {
-            this.preferredStartTime = timePreference.name();
+            setPreferredStartTime(timePreference.name());
         }
     }
 
@@ -1,9 +1,12 @@
 package io.ipoli.android.quest.data;
 
+import io.ipoli.android.mapper.GenerateMapper;
+
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 12/27/16.
  */
+@GenerateMapper
 public class QuestData {
     private boolean isComplete;
     private Integer duration;
@@ -8,11 +8,13 @@ import java.util.Date;
 
 import io.ipoli.android.app.persistence.PersistedObject;
 import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.mapper.GenerateMapper;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 4/8/16.
  */
+@GenerateMapper
 public class Recurrence extends PersistedObject {
 
     public static final String RRULE_EVERY_DAY = "FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR,SA,SU";
@@ -171,4 +173,24 @@ public class Recurrence extends PersistedObject {
     public boolean isFlexible() {
         return flexibleCount > 0;
     }
+
+    /**
+     * Whether both recurrences produce the same dates, regardless of when they were created
+     */
+    @Exclude
+    public boolean hasSameSchedule(Recurrence other) {
+        return other != null
+                && flexibleCount == other.flexibleCount
+                && equals(type, other.type)
+                && equals(rrule, other.rrule)
+                && equals(rdate, other.rdate)
+                && equals(exrule, other.exrule)
+                && equals(exdate, other.exdate)
+                && equals(dtstart, other.dtstart)
+                && equals(dtend, other.dtend);
+    }
+
+    private static boolean equals(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
 }
@@ -5,11 +5,8 @@ import android.support.v4.util.Pair;
 import com.google.firebase.database.Exclude;
 
 import org.joda.time.LocalDate;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Recur;
 
-import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -22,21 +19,27 @@ import io.ipoli.android.app.utils.DateUtils;
 import io.ipoli.android.app.utils.StringUtils;
 import io.ipoli.android.app.utils.Time;
 import io.ipoli.android.app.utils.TimePreference;
+import io.ipoli.android.mapper.GenerateMapper;
 import io.ipoli.android.note.data.Note;
+import io.ipoli.android.quest.schedulers.CompiledRecurrence;
 import io.ipoli.android.reminder.data.Reminder;
 
-import static io.ipoli.android.app.utils.DateUtils.isBetween;
-import static io.ipoli.android.app.utils.DateUtils.isSameDay;
-import static io.ipoli.android.app.utils.DateUtils.isTodayUTC;
 import static io.ipoli.android.app.utils.DateUtils.nowUTC;
-import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 3/26/16.
  */
+@GenerateMapper
 public class RepeatingQuest extends PersistedObject implements BaseQuest {
 
+    /**
+     * Watermark of repeating quests that get no more quests scheduled, past any horizon so
+     * they are left out of the scheduled before queries. Largest integer a Firebase number
+     * keeps exactly.
+     */
+    public static final long SCHEDULED_UNTIL_NEVER = 9007199254740991L;
+
     private String rawText;
 
     private String name;
@@ -69,9 +72,17 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
 
     private Map<String, Boolean> scheduledPeriodEndDates;
 
+    private Long scheduledUntil;
+
     @Exclude
     private String previousChallengeId;
 
+    @Exclude
+    private Recurrence previousRecurrence;
+
+    @Exclude
+    private RepeatingQuestProgress progress;
+
     private Map<String, QuestData> questsData;
 
     public RepeatingQuest() {
@@ -108,14 +119,7 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
 
     @Exclude
     public int getStreak() {
-        Recurrence recurrence = getRecurrence();
-        List<QuestData> questsData = new ArrayList<>(getQuestsData().values());
-        Collections.sort(questsData, (q1, q2) -> -Long.compare(q1.getOriginalScheduledDate(), q2.getOriginalScheduledDate()));
-        if (isFlexible()) {
-            return getFlexibleStreak(recurrence.getRecurrenceType(), questsData);
-        } else {
-            return getFixedStreak(questsData);
-        }
+        return getProgress().getStreak(LocalDate.now());
     }
 
     @Exclude
@@ -130,78 +134,13 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
         if (recurrence.getRecurrenceType() == Recurrence.RecurrenceType.MONTHLY) {
             return 1;
         }
-        try {
-            Recur recur = new Recur(recurrence.getRrule());
-            return recur.getDayList().size();
-        } catch (ParseException e) {
-            return 0;
-        }
-    }
-
-    private int getFixedStreak(List<QuestData> questsData) {
-        int streak = 0;
-        for (QuestData qd : questsData) {
-            if (new Date(qd.getOriginalScheduledDate()).after(toStartOfDayUTC(LocalDate.now()))) {
-                continue;
-            }
-
-            if (isTodayUTC(new Date(qd.getOriginalScheduledDate())) && !qd.isComplete()) {
-                continue;
-            }
-
-            if (qd.isComplete() && isSameDay(new Date(qd.getScheduledDate()), new Date(qd.getOriginalScheduledDate()))) {
-                streak++;
-            } else {
-                break;
-            }
-        }
-        return streak;
-    }
-
-
-    private int getFlexibleStreak(Recurrence.RecurrenceType recurrenceType, List<QuestData> questsData) {
-        int streak = 0;
-        for (QuestData qd : questsData) {
-
-            if (new Date(qd.getOriginalScheduledDate()).after(DateUtils.toStartOfDayUTC(LocalDate.now()))) {
-                continue;
-            }
-
-            if (isTodayUTC(new Date(qd.getOriginalScheduledDate())) && !qd.isComplete()) {
-                continue;
-            }
-
-            LocalDate periodStart = null;
-            LocalDate periodEnd = null;
-            if (recurrenceType == Recurrence.RecurrenceType.MONTHLY) {
-                periodStart = new LocalDate(qd.getOriginalScheduledDate()).dayOfMonth().withMinimumValue();
-                periodEnd = periodStart.dayOfMonth().withMaximumValue();
-            } else {
-                periodStart = new LocalDate(qd.getOriginalScheduledDate()).dayOfWeek().withMinimumValue();
-                periodEnd = periodStart.dayOfWeek().withMaximumValue();
-            }
-
-            if (qd.isComplete()
-                    && isBetween(new Date(qd.getScheduledDate()), toStartOfDayUTC(periodStart), toStartOfDayUTC(periodEnd))) {
-                streak++;
-            } else {
-                break;
-            }
-        }
-        return streak;
+        CompiledRecurrence compiledRecurrence = CompiledRecurrence.compile(recurrence.getRrule());
+        return compiledRecurrence != null ? compiledRecurrence.getWeekDayCount() : 0;
     }
 
     @Exclude
     public Date getNextScheduledDate(LocalDate currentDate) {
-        Date nextDate = null;
-        for (QuestData qd : getQuestsData().values()) {
-            if (!qd.isComplete() && qd.getScheduledDate() != null && qd.getScheduledDate() >= DateUtils.toStartOfDayUTC(currentDate).getTime()) {
-                if (nextDate == null || nextDate.getTime() > qd.getScheduledDate()) {
-                    nextDate = new Date(qd.getScheduledDate());
-                }
-            }
-        }
-        return nextDate;
+        return getProgress().getNextScheduledDate(currentDate);
     }
 
     public void setDuration(Integer duration) {
@@ -292,7 +231,9 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
     }
 
     public void setRecurrence(Recurrence recurrence) {
+        setPreviousRecurrence(this.recurrence);
         this.recurrence = recurrence;
+        progress = null;
     }
 
     public String getSource() {
@@ -358,6 +299,75 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
     @Exclude
     public void addScheduledPeriodEndDate(Date date) {
         getScheduledPeriodEndDates().put(String.valueOf(date.getTime()), true);
+        if (scheduledUntil == null || scheduledUntil < date.getTime()) {
+            scheduledUntil = date.getTime();
+        }
+    }
+
+    /**
+     * Forgets the periods that end on or after date, so they are scheduled again
+     */
+    @Exclude
+    public void removeScheduledPeriodEndDatesFrom(Date date) {
+        List<String> periodsToDelete = new ArrayList<>();
+        for (String periodEnd : getScheduledPeriodEndDates().keySet()) {
+            if (Long.valueOf(periodEnd) >= date.getTime()) {
+                periodsToDelete.add(periodEnd);
+            }
+        }
+        getScheduledPeriodEndDates().keySet().removeAll(periodsToDelete);
+        resumeScheduling();
+    }
+
+    /**
+     * All-day repeating quests and those whose recurrence ended before startOfDay get no more
+     * quests scheduled
+     */
+    @Exclude
+    public boolean isSchedulable(Date startOfDay) {
+        Date dtend = getRecurrence().getDtendDate();
+        return !allDay && (dtend == null || dtend.getTime() >= startOfDay.getTime());
+    }
+
+    @Exclude
+    public boolean isSchedulingStopped() {
+        return scheduledUntil != null && scheduledUntil == SCHEDULED_UNTIL_NEVER;
+    }
+
+    @Exclude
+    public void stopScheduling() {
+        scheduledUntil = SCHEDULED_UNTIL_NEVER;
+    }
+
+    /**
+     * Sets the watermark back to the end of the last scheduled period
+     */
+    @Exclude
+    public void resumeScheduling() {
+        scheduledUntil = null;
+        for (String periodEnd : getScheduledPeriodEndDates().keySet()) {
+            long periodEndTime = Long.valueOf(periodEnd);
+            if (scheduledUntil == null || scheduledUntil < periodEndTime) {
+                scheduledUntil = periodEndTime;
+            }
+        }
+    }
+
+    /**
+     * End of the last scheduled period, start of day in UTC, null before the first one or
+     * {@link #SCHEDULED_UNTIL_NEVER} when scheduling is stopped
+     */
+    public Long getScheduledUntil() {
+        return scheduledUntil;
+    }
+
+    public void setScheduledUntil(Long scheduledUntil) {
+        this.scheduledUntil = scheduledUntil;
+    }
+
+    @Exclude
+    public Date getScheduledUntilDate() {
+        return scheduledUntil != null ? new Date(scheduledUntil) : null;
     }
 
     @Exclude
@@ -374,6 +384,9 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
 
     @Exclude
     public boolean shouldBeScheduledForPeriod(Date periodEnd) {
+        if (scheduledUntil != null && periodEnd.getTime() <= scheduledUntil) {
+            return false;
+        }
         return !getScheduledPeriodEndDates().containsKey(String.valueOf(periodEnd.getTime()));
     }
 
@@ -399,33 +412,10 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
     }
 
     public List<PeriodHistory> getPeriodHistories(LocalDate currentDate) {
-        List<PeriodHistory> result = new ArrayList<>();
-        int frequency = getFrequency();
         List<Pair<LocalDate, LocalDate>> pairs = recurrence.getRecurrenceType() == Recurrence.RecurrenceType.MONTHLY ?
                 DateUtils.getBoundsFor4MonthsInThePast(currentDate) :
                 DateUtils.getBoundsFor4WeeksInThePast(currentDate);
-
-        for (Pair<LocalDate, LocalDate> p : pairs) {
-            result.add(new PeriodHistory(toStartOfDayUTC(p.first).getTime(), toStartOfDayUTC(p.second).getTime(), frequency));
-        }
-
-        for (QuestData qd : getQuestsData().values()) {
-            for (PeriodHistory p : result) {
-                Long scheduledDate = qd.getScheduledDate();
-                if (scheduledDate == null) {
-                    continue;
-                }
-                if (DateUtils.isBetween(new Date(scheduledDate), new Date(p.getStart()), new Date(p.getEnd()))) {
-                    if (qd.isComplete()) {
-                        p.increaseCompletedCount();
-                    }
-                    p.increaseScheduledCount();
-                    break;
-                }
-            }
-        }
-
-        return result;
+        return getProgress().getPeriodHistories(pairs, getFrequency());
     }
 
     public Map<String, QuestData> getQuestsData() {
@@ -437,11 +427,38 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
 
     public void setQuestsData(Map<String, QuestData> questsData) {
         this.questsData = questsData;
+        progress = null;
     }
 
     @Exclude
     public void addQuestData(String id, QuestData questData) {
-        getQuestsData().put(id, questData);
+        QuestData previousQuestData = getQuestsData().put(id, questData);
+        if (progress != null) {
+            progress.remove(previousQuestData);
+            progress.add(questData);
+        }
+    }
+
+    @Exclude
+    public void removeQuestData(String id) {
+        QuestData questData = getQuestsData().remove(id);
+        if (progress != null) {
+            progress.remove(questData);
+        }
+    }
+
+    /**
+     * Built from the quests data on first use and updated by addQuestData and removeQuestData
+     * after that. Rebuilt if the quests data were changed directly.
+     */
+    private RepeatingQuestProgress getProgress() {
+        if (progress == null || progress.getQuestDataCount() != getQuestsData().size()) {
+            progress = new RepeatingQuestProgress(isFlexible() ? getRecurrence().getRecurrenceType() : null);
+            for (QuestData questData : getQuestsData().values()) {
+                progress.add(questData);
+            }
+        }
+        return progress;
     }
 
     @Exclude
@@ -454,15 +471,27 @@ public class RepeatingQuest extends PersistedObject implements BaseQuest {
         this.previousChallengeId = previousChallengeId;
     }
 
+    @Exclude
+    public Recurrence getPreviousRecurrence() {
+        return previousRecurrence;
+    }
+
+    @Exclude
+    public void setPreviousRecurrence(Recurrence previousRecurrence) {
+        this.previousRecurrence = previousRecurrence;
+    }
+
+    /**
+     * Whether the recurrence was replaced by one with other dates since the repeating quest was loaded
+     */
+    @Exclude
+    public boolean isRecurrenceChanged() {
+        return previousRecurrence == null || !previousRecurrence.hasSameSchedule(recurrence);
+    }
+
     @Exclude
     public int getTotalTimeSpent() {
-        int timeSpent = 0;
-        for (QuestData questData : getQuestsData().values()) {
-            if (questData.isComplete()) {
-                timeSpent += questData.getDuration();
-            }
-        }
-        return timeSpent;
+        return getProgress().getTimeSpent();
     }
 
     @Exclude
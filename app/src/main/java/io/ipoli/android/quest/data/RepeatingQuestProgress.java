@@ -0,0 +1,170 @@
+package io.ipoli.android.quest.data;
+
+import android.support.v4.util.Pair;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * Counters of the quests of a repeating quest per original and per scheduled day, kept up to
+ * date as quest data is added, replaced or removed. Streaks, period histories and the next
+ * scheduled date read a few days of counters instead of every quest the repeating quest ever had.
+ */
+public class RepeatingQuestProgress {
+
+    private static final int SUCCESSFUL = 0;
+    private static final int COMPLETED_LATE = 1;
+    private static final int INCOMPLETE = 2;
+
+    private static final int SCHEDULED = 0;
+    private static final int COMPLETED = 1;
+
+    private final Recurrence.RecurrenceType periodType;
+    private final TreeMap<Long, int[]> originalDays = new TreeMap<>();
+    private final TreeMap<Long, int[]> scheduledDays = new TreeMap<>();
+    private int questDataCount;
+    private int timeSpent;
+
+    private long streakDate = -1;
+    private int streak;
+
+    /**
+     * @param periodType null for fixed repeating quests, which have to be completed on the day
+     *                   they were scheduled for, otherwise the period flexible quests can move in
+     */
+    public RepeatingQuestProgress(Recurrence.RecurrenceType periodType) {
+        this.periodType = periodType;
+    }
+
+    public void add(QuestData questData) {
+        update(questData, 1);
+    }
+
+    public void remove(QuestData questData) {
+        update(questData, -1);
+    }
+
+    private void update(QuestData questData, int delta) {
+        if (questData == null) {
+            return;
+        }
+        questDataCount += delta;
+        streakDate = -1;
+        if (questData.isComplete() && questData.getDuration() != null) {
+            timeSpent += delta * questData.getDuration();
+        }
+        Long originalDate = questData.getOriginalScheduledDate();
+        if (originalDate != null) {
+            int state = !questData.isComplete() ? INCOMPLETE : isOnTime(questData) ? SUCCESSFUL : COMPLETED_LATE;
+            updateCount(originalDays, originalDate, state, delta);
+        }
+        Long scheduledDate = questData.getScheduledDate();
+        if (scheduledDate != null) {
+            updateCount(scheduledDays, scheduledDate, SCHEDULED, delta);
+            if (questData.isComplete()) {
+                updateCount(scheduledDays, scheduledDate, COMPLETED, delta);
+            }
+        }
+    }
+
+    private void updateCount(TreeMap<Long, int[]> days, long date, int index, int delta) {
+        int[] counts = days.get(date);
+        if (counts == null) {
+            counts = new int[3];
+            days.put(date, counts);
+        }
+        counts[index] += delta;
+        if (counts[0] == 0 && counts[1] == 0 && counts[2] == 0) {
+            days.remove(date);
+        }
+    }
+
+    private boolean isOnTime(QuestData questData) {
+        Long scheduledDate = questData.getScheduledDate();
+        if (scheduledDate == null) {
+            return false;
+        }
+        if (periodType == null) {
+            return scheduledDate.equals(questData.getOriginalScheduledDate());
+        }
+        LocalDate originalDate = new LocalDate(questData.getOriginalScheduledDate(), DateTimeZone.UTC);
+        LocalDate periodStart = periodType == Recurrence.RecurrenceType.MONTHLY ?
+                originalDate.dayOfMonth().withMinimumValue() :
+                originalDate.dayOfWeek().withMinimumValue();
+        LocalDate periodEnd = periodType == Recurrence.RecurrenceType.MONTHLY ?
+                periodStart.dayOfMonth().withMaximumValue() :
+                periodStart.dayOfWeek().withMaximumValue();
+        return scheduledDate >= toStartOfDayUTC(periodStart).getTime() && scheduledDate <= toStartOfDayUTC(periodEnd).getTime();
+    }
+
+    public int getQuestDataCount() {
+        return questDataCount;
+    }
+
+    public int getTimeSpent() {
+        return timeSpent;
+    }
+
+    /**
+     * Quests completed on time in a row, going back from today. Quests of today that are not
+     * completed yet do not break it. Kept until the day or the counters change.
+     */
+    public int getStreak(LocalDate currentDate) {
+        long today = toStartOfDayUTC(currentDate).getTime();
+        if (streakDate == today) {
+            return streak;
+        }
+        int result = 0;
+        for (Map.Entry<Long, int[]> day : originalDays.headMap(today, true).descendingMap().entrySet()) {
+            int[] counts = day.getValue();
+            result += counts[SUCCESSFUL];
+            int missed = counts[COMPLETED_LATE] + (day.getKey() == today ? 0 : counts[INCOMPLETE]);
+            if (missed > 0) {
+                break;
+            }
+        }
+        streakDate = today;
+        streak = result;
+        return result;
+    }
+
+    public List<PeriodHistory> getPeriodHistories(List<Pair<LocalDate, LocalDate>> periods, int frequency) {
+        List<PeriodHistory> result = new ArrayList<>();
+        for (Pair<LocalDate, LocalDate> period : periods) {
+            long start = toStartOfDayUTC(period.first).getTime();
+            long end = toStartOfDayUTC(period.second).getTime();
+            PeriodHistory periodHistory = new PeriodHistory(start, end, frequency);
+            for (int[] counts : scheduledDays.subMap(start, true, end, true).values()) {
+                for (int i = 0; i < counts[COMPLETED]; i++) {
+                    periodHistory.increaseCompletedCount();
+                }
+                for (int i = 0; i < counts[SCHEDULED]; i++) {
+                    periodHistory.increaseScheduledCount();
+                }
+            }
+            result.add(periodHistory);
+        }
+        return result;
+    }
+
+    /**
+     * @return the first day from currentDate that has a quest which is not completed yet
+     */
+    public Date getNextScheduledDate(LocalDate currentDate) {
+        for (Map.Entry<Long, int[]> day : scheduledDays.tailMap(toStartOfDayUTC(currentDate).getTime(), true).entrySet()) {
+            int[] counts = day.getValue();
+            if (counts[SCHEDULED] > counts[COMPLETED]) {
+                return new Date(day.getKey());
+            }
+        }
+        return null;
+    }
+}
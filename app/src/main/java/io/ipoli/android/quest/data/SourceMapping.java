@@ -2,16 +2,18 @@ package io.ipoli.android.quest.data;
 
 import io.ipoli.android.app.persistence.PersistedObject;
 import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.mapper.GenerateMapper;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 5/11/16.
  */
+@GenerateMapper
 public class SourceMapping extends PersistedObject {
 
     private String androidCalendar;
 
-    private SourceMapping() {
+    SourceMapping() {
     }
 
     public static SourceMapping fromGoogleCalendar(long eventId) {
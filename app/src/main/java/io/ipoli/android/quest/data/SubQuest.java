@@ -6,11 +6,13 @@ import java.util.Date;
 
 import io.ipoli.android.app.persistence.PersistedObject;
 import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.mapper.GenerateMapper;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 3/26/16.
  */
+@GenerateMapper
 public class SubQuest extends PersistedObject {
 
     private String name;
@@ -6,7 +6,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
-import android.support.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -21,9 +22,10 @@ import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -36,11 +38,12 @@ import io.ipoli.android.app.App;
 import io.ipoli.android.app.BaseFragment;
 import io.ipoli.android.app.events.EventSource;
 import io.ipoli.android.app.events.StartQuickAddEvent;
-import io.ipoli.android.app.scheduling.DiscreteDistribution;
+import io.ipoli.android.app.scheduling.CompletionHistory;
+import io.ipoli.android.app.scheduling.DayScheduler;
+import io.ipoli.android.app.scheduling.DaySchedulingSupport;
+import io.ipoli.android.app.scheduling.PosteriorCache;
 import io.ipoli.android.app.scheduling.PosteriorEstimator;
-import io.ipoli.android.app.scheduling.ProbabilisticTaskScheduler;
 import io.ipoli.android.app.scheduling.Task;
-import io.ipoli.android.app.scheduling.TimeBlock;
 import io.ipoli.android.app.ui.calendar.CalendarDayView;
 import io.ipoli.android.app.ui.calendar.CalendarEvent;
 import io.ipoli.android.app.ui.calendar.CalendarLayout;
@@ -99,6 +102,12 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
     @Inject
     RepeatingQuestScheduler repeatingQuestScheduler;
 
+    @Inject
+    PosteriorCache posteriorCache;
+
+    @Inject
+    CompletionHistory completionHistory;
+
     private int movingQuestPosition;
 
     private UnscheduledQuestViewModel movingViewModel;
@@ -119,6 +128,11 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
     List<Quest> futurePlaceholderQuests = new ArrayList<>();
     private PosteriorEstimator posteriorEstimator;
 
+    private final ExecutorService schedulingExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Future<?> proposeSlotsFuture;
+    private int proposeSlotsGeneration;
+
     public static DayViewFragment newInstance(LocalDate date) {
         DayViewFragment fragment = new DayViewFragment();
         Bundle args = new Bundle();
@@ -167,15 +181,10 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
         calendarDayView.setOnHourCellLongClickListener(this);
         calendarDayView.scrollToNow();
 
-        PosteriorEstimator.PosteriorSettings posteriorSettings = PosteriorEstimator.PosteriorSettings.create()
-                .setWorkDays(localStorage.readIntSet(Constants.KEY_AVATAR_WORK_DAYS, new HashSet<>(Constants.DEFAULT_PLAYER_WORK_DAYS)))
-                .setSleepStartMinute(localStorage.readInt(Constants.KEY_AVATAR_SLEEP_START_MINUTE, Constants.DEFAULT_PLAYER_SLEEP_START_MINUTE))
-                .setSleepEndMinute(localStorage.readInt(Constants.KEY_AVATAR_SLEEP_END_MINUTE, Constants.DEFAULT_PLAYER_SLEEP_END_MINUTE))
-                .setWorkStartMinute(localStorage.readInt(Constants.KEY_AVATAR_WORK_START_MINUTE, Constants.DEFAULT_PLAYER_WORK_START_MINUTE))
-                .setWorkEndMinute(localStorage.readInt(Constants.KEY_AVATAR_WORK_END_MINUTE, Constants.DEFAULT_PLAYER_WORK_END_MINUTE))
-                .setMostProductiveTimesOfDay(localStorage.readStringSet(Constants.KEY_AVATAR_MOST_PRODUCTIVE_TIMES, Constants.DEFAULT_PLAYER_PRODUCTIVE_TIME_NAMES));
+        PosteriorEstimator.PosteriorSettings posteriorSettings = DaySchedulingSupport.createPosteriorSettings(localStorage);
 
-        posteriorEstimator = new PosteriorEstimator(posteriorSettings, currentDate, new Random(Constants.RANDOM_SEED));
+        posteriorEstimator = new PosteriorEstimator(posteriorSettings, currentDate,
+                DaySchedulingSupport.createDayRandom(currentDate).split("posterior"), posteriorCache, completionHistory);
 
         if (!currentDate.isEqual(new LocalDate())) {
             calendarDayView.hideTimeLine();
@@ -278,6 +287,7 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
 
     @Override
     public void onDestroyView() {
+        cancelProposeSlots();
         unbinder.unbind();
         questPersistenceService.removeAllListeners();
         repeatingQuestPersistenceService.removeAllListeners();
@@ -351,13 +361,11 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
             tasks.add(new Task(vm.getStartMinute(), vm.getDuration()));
         }
 
-        ProbabilisticTaskScheduler probabilisticTaskScheduler = new ProbabilisticTaskScheduler(0, 24, tasks, new Random(Constants.RANDOM_SEED));
-
-        List<QuestCalendarViewModel> proposedEvents = new ArrayList<>();
+        List<DayScheduler.Request<Quest>> requests = new ArrayList<>();
         for (Quest q : schedule.getUnscheduledQuests()) {
             unscheduledViewModels.add(new UnscheduledQuestViewModel(q));
             if (!q.shouldBeDoneMultipleTimesPerDay()) {
-                proposeSlotForQuest(scheduledEvents, probabilisticTaskScheduler, proposedEvents, q);
+                requests.add(new DayScheduler.Request<>(q, DaySchedulingSupport.createRequestKey(q), q.getDuration(), posteriorEstimator.posteriorFor(q)));
             }
         }
 
@@ -366,43 +374,47 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
 
         setUnscheduledQuestsHeight();
         calendarDayView.onMinuteChanged();
-    }
-
-    private void proposeSlotForQuest(List<QuestCalendarViewModel> scheduledEvents, ProbabilisticTaskScheduler probabilisticTaskScheduler, List<QuestCalendarViewModel> proposedEvents, Quest q) {
-        DiscreteDistribution posterior = posteriorEstimator.posteriorFor(q);
-
-        List<TimeBlock> timeBlocks = probabilisticTaskScheduler.chooseSlotsFor(new Task(q.getDuration()), 15, posterior);
 
-        TimeBlock timeBlock = chooseNonOverlappingTimeBlock(proposedEvents, timeBlocks);
+        proposeSlots(scheduledEvents, tasks, requests);
+    }
 
-        if (timeBlock != null) {
-            timeBlocks.remove(0);
-            QuestCalendarViewModel vm = QuestCalendarViewModel.createWithProposedTime(q, timeBlock.getStartMinute(), timeBlocks);
-            scheduledEvents.add(vm);
-            proposedEvents.add(vm);
+    private void proposeSlots(List<QuestCalendarViewModel> scheduledEvents, List<Task> tasks, List<DayScheduler.Request<Quest>> requests) {
+        cancelProposeSlots();
+        if (requests.isEmpty()) {
+            return;
         }
+
+        DayScheduler<Quest> dayScheduler = new DayScheduler<>(0, 24, tasks, 15, DaySchedulingSupport.createDayRandom(currentDate).split("slots"));
+        int generation = proposeSlotsGeneration;
+        proposeSlotsFuture = schedulingExecutor.submit(() -> {
+            List<DayScheduler.Proposal<Quest>> proposals = dayScheduler.schedule(requests, Constants.DAY_SCHEDULING_TIME_BUDGET_MILLIS);
+            mainHandler.post(() -> {
+                // a newer schedule or the view going away makes these proposals stale
+                if (generation != proposeSlotsGeneration || calendarContainer == null || calendarContainer.isInEditMode()) {
+                    return;
+                }
+                List<QuestCalendarViewModel> events = new ArrayList<>(scheduledEvents);
+                for (DayScheduler.Proposal<Quest> proposal : proposals) {
+                    events.add(QuestCalendarViewModel.createWithProposedTime(proposal.getItem(),
+                            proposal.getSlot().getStartMinute(), proposal.getAlternatives()));
+                }
+                calendarAdapter.updateEvents(events);
+            });
+        });
     }
 
-    @Nullable
-    private TimeBlock chooseNonOverlappingTimeBlock(List<QuestCalendarViewModel> proposedEvents, List<TimeBlock> timeBlocks) {
-        for (TimeBlock tb : timeBlocks) {
-            if (!doOverlap(proposedEvents, tb)) {
-                return tb;
-            }
+    private void cancelProposeSlots() {
+        proposeSlotsGeneration++;
+        if (proposeSlotsFuture != null) {
+            proposeSlotsFuture.cancel(true);
+            proposeSlotsFuture = null;
         }
-        return null;
     }
 
-    private boolean doOverlap(List<QuestCalendarViewModel> proposedEvents, TimeBlock tb) {
-        for (QuestCalendarViewModel vm : proposedEvents) {
-            int sm = vm.getStartMinute();
-            int em = vm.getStartMinute() + vm.getDuration() - 1;
-
-            if (tb.doOverlap(sm, em)) {
-                return true;
-            }
-        }
-        return false;
+    @Override
+    public void onDestroy() {
+        schedulingExecutor.shutdownNow();
+        super.onDestroy();
     }
 
     @Override
@@ -449,7 +461,7 @@ public class DayViewFragment extends BaseFragment implements CalendarListener<Qu
     @Subscribe
     public void onRescheduleQuest(RescheduleQuestEvent e) {
         if (e.calendarEvent.useNextSlot(calendarAdapter.getEventsWithProposedSlots())) {
-            calendarAdapter.notifyDataSetChanged();
+            calendarAdapter.onEventMoved(e.calendarEvent);
             calendarDayView.smoothScrollToTime(Time.of(e.calendarEvent.getStartMinute()));
         } else {
             Toast.makeText(getContext(), "No more suggestions", Toast.LENGTH_SHORT).show();
@@ -15,7 +15,6 @@ import com.squareup.otto.Subscribe;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 
 import javax.inject.Inject;
 
@@ -34,10 +33,9 @@ import io.ipoli.android.app.ui.events.FabMenuTappedEvent;
 import io.ipoli.android.quest.adapters.InboxAdapter;
 import io.ipoli.android.quest.data.Quest;
 import io.ipoli.android.quest.events.ScheduleQuestForTodayEvent;
-import io.ipoli.android.quest.persistence.OnDataChangedListener;
 import io.ipoli.android.quest.persistence.QuestPersistenceService;
 
-public class InboxFragment extends BaseFragment implements OnDataChangedListener<List<Quest>> {
+public class InboxFragment extends BaseFragment {
 
     @Inject
     Bus eventBus;
@@ -77,7 +75,7 @@ public class InboxFragment extends BaseFragment implements OnDataChangedListener
         InboxAdapter inboxAdapter = new InboxAdapter(getContext(), new ArrayList<>(), eventBus);
         questList.setAdapter(inboxAdapter);
 
-        questPersistenceService.listenForInboxQuests(this);
+        questPersistenceService.listenForInboxQuests(inboxAdapter);
         fabMenu.addFabClickListener(name -> eventBus.post(new FabMenuTappedEvent(name, EventSource.INBOX)));
         return view;
     }
@@ -99,11 +97,6 @@ public class InboxFragment extends BaseFragment implements OnDataChangedListener
         super.onDestroyView();
     }
 
-    private void updateQuests(List<Quest> quests) {
-        InboxAdapter inboxAdapter = new InboxAdapter(getContext(), quests, eventBus);
-        questList.setAdapter(inboxAdapter);
-    }
-
     @Override
     public void onResume() {
         super.onResume();
@@ -123,9 +116,4 @@ public class InboxFragment extends BaseFragment implements OnDataChangedListener
         questPersistenceService.update(q);
         Toast.makeText(getContext(), "Quest scheduled for today", Toast.LENGTH_SHORT).show();
     }
-
-    @Override
-    public void onDataChanged(List<Quest> quests) {
-        updateQuests(quests);
-    }
 }
\ No newline at end of file
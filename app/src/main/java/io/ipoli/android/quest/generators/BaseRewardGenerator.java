@@ -1,5 +1,7 @@
 package io.ipoli.android.quest.generators;
 
+import java.util.Random;
+
 import io.ipoli.android.Constants;
 import io.ipoli.android.app.utils.LocalStorage;
 
@@ -10,6 +12,7 @@ import io.ipoli.android.app.utils.LocalStorage;
 public abstract class BaseRewardGenerator implements RewardGenerator {
 
     private final LocalStorage localStorage;
+    protected final Random random = new Random();
 
     public BaseRewardGenerator(LocalStorage localStorage) {
         this.localStorage = localStorage;
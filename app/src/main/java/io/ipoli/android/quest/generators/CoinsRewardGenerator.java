@@ -1,7 +1,5 @@
 package io.ipoli.android.quest.generators;
 
-import java.util.Random;
-
 import io.ipoli.android.app.utils.LocalStorage;
 import io.ipoli.android.challenge.data.Challenge;
 import io.ipoli.android.quest.data.Quest;
@@ -26,7 +24,7 @@ public class CoinsRewardGenerator extends BaseRewardGenerator {
     @Override
     public long generate(Quest quest) {
         long[] rewards = new long[]{2L, 5L, 7L, 10L};
-        long reward = rewards[new Random().nextInt(rewards.length)];
+        long reward = rewards[random.nextInt(rewards.length)];
         if (quest.getPriority() == Quest.PRIORITY_MOST_IMPORTANT_FOR_DAY) {
             reward *= 2;
         }
@@ -36,6 +34,6 @@ public class CoinsRewardGenerator extends BaseRewardGenerator {
     @Override
     public long generateForDailyChallenge() {
         long[] rewards = new long[]{20L, 30L, 40L, 50L, 80L};
-        return (long) (rewards[new Random().nextInt(rewards.length)] * getCoinsBonusMultiplier());
+        return (long) (rewards[random.nextInt(rewards.length)] * getCoinsBonusMultiplier());
     }
 }
@@ -1,7 +1,5 @@
 package io.ipoli.android.quest.generators;
 
-import java.util.Random;
-
 import io.ipoli.android.app.utils.LocalStorage;
 import io.ipoli.android.challenge.data.Challenge;
 import io.ipoli.android.quest.data.Quest;
@@ -19,7 +17,7 @@ public class ExperienceRewardGenerator extends BaseRewardGenerator {
     @Override
     public long generate(Challenge challenge) {
         long[] rewards = new long[]{20L, 30L, 50L, 80L, 100L};
-        long reward = rewards[new Random().nextInt(rewards.length)] * 2;
+        long reward = rewards[random.nextInt(rewards.length)] * 2;
         reward *= challenge.getDifficulty();
         return (long) (reward * getXpBonusMultiplier());
     }
@@ -27,7 +25,7 @@ public class ExperienceRewardGenerator extends BaseRewardGenerator {
     @Override
     public long generate(Quest quest) {
         long[] rewards = new long[]{5L, 10L, 15L, 20L, 30L};
-        long reward = rewards[new Random().nextInt(rewards.length)];
+        long reward = rewards[random.nextInt(rewards.length)];
         if (quest.getPriority() == Quest.PRIORITY_MOST_IMPORTANT_FOR_DAY) {
             reward *= 2;
         }
@@ -37,6 +35,6 @@ public class ExperienceRewardGenerator extends BaseRewardGenerator {
     @Override
     public long generateForDailyChallenge() {
         long[] rewards = new long[]{20L, 30L, 50L, 80L, 100L};
-        return (long) (rewards[new Random().nextInt(rewards.length)] * getXpBonusMultiplier());
+        return (long) (rewards[random.nextInt(rewards.length)] * getXpBonusMultiplier());
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package io.ipoli.android.quest.persistence;
+
+import org.joda.time.LocalDate;
+
+import java.util.List;
+
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Walks the completed quests of a date range one page at a time, so long ranges never
+ * hold more than a page of quests in memory
+ */
+public class CompletedQuestStream {
+
+    public interface Listener {
+        void onPage(List<Quest> quests);
+
+        void onEnd();
+    }
+
+    private final QuestPersistenceService questPersistenceService;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int pageSize;
+    private final QuestProjection projection;
+    private boolean isCancelled;
+
+    public CompletedQuestStream(QuestPersistenceService questPersistenceService, LocalDate startDate, LocalDate endDate, int pageSize, QuestProjection projection) {
+        this.questPersistenceService = questPersistenceService;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.pageSize = pageSize;
+        this.projection = projection;
+        this.isCancelled = false;
+    }
+
+    public void start(Listener listener) {
+        loadPage(null, listener);
+    }
+
+    /**
+     * Pages that arrive after cancel() are dropped
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    private void loadPage(QuestCursor cursor, Listener listener) {
+        questPersistenceService.findCompletedPage(startDate, endDate, cursor, pageSize, projection, page -> {
+            if (isCancelled) {
+                return;
+            }
+            listener.onPage(page.getQuests());
+            if (page.hasNext()) {
+                loadPage(page.getNextCursor(), listener);
+            } else {
+                listener.onEnd();
+            }
+        });
+    }
+}
@@ -11,23 +11,28 @@ import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 import com.squareup.otto.Bus;
 
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 import io.ipoli.android.app.persistence.BaseFirebasePersistenceService;
-import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.app.persistence.BatchWriter;
+import io.ipoli.android.app.persistence.QueryListenerRegistry;
+import io.ipoli.android.mapper.ModelMapper;
 import io.ipoli.android.quest.data.Quest;
-import io.ipoli.android.quest.data.QuestData;
 import io.ipoli.android.quest.data.QuestReminder;
-import io.ipoli.android.reminder.data.Reminder;
+import io.ipoli.android.quest.data.Quest_Mapper;
 
 import static io.ipoli.android.app.utils.DateUtils.toStartOfDay;
 import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
@@ -38,8 +43,11 @@ import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
  */
 public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceService<Quest> implements QuestPersistenceService {
 
-    public FirebaseQuestPersistenceService(Bus eventBus) {
-        super(eventBus);
+    private final QuestDataPopulator questDataPopulator;
+
+    public FirebaseQuestPersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter) {
+        super(eventBus, listenerRegistry, batchWriter);
+        this.questDataPopulator = new QuestDataPopulator(() -> getCollectionReference().push().getKey());
     }
 
     @Override
@@ -48,6 +56,11 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
         };
     }
 
+    @Override
+    protected ModelMapper<Quest> getModelMapper() {
+        return Quest_Mapper.INSTANCE;
+    }
+
     @Override
     protected Class<Quest> getModelClass() {
         return Quest.class;
@@ -65,11 +78,21 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
 
     @Override
     public void listenForInboxQuests(OnDataChangedListener<List<Quest>> listener) {
-        listenForListChange(getPlayerReference().child("inboxQuests"), listener);
+        listenForSharedListChange(getPlayerReference().child("inboxQuests"), listener, null, null);
+    }
+
+    @Override
+    public void listenForInboxQuests(OnListChangedListener<Quest> listener) {
+        // without a sort the list is ordered by id, the key order the inbox always had
+        listenForIncrementalListChange(getPlayerReference().child("inboxQuests"), listener, null, null);
     }
 
     @Override
     public void listenForPlannedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener) {
+        if (!QuestRetention.isDayQuestsRetained(startDate)) {
+            listenForPlannedFromQuestsBetween(startDate, endDate, listener);
+            return;
+        }
         String start = String.valueOf(toStartOfDayUTC(startDate).getTime());
         String end = String.valueOf(toStartOfDayUTC(endDate).getTime());
         Query query = getPlayerReference().child("dayQuests")
@@ -99,8 +122,11 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
                 SortedMap<LocalDate, List<Quest>> result = new TreeMap<>();
                 for (Map.Entry<String, Map<String, Quest>> entry : value.entrySet()) {
                     List<Quest> questsForDate = new ArrayList<>(entry.getValue().values());
+                    for (Quest quest : questsForDate) {
+                        quest.markClean();
+                    }
                     Collections.sort(questsForDate, createDefaultQuestSortQuery()::sort);
-                    result.put(new LocalDate(Long.valueOf(entry.getKey())), questsForDate);
+                    result.put(new LocalDate(Long.valueOf(entry.getKey()), DateTimeZone.UTC), questsForDate);
                 }
                 return result;
             }
@@ -114,12 +140,68 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
         listenForQuery(query, valueListener, listener);
     }
 
+    private void listenForPlannedFromQuestsBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener) {
+        Query query = getCollectionReference().orderByChild("scheduled")
+                .startAt(toStartOfDayUTC(startDate).getTime())
+                .endAt(toStartOfDayUTC(endDate).getTime());
+
+        ValueEventListener valueListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                SortedMap<LocalDate, List<Quest>> result = new TreeMap<>();
+                for (Quest quest : getListFromMapSnapshot(dataSnapshot)) {
+                    LocalDate date = new LocalDate(quest.getScheduled(), DateTimeZone.UTC);
+                    if (!result.containsKey(date)) {
+                        result.put(date, new ArrayList<>());
+                    }
+                    result.get(date).add(quest);
+                }
+                for (List<Quest> questsForDate : result.values()) {
+                    Collections.sort(questsForDate, createDefaultQuestSortQuery()::sort);
+                }
+                listener.onDataChanged(result);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        };
+
+        listenForQuery(query, valueListener, listener);
+    }
+
     @Override
     public void findAllCompletedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<List<Quest>> listener) {
         Query query = getCollectionReference().orderByChild("completedAt").startAt(toStartOfDay(startDate).getTime()).endAt(toStartOfDay(endDate).getTime());
         listenForSingleListChange(query, listener);
     }
 
+    @Override
+    public void findCompletedPage(LocalDate startDate, LocalDate endDate, QuestCursor cursor, int pageSize, QuestProjection projection, OnDataChangedListener<QuestPage> listener) {
+        Query query = getCollectionReference().orderByChild("completedAt");
+        query = cursor == null ?
+                query.startAt(QuestQueries.getCompletedPageStart(startDate)) :
+                query.startAt(cursor.getCompletedAt(), cursor.getQuestId());
+        query = query.endAt(QuestQueries.getCompletedPageEnd(endDate)).limitToFirst(QuestQueries.getCompletedPageLimit(cursor, pageSize));
+
+        listenForSingleChange(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, Object> questsById = new LinkedHashMap<>();
+                for (DataSnapshot questSnapshot : dataSnapshot.getChildren()) {
+                    questsById.put(questSnapshot.getKey(), questSnapshot.getValue());
+                }
+                listener.onDataChanged(QuestQueries.createCompletedPage(questsById, cursor, pageSize, projection, FirebaseQuestPersistenceService::decodeQuest));
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
+    }
+
     @Override
     public void findAllPlannedAndStarted(OnDataChangedListener<List<Quest>> listener) {
         Query query = getCollectionReference().orderByChild("scheduled").startAt(toStartOfDayUTC(LocalDate.now()).getTime());
@@ -134,49 +216,48 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
 
     @Override
     public void listenForAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(currentDate));
-        listenForListChange(query, listener);
+        if (!QuestRetention.isDayQuestsRetained(currentDate)) {
+            listenForListChange(createScheduledForDateQuery(currentDate), listener);
+            return;
+        }
+        DatabaseReference ref = getPlayerReference().child("dayQuests").child(QuestQueries.createDayKey(currentDate));
+        listenForSharedListChange(ref, listener, null, null);
     }
 
     @Override
     public void findAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(currentDate));
+        Query query = createDayQuestsQuery(currentDate);
         listenForSingleListChange(query, listener, null, createDefaultQuestSortQuery());
     }
 
     @Override
     public void listenForAllNonAllDayCompletedForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(currentDate));
-        listenForListChange(query, listener, Quest::isCompleted);
+        if (!QuestRetention.isDayQuestsRetained(currentDate)) {
+            listenForListChange(createScheduledForDateQuery(currentDate), listener, Quest::isCompleted);
+            return;
+        }
+        DatabaseReference ref = getPlayerReference().child("dayQuests").child(QuestQueries.createDayKey(currentDate));
+        listenForSharedListChange(ref, listener, Quest::isCompleted, null);
     }
 
     @Override
     public void listenForAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(currentDate));
-        listenForListChange(query, listener, q -> !q.isCompleted(), createDefaultQuestSortQuery());
+        if (!QuestRetention.isDayQuestsRetained(currentDate)) {
+            listenForListChange(createScheduledForDateQuery(currentDate), listener, q -> !q.isCompleted(), createDefaultQuestSortQuery());
+            return;
+        }
+        DatabaseReference ref = getPlayerReference().child("dayQuests").child(QuestQueries.createDayKey(currentDate));
+        listenForSharedListChange(ref, listener, q -> !q.isCompleted(), createDefaultQuestSortQuery());
     }
 
     @NonNull
-    private QuerySort<Quest> createDefaultQuestSortQuery() {
-        return (q1, q2) -> {
-            if (q1.shouldBeDoneMultipleTimesPerDay() || q2.shouldBeDoneMultipleTimesPerDay()) {
-                return Integer.compare(q1.getTimesADay(), q2.getTimesADay());
-            }
-            int q1Start = q1.getStartMinute();
-            if (q1Start < 0) {
-                return -1;
-            }
-            int q2Start = q2.getStartMinute();
-            if (q2Start < 0) {
-                return 1;
-            }
-            return q1Start - q2Start;
-        };
+    protected QuerySort<Quest> createDefaultQuestSortQuery() {
+        return QuestOrder::compareByStartMinute;
     }
 
     @Override
     public void findAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(currentDate));
+        Query query = createDayQuestsQuery(currentDate);
         listenForSingleListChange(query, listener, q -> !q.isCompleted(), createDefaultQuestSortQuery());
     }
 
@@ -200,13 +281,26 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
 
     @Override
     public void countAllCompletedWithPriorityForDate(int priority, LocalDate date, OnDataChangedListener<Long> listener) {
-        Query query = getCollectionReference().orderByChild("scheduled").equalTo(toStartOfDayUTC(date).getTime());
-        listenForSingleCountChange(query, listener, q -> q.getCompletedAtDate() != null && q.getPriority() == priority);
+        Query query = getQuestIndexesReference().child("completed").child(QuestQueries.createDayKey(date))
+                .orderByValue()
+                .equalTo(priority);
+        listenForSingleChange(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                listener.onDataChanged(dataSnapshot.getChildrenCount());
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
     }
 
     @Override
     public void findQuestRemindersAtStartTime(long startTime, OnDataChangedListener<List<QuestReminder>> listener) {
         Query query = getPlayerReference().child("questReminders").child(String.valueOf(startTime));
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(new ValueEventListener() {
 
             @Override
@@ -231,6 +325,7 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
     @Override
     public void findNextReminderTime(OnDataChangedListener<Long> listener) {
         Query query = getPlayerReference().child("questReminders").orderByKey().startAt(String.valueOf(new Date().getTime())).limitToFirst(1);
+        flushPendingWrites();
         query.addListenerForSingleValueEvent(new ValueEventListener() {
 
             @Override
@@ -258,13 +353,126 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
                 (q1, q2) -> Integer.compare(q1.getStartMinute(), q2.getStartMinute()));
     }
 
+    /**
+     * Follows the name token index, so the quests are found again whenever one is created,
+     * renamed, completed or moved to another challenge. Only the entries under the tokens that
+     * start with the longest word of the search text are read.
+     */
     @Override
     public void findIncompleteNotRepeatingNotForChallenge(String searchText, String challengeId, OnDataChangedListener<List<Quest>> listener) {
-        listenForListChange(getCollectionReference(), listener, q -> !challengeId.equals(q.getChallengeId()) &&
-                q.getCompletedAtDate() == null &&
-                !q.isFromRepeatingQuest() &&
-                q.getName().toLowerCase().contains(searchText.toLowerCase())
-        );
+        String text = searchText.toLowerCase();
+        String token = QuestNameSearch.findSearchToken(text);
+        Query query = token == null ?
+                getQuestIndexesReference().child("incompleteNotRepeating") :
+                getQuestIndexesReference().child("nameTokens").orderByKey().startAt(token).endAt(token + QuestNameSearch.PREFIX_END);
+        int[] generation = {0};
+        listenForQuery(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Set<String> questIds = new LinkedHashSet<>();
+                if (token == null) {
+                    addMatchingQuestIds(dataSnapshot, text, challengeId, questIds);
+                } else {
+                    for (DataSnapshot tokenEntries : dataSnapshot.getChildren()) {
+                        addMatchingQuestIds(tokenEntries, text, challengeId, questIds);
+                    }
+                }
+                // quests found for an older version of the index must not replace newer ones
+                int currentGeneration = ++generation[0];
+                findAllByIds(new ArrayList<>(questIds), quests -> {
+                    if (currentGeneration == generation[0]) {
+                        listener.onDataChanged(filterIncompleteNotRepeatingNotForChallenge(quests, text, challengeId));
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        }, listener);
+    }
+
+    private void addMatchingQuestIds(DataSnapshot entries, String text, String challengeId, Set<String> questIds) {
+        for (DataSnapshot entry : entries.getChildren()) {
+            String name = entry.child("name").getValue(String.class);
+            String questChallengeId = entry.child("challengeId").getValue(String.class);
+            if (QuestNameSearch.matches(name, questChallengeId, text, challengeId)) {
+                questIds.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Index entries of quests written without their stored name can be stale until the next rebuild
+     */
+    private List<Quest> filterIncompleteNotRepeatingNotForChallenge(List<Quest> quests, String text, String challengeId) {
+        List<Quest> result = new ArrayList<>();
+        for (Quest quest : quests) {
+            if (!quest.isCompleted() && !quest.isFromRepeatingQuest() &&
+                    QuestNameSearch.matches(quest.getName(), quest.getChallengeId(), text, challengeId)) {
+                result.add(quest);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void rebuildIndexes(OnDataChangedListener<Boolean> listener) {
+        listenForSingleChange(getQuestIndexesReference(), new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                List<String> indexedQuestPaths = QuestQueries.collectIndexedQuestPaths(toTree(dataSnapshot));
+                listenForSingleListChange(getCollectionReference(), quests -> {
+                    Map<String, Object> data = new HashMap<>();
+                    questDataPopulator.populateQuestIndexes(quests, indexedQuestPaths, data);
+                    updatePlayerData(data, error -> listener.onDataChanged(error == null));
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                listener.onDataChanged(false);
+            }
+        });
+    }
+
+    private void findAllByIds(List<String> questIds, OnDataChangedListener<List<Quest>> listener) {
+        if (questIds.isEmpty()) {
+            listener.onDataChanged(new ArrayList<>());
+            return;
+        }
+        Quest[] quests = new Quest[questIds.size()];
+        int[] remaining = {questIds.size()};
+        for (int i = 0; i < questIds.size(); i++) {
+            int index = i;
+            listenForSingleChange(getCollectionReference().child(questIds.get(i)), new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot dataSnapshot) {
+                    quests[index] = getModelFromSnapshot(dataSnapshot);
+                    onQuestFound();
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    onQuestFound();
+                }
+
+                private void onQuestFound() {
+                    remaining[0]--;
+                    if (remaining[0] > 0) {
+                        return;
+                    }
+                    List<Quest> result = new ArrayList<>();
+                    for (Quest quest : quests) {
+                        if (quest != null) {
+                            result.add(quest);
+                        }
+                    }
+                    listener.onDataChanged(result);
+                }
+            });
+        }
     }
 
     @Override
@@ -302,71 +510,81 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
         query.addChildEventListener(childListener);
     }
 
+    @Override
+    public void compact() {
+        deleteBucketsBefore("dayQuests", toStartOfDayUTC(QuestRetention.getDayQuestsHorizon()).getTime());
+        deleteBucketsBefore("questReminders", QuestRetention.getRemindersCutoff());
+        deleteDeletedQuestsBefore(QuestRetention.getDeletedQuestsCutoff());
+    }
+
+    private void deleteDeletedQuestsBefore(long time) {
+        Query query = getPlayerReference().child("deletedQuests").orderByValue().endAt(time - 1);
+        listenForSingleChange(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, Object> data = QuestQueries.createDeleteChildrenData("deletedQuests", getChildKeys(dataSnapshot));
+                if (!data.isEmpty()) {
+                    updatePlayerData(data);
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
+    }
+
+    private void deleteBucketsBefore(String bucketName, long time) {
+        Query query = getPlayerReference().child(bucketName).orderByKey().endAt(QuestQueries.getBucketsEnd(time));
+        listenForSingleChange(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, Object> data = QuestQueries.createDeleteChildrenData(bucketName, getChildKeys(dataSnapshot));
+                if (!data.isEmpty()) {
+                    updatePlayerData(data);
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
+    }
+
     @Override
     public void deleteRemindersAtTime(long startTime) {
-        getPlayerReference().child("questReminders").child(String.valueOf(startTime)).setValue(null);
+        Map<String, Object> data = new HashMap<>();
+        data.put("/questReminders/" + startTime, null);
+        updatePlayerData(data);
     }
 
     @Override
     public void save(Quest quest) {
         Map<String, Object> data = new HashMap<>();
         populateNewQuestData(quest, data);
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void populateNewQuestData(Quest quest, Map<String, Object> data) {
-        DatabaseReference questRef = getCollectionReference().push();
-        quest.setId(questRef.getKey());
-        if (quest.isCompleted()) {
-            addDayQuest(quest, data);
-        } else if (shouldMoveToInbox(quest)) {
-            data.put("/inboxQuests/" + quest.getId(), quest);
-        } else {
-            quest.setPreviousScheduledDate(quest.getScheduled());
-
-            addDayQuest(quest, data);
-
-            if (shouldAddQuestReminders(quest)) {
-                addQuestReminders(quest, data);
-            }
-        }
-        if (!StringUtils.isEmpty(quest.getChallengeId())) {
-            data.put("/challenges/" + quest.getChallengeId() + "/questsData/" + quest.getId(), new QuestData(quest));
-            if (StringUtils.isEmpty(quest.getRepeatingQuestId())) {
-                data.put("/challenges/" + quest.getChallengeId() + "/challengeQuests/" + quest.getId(), quest);
-            }
-        }
+        questDataPopulator.populateNewQuestData(quest, data);
+    }
 
-        data.put("/quests/" + quest.getId(), quest);
+    @Override
+    public void populateUpdateQuestData(Quest quest, Map<String, Object> data) {
+        questDataPopulator.populateUpdateQuestData(quest, data);
     }
 
     @Override
     public void populateDeleteQuestData(Quest quest, Map<String, Object> data) {
-        populateDeleteQuestDataFromRepeatingQuest(quest, data);
-        if (quest.isFromRepeatingQuest()) {
-            data.put("/repeatingQuests/" + quest.getRepeatingQuestId() + "/questsData/" + quest.getId(), null);
-        }
+        questDataPopulator.populateDeleteQuestData(quest, data);
     }
 
-
     @Override
     public void populateDeleteQuestDataFromRepeatingQuest(Quest quest, Map<String, Object> data) {
-        data.put("/inboxQuests/" + quest.getId(), null);
-        if (quest.getScheduled() != null) {
-            data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), null);
-        }
-
-        for (Reminder reminder : quest.getReminders()) {
-            data.put("/questReminders/" + String.valueOf(reminder.getStart()) + "/" + quest.getId(), null);
-        }
-
-        if (quest.isFromChallenge()) {
-            data.put("/challenges/" + quest.getChallengeId() + "/questsData/" + quest.getId(), null);
-            data.put("/challenges/" + quest.getChallengeId() + "/challengeQuests/" + quest.getId(), null);
-        }
-
-        data.put("/quests/" + quest.getId(), null);
+        questDataPopulator.populateDeleteQuestDataFromRepeatingQuest(quest, data);
     }
 
     @Override
@@ -375,21 +593,21 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
         for (Quest quest : quests) {
             populateNewQuestData(quest, data);
         }
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void update(List<Quest> quests) {
         Map<String, Object> data = new HashMap<>();
         for (Quest quest : quests) {
-            populateUpdateQuest(quest, data);
+            questDataPopulator.populateUpdateQuestData(quest, data);
         }
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void listenForDayQuestChange(LocalDate date, OnChangeListener<Void> onChangeListener) {
-        Query query = getPlayerReference().child("dayQuests").child(createDayQuestKey(date));
+        Query query = createDayQuestsQuery(date);
 
         ChildEventListener childListener = new ChildEventListener() {
 
@@ -422,103 +640,62 @@ public class FirebaseQuestPersistenceService extends BaseFirebasePersistenceServ
         query.addChildEventListener(childListener);
     }
 
-    @NonNull
-    private String createDayQuestKey(LocalDate date) {
-        return String.valueOf(toStartOfDayUTC(date).getTime());
+    private Query createDayQuestsQuery(LocalDate date) {
+        if (!QuestRetention.isDayQuestsRetained(date)) {
+            return createScheduledForDateQuery(date);
+        }
+        return getPlayerReference().child("dayQuests").child(QuestQueries.createDayKey(date));
+    }
+
+    private Query createScheduledForDateQuery(LocalDate date) {
+        return getCollectionReference().orderByChild("scheduled").equalTo(toStartOfDayUTC(date).getTime());
     }
 
-    private boolean shouldAddQuestReminders(Quest quest) {
-        return !quest.isCompleted() && quest.isScheduled() && !quest.getReminders().isEmpty() && !quest.isStarted();
+    private DatabaseReference getQuestIndexesReference() {
+        return getPlayerReference().child("questIndexes");
     }
 
     @Override
     public void delete(Quest quest) {
         Map<String, Object> data = new HashMap<>();
         populateDeleteQuestData(quest, data);
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void update(Quest quest) {
         Map<String, Object> data = new HashMap<>();
 
-        populateUpdateQuest(quest, data);
-        getPlayerReference().updateChildren(data);
+        questDataPopulator.populateUpdateQuestData(quest, data);
+        updatePlayerData(data);
     }
 
-    private void populateUpdateQuest(Quest quest, Map<String, Object> data) {
-        Long lastScheduled = quest.getPreviousScheduledDate();
-
-        // remove old day quest
-        if (lastScheduled != null) {
-            removeOldScheduledDate(quest, data, lastScheduled);
-        }
-
-        if (shouldMoveToInbox(quest)) {
-
-            // add inbox
-            data.put("/inboxQuests/" + quest.getId(), quest);
-
-        } else {
-
-            // remove inbox
-            data.put("/inboxQuests/" + quest.getId(), null);
-
-            addDayQuest(quest, data);
-        }
-
-        // remove reminders
-        removeOldReminders(quest, data);
-
-        quest.setReminderStartTimes(new ArrayList<>());
-        if (shouldAddQuestReminders(quest)) {
-            addQuestReminders(quest, data);
-        }
-
-        if (quest.getPreviousChallengeId() != null) {
-            String challengeId = quest.getPreviousChallengeId();
-            data.put("/challenges/" + challengeId + "/questsData/" + quest.getId(), null);
-            data.put("/challenges/" + challengeId + "/challengeQuests/" + quest.getId(), null);
-        }
-
-        if (quest.getChallengeId() != null) {
-            String challengeId = quest.getChallengeId();
-            data.put("/challenges/" + challengeId + "/questsData/" + quest.getId(), new QuestData(quest));
-            data.put("/challenges/" + challengeId + "/challengeQuests/" + quest.getId(), quest);
-        }
-
-        if (quest.isFromRepeatingQuest()) {
-            String repeatingQuestId = quest.getRepeatingQuestId();
-            data.put("/repeatingQuests/" + repeatingQuestId + "/questsData/" + quest.getId(), new QuestData(quest));
-        }
-
-        quest.setPreviousScheduledDate(quest.getScheduled());
-        data.put("/quests/" + quest.getId(), quest);
+    private static Quest decodeQuest(Object value) {
+        Quest quest = Quest_Mapper.INSTANCE.fromValue(value);
+        quest.markClean();
+        return quest;
     }
 
-    private void addQuestReminders(Quest quest, Map<String, Object> data) {
-        for (Reminder reminder : quest.getReminders()) {
-            reminder.calculateStartTime(quest);
-            quest.addReminderStartTime(reminder.getStart());
-            data.put("/questReminders/" + reminder.getStart() + "/" + quest.getId(), new QuestReminder(quest, reminder));
+    private static List<String> getChildKeys(DataSnapshot dataSnapshot) {
+        List<String> keys = new ArrayList<>();
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            keys.add(child.getKey());
         }
+        return keys;
     }
 
-    private void addDayQuest(Quest quest, Map<String, Object> data) {
-        data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), quest);
-    }
-
-    private void removeOldReminders(Quest quest, Map<String, Object> data) {
-        for (long startTime : quest.getReminderStartTimes()) {
-            data.put("/questReminders/" + String.valueOf(startTime) + "/" + quest.getId(), null);
+    /**
+     * Nested nodes as maps in query order, {@link DataSnapshot#getValue()} turns nodes with
+     * index like keys into lists
+     */
+    private static Object toTree(DataSnapshot dataSnapshot) {
+        if (!dataSnapshot.hasChildren()) {
+            return dataSnapshot.getValue();
         }
-    }
-
-    private boolean shouldMoveToInbox(Quest quest) {
-        return quest.getScheduled() == null;
-    }
-
-    private void removeOldScheduledDate(Quest quest, Map<String, Object> data, long lastScheduledDate) {
-        data.put("/dayQuests/" + lastScheduledDate + "/" + quest.getId(), null);
+        Map<String, Object> children = new LinkedHashMap<>();
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            children.put(child.getKey(), toTree(child));
+        }
+        return children;
     }
 }
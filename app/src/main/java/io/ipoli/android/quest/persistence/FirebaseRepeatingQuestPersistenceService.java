@@ -2,24 +2,30 @@ package io.ipoli.android.quest.persistence;
 
 import android.support.annotation.NonNull;
 
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.GenericTypeIndicator;
 import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
 import com.squareup.otto.Bus;
 
 import org.joda.time.LocalDate;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import io.ipoli.android.app.persistence.BaseFirebasePersistenceService;
-import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.app.persistence.BatchWriter;
+import io.ipoli.android.app.persistence.QueryListenerRegistry;
 import io.ipoli.android.challenge.data.Challenge;
+import io.ipoli.android.mapper.ModelMapper;
 import io.ipoli.android.quest.data.Quest;
-import io.ipoli.android.quest.data.QuestData;
 import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.data.RepeatingQuest_Mapper;
 
 import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
 
@@ -29,11 +35,12 @@ import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
  */
 public class FirebaseRepeatingQuestPersistenceService extends BaseFirebasePersistenceService<RepeatingQuest> implements RepeatingQuestPersistenceService {
 
-    private final QuestPersistenceService questPersistenceService;
+    private final RepeatingQuestDataPopulator repeatingQuestDataPopulator;
 
-    public FirebaseRepeatingQuestPersistenceService(Bus eventBus, QuestPersistenceService questPersistenceService) {
-        super(eventBus);
-        this.questPersistenceService = questPersistenceService;
+    public FirebaseRepeatingQuestPersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter, QuestPersistenceService questPersistenceService) {
+        super(eventBus, listenerRegistry, batchWriter);
+        this.repeatingQuestDataPopulator = new RepeatingQuestDataPopulator(questPersistenceService,
+                () -> getCollectionReference().push().getKey());
     }
 
     @Override
@@ -47,6 +54,11 @@ public class FirebaseRepeatingQuestPersistenceService extends BaseFirebasePersis
         };
     }
 
+    @Override
+    protected ModelMapper<RepeatingQuest> getModelMapper() {
+        return RepeatingQuest_Mapper.INSTANCE;
+    }
+
     @Override
     protected Class<RepeatingQuest> getModelClass() {
         return RepeatingQuest.class;
@@ -63,6 +75,33 @@ public class FirebaseRepeatingQuestPersistenceService extends BaseFirebasePersis
         listenForListChange(query, listener, createActiveRepeatingQuestPredicate());
     }
 
+    @Override
+    public void findNonAllDayActiveRepeatingQuestsScheduledBefore(Date date, OnDataChangedListener<List<RepeatingQuest>> listener) {
+        Query query = getCollectionReference().orderByChild("scheduledUntil").endAt(date.getTime() - 1);
+        Date startOfToday = toStartOfDayUTC(LocalDate.now());
+        listenForSingleChange(query, new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                List<RepeatingQuest> result = new ArrayList<>();
+                List<RepeatingQuest> unschedulable = new ArrayList<>();
+                for (RepeatingQuest rq : getListFromMapSnapshot(dataSnapshot)) {
+                    if (rq.isSchedulable(startOfToday)) {
+                        result.add(rq);
+                    } else {
+                        unschedulable.add(rq);
+                    }
+                }
+                stopScheduling(unschedulable);
+                listener.onDataChanged(result);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                listener.onDataChanged(null);
+            }
+        });
+    }
+
     @Override
     public void listenForAllNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener) {
         Query query = getCollectionReference().orderByChild("allDay").equalTo(false);
@@ -88,152 +127,65 @@ public class FirebaseRepeatingQuestPersistenceService extends BaseFirebasePersis
     @Override
     public void save(RepeatingQuest repeatingQuest, List<Quest> quests) {
         Map<String, Object> data = new HashMap<>();
-        populateNewRepeatingQuest(data, repeatingQuest, quests);
-        getPlayerReference().updateChildren(data);
+        repeatingQuestDataPopulator.populateNewRepeatingQuest(repeatingQuest, quests, data);
+        updatePlayerData(data);
     }
 
     @Override
     public void delete(RepeatingQuest repeatingQuest, List<Quest> quests) {
         Map<String, Object> data = new HashMap<>();
-        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), null);
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), null);
-        }
-        data.put("/repeatingQuests/" + repeatingQuest.getId(), null);
-
-        Set<String> orphanQuestIds = repeatingQuest.getQuestsData().keySet();
-        for (Quest quest : quests) {
-            orphanQuestIds.remove(quest.getId());
-            questPersistenceService.populateDeleteQuestDataFromRepeatingQuest(quest, data);
-        }
-
-        for (String questId : orphanQuestIds) {
-            data.put("/quests/" + questId + "/repeatingQuestId", null);
-        }
-        getPlayerReference().updateChildren(data);
+        repeatingQuestDataPopulator.populateDeleteRepeatingQuest(repeatingQuest, quests, data);
+        updatePlayerData(data);
     }
 
     @Override
-    public void update(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToCreate) {
+    public void update(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToUpdate, List<Quest> questsToCreate) {
         Map<String, Object> data = new HashMap<>();
-
-        populateRepeatingQuestChallenge(repeatingQuest, data);
-
-        for (Quest quest : questsToRemove) {
-            questPersistenceService.populateDeleteQuestDataFromRepeatingQuest(quest, data);
-            repeatingQuest.getQuestsData().remove(quest.getId());
-        }
-
-        for (Quest quest : questsToCreate) {
-            questPersistenceService.populateNewQuestData(quest, data);
-            repeatingQuest.addQuestData(quest.getId(), new QuestData(quest));
-        }
-
-        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
-        getPlayerReference().updateChildren(data);
+        repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, questsToRemove, questsToUpdate, questsToCreate, data);
+        updatePlayerData(data);
     }
 
     @Override
     public void update(RepeatingQuest repeatingQuest) {
         Map<String, Object> data = new HashMap<>();
-        populateUpdateRepeatingQuest(repeatingQuest, data);
-        getPlayerReference().updateChildren(data);
-    }
-
-    private void populateUpdateRepeatingQuest(RepeatingQuest repeatingQuest, Map<String, Object> data) {
-        populateRepeatingQuestChallenge(repeatingQuest, data);
-
-        for (String questId : repeatingQuest.getQuestsData().keySet()) {
-            QuestData questData = repeatingQuest.getQuestsData().get(questId);
-            if (repeatingQuest.getPreviousChallengeId() != null) {
-                data.put("/challenges/" + repeatingQuest.getPreviousChallengeId() + "/questsData/" + questId, null);
-            }
-            String challengeId = repeatingQuest.getChallengeId();
-            if (challengeId != null) {
-                data.put("/challenges/" + challengeId + "/questsData/" + questId, questData);
-            }
-            if (questData.getScheduledDate() == null) {
-                data.put("/inboxQuests/" + questId + "/challengeId", challengeId);
-            } else {
-                data.put("/dayQuests/" + questData.getScheduledDate() + "/" + questId + "/challengeId", challengeId);
-            }
-            data.put("/quests/" + questId + "/challengeId", challengeId);
-        }
-        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+        repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, data);
+        updatePlayerData(data);
     }
 
     @Override
     public void updateChallengeId(List<RepeatingQuest> repeatingQuests) {
         Map<String, Object> data = new HashMap<>();
         for (RepeatingQuest repeatingQuest : repeatingQuests) {
-            populateUpdateRepeatingQuest(repeatingQuest, data);
+            repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, data);
         }
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void saveScheduledRepeatingQuests(Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests) {
         Map<String, Object> data = new HashMap<>();
         for (Map.Entry<RepeatingQuest, List<Quest>> entry : repeatingQuestToScheduledQuests.entrySet()) {
-            RepeatingQuest repeatingQuest = entry.getKey();
-            List<Quest> quests = entry.getValue();
-            populateUpdateRepeatingQuest(data, repeatingQuest, quests);
+            repeatingQuestDataPopulator.populateScheduledQuests(entry.getKey(), entry.getValue(), data);
         }
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
     @Override
     public void save(Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests) {
         Map<String, Object> data = new HashMap<>();
         for (Map.Entry<RepeatingQuest, List<Quest>> entry : repeatingQuestToScheduledQuests.entrySet()) {
-            RepeatingQuest repeatingQuest = entry.getKey();
-            List<Quest> quests = entry.getValue();
-            populateNewRepeatingQuest(data, repeatingQuest, quests);
+            repeatingQuestDataPopulator.populateNewRepeatingQuest(entry.getKey(), entry.getValue(), data);
         }
-        getPlayerReference().updateChildren(data);
+        updatePlayerData(data);
     }
 
-    private void populateNewRepeatingQuest(Map<String, Object> data, RepeatingQuest repeatingQuest, List<Quest> quests) {
-        DatabaseReference rqRef = getCollectionReference().push();
-        repeatingQuest.setId(rqRef.getKey());
-        for (Quest q : quests) {
-            q.setRepeatingQuestId(rqRef.getKey());
-            questPersistenceService.populateNewQuestData(q, data);
-            repeatingQuest.addQuestData(q.getId(), new QuestData(q));
-        }
-        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), true);
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
-        }
-        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
-    }
-
-    private void populateUpdateRepeatingQuest(Map<String, Object> data, RepeatingQuest repeatingQuest, List<Quest> quests) {
-        for (Quest q : quests) {
-            q.setRepeatingQuestId(repeatingQuest.getId());
-            questPersistenceService.populateNewQuestData(q, data);
-            repeatingQuest.addQuestData(q.getId(), new QuestData(q));
-        }
-        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), true);
-            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
-        }
-        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
-    }
-
-    private void populateRepeatingQuestChallenge(RepeatingQuest repeatingQuest, Map<String, Object> data) {
-        if (repeatingQuest.getPreviousChallengeId() != null) {
-            String challengeId = repeatingQuest.getPreviousChallengeId();
-            data.put("/challenges/" + challengeId + "/repeatingQuestIds/" + repeatingQuest.getId(), null);
-            data.put("/challenges/" + challengeId + "/challengeRepeatingQuests/" + repeatingQuest.getId(), null);
-        }
-
-        if (repeatingQuest.getChallengeId() != null) {
-            String challengeId = repeatingQuest.getChallengeId();
-            // @TODO check if repeating quest is complete
-            data.put("/challenges/" + challengeId + "/repeatingQuestIds/" + repeatingQuest.getId(), false);
-            data.put("/challenges/" + challengeId + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+    private void stopScheduling(List<RepeatingQuest> repeatingQuests) {
+        if (repeatingQuests.isEmpty()) {
+            return;
         }
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateStoppedScheduling(repeatingQuests, data);
+        updatePlayerData(data);
     }
 
     @NonNull
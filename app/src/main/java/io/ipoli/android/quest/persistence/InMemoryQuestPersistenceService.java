@@ -0,0 +1,373 @@
+package io.ipoli.android.quest.persistence;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.persistence.InMemoryQuery;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestReminder;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDay;
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * {@link QuestPersistenceService} on top of an {@link InMemoryDatabase}, with the same
+ * queries and writes as {@link FirebaseQuestPersistenceService}
+ */
+public class InMemoryQuestPersistenceService extends BaseInMemoryPersistenceService<Quest> implements QuestPersistenceService {
+
+    private final QuestDataPopulator questDataPopulator;
+
+    public InMemoryQuestPersistenceService(InMemoryDatabase database, String playerId) {
+        super(database, playerId);
+        this.questDataPopulator = new QuestDataPopulator(database::push);
+    }
+
+    @Override
+    protected Class<Quest> getModelClass() {
+        return Quest.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "quests";
+    }
+
+    @Override
+    public void listenForInboxQuests(OnDataChangedListener<List<Quest>> listener) {
+        listenForListChange(getPlayerReference().child("inboxQuests"), listener);
+    }
+
+    @Override
+    public void listenForInboxQuests(OnListChangedListener<Quest> listener) {
+        // without a sort the list is ordered by id, the key order the inbox always had
+        listenForIncrementalListChange(getPlayerReference().child("inboxQuests"), listener, null, null);
+    }
+
+    @Override
+    public void listenForPlannedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener) {
+        if (!QuestRetention.isDayQuestsRetained(startDate)) {
+            listenForPlannedFromQuestsBetween(startDate, endDate, listener);
+            return;
+        }
+        String start = String.valueOf(toStartOfDayUTC(startDate).getTime());
+        String end = String.valueOf(toStartOfDayUTC(endDate).getTime());
+        InMemoryQuery query = getPlayerReference().child("dayQuests")
+                .orderByKey()
+                .startAt(start)
+                .endAt(end);
+
+        listenForQuery(query, value -> {
+            SortedMap<LocalDate, List<Quest>> result = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : getChildren(value).entrySet()) {
+                List<Quest> questsForDate = getList(entry.getValue(), null, QuestOrder::compareByStartMinute);
+                result.put(new LocalDate(Long.valueOf(entry.getKey()), DateTimeZone.UTC), questsForDate);
+            }
+            listener.onDataChanged(result);
+        }, listener);
+    }
+
+    private void listenForPlannedFromQuestsBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("scheduled")
+                .startAt(toStartOfDayUTC(startDate).getTime())
+                .endAt(toStartOfDayUTC(endDate).getTime());
+
+        listenForQuery(query, value -> {
+            SortedMap<LocalDate, List<Quest>> result = new TreeMap<>();
+            for (Quest quest : getList(value, null, QuestOrder::compareByStartMinute)) {
+                LocalDate date = new LocalDate(quest.getScheduled(), DateTimeZone.UTC);
+                if (!result.containsKey(date)) {
+                    result.put(date, new ArrayList<>());
+                }
+                result.get(date).add(quest);
+            }
+            listener.onDataChanged(result);
+        }, listener);
+    }
+
+    @Override
+    public void findAllCompletedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("completedAt").startAt(toStartOfDay(startDate).getTime()).endAt(toStartOfDay(endDate).getTime());
+        listenForSingleListChange(query, listener);
+    }
+
+    @Override
+    public void findCompletedPage(LocalDate startDate, LocalDate endDate, QuestCursor cursor, int pageSize, QuestProjection projection, OnDataChangedListener<QuestPage> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("completedAt");
+        query = cursor == null ?
+                query.startAt(QuestQueries.getCompletedPageStart(startDate)) :
+                query.startAt(cursor.getCompletedAt(), cursor.getQuestId());
+        query = query.endAt(QuestQueries.getCompletedPageEnd(endDate)).limitToFirst(QuestQueries.getCompletedPageLimit(cursor, pageSize));
+
+        listenForSingleChange(query, value ->
+                listener.onDataChanged(QuestQueries.createCompletedPage(getChildren(value), cursor, pageSize, projection, this::getModel)));
+    }
+
+    @Override
+    public void findAllPlannedAndStarted(OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("scheduled").startAt(toStartOfDayUTC(LocalDate.now()).getTime());
+        listenForSingleListChange(query, listener, q -> q.isStarted());
+    }
+
+    @Override
+    public void findAllIncompleteToDosBefore(LocalDate date, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("scheduled").endAt(toStartOfDayUTC(date.minusDays(1)).getTime());
+        listenForSingleListChange(query, listener, q -> !q.isFromRepeatingQuest() && q.getCompletedAtDate() == null && q.getScheduled() != null);
+    }
+
+    @Override
+    public void listenForAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        listenForListChange(getDayQuestsReference(currentDate), listener);
+    }
+
+    @Override
+    public void findAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        listenForSingleListChange(getDayQuestsReference(currentDate), listener, null, QuestOrder::compareByStartMinute);
+    }
+
+    @Override
+    public void listenForAllNonAllDayCompletedForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        listenForListChange(getDayQuestsReference(currentDate), listener, Quest::isCompleted);
+    }
+
+    @Override
+    public void listenForAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        listenForListChange(getDayQuestsReference(currentDate), listener, q -> !q.isCompleted(), QuestOrder::compareByStartMinute);
+    }
+
+    @Override
+    public void findAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        listenForSingleListChange(getDayQuestsReference(currentDate), listener, q -> !q.isCompleted(), QuestOrder::compareByStartMinute);
+    }
+
+    @Override
+    public void findAllForRepeatingQuest(String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("repeatingQuestId").equalTo(repeatingQuestId);
+        listenForSingleListChange(query, listener);
+    }
+
+    @Override
+    public void findAllNotCompletedForRepeatingQuest(String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("repeatingQuestId").equalTo(repeatingQuestId);
+        listenForSingleListChange(query, listener, q -> q.getCompletedAt() == null);
+    }
+
+    @Override
+    public void findAllUpcomingForRepeatingQuest(LocalDate startDate, String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("repeatingQuestId").equalTo(repeatingQuestId);
+        listenForSingleListChange(query, listener, q -> q.getScheduled() == null || !q.getScheduledDate().before(toStartOfDayUTC(startDate)));
+    }
+
+    @Override
+    public void countAllCompletedWithPriorityForDate(int priority, LocalDate date, OnDataChangedListener<Long> listener) {
+        InMemoryQuery query = getQuestIndexesReference().child("completed").child(QuestQueries.createDayKey(date))
+                .orderByValue()
+                .equalTo(priority);
+        listenForSingleChange(query, value -> listener.onDataChanged((long) getChildren(value).size()));
+    }
+
+    @Override
+    public void findQuestRemindersAtStartTime(long startTime, OnDataChangedListener<List<QuestReminder>> listener) {
+        InMemoryQuery query = getPlayerReference().child("questReminders").child(String.valueOf(startTime));
+        listenForSingleChange(query, value -> {
+            List<QuestReminder> reminders = new ArrayList<>();
+            for (Object reminder : getChildren(value).values()) {
+                reminders.add(database.toModel(reminder, QuestReminder.class));
+            }
+            listener.onDataChanged(reminders);
+        });
+    }
+
+    @Override
+    public void findNextReminderTime(OnDataChangedListener<Long> listener) {
+        InMemoryQuery query = getPlayerReference().child("questReminders").orderByKey().startAt(String.valueOf(new Date().getTime())).limitToFirst(1);
+        listenForSingleChange(query, value -> {
+            Map<String, Object> children = getChildren(value);
+            listener.onDataChanged(children.isEmpty() ? null : Long.valueOf(children.keySet().iterator().next()));
+        });
+    }
+
+    @Override
+    public void findAllIncompleteOrMostImportantForDate(LocalDate date, OnDataChangedListener<List<Quest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("scheduled").equalTo(toStartOfDayUTC(date).getTime());
+        listenForListChange(query, listener,
+                q -> !q.isAllDay() && (q.getCompletedAtDate() == null || q.getPriority() == Quest.PRIORITY_MOST_IMPORTANT_FOR_DAY),
+                (q1, q2) -> Integer.compare(q1.getStartMinute(), q2.getStartMinute()));
+    }
+
+    @Override
+    public void findIncompleteNotRepeatingNotForChallenge(String searchText, String challengeId, OnDataChangedListener<List<Quest>> listener) {
+        String text = searchText.toLowerCase();
+        String token = QuestNameSearch.findSearchToken(text);
+        InMemoryQuery query = token == null ?
+                getQuestIndexesReference().child("incompleteNotRepeating") :
+                getQuestIndexesReference().child("nameTokens").orderByKey().startAt(token).endAt(token + QuestNameSearch.PREFIX_END);
+        listenForQuery(query, value -> {
+            Set<String> questIds = new LinkedHashSet<>();
+            if (token == null) {
+                addMatchingQuestIds(value, text, challengeId, questIds);
+            } else {
+                for (Object tokenEntries : getChildren(value).values()) {
+                    addMatchingQuestIds(tokenEntries, text, challengeId, questIds);
+                }
+            }
+            List<Quest> result = new ArrayList<>();
+            for (String questId : questIds) {
+                Quest quest = getModel(database.getValue(getCollectionReference().child(questId).getPath()));
+                if (quest != null && !quest.isCompleted() && !quest.isFromRepeatingQuest() &&
+                        QuestNameSearch.matches(quest.getName(), quest.getChallengeId(), text, challengeId)) {
+                    result.add(quest);
+                }
+            }
+            listener.onDataChanged(result);
+        }, listener);
+    }
+
+    private void addMatchingQuestIds(Object entries, String text, String challengeId, Set<String> questIds) {
+        for (Map.Entry<String, Object> entry : getChildren(entries).entrySet()) {
+            Map<String, Object> indexEntry = getChildren(entry.getValue());
+            if (QuestNameSearch.matches((String) indexEntry.get("name"), (String) indexEntry.get("challengeId"), text, challengeId)) {
+                questIds.add(entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void listenForReminderChange(OnChangeListener<Void> onChangeListener) {
+        listenForChildChange(getPlayerReference().child("questReminders"), onChangeListener);
+    }
+
+    @Override
+    public void compact() {
+        deleteBucketsBefore("dayQuests", toStartOfDayUTC(QuestRetention.getDayQuestsHorizon()).getTime());
+        deleteBucketsBefore("questReminders", QuestRetention.getRemindersCutoff());
+        deleteDeletedQuestsBefore(QuestRetention.getDeletedQuestsCutoff());
+    }
+
+    private void deleteDeletedQuestsBefore(long time) {
+        InMemoryQuery query = getPlayerReference().child("deletedQuests").orderByValue().endAt(time - 1);
+        listenForSingleChange(query, value -> {
+            Map<String, Object> data = QuestQueries.createDeleteChildrenData("deletedQuests", getChildren(value).keySet());
+            if (!data.isEmpty()) {
+                updatePlayerData(data);
+            }
+        });
+    }
+
+    private void deleteBucketsBefore(String bucketName, long time) {
+        InMemoryQuery query = getPlayerReference().child(bucketName).orderByKey().endAt(QuestQueries.getBucketsEnd(time));
+        listenForSingleChange(query, value -> {
+            Map<String, Object> data = QuestQueries.createDeleteChildrenData(bucketName, getChildren(value).keySet());
+            if (!data.isEmpty()) {
+                updatePlayerData(data);
+            }
+        });
+    }
+
+    @Override
+    public void deleteRemindersAtTime(long startTime) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("/questReminders/" + startTime, null);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void save(Quest quest) {
+        Map<String, Object> data = new HashMap<>();
+        populateNewQuestData(quest, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void save(List<Quest> quests) {
+        Map<String, Object> data = new HashMap<>();
+        for (Quest quest : quests) {
+            populateNewQuestData(quest, data);
+        }
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void update(Quest quest) {
+        Map<String, Object> data = new HashMap<>();
+        questDataPopulator.populateUpdateQuestData(quest, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void update(List<Quest> quests) {
+        Map<String, Object> data = new HashMap<>();
+        for (Quest quest : quests) {
+            questDataPopulator.populateUpdateQuestData(quest, data);
+        }
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void delete(Quest quest) {
+        Map<String, Object> data = new HashMap<>();
+        populateDeleteQuestData(quest, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void populateNewQuestData(Quest quest, Map<String, Object> data) {
+        questDataPopulator.populateNewQuestData(quest, data);
+    }
+
+    @Override
+    public void populateUpdateQuestData(Quest quest, Map<String, Object> data) {
+        questDataPopulator.populateUpdateQuestData(quest, data);
+    }
+
+    @Override
+    public void populateDeleteQuestData(Quest quest, Map<String, Object> data) {
+        questDataPopulator.populateDeleteQuestData(quest, data);
+    }
+
+    @Override
+    public void populateDeleteQuestDataFromRepeatingQuest(Quest quest, Map<String, Object> data) {
+        questDataPopulator.populateDeleteQuestDataFromRepeatingQuest(quest, data);
+    }
+
+    @Override
+    public void listenForDayQuestChange(LocalDate date, OnChangeListener<Void> onChangeListener) {
+        listenForChildChange(getDayQuestsReference(date), onChangeListener);
+    }
+
+    @Override
+    public void rebuildIndexes(OnDataChangedListener<Boolean> listener) {
+        listenForSingleChange(getQuestIndexesReference(), value -> {
+            List<String> indexedQuestPaths = QuestQueries.collectIndexedQuestPaths(value);
+            listenForSingleListChange(getCollectionReference(), quests -> {
+                Map<String, Object> data = new HashMap<>();
+                questDataPopulator.populateQuestIndexes(quests, indexedQuestPaths, data);
+                updatePlayerData(data);
+                listener.onDataChanged(true);
+            });
+        });
+    }
+
+    private InMemoryQuery getDayQuestsReference(LocalDate date) {
+        if (!QuestRetention.isDayQuestsRetained(date)) {
+            return getCollectionReference().orderByChild("scheduled").equalTo(toStartOfDayUTC(date).getTime());
+        }
+        return getPlayerReference().child("dayQuests").child(QuestQueries.createDayKey(date));
+    }
+
+    private InMemoryQuery getQuestIndexesReference() {
+        return getPlayerReference().child("questIndexes");
+    }
+}
@@ -0,0 +1,161 @@
+package io.ipoli.android.quest.persistence;
+
+import android.support.annotation.NonNull;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.app.persistence.InMemoryQuery;
+import io.ipoli.android.challenge.data.Challenge;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.RepeatingQuest;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * {@link RepeatingQuestPersistenceService} on top of an {@link InMemoryDatabase}, with the same
+ * queries and writes as {@link FirebaseRepeatingQuestPersistenceService}
+ */
+public class InMemoryRepeatingQuestPersistenceService extends BaseInMemoryPersistenceService<RepeatingQuest> implements RepeatingQuestPersistenceService {
+
+    private final RepeatingQuestDataPopulator repeatingQuestDataPopulator;
+
+    public InMemoryRepeatingQuestPersistenceService(InMemoryDatabase database, String playerId, QuestPersistenceService questPersistenceService) {
+        super(database, playerId);
+        this.repeatingQuestDataPopulator = new RepeatingQuestDataPopulator(questPersistenceService, database::push);
+    }
+
+    @Override
+    protected Class<RepeatingQuest> getModelClass() {
+        return RepeatingQuest.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "repeatingQuests";
+    }
+
+    @Override
+    public void findAllNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("allDay").equalTo(false);
+        listenForListChange(query, listener, createActiveRepeatingQuestPredicate());
+    }
+
+    @Override
+    public void findNonAllDayActiveRepeatingQuestsScheduledBefore(Date date, OnDataChangedListener<List<RepeatingQuest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("scheduledUntil").endAt(date.getTime() - 1);
+        Date startOfToday = toStartOfDayUTC(LocalDate.now());
+        listenForSingleChange(query, value -> {
+            List<RepeatingQuest> result = new ArrayList<>();
+            List<RepeatingQuest> unschedulable = new ArrayList<>();
+            for (RepeatingQuest rq : getList(value, null, null)) {
+                if (rq.isSchedulable(startOfToday)) {
+                    result.add(rq);
+                } else {
+                    unschedulable.add(rq);
+                }
+            }
+            stopScheduling(unschedulable);
+            listener.onDataChanged(result);
+        });
+    }
+
+    @Override
+    public void listenForAllNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("allDay").equalTo(false);
+        listenForListChange(query, listener, createActiveRepeatingQuestPredicate());
+    }
+
+    @Override
+    public void listenForNonFlexibleNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener) {
+        InMemoryQuery query = getCollectionReference().orderByChild("recurrence/flexibleCount").equalTo(0);
+        listenForListChange(query, listener, createActiveRepeatingQuestPredicate());
+    }
+
+    @Override
+    public void findActiveNotForChallenge(String searchText, Challenge challenge, OnDataChangedListener<List<RepeatingQuest>> listener) {
+        listenForSingleListChange(getCollectionReference(), listener, rq ->
+                !challenge.getId().equals(rq.getChallengeId()) &&
+                        rq.getName().toLowerCase().contains(searchText.toLowerCase()) &&
+                        (rq.getRecurrence().getDtendDate() == null ||
+                                rq.getRecurrence().getDtendDate().getTime() >= toStartOfDayUTC(LocalDate.now()).getTime())
+        );
+    }
+
+    @Override
+    public void save(RepeatingQuest repeatingQuest, List<Quest> quests) {
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateNewRepeatingQuest(repeatingQuest, quests, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void delete(RepeatingQuest repeatingQuest, List<Quest> quests) {
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateDeleteRepeatingQuest(repeatingQuest, quests, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void update(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToUpdate, List<Quest> questsToCreate) {
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, questsToRemove, questsToUpdate, questsToCreate, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void update(RepeatingQuest repeatingQuest) {
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, data);
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void updateChallengeId(List<RepeatingQuest> repeatingQuests) {
+        Map<String, Object> data = new HashMap<>();
+        for (RepeatingQuest repeatingQuest : repeatingQuests) {
+            repeatingQuestDataPopulator.populateUpdateRepeatingQuest(repeatingQuest, data);
+        }
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void saveScheduledRepeatingQuests(Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests) {
+        Map<String, Object> data = new HashMap<>();
+        for (Map.Entry<RepeatingQuest, List<Quest>> entry : repeatingQuestToScheduledQuests.entrySet()) {
+            repeatingQuestDataPopulator.populateScheduledQuests(entry.getKey(), entry.getValue(), data);
+        }
+        updatePlayerData(data);
+    }
+
+    @Override
+    public void save(Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests) {
+        Map<String, Object> data = new HashMap<>();
+        for (Map.Entry<RepeatingQuest, List<Quest>> entry : repeatingQuestToScheduledQuests.entrySet()) {
+            repeatingQuestDataPopulator.populateNewRepeatingQuest(entry.getKey(), entry.getValue(), data);
+        }
+        updatePlayerData(data);
+    }
+
+    private void stopScheduling(List<RepeatingQuest> repeatingQuests) {
+        if (repeatingQuests.isEmpty()) {
+            return;
+        }
+        Map<String, Object> data = new HashMap<>();
+        repeatingQuestDataPopulator.populateStoppedScheduling(repeatingQuests, data);
+        updatePlayerData(data);
+    }
+
+    @NonNull
+    private Predicate<RepeatingQuest> createActiveRepeatingQuestPredicate() {
+        return repeatingQuest -> repeatingQuest.getRecurrence().getDtendDate() == null
+                || repeatingQuest.getRecurrence().getDtendDate().getTime() >= toStartOfDayUTC(LocalDate.now()).getTime();
+    }
+}
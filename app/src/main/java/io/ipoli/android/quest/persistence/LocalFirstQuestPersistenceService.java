@@ -0,0 +1,487 @@
+package io.ipoli.android.quest.persistence;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.ValueEventListener;
+import com.squareup.otto.Bus;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.ipoli.android.app.persistence.BatchWriter;
+import io.ipoli.android.app.persistence.QueryListenerRegistry;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestReminder;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDay;
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * Answers quest queries from the {@link QuestStore} first and keeps Firebase as the source of truth.
+ * <p>
+ * listen* queries deliver the local result immediately (once the store has been primed by
+ * {@link QuestStoreSync}) and then every live Firebase result, which is also reconciled into the store.
+ * find* queries are answered from the store alone once it is primed.
+ */
+public class LocalFirstQuestPersistenceService extends FirebaseQuestPersistenceService {
+
+    private final QuestStore questStore;
+    private final Map<OnDataChangedListener<?>, OnDataChangedListener<?>> remoteListeners;
+    private final Map<OnListChangedListener<?>, OnListChangedListener<?>> remoteListListeners;
+
+    public LocalFirstQuestPersistenceService(Bus eventBus, QueryListenerRegistry listenerRegistry, BatchWriter batchWriter, QuestStore questStore) {
+        super(eventBus, listenerRegistry, batchWriter);
+        this.questStore = questStore;
+        this.remoteListeners = new HashMap<>();
+        this.remoteListListeners = new HashMap<>();
+    }
+
+    @Override
+    public void findById(String id, OnDataChangedListener<Quest> listener) {
+        questStore.read(store -> LocalResult.of(store, s -> s.findById(id)), local -> {
+            if (local.primed && local.value != null) {
+                listener.onDataChanged(local.value);
+                return;
+            }
+            super.findById(id, listener);
+        });
+    }
+
+    @Override
+    public void listenById(String id, OnDataChangedListener<Quest> listener) {
+        super.listenById(id, localFirst(listener, s -> s.findById(id), quest -> {
+            if (quest != null) {
+                questStore.upsert(quest);
+            }
+        }));
+    }
+
+    @Override
+    public void listenForInboxQuests(OnDataChangedListener<List<Quest>> listener) {
+        super.listenForInboxQuests(localFirst(listener, QuestStore::findInbox, questStore::replaceInbox));
+    }
+
+    @Override
+    public void listenForInboxQuests(OnListChangedListener<Quest> listener) {
+        LocalFirstInboxListener remoteListener = new LocalFirstInboxListener(listener);
+        remoteListListeners.put(listener, remoteListener);
+        super.listenForInboxQuests(remoteListener);
+        listenForSingleChange(getPlayerReference().child("inboxQuests"), new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                remoteListener.onRemoteLoaded();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
+    }
+
+    @Override
+    public void listenForPlannedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener) {
+        long start = toStartOfDayUTC(startDate).getTime();
+        long end = toStartOfDayUTC(endDate).getTime();
+        super.listenForPlannedNonAllDayBetween(startDate, endDate, localFirst(listener,
+                s -> groupByDay(s.findScheduledBetween(start, end)),
+                result -> {
+                    List<Quest> quests = new ArrayList<>();
+                    for (List<Quest> questsForDate : result.values()) {
+                        quests.addAll(questsForDate);
+                    }
+                    questStore.replaceScheduledBetween(start, end, quests);
+                }));
+    }
+
+    @Override
+    public void findAllCompletedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<List<Quest>> listener) {
+        long start = toStartOfDay(startDate).getTime();
+        long end = toStartOfDay(endDate).getTime();
+        findLocalFirst(s -> s.findCompletedBetween(start, end), listener,
+                remoteListener -> super.findAllCompletedNonAllDayBetween(startDate, endDate, remoteListener));
+    }
+
+    @Override
+    public void findCompletedPage(LocalDate startDate, LocalDate endDate, QuestCursor cursor, int pageSize, QuestProjection projection, OnDataChangedListener<QuestPage> listener) {
+        long start = toStartOfDay(startDate).getTime();
+        long end = toStartOfDay(endDate).getTime();
+        questStore.read(store -> LocalResult.of(store, s -> s.findCompletedPage(start, end, cursor, pageSize, projection)), local -> {
+            if (local.primed) {
+                listener.onDataChanged(QuestPage.of(local.value, pageSize));
+                return;
+            }
+            // projected quests are partial, so remote pages never reach the store
+            super.findCompletedPage(startDate, endDate, cursor, pageSize, projection, listener);
+        });
+    }
+
+    @Override
+    public void findAllPlannedAndStarted(OnDataChangedListener<List<Quest>> listener) {
+        long start = toStartOfDayUTC(LocalDate.now()).getTime();
+        findLocalFirst(s -> filter(s.findScheduledFrom(start), q -> q.isStarted()), listener,
+                super::findAllPlannedAndStarted);
+    }
+
+    @Override
+    public void findAllIncompleteToDosBefore(LocalDate date, OnDataChangedListener<List<Quest>> listener) {
+        long end = toStartOfDayUTC(date.minusDays(1)).getTime();
+        findLocalFirst(s -> filter(s.findScheduledUpTo(end), q -> !q.isFromRepeatingQuest() && q.getCompletedAtDate() == null && q.getScheduled() != null), listener,
+                remoteListener -> super.findAllIncompleteToDosBefore(date, remoteListener));
+    }
+
+    @Override
+    public void listenForAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(currentDate).getTime();
+        super.listenForAllNonAllDayForDate(currentDate, localFirst(listener, s -> s.findForDay(day),
+                quests -> questStore.replaceDay(day, quests)));
+    }
+
+    @Override
+    public void findAllNonAllDayForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(currentDate).getTime();
+        findLocalFirst(s -> sort(s.findForDay(day)), listener,
+                remoteListener -> super.findAllNonAllDayForDate(currentDate, remoteListener));
+    }
+
+    @Override
+    public void listenForAllNonAllDayCompletedForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(currentDate).getTime();
+        super.listenForAllNonAllDayCompletedForDate(currentDate, localFirst(listener,
+                s -> filter(s.findForDay(day), Quest::isCompleted), questStore::upsert));
+    }
+
+    @Override
+    public void listenForAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(currentDate).getTime();
+        super.listenForAllNonAllDayIncompleteForDate(currentDate, localFirst(listener,
+                s -> sort(filter(s.findForDay(day), q -> !q.isCompleted())), questStore::upsert));
+    }
+
+    @Override
+    public void findAllNonAllDayIncompleteForDate(LocalDate currentDate, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(currentDate).getTime();
+        findLocalFirst(s -> sort(filter(s.findForDay(day), q -> !q.isCompleted())), listener,
+                remoteListener -> super.findAllNonAllDayIncompleteForDate(currentDate, remoteListener));
+    }
+
+    @Override
+    public void findAllForRepeatingQuest(String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        findLocalFirst(s -> s.findForRepeatingQuest(repeatingQuestId), listener,
+                remoteListener -> super.findAllForRepeatingQuest(repeatingQuestId, remoteListener));
+    }
+
+    @Override
+    public void findAllNotCompletedForRepeatingQuest(String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        findLocalFirst(s -> filter(s.findForRepeatingQuest(repeatingQuestId), q -> q.getCompletedAt() == null), listener,
+                remoteListener -> super.findAllNotCompletedForRepeatingQuest(repeatingQuestId, remoteListener));
+    }
+
+    @Override
+    public void findAllUpcomingForRepeatingQuest(LocalDate startDate, String repeatingQuestId, OnDataChangedListener<List<Quest>> listener) {
+        Date start = toStartOfDayUTC(startDate);
+        findLocalFirst(s -> filter(s.findForRepeatingQuest(repeatingQuestId), q -> q.getScheduled() == null || !q.getScheduledDate().before(start)), listener,
+                remoteListener -> super.findAllUpcomingForRepeatingQuest(startDate, repeatingQuestId, remoteListener));
+    }
+
+    @Override
+    public void countAllCompletedWithPriorityForDate(int priority, LocalDate date, OnDataChangedListener<Long> listener) {
+        long day = toStartOfDayUTC(date).getTime();
+        questStore.read(store -> LocalResult.of(store,
+                s -> (long) filter(s.findForDay(day), q -> q.getCompletedAtDate() != null && q.getPriority() == priority).size()),
+                local -> {
+                    if (local.primed) {
+                        listener.onDataChanged(local.value);
+                        return;
+                    }
+                    super.countAllCompletedWithPriorityForDate(priority, date, listener);
+                });
+    }
+
+    @Override
+    public void findQuestRemindersAtStartTime(long startTime, OnDataChangedListener<List<QuestReminder>> listener) {
+        questStore.read(store -> LocalResult.of(store, s -> s.findRemindersAt(startTime)), local -> {
+            if (local.primed) {
+                listener.onDataChanged(local.value);
+                return;
+            }
+            super.findQuestRemindersAtStartTime(startTime, listener);
+        });
+    }
+
+    @Override
+    public void findNextReminderTime(OnDataChangedListener<Long> listener) {
+        long now = new Date().getTime();
+        questStore.read(store -> LocalResult.of(store, s -> s.findNextReminderTime(now)), local -> {
+            if (local.primed) {
+                listener.onDataChanged(local.value);
+                return;
+            }
+            super.findNextReminderTime(listener);
+        });
+    }
+
+    @Override
+    public void findAllIncompleteOrMostImportantForDate(LocalDate date, OnDataChangedListener<List<Quest>> listener) {
+        long day = toStartOfDayUTC(date).getTime();
+        super.findAllIncompleteOrMostImportantForDate(date, localFirst(listener, s -> {
+            List<Quest> quests = filter(s.findForDay(day), q -> !q.isAllDay() && (q.getCompletedAtDate() == null || q.getPriority() == Quest.PRIORITY_MOST_IMPORTANT_FOR_DAY));
+            Collections.sort(quests, (q1, q2) -> Integer.compare(q1.getStartMinute(), q2.getStartMinute()));
+            return quests;
+        }, questStore::upsert));
+    }
+
+    @Override
+    public void deleteRemindersAtTime(long startTime) {
+        super.deleteRemindersAtTime(startTime);
+        questStore.deleteRemindersAt(startTime);
+    }
+
+    @Override
+    public void compact() {
+        super.compact();
+        questStore.deleteRemindersBefore(QuestRetention.getRemindersCutoff());
+    }
+
+    @Override
+    public void populateNewQuestData(Quest quest, Map<String, Object> data) {
+        super.populateNewQuestData(quest, data);
+        questStore.upsert(quest);
+    }
+
+    @Override
+    public void populateUpdateQuestData(Quest quest, Map<String, Object> data) {
+        super.populateUpdateQuestData(quest, data);
+        questStore.upsert(quest);
+    }
+
+    @Override
+    public void populateDeleteQuestData(Quest quest, Map<String, Object> data) {
+        super.populateDeleteQuestData(quest, data);
+        questStore.delete(quest.getId());
+    }
+
+    @Override
+    public void populateDeleteQuestDataFromRepeatingQuest(Quest quest, Map<String, Object> data) {
+        super.populateDeleteQuestDataFromRepeatingQuest(quest, data);
+        questStore.delete(quest.getId());
+    }
+
+    @Override
+    public void update(Quest quest) {
+        super.update(quest);
+        questStore.upsert(quest);
+    }
+
+    @Override
+    public void update(List<Quest> quests) {
+        super.update(quests);
+        questStore.upsert(quests);
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        remoteListeners.clear();
+        remoteListListeners.clear();
+    }
+
+    @Override
+    public void removeListChangedListener(OnListChangedListener<?> listener) {
+        OnListChangedListener<?> remoteListener = remoteListListeners.remove(listener);
+        super.removeListChangedListener(remoteListener != null ? remoteListener : listener);
+    }
+
+    @Override
+    public void removeDataChangedListener(OnDataChangedListener<?> listener) {
+        OnDataChangedListener<?> remoteListener = remoteListeners.remove(listener);
+        super.removeDataChangedListener(remoteListener != null ? remoteListener : listener);
+    }
+
+    /**
+     * Delivers the local result unless Firebase has already answered, and reconciles
+     * every remote result into the store before passing it on
+     */
+    private <R> OnDataChangedListener<R> localFirst(OnDataChangedListener<R> listener, QuestStore.Read<R> localRead, OnDataChangedListener<R> reconcile) {
+        boolean[] remoteDelivered = {false};
+        questStore.read(store -> LocalResult.of(store, localRead), local -> {
+            if (local.primed && !remoteDelivered[0]) {
+                listener.onDataChanged(local.value);
+            }
+        });
+        OnDataChangedListener<R> remoteListener = result -> {
+            remoteDelivered[0] = true;
+            reconcile.onDataChanged(result);
+            listener.onDataChanged(result);
+        };
+        remoteListeners.put(listener, remoteListener);
+        return remoteListener;
+    }
+
+    private void findLocalFirst(QuestStore.Read<List<Quest>> localRead, OnDataChangedListener<List<Quest>> listener, RemoteFind remoteFind) {
+        questStore.read(store -> LocalResult.of(store, localRead), local -> {
+            if (local.primed) {
+                listener.onDataChanged(local.value);
+                return;
+            }
+            remoteFind.find(quests -> {
+                questStore.upsert(quests);
+                listener.onDataChanged(quests);
+            });
+        });
+    }
+
+    private SortedMap<LocalDate, List<Quest>> groupByDay(List<Quest> quests) {
+        SortedMap<LocalDate, List<Quest>> result = new TreeMap<>();
+        for (Quest quest : quests) {
+            LocalDate date = new LocalDate(quest.getScheduled(), DateTimeZone.UTC);
+            if (!result.containsKey(date)) {
+                result.put(date, new ArrayList<>());
+            }
+            result.get(date).add(quest);
+        }
+        for (List<Quest> questsForDate : result.values()) {
+            sort(questsForDate);
+        }
+        return result;
+    }
+
+    private List<Quest> sort(List<Quest> quests) {
+        Collections.sort(quests, createDefaultQuestSortQuery()::sort);
+        return quests;
+    }
+
+    private List<Quest> filter(List<Quest> quests, Predicate<Quest> predicate) {
+        List<Quest> result = new ArrayList<>();
+        for (Quest quest : quests) {
+            if (predicate.shouldInclude(quest)) {
+                result.add(quest);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shows the inbox from the store until Firebase answers, then follows the remote list.
+     * Both are ordered by id, so every remote change maps to one change of the shown list.
+     */
+    private class LocalFirstInboxListener implements OnListChangedListener<Quest> {
+
+        private final OnListChangedListener<Quest> listener;
+        private final List<String> shownIds = new ArrayList<>();
+        private final List<Quest> remoteQuests = new ArrayList<>();
+        private boolean remoteStarted;
+
+        LocalFirstInboxListener(OnListChangedListener<Quest> listener) {
+            this.listener = listener;
+            questStore.read(store -> LocalResult.of(store, QuestStore::findInbox), local -> {
+                if (!local.primed || remoteStarted) {
+                    return;
+                }
+                List<Quest> quests = new ArrayList<>(local.value);
+                Collections.sort(quests, (q1, q2) -> String.valueOf(q1.getId()).compareTo(String.valueOf(q2.getId())));
+                for (Quest quest : quests) {
+                    shownIds.add(String.valueOf(quest.getId()));
+                    listener.onItemInserted(shownIds.size() - 1, quest);
+                }
+            });
+        }
+
+        @Override
+        public void onItemInserted(int position, Quest item) {
+            remoteStarted = true;
+            remoteQuests.add(position, item);
+            questStore.upsert(item);
+            show(item);
+        }
+
+        @Override
+        public void onItemChanged(int position, Quest item) {
+            remoteStarted = true;
+            remoteQuests.set(position, item);
+            questStore.upsert(item);
+            show(item);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition, Quest item) {
+            remoteStarted = true;
+            remoteQuests.remove(fromPosition);
+            remoteQuests.add(toPosition, item);
+            questStore.upsert(item);
+            show(item);
+        }
+
+        @Override
+        public void onItemRemoved(int position) {
+            remoteStarted = true;
+            hide(String.valueOf(remoteQuests.remove(position).getId()));
+        }
+
+        /**
+         * Drops the quests shown from the store that are no longer in the inbox
+         */
+        void onRemoteLoaded() {
+            remoteStarted = true;
+            List<String> remoteIds = new ArrayList<>();
+            for (Quest quest : remoteQuests) {
+                remoteIds.add(String.valueOf(quest.getId()));
+            }
+            for (String id : new ArrayList<>(shownIds)) {
+                if (!remoteIds.contains(id)) {
+                    hide(id);
+                }
+            }
+            questStore.replaceInbox(new ArrayList<>(remoteQuests));
+        }
+
+        private void show(Quest quest) {
+            int position = Collections.binarySearch(shownIds, String.valueOf(quest.getId()));
+            if (position >= 0) {
+                listener.onItemChanged(position, quest);
+                return;
+            }
+            position = -position - 1;
+            shownIds.add(position, String.valueOf(quest.getId()));
+            listener.onItemInserted(position, quest);
+        }
+
+        private void hide(String id) {
+            int position = Collections.binarySearch(shownIds, id);
+            if (position >= 0) {
+                shownIds.remove(position);
+                listener.onItemRemoved(position);
+            }
+        }
+    }
+
+    private interface RemoteFind {
+        void find(OnDataChangedListener<List<Quest>> listener);
+    }
+
+    private static class LocalResult<R> {
+        final boolean primed;
+        final R value;
+
+        private LocalResult(boolean primed, R value) {
+            this.primed = primed;
+            this.value = value;
+        }
+
+        static <R> LocalResult<R> of(QuestStore store, QuestStore.Read<R> read) {
+            if (!store.isPrimed()) {
+                return new LocalResult<>(false, null);
+            }
+            return new LocalResult<>(true, read.execute(store));
+        }
+    }
+}
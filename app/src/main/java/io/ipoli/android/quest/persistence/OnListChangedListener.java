@@ -0,0 +1,17 @@
+package io.ipoli.android.quest.persistence;
+
+/**
+ * Receives one notification per item change of a live, sorted list.
+ * Positions refer to the list as it was right before the change,
+ * matching RecyclerView.Adapter notifyItem* semantics.
+ */
+public interface OnListChangedListener<T> {
+
+    void onItemInserted(int position, T item);
+
+    void onItemChanged(int position, T item);
+
+    void onItemMoved(int fromPosition, int toPosition, T item);
+
+    void onItemRemoved(int position);
+}
@@ -0,0 +1,23 @@
+package io.ipoli.android.quest.persistence;
+
+/**
+ * Position after the last quest of a page ordered by completedAt, ties are ordered by id
+ */
+public class QuestCursor {
+
+    private final long completedAt;
+    private final String questId;
+
+    public QuestCursor(long completedAt, String questId) {
+        this.completedAt = completedAt;
+        this.questId = questId;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public String getQuestId() {
+        return questId;
+    }
+}
@@ -0,0 +1,322 @@
+package io.ipoli.android.quest.persistence;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.ipoli.android.app.persistence.IdGenerator;
+import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestData;
+import io.ipoli.android.quest.data.QuestReminder;
+import io.ipoli.android.reminder.data.Reminder;
+
+/**
+ * Builds the multi-path update data of quest writes, relative to the player node.
+ * Every {@link QuestPersistenceService} backend writes through it, so they all share one layout.
+ */
+public class QuestDataPopulator {
+
+    private final IdGenerator idGenerator;
+
+    public QuestDataPopulator(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    public void populateNewQuestData(Quest quest, Map<String, Object> data) {
+        quest.setId(idGenerator.generateId());
+        if (quest.isCompleted()) {
+            addDayQuest(quest, data);
+        } else if (shouldMoveToInbox(quest)) {
+            data.put("/inboxQuests/" + quest.getId(), quest);
+        } else {
+            quest.setPreviousScheduledDate(quest.getScheduled());
+
+            addDayQuest(quest, data);
+
+            if (shouldAddQuestReminders(quest)) {
+                addQuestReminders(quest, data);
+            }
+        }
+        if (!StringUtils.isEmpty(quest.getChallengeId())) {
+            data.put("/challenges/" + quest.getChallengeId() + "/questsData/" + quest.getId(), new QuestData(quest));
+            if (StringUtils.isEmpty(quest.getRepeatingQuestId())) {
+                data.put("/challenges/" + quest.getChallengeId() + "/challengeQuests/" + quest.getId(), quest);
+            }
+        }
+
+        addQuestIndexes(quest, data);
+
+        data.put("/quests/" + quest.getId(), quest);
+        quest.markClean();
+    }
+
+    public void populateDeleteQuestData(Quest quest, Map<String, Object> data) {
+        populateDeleteQuestDataFromRepeatingQuest(quest, data);
+        if (quest.isFromRepeatingQuest()) {
+            data.put("/repeatingQuests/" + quest.getRepeatingQuestId() + "/questsData/" + quest.getId(), null);
+        }
+    }
+
+    public void populateDeleteQuestDataFromRepeatingQuest(Quest quest, Map<String, Object> data) {
+        data.put("/inboxQuests/" + quest.getId(), null);
+        if (quest.getScheduled() != null) {
+            data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), null);
+        }
+
+        for (Reminder reminder : quest.getReminders()) {
+            data.put("/questReminders/" + String.valueOf(reminder.getStart()) + "/" + quest.getId(), null);
+        }
+
+        if (quest.isFromChallenge()) {
+            data.put("/challenges/" + quest.getChallengeId() + "/questsData/" + quest.getId(), null);
+            data.put("/challenges/" + quest.getChallengeId() + "/challengeQuests/" + quest.getId(), null);
+        }
+
+        data.put("/questIndexes/incompleteNotRepeating/" + quest.getId(), null);
+        if (quest.getScheduled() != null) {
+            data.put("/questIndexes/completed/" + quest.getScheduled() + "/" + quest.getId(), null);
+        }
+        if (!quest.isFromRepeatingQuest()) {
+            removeNameTokens(quest, quest.getName(), data);
+            removeNameTokens(quest, quest.getPreviousName(), data);
+        }
+
+        data.put("/quests/" + quest.getId(), null);
+        data.put("/deletedQuests/" + quest.getId(), DateUtils.nowUTC().getTime());
+    }
+
+    public void populateUpdateQuestData(Quest quest, Map<String, Object> data) {
+        quest.markUpdated();
+        if (canWriteChangedFieldsOnly(quest)) {
+            populateChangedQuestFields(quest, data);
+        } else {
+            populateFullQuest(quest, data);
+        }
+        quest.markClean();
+    }
+
+    /**
+     * Index entries of all given quests, one path per entry. Paths of indexedQuestPaths that no
+     * quest claims anymore are removed.
+     *
+     * @param indexedQuestPaths paths of the entries currently stored under /questIndexes
+     */
+    public void populateQuestIndexes(List<Quest> quests, List<String> indexedQuestPaths, Map<String, Object> data) {
+        for (String path : indexedQuestPaths) {
+            data.put(path, null);
+        }
+        for (Quest quest : quests) {
+            if (shouldIndexAsIncompleteNotRepeating(quest)) {
+                Map<String, Object> entry = createIncompleteNotRepeatingIndexEntry(quest);
+                data.put("/questIndexes/incompleteNotRepeating/" + quest.getId(), entry);
+                for (String token : QuestNameSearch.tokenize(quest.getName())) {
+                    data.put(createNameTokenPath(token, quest), entry);
+                }
+            }
+            if (shouldIndexAsCompleted(quest)) {
+                data.put("/questIndexes/completed/" + quest.getScheduled() + "/" + quest.getId(), quest.getPriority());
+            }
+        }
+    }
+
+    /**
+     * Only tracked quests that stay in the same day (or inbox) and challenge can be patched in place,
+     * moving one requires removing the old copies and writing full new ones
+     */
+    private boolean canWriteChangedFieldsOnly(Quest quest) {
+        if (!quest.isTracked()) {
+            return false;
+        }
+        Map<String, Object> changedFields = quest.getDirtyFields();
+        return !changedFields.containsKey("scheduled") &&
+                !changedFields.containsKey("end") &&
+                !changedFields.containsKey("challengeId") &&
+                !changedFields.containsKey("repeatingQuestId");
+    }
+
+    private void populateChangedQuestFields(Quest quest, Map<String, Object> data) {
+        removeOldReminders(quest, data);
+
+        quest.setReminderStartTimes(new ArrayList<>());
+        if (shouldAddQuestReminders(quest)) {
+            addQuestReminders(quest, data);
+        }
+
+        List<String> questCopies = new ArrayList<>();
+        questCopies.add("/quests/" + quest.getId());
+        if (shouldMoveToInbox(quest)) {
+            questCopies.add("/inboxQuests/" + quest.getId());
+        } else if (QuestRetention.isDayQuestsRetained(quest.getScheduled())) {
+            questCopies.add("/dayQuests/" + quest.getScheduled() + "/" + quest.getId());
+        }
+
+        if (quest.getChallengeId() != null) {
+            String challengeId = quest.getChallengeId();
+            data.put("/challenges/" + challengeId + "/questsData/" + quest.getId(), new QuestData(quest));
+            if (quest.isFromRepeatingQuest()) {
+                // repeating quests get a challengeQuests copy only after their first full update
+                data.put("/challenges/" + challengeId + "/challengeQuests/" + quest.getId(), quest);
+            } else {
+                questCopies.add("/challenges/" + challengeId + "/challengeQuests/" + quest.getId());
+            }
+        }
+
+        if (quest.isFromRepeatingQuest()) {
+            String repeatingQuestId = quest.getRepeatingQuestId();
+            data.put("/repeatingQuests/" + repeatingQuestId + "/questsData/" + quest.getId(), new QuestData(quest));
+        }
+
+        Map<String, Object> changedFields = quest.getDirtyFields();
+        for (String questCopy : questCopies) {
+            for (Map.Entry<String, Object> field : changedFields.entrySet()) {
+                data.put(questCopy + "/" + field.getKey(), field.getValue());
+            }
+        }
+
+        addQuestIndexes(quest, data);
+    }
+
+    private void populateFullQuest(Quest quest, Map<String, Object> data) {
+        Long lastScheduled = quest.getPreviousScheduledDate();
+
+        // remove old day quest
+        if (lastScheduled != null) {
+            removeOldScheduledDate(quest, data, lastScheduled);
+            data.put("/questIndexes/completed/" + lastScheduled + "/" + quest.getId(), null);
+        }
+
+        if (shouldMoveToInbox(quest)) {
+
+            // add inbox
+            data.put("/inboxQuests/" + quest.getId(), quest);
+
+        } else {
+
+            // remove inbox
+            data.put("/inboxQuests/" + quest.getId(), null);
+
+            addDayQuest(quest, data);
+        }
+
+        // remove reminders
+        removeOldReminders(quest, data);
+
+        quest.setReminderStartTimes(new ArrayList<>());
+        if (shouldAddQuestReminders(quest)) {
+            addQuestReminders(quest, data);
+        }
+
+        if (quest.getPreviousChallengeId() != null) {
+            String challengeId = quest.getPreviousChallengeId();
+            data.put("/challenges/" + challengeId + "/questsData/" + quest.getId(), null);
+            data.put("/challenges/" + challengeId + "/challengeQuests/" + quest.getId(), null);
+        }
+
+        if (quest.getChallengeId() != null) {
+            String challengeId = quest.getChallengeId();
+            data.put("/challenges/" + challengeId + "/questsData/" + quest.getId(), new QuestData(quest));
+            data.put("/challenges/" + challengeId + "/challengeQuests/" + quest.getId(), quest);
+        }
+
+        if (quest.isFromRepeatingQuest()) {
+            String repeatingQuestId = quest.getRepeatingQuestId();
+            data.put("/repeatingQuests/" + repeatingQuestId + "/questsData/" + quest.getId(), new QuestData(quest));
+        }
+
+        addQuestIndexes(quest, data);
+
+        quest.setPreviousScheduledDate(quest.getScheduled());
+        data.put("/quests/" + quest.getId(), quest);
+    }
+
+    private void addQuestIndexes(Quest quest, Map<String, Object> data) {
+        Map<String, Object> entry = shouldIndexAsIncompleteNotRepeating(quest) ? createIncompleteNotRepeatingIndexEntry(quest) : null;
+        data.put("/questIndexes/incompleteNotRepeating/" + quest.getId(), entry);
+
+        // quests of repeating quests are never in the name index, so they write no tokens
+        if (!quest.isFromRepeatingQuest()) {
+            // a renamed quest leaves the tokens that only its stored name had
+            Set<String> tokens = QuestNameSearch.tokenize(quest.getName());
+            for (String token : QuestNameSearch.tokenize(quest.getPreviousName())) {
+                if (!tokens.contains(token)) {
+                    data.put(createNameTokenPath(token, quest), null);
+                }
+            }
+            for (String token : tokens) {
+                data.put(createNameTokenPath(token, quest), entry);
+            }
+        }
+        quest.setPreviousName(null);
+
+        if (quest.getScheduled() != null) {
+            data.put("/questIndexes/completed/" + quest.getScheduled() + "/" + quest.getId(),
+                    shouldIndexAsCompleted(quest) ? quest.getPriority() : null);
+        }
+    }
+
+    private void removeNameTokens(Quest quest, String name, Map<String, Object> data) {
+        for (String token : QuestNameSearch.tokenize(name)) {
+            data.put(createNameTokenPath(token, quest), null);
+        }
+    }
+
+    private String createNameTokenPath(String token, Quest quest) {
+        return "/questIndexes/nameTokens/" + token + "/" + quest.getId();
+    }
+
+    private boolean shouldIndexAsIncompleteNotRepeating(Quest quest) {
+        return !quest.isCompleted() && !quest.isFromRepeatingQuest();
+    }
+
+    private boolean shouldIndexAsCompleted(Quest quest) {
+        return quest.isCompleted() && quest.getScheduled() != null;
+    }
+
+    @NonNull
+    private Map<String, Object> createIncompleteNotRepeatingIndexEntry(Quest quest) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("name", quest.getName().toLowerCase());
+        entry.put("challengeId", quest.getChallengeId());
+        return entry;
+    }
+
+    private boolean shouldAddQuestReminders(Quest quest) {
+        return !quest.isCompleted() && quest.isScheduled() && !quest.getReminders().isEmpty() && !quest.isStarted();
+    }
+
+    private void addQuestReminders(Quest quest, Map<String, Object> data) {
+        for (Reminder reminder : quest.getReminders()) {
+            reminder.calculateStartTime(quest);
+            quest.addReminderStartTime(reminder.getStart());
+            data.put("/questReminders/" + reminder.getStart() + "/" + quest.getId(), new QuestReminder(quest, reminder));
+        }
+    }
+
+    private void addDayQuest(Quest quest, Map<String, Object> data) {
+        // compacted days are read from quests, writing them here would grow the bucket back
+        if (!QuestRetention.isDayQuestsRetained(quest.getScheduled())) {
+            return;
+        }
+        data.put("/dayQuests/" + quest.getScheduled() + "/" + quest.getId(), quest);
+    }
+
+    private void removeOldReminders(Quest quest, Map<String, Object> data) {
+        for (long startTime : quest.getReminderStartTimes()) {
+            data.put("/questReminders/" + String.valueOf(startTime) + "/" + quest.getId(), null);
+        }
+    }
+
+    private boolean shouldMoveToInbox(Quest quest) {
+        return quest.getScheduled() == null;
+    }
+
+    private void removeOldScheduledDate(Quest quest, Map<String, Object> data, long lastScheduledDate) {
+        data.put("/dayQuests/" + lastScheduledDate + "/" + quest.getId(), null);
+    }
+}
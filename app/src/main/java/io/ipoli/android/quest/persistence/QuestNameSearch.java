@@ -0,0 +1,56 @@
+package io.ipoli.android.quest.persistence;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Search of incomplete quests by name. Words of quest names are keyed under
+ * /questIndexes/nameTokens/{token}/{questId}; anything but letters and digits separates words,
+ * so tokens are always valid database keys.
+ */
+public final class QuestNameSearch {
+
+    /**
+     * Upper bound of the keys that start with a prefix, in the database key order
+     */
+    public static final String PREFIX_END = "\uf8ff";
+
+    private QuestNameSearch() {
+    }
+
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The longest word of the search text is the most selective prefix to query
+     *
+     * @return null when the text has no words
+     */
+    public static String findSearchToken(String searchText) {
+        String result = null;
+        for (String token : tokenize(searchText)) {
+            if (result == null || token.length() > result.length()) {
+                result = token;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether a quest named name, in the challenge questChallengeId, is found by the lower case
+     * search text when picking quests for challengeId
+     */
+    public static boolean matches(String name, String questChallengeId, String searchText, String challengeId) {
+        return name != null && name.toLowerCase().contains(searchText) && !challengeId.equals(questChallengeId);
+    }
+}
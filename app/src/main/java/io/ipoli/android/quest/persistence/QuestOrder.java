@@ -0,0 +1,24 @@
+package io.ipoli.android.quest.persistence;
+
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Default order of the quests of a day, shared by the persistence backends
+ */
+class QuestOrder {
+
+    static int compareByStartMinute(Quest q1, Quest q2) {
+        if (q1.shouldBeDoneMultipleTimesPerDay() || q2.shouldBeDoneMultipleTimesPerDay()) {
+            return Integer.compare(q1.getTimesADay(), q2.getTimesADay());
+        }
+        int q1Start = q1.getStartMinute();
+        if (q1Start < 0) {
+            return -1;
+        }
+        int q2Start = q2.getStartMinute();
+        if (q2Start < 0) {
+            return 1;
+        }
+        return q1Start - q2Start;
+    }
+}
@@ -0,0 +1,42 @@
+package io.ipoli.android.quest.persistence;
+
+import java.util.List;
+
+import io.ipoli.android.quest.data.Quest;
+
+public class QuestPage {
+
+    private final List<Quest> quests;
+    private final QuestCursor nextCursor;
+
+    public QuestPage(List<Quest> quests, QuestCursor nextCursor) {
+        this.quests = quests;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Quest> getQuests() {
+        return quests;
+    }
+
+    /**
+     * @return where the next page starts or null when this is the last page
+     */
+    public QuestCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * A full page may be followed by more quests, a shorter one is the last
+     */
+    static QuestPage of(List<Quest> quests, int pageSize) {
+        if (quests.size() < pageSize) {
+            return new QuestPage(quests, null);
+        }
+        Quest last = quests.get(quests.size() - 1);
+        return new QuestPage(quests, new QuestCursor(last.getCompletedAt(), last.getId()));
+    }
+}
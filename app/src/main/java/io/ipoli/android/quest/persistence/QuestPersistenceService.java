@@ -18,10 +18,18 @@ public interface QuestPersistenceService extends PersistenceService<Quest> {
 
     void listenForInboxQuests(OnDataChangedListener<List<Quest>> listener);
 
+    void listenForInboxQuests(OnListChangedListener<Quest> listener);
+
     void listenForPlannedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<SortedMap<LocalDate, List<Quest>>> listener);
 
     void findAllCompletedNonAllDayBetween(LocalDate startDate, LocalDate endDate, OnDataChangedListener<List<Quest>> listener);
 
+    /**
+     * Completed quests between the dates ordered by completedAt, at most pageSize of them.
+     * Start with a null cursor and continue with {@link QuestPage#getNextCursor()}.
+     */
+    void findCompletedPage(LocalDate startDate, LocalDate endDate, QuestCursor cursor, int pageSize, QuestProjection projection, OnDataChangedListener<QuestPage> listener);
+
     void findAllPlannedAndStarted(OnDataChangedListener<List<Quest>> listener);
 
     void findAllIncompleteToDosBefore(LocalDate date, OnDataChangedListener<List<Quest>> listener);
@@ -60,6 +68,8 @@ public interface QuestPersistenceService extends PersistenceService<Quest> {
 
     void populateNewQuestData(Quest quest, Map<String, Object> data);
 
+    void populateUpdateQuestData(Quest quest, Map<String, Object> data);
+
     void populateDeleteQuestData(Quest quest, Map<String, Object> data);
 
     void save(List<Quest> quests);
@@ -69,4 +79,14 @@ public interface QuestPersistenceService extends PersistenceService<Quest> {
     void listenForDayQuestChange(LocalDate date, OnChangeListener<Void> onChangeListener);
 
     void populateDeleteQuestDataFromRepeatingQuest(Quest quest, Map<String, Object> data);
+
+    /**
+     * @param listener gets whether the indexes were written
+     */
+    void rebuildIndexes(OnDataChangedListener<Boolean> listener);
+
+    /**
+     * Drops dayQuests and questReminders buckets that fell out of {@link QuestRetention}
+     */
+    void compact();
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package io.ipoli.android.quest.persistence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which fields of a quest a paged query decodes
+ */
+public enum QuestProjection {
+
+    FULL,
+
+    /**
+     * What the growth charts read. actualStart is needed to measure the time spent.
+     * Projected quests are partial and must never be saved back.
+     */
+    CHART("completedAt", "category", "experience", "coins", "duration", "actualStart");
+
+    private final List<String> fields;
+
+    QuestProjection(String... fields) {
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    public boolean isFull() {
+        return fields.isEmpty();
+    }
+
+    /**
+     * Database names of the decoded fields (the id is always set), empty for {@link #FULL}
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+}
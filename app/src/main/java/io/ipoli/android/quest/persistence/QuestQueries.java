@@ -0,0 +1,121 @@
+package io.ipoli.android.quest.persistence;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.quest.data.Quest;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDay;
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * Bounds and result handling of the quest queries, shared by the persistence backends so they
+ * page, count, compact and decode alike. Results come in as plain values, the children of
+ * a node in query order.
+ */
+class QuestQueries {
+
+    interface QuestDecoder {
+        Quest decode(Object value);
+    }
+
+    static long getCompletedPageStart(LocalDate startDate) {
+        return toStartOfDay(startDate).getTime();
+    }
+
+    static long getCompletedPageEnd(LocalDate endDate) {
+        return toStartOfDay(endDate).getTime();
+    }
+
+    /**
+     * A cursor starts at the last quest of the previous page, which is read again and skipped
+     */
+    static int getCompletedPageLimit(QuestCursor cursor, int pageSize) {
+        return cursor == null ? pageSize : pageSize + 1;
+    }
+
+    static QuestPage createCompletedPage(Map<String, Object> questsById, QuestCursor cursor, int pageSize,
+                                         QuestProjection projection, QuestDecoder decoder) {
+        List<Quest> quests = new ArrayList<>();
+        for (Map.Entry<String, Object> quest : questsById.entrySet()) {
+            if (cursor != null && quest.getKey().equals(cursor.getQuestId())) {
+                continue;
+            }
+            quests.add(createProjectedQuest(quest.getKey(), quest.getValue(), projection, decoder));
+        }
+        return QuestPage.of(quests, pageSize);
+    }
+
+    /**
+     * Decodes only the projected children, the rest of the quest is never read
+     */
+    static Quest createProjectedQuest(String questId, Object value, QuestProjection projection, QuestDecoder decoder) {
+        if (projection.isFull()) {
+            return decoder.decode(value);
+        }
+        Map<String, Object> children = getChildren(value);
+        Map<String, Object> values = new HashMap<>();
+        for (String field : projection.getFields()) {
+            if (children.get(field) != null) {
+                values.put(field, children.get(field));
+            }
+        }
+        Quest quest = decoder.decode(values);
+        quest.setId(questId);
+        return quest;
+    }
+
+    /**
+     * Key of the dayQuests, questReminders and completed index buckets of a day
+     */
+    static String createDayKey(LocalDate date) {
+        return String.valueOf(toStartOfDayUTC(date).getTime());
+    }
+
+    /**
+     * Last bucket key ordered before time, buckets are keyed by their start in millis
+     */
+    static String getBucketsEnd(long time) {
+        return String.valueOf(time - 1);
+    }
+
+    static Map<String, Object> createDeleteChildrenData(String path, Collection<String> keys) {
+        Map<String, Object> data = new HashMap<>();
+        for (String key : keys) {
+            data.put("/" + path + "/" + key, null);
+        }
+        return data;
+    }
+
+    /**
+     * Paths of all entries of the questIndexes node, relative to the player
+     */
+    static List<String> collectIndexedQuestPaths(Object indexes) {
+        Map<String, Object> indexNodes = getChildren(indexes);
+        List<String> indexedQuestPaths = new ArrayList<>();
+        for (String questId : getChildren(indexNodes.get("incompleteNotRepeating")).keySet()) {
+            indexedQuestPaths.add("/questIndexes/incompleteNotRepeating/" + questId);
+        }
+        for (Map.Entry<String, Object> day : getChildren(indexNodes.get("completed")).entrySet()) {
+            for (String questId : getChildren(day.getValue()).keySet()) {
+                indexedQuestPaths.add("/questIndexes/completed/" + day.getKey() + "/" + questId);
+            }
+        }
+        for (Map.Entry<String, Object> token : getChildren(indexNodes.get("nameTokens")).entrySet()) {
+            for (String questId : getChildren(token.getValue()).keySet()) {
+                indexedQuestPaths.add("/questIndexes/nameTokens/" + token.getKey() + "/" + questId);
+            }
+        }
+        return indexedQuestPaths;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getChildren(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : new HashMap<>();
+    }
+}
@@ -0,0 +1,49 @@
+package io.ipoli.android.quest.persistence;
+
+import org.joda.time.LocalDate;
+
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.utils.DateUtils;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * How long the denormalized dayQuests and questReminders buckets are kept.
+ * Days before the dayQuests horizon are read from the quests collection, which always has them.
+ */
+public final class QuestRetention {
+
+    private QuestRetention() {
+    }
+
+    public static LocalDate getDayQuestsHorizon() {
+        return LocalDate.now().minusDays(Constants.DAY_QUESTS_RETENTION_DAYS);
+    }
+
+    public static boolean isDayQuestsRetained(LocalDate date) {
+        return !date.isBefore(getDayQuestsHorizon());
+    }
+
+    /**
+     * @param scheduled start of the day in UTC, as dayQuests keys are
+     */
+    public static boolean isDayQuestsRetained(long scheduled) {
+        return scheduled >= toStartOfDayUTC(getDayQuestsHorizon()).getTime();
+    }
+
+    /**
+     * Reminder buckets before this time have fired already, a day of margin covers late alarms
+     */
+    public static long getRemindersCutoff() {
+        return DateUtils.nowUTC().getTime() - TimeUnit.DAYS.toMillis(Constants.QUEST_REMINDERS_RETENTION_DAYS);
+    }
+
+    /**
+     * Deleted quest ids older than this are forgotten, local stores synced before it have to start over
+     */
+    public static long getDeletedQuestsCutoff() {
+        return DateUtils.nowUTC().getTime() - TimeUnit.DAYS.toMillis(Constants.DELETED_QUESTS_RETENTION_DAYS);
+    }
+}
@@ -0,0 +1,435 @@
+package io.ipoli.android.quest.persistence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.ipoli.android.app.App;
+import io.ipoli.android.app.persistence.FirebaseExcludeStrategy;
+import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestReminder;
+import io.ipoli.android.reminder.data.Reminder;
+
+/**
+ * Local, indexed mirror of the player's quests and quest reminders.
+ * <p>
+ * Every read and write runs on a single background thread, so reads always observe
+ * the writes enqueued before them. Results are delivered on the main thread.
+ * Day and inbox membership are derived from {@link Quest#getScheduled()} the same way
+ * the dayQuests and inboxQuests nodes are populated.
+ */
+public class QuestStore {
+
+    private static final int DB_VERSION = 1;
+    private static final String DB_NAME_PREFIX = "quests_";
+
+    private static final String TABLE_QUESTS = "quests";
+    private static final String TABLE_REMINDERS = "quest_reminders";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+
+    private static final String KEY_WATERMARK = "watermark";
+    private static final String KEY_PRIMED = "primed";
+
+    private final Context context;
+    private final Gson gson;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+
+    private QuestDbHelper dbHelper;
+    private String dbPlayerId;
+
+    public interface Read<R> {
+        R execute(QuestStore store);
+    }
+
+    public QuestStore(Context context) {
+        this.context = context;
+        this.gson = new GsonBuilder().setExclusionStrategies(new FirebaseExcludeStrategy()).create();
+        this.executor = Executors.newSingleThreadExecutor();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public <R> void read(Read<R> read, OnDataChangedListener<R> listener) {
+        executor.execute(() -> {
+            R result = read.execute(this);
+            mainHandler.post(() -> listener.onDataChanged(result));
+        });
+    }
+
+    public void upsert(Quest quest) {
+        QuestRow row = toRow(quest);
+        executor.execute(() -> inTransaction(db -> writeRow(db, row)));
+    }
+
+    public void upsert(Collection<Quest> quests) {
+        List<QuestRow> rows = toRows(quests);
+        executor.execute(() -> inTransaction(db -> {
+            for (QuestRow row : rows) {
+                writeRow(db, row);
+            }
+        }));
+    }
+
+    public void delete(String questId) {
+        executor.execute(() -> inTransaction(db -> deleteQuest(db, questId)));
+    }
+
+    public void deleteRemindersAt(long startTime) {
+        executor.execute(() -> inTransaction(db ->
+                db.delete(TABLE_REMINDERS, "start = ?", new String[]{String.valueOf(startTime)})));
+    }
+
+    public void deleteRemindersBefore(long time) {
+        executor.execute(() -> inTransaction(db ->
+                db.delete(TABLE_REMINDERS, "start < ?", new String[]{String.valueOf(time)})));
+    }
+
+    /**
+     * Makes the quests scheduled for the given day exactly the given ones
+     */
+    public void replaceDay(long scheduled, Collection<Quest> quests) {
+        replaceScope("scheduled = ?", new String[]{String.valueOf(scheduled)}, quests);
+    }
+
+    public void replaceScheduledBetween(long start, long end, Collection<Quest> quests) {
+        replaceScope("scheduled >= ? AND scheduled <= ?", new String[]{String.valueOf(start), String.valueOf(end)}, quests);
+    }
+
+    public void replaceInbox(Collection<Quest> quests) {
+        replaceScope("scheduled IS NULL", null, quests);
+    }
+
+    public void updateWatermark(long watermark) {
+        executor.execute(() -> inTransaction(db -> {
+            if (watermark > readState(db, KEY_WATERMARK)) {
+                writeState(db, KEY_WATERMARK, watermark);
+            }
+        }));
+    }
+
+    /**
+     * Forgets all quests and the sync state, so the next sync downloads everything again
+     */
+    public void clear() {
+        executor.execute(() -> inTransaction(db -> {
+            db.delete(TABLE_QUESTS, null, null);
+            db.delete(TABLE_REMINDERS, null, null);
+            db.delete(TABLE_SYNC_STATE, null, null);
+        }));
+    }
+
+    public void markPrimed() {
+        executor.execute(() -> inTransaction(db -> writeState(db, KEY_PRIMED, 1)));
+    }
+
+    // The methods below must only be called from a Read executed by read()
+
+    long getWatermark() {
+        return readState(getDatabase(), KEY_WATERMARK);
+    }
+
+    boolean isPrimed() {
+        return readState(getDatabase(), KEY_PRIMED) == 1;
+    }
+
+    Quest findById(String id) {
+        List<Quest> quests = queryQuests("id = ?", new String[]{id});
+        return quests.isEmpty() ? null : quests.get(0);
+    }
+
+    List<Quest> findForDay(long scheduled) {
+        return queryQuests("scheduled = ?", new String[]{String.valueOf(scheduled)});
+    }
+
+    List<Quest> findInbox() {
+        return queryQuests("scheduled IS NULL", null);
+    }
+
+    List<Quest> findScheduledBetween(long start, long end) {
+        return queryQuests("scheduled >= ? AND scheduled <= ?", new String[]{String.valueOf(start), String.valueOf(end)});
+    }
+
+    List<Quest> findScheduledFrom(long start) {
+        return queryQuests("scheduled >= ?", new String[]{String.valueOf(start)});
+    }
+
+    List<Quest> findScheduledUpTo(long end) {
+        return queryQuests("scheduled <= ?", new String[]{String.valueOf(end)});
+    }
+
+    List<Quest> findCompletedBetween(long start, long end) {
+        return queryQuests("completed_at >= ? AND completed_at <= ?", new String[]{String.valueOf(start), String.valueOf(end)});
+    }
+
+    /**
+     * Keyset page on the completed_at index, ties are ordered by id like Firebase orders them
+     */
+    List<Quest> findCompletedPage(long start, long end, QuestCursor questCursor, int limit, QuestProjection projection) {
+        String selection;
+        String[] selectionArgs;
+        if (questCursor == null) {
+            selection = "completed_at >= ? AND completed_at <= ?";
+            selectionArgs = new String[]{String.valueOf(start), String.valueOf(end)};
+        } else {
+            String completedAt = String.valueOf(questCursor.getCompletedAt());
+            selection = "(completed_at > ? OR (completed_at = ? AND id > ?)) AND completed_at <= ?";
+            selectionArgs = new String[]{completedAt, completedAt, questCursor.getQuestId(), String.valueOf(end)};
+        }
+        List<Quest> quests = new ArrayList<>();
+        Cursor cursor = getDatabase().query(TABLE_QUESTS, new String[]{"id", "data"}, selection, selectionArgs,
+                null, null, "completed_at ASC, id ASC", String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                quests.add(readProjected(cursor.getString(0), cursor.getString(1), projection));
+            }
+        } finally {
+            cursor.close();
+        }
+        return quests;
+    }
+
+    List<Quest> findForRepeatingQuest(String repeatingQuestId) {
+        return queryQuests("repeating_quest_id = ?", new String[]{repeatingQuestId});
+    }
+
+    List<QuestReminder> findRemindersAt(long startTime) {
+        List<QuestReminder> reminders = new ArrayList<>();
+        Cursor cursor = getDatabase().query(TABLE_REMINDERS, new String[]{"data"}, "start = ?",
+                new String[]{String.valueOf(startTime)}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                reminders.add(gson.fromJson(cursor.getString(0), QuestReminder.class));
+            }
+        } finally {
+            cursor.close();
+        }
+        return reminders;
+    }
+
+    Long findNextReminderTime(long after) {
+        Cursor cursor = getDatabase().query(TABLE_REMINDERS, new String[]{"start"}, "start >= ?",
+                new String[]{String.valueOf(after)}, null, null, "start ASC", "1");
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void replaceScope(String selection, String[] selectionArgs, Collection<Quest> quests) {
+        List<QuestRow> rows = toRows(quests);
+        executor.execute(() -> inTransaction(db -> {
+            List<String> keep = new ArrayList<>();
+            for (QuestRow row : rows) {
+                keep.add(row.id);
+            }
+            Cursor cursor = db.query(TABLE_QUESTS, new String[]{"id"}, selection, selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    String id = cursor.getString(0);
+                    if (!keep.contains(id)) {
+                        deleteQuest(db, id);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            for (QuestRow row : rows) {
+                writeRow(db, row);
+            }
+        }));
+    }
+
+    private List<Quest> queryQuests(String selection, String[] selectionArgs) {
+        List<Quest> quests = new ArrayList<>();
+        Cursor cursor = getDatabase().query(TABLE_QUESTS, new String[]{"data"}, selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Quest quest = gson.fromJson(cursor.getString(0), Quest.class);
+                quest.markClean();
+                quests.add(quest);
+            }
+        } finally {
+            cursor.close();
+        }
+        return quests;
+    }
+
+    private Quest readProjected(String id, String data, QuestProjection projection) {
+        if (projection.isFull()) {
+            Quest quest = gson.fromJson(data, Quest.class);
+            quest.markClean();
+            return quest;
+        }
+        JsonObject json = new JsonParser().parse(data).getAsJsonObject();
+        JsonObject projected = new JsonObject();
+        for (String field : projection.getFields()) {
+            if (json.has(field)) {
+                projected.add(field, json.get(field));
+            }
+        }
+        Quest quest = gson.fromJson(projected, Quest.class);
+        quest.setId(id);
+        return quest;
+    }
+
+    private List<QuestRow> toRows(Collection<Quest> quests) {
+        List<QuestRow> rows = new ArrayList<>();
+        for (Quest quest : quests) {
+            rows.add(toRow(quest));
+        }
+        return rows;
+    }
+
+    /**
+     * Serializes on the calling thread, so later in-memory changes to the quest
+     * do not leak into what gets written
+     */
+    private QuestRow toRow(Quest quest) {
+        QuestRow row = new QuestRow();
+        row.id = quest.getId();
+        row.values = new ContentValues();
+        row.values.put("id", quest.getId());
+        row.values.put("scheduled", quest.getScheduled());
+        row.values.put("completed_at", quest.getCompletedAt());
+        row.values.put("repeating_quest_id", quest.getRepeatingQuestId());
+        row.values.put("updated_at", quest.getUpdatedAt());
+        row.values.put("data", gson.toJson(quest));
+
+        row.reminders = new ArrayList<>();
+        List<Long> reminderStartTimes = quest.getReminderStartTimes();
+        for (Reminder reminder : quest.getReminders()) {
+            if (reminder.getStart() == null || !reminderStartTimes.contains(reminder.getStart())) {
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put("start", reminder.getStart());
+            values.put("quest_id", quest.getId());
+            values.put("data", gson.toJson(new QuestReminder(quest, reminder)));
+            row.reminders.add(values);
+        }
+        return row;
+    }
+
+    private void writeRow(SQLiteDatabase db, QuestRow row) {
+        if (StringUtils.isEmpty(row.id)) {
+            return;
+        }
+        db.insertWithOnConflict(TABLE_QUESTS, null, row.values, SQLiteDatabase.CONFLICT_REPLACE);
+        db.delete(TABLE_REMINDERS, "quest_id = ?", new String[]{row.id});
+        for (ContentValues reminder : row.reminders) {
+            db.insertWithOnConflict(TABLE_REMINDERS, null, reminder, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    private void deleteQuest(SQLiteDatabase db, String questId) {
+        db.delete(TABLE_QUESTS, "id = ?", new String[]{questId});
+        db.delete(TABLE_REMINDERS, "quest_id = ?", new String[]{questId});
+    }
+
+    private long readState(SQLiteDatabase db, String key) {
+        Cursor cursor = db.query(TABLE_SYNC_STATE, new String[]{"value"}, "key = ?", new String[]{key}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void writeState(SQLiteDatabase db, String key, long value) {
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("value", value);
+        db.insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private void inTransaction(Write write) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            write.execute(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Each player gets its own database, opened lazily once the player id is known
+     */
+    private SQLiteDatabase getDatabase() {
+        String playerId = App.getPlayerId();
+        if (dbHelper == null || !playerId.equals(dbPlayerId)) {
+            if (dbHelper != null) {
+                dbHelper.close();
+            }
+            dbHelper = new QuestDbHelper(context, DB_NAME_PREFIX + playerId);
+            dbPlayerId = playerId;
+        }
+        return dbHelper.getWritableDatabase();
+    }
+
+    private interface Write {
+        void execute(SQLiteDatabase db);
+    }
+
+    private static class QuestRow {
+        String id;
+        ContentValues values;
+        List<ContentValues> reminders;
+    }
+
+    private static class QuestDbHelper extends SQLiteOpenHelper {
+
+        QuestDbHelper(Context context, String name) {
+            super(context, name, null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_QUESTS + " (" +
+                    "id TEXT PRIMARY KEY, " +
+                    "scheduled INTEGER, " +
+                    "completed_at INTEGER, " +
+                    "repeating_quest_id TEXT, " +
+                    "updated_at INTEGER, " +
+                    "data TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX quests_scheduled ON " + TABLE_QUESTS + " (scheduled)");
+            db.execSQL("CREATE INDEX quests_completed_at ON " + TABLE_QUESTS + " (completed_at)");
+            db.execSQL("CREATE INDEX quests_repeating_quest_id ON " + TABLE_QUESTS + " (repeating_quest_id)");
+
+            db.execSQL("CREATE TABLE " + TABLE_REMINDERS + " (" +
+                    "start INTEGER NOT NULL, " +
+                    "quest_id TEXT NOT NULL, " +
+                    "data TEXT NOT NULL, " +
+                    "PRIMARY KEY (start, quest_id))");
+            db.execSQL("CREATE INDEX quest_reminders_quest_id ON " + TABLE_REMINDERS + " (quest_id)");
+
+            db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (key TEXT PRIMARY KEY, value INTEGER)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_QUESTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_REMINDERS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+            onCreate(db);
+        }
+    }
+}
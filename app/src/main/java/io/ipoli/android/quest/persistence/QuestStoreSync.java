@@ -0,0 +1,165 @@
+package io.ipoli.android.quest.persistence;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.App;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.Quest_Mapper;
+
+/**
+ * Runs Firebase as a background sync source for the {@link QuestStore}.
+ * Only quests updated after the stored watermark are requested, so a warm start
+ * downloads the delta instead of the whole quests collection. Deletions come from the
+ * deletedQuests ids written with every quest delete.
+ */
+public class QuestStoreSync {
+
+    /**
+     * updatedAt is written with the clock of the device making the change
+     */
+    private static final long CLOCK_SKEW_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final QuestStore questStore;
+    private Query query;
+    private ChildEventListener childListener;
+    private Query deletedQuestsQuery;
+    private ChildEventListener deletedQuestsListener;
+
+    public QuestStoreSync(QuestStore questStore) {
+        this.questStore = questStore;
+    }
+
+    public void start() {
+        stop();
+        questStore.read(QuestStore::getWatermark, storedWatermark -> {
+            long watermark = storedWatermark;
+            if (watermark > 0 && watermark < QuestRetention.getDeletedQuestsCutoff()) {
+                // deletions since the last sync may have been compacted away, only a full download is safe
+                questStore.clear();
+                watermark = 0;
+            }
+            long start = Math.max(0, watermark - CLOCK_SKEW_MARGIN_MILLIS);
+            DatabaseReference playerReference = FirebaseDatabase.getInstance().getReference(Constants.API_VERSION)
+                    .child("players").child(App.getPlayerId());
+
+            query = playerReference.child("quests").orderByChild("updatedAt").startAt(start);
+            childListener = createChildListener();
+            query.addChildEventListener(childListener);
+
+            // quests deleted since the watermark are not in the query above, their ids are kept apart
+            deletedQuestsQuery = playerReference.child("deletedQuests").orderByValue().startAt(start);
+            deletedQuestsListener = createDeletedQuestsListener();
+            deletedQuestsQuery.addChildEventListener(deletedQuestsListener);
+
+            // value events fire after all initial child events of the same query
+            AtomicInteger pendingInitialLoads = new AtomicInteger(2);
+            ValueEventListener primeListener = new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot dataSnapshot) {
+                    if (pendingInitialLoads.decrementAndGet() == 0) {
+                        questStore.markPrimed();
+                    }
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+
+                }
+            };
+            query.addListenerForSingleValueEvent(primeListener);
+            deletedQuestsQuery.addListenerForSingleValueEvent(primeListener);
+        });
+    }
+
+    public void stop() {
+        if (query != null && childListener != null) {
+            query.removeEventListener(childListener);
+        }
+        if (deletedQuestsQuery != null && deletedQuestsListener != null) {
+            deletedQuestsQuery.removeEventListener(deletedQuestsListener);
+        }
+        query = null;
+        childListener = null;
+        deletedQuestsQuery = null;
+        deletedQuestsListener = null;
+    }
+
+    private ChildEventListener createDeletedQuestsListener() {
+        return new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot dataSnapshot, String previousName) {
+                questStore.delete(dataSnapshot.getKey());
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot dataSnapshot, String previousName) {
+                questStore.delete(dataSnapshot.getKey());
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot dataSnapshot) {
+
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot dataSnapshot, String previousName) {
+
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        };
+    }
+
+    private ChildEventListener createChildListener() {
+        return new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot dataSnapshot, String previousName) {
+                apply(dataSnapshot);
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot dataSnapshot, String previousName) {
+                apply(dataSnapshot);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot dataSnapshot) {
+                questStore.delete(dataSnapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot dataSnapshot, String previousName) {
+
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        };
+    }
+
+    private void apply(DataSnapshot dataSnapshot) {
+        Quest quest = Quest_Mapper.INSTANCE.fromValue(dataSnapshot.getValue());
+        if (quest == null) {
+            return;
+        }
+        questStore.upsert(quest);
+        if (quest.getUpdatedAt() != null) {
+            questStore.updateWatermark(quest.getUpdatedAt());
+        }
+    }
+}
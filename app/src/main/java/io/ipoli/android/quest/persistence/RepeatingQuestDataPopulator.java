@@ -0,0 +1,172 @@
+package io.ipoli.android.quest.persistence;
+
+import org.joda.time.LocalDate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.ipoli.android.app.persistence.IdGenerator;
+import io.ipoli.android.app.utils.StringUtils;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.QuestData;
+import io.ipoli.android.quest.data.RepeatingQuest;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * Builds the multi-path update data of repeating quest writes, relative to the player node.
+ * Quests of the repeating quest are populated through the given {@link QuestPersistenceService}.
+ */
+public class RepeatingQuestDataPopulator {
+
+    private final QuestPersistenceService questPersistenceService;
+    private final IdGenerator idGenerator;
+
+    public RepeatingQuestDataPopulator(QuestPersistenceService questPersistenceService, IdGenerator idGenerator) {
+        this.questPersistenceService = questPersistenceService;
+        this.idGenerator = idGenerator;
+    }
+
+    public void populateNewRepeatingQuest(RepeatingQuest repeatingQuest, List<Quest> quests, Map<String, Object> data) {
+        repeatingQuest.setId(idGenerator.generateId());
+        updateSchedulingWatermark(repeatingQuest);
+        for (Quest q : quests) {
+            q.setRepeatingQuestId(repeatingQuest.getId());
+            questPersistenceService.populateNewQuestData(q, data);
+            repeatingQuest.addQuestData(q.getId(), new QuestData(q));
+        }
+        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), true);
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+        }
+        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+    }
+
+    public void populateScheduledQuests(RepeatingQuest repeatingQuest, List<Quest> quests, Map<String, Object> data) {
+        for (Quest q : quests) {
+            q.setRepeatingQuestId(repeatingQuest.getId());
+            questPersistenceService.populateNewQuestData(q, data);
+            repeatingQuest.addQuestData(q.getId(), new QuestData(q));
+        }
+        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), true);
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+        }
+        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+    }
+
+    public void populateUpdateRepeatingQuest(RepeatingQuest repeatingQuest, Map<String, Object> data) {
+        updateSchedulingWatermark(repeatingQuest);
+        populateRepeatingQuestChallenge(repeatingQuest, data);
+
+        for (String questId : repeatingQuest.getQuestsData().keySet()) {
+            QuestData questData = repeatingQuest.getQuestsData().get(questId);
+            if (repeatingQuest.getPreviousChallengeId() != null) {
+                data.put("/challenges/" + repeatingQuest.getPreviousChallengeId() + "/questsData/" + questId, null);
+            }
+            String challengeId = repeatingQuest.getChallengeId();
+            if (challengeId != null) {
+                data.put("/challenges/" + challengeId + "/questsData/" + questId, questData);
+            }
+            if (questData.getScheduledDate() == null) {
+                data.put("/inboxQuests/" + questId + "/challengeId", challengeId);
+            } else {
+                data.put("/dayQuests/" + questData.getScheduledDate() + "/" + questId + "/challengeId", challengeId);
+            }
+            data.put("/quests/" + questId + "/challengeId", challengeId);
+        }
+        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+    }
+
+    public void populateUpdateRepeatingQuest(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToUpdate,
+                                             List<Quest> questsToCreate, Map<String, Object> data) {
+        updateSchedulingWatermark(repeatingQuest);
+        populateRepeatingQuestChallenge(repeatingQuest, data);
+
+        for (Quest quest : questsToRemove) {
+            questPersistenceService.populateDeleteQuestDataFromRepeatingQuest(quest, data);
+            repeatingQuest.removeQuestData(quest.getId());
+        }
+
+        String repeatingQuestPath = "/repeatingQuests/" + repeatingQuest.getId() + "/";
+        for (Quest quest : questsToUpdate) {
+            Map<String, Object> questData = new HashMap<>();
+            questPersistenceService.populateUpdateQuestData(quest, questData);
+            // the quest data goes with the whole repeating quest below, a path under it may not be in the same write
+            for (Map.Entry<String, Object> entry : questData.entrySet()) {
+                if (!entry.getKey().startsWith(repeatingQuestPath)) {
+                    data.put(entry.getKey(), entry.getValue());
+                }
+            }
+            repeatingQuest.addQuestData(quest.getId(), new QuestData(quest));
+        }
+
+        for (Quest quest : questsToCreate) {
+            questPersistenceService.populateNewQuestData(quest, data);
+            repeatingQuest.addQuestData(quest.getId(), new QuestData(quest));
+        }
+
+        data.put("/repeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+    }
+
+    public void populateDeleteRepeatingQuest(RepeatingQuest repeatingQuest, List<Quest> quests, Map<String, Object> data) {
+        if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/repeatingQuestIds/" + repeatingQuest.getId(), null);
+            data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId(), null);
+        }
+        data.put("/repeatingQuests/" + repeatingQuest.getId(), null);
+
+        Set<String> orphanQuestIds = repeatingQuest.getQuestsData().keySet();
+        for (Quest quest : quests) {
+            orphanQuestIds.remove(quest.getId());
+            questPersistenceService.populateDeleteQuestDataFromRepeatingQuest(quest, data);
+        }
+
+        for (String questId : orphanQuestIds) {
+            data.put("/quests/" + questId + "/repeatingQuestId", null);
+        }
+    }
+
+    /**
+     * Stops scheduling of repeating quests that became all-day or whose recurrence ended since
+     * they were saved, so the scheduled before queries stop returning them
+     */
+    public void populateStoppedScheduling(List<RepeatingQuest> repeatingQuests, Map<String, Object> data) {
+        for (RepeatingQuest repeatingQuest : repeatingQuests) {
+            repeatingQuest.stopScheduling();
+            data.put("/repeatingQuests/" + repeatingQuest.getId() + "/scheduledUntil", repeatingQuest.getScheduledUntil());
+            if (!StringUtils.isEmpty(repeatingQuest.getChallengeId())) {
+                data.put("/challenges/" + repeatingQuest.getChallengeId() + "/challengeRepeatingQuests/" + repeatingQuest.getId() + "/scheduledUntil",
+                        repeatingQuest.getScheduledUntil());
+            }
+        }
+    }
+
+    /**
+     * Edits may take a repeating quest out of scheduling or bring it back
+     */
+    private void updateSchedulingWatermark(RepeatingQuest repeatingQuest) {
+        if (!repeatingQuest.isSchedulable(toStartOfDayUTC(LocalDate.now()))) {
+            repeatingQuest.stopScheduling();
+        } else if (repeatingQuest.isSchedulingStopped()) {
+            repeatingQuest.resumeScheduling();
+        }
+    }
+
+    private void populateRepeatingQuestChallenge(RepeatingQuest repeatingQuest, Map<String, Object> data) {
+        if (repeatingQuest.getPreviousChallengeId() != null) {
+            String challengeId = repeatingQuest.getPreviousChallengeId();
+            data.put("/challenges/" + challengeId + "/repeatingQuestIds/" + repeatingQuest.getId(), null);
+            data.put("/challenges/" + challengeId + "/challengeRepeatingQuests/" + repeatingQuest.getId(), null);
+        }
+
+        if (repeatingQuest.getChallengeId() != null) {
+            String challengeId = repeatingQuest.getChallengeId();
+            // @TODO check if repeating quest is complete
+            data.put("/challenges/" + challengeId + "/repeatingQuestIds/" + repeatingQuest.getId(), false);
+            data.put("/challenges/" + challengeId + "/challengeRepeatingQuests/" + repeatingQuest.getId(), repeatingQuest);
+        }
+    }
+}
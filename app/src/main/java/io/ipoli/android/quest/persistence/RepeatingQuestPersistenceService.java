@@ -1,5 +1,6 @@
 package io.ipoli.android.quest.persistence;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +17,13 @@ public interface RepeatingQuestPersistenceService extends PersistenceService<Rep
 
     void findAllNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener);
 
+    /**
+     * Active, not all day repeating quests that were never scheduled or only until before date.
+     * All-day and ended repeating quests read by the query get their scheduling stopped, so
+     * later reads skip them. The listener gets null when the read fails.
+     */
+    void findNonAllDayActiveRepeatingQuestsScheduledBefore(Date date, OnDataChangedListener<List<RepeatingQuest>> listener);
+
     void listenForAllNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener);
 
     void listenForNonFlexibleNonAllDayActiveRepeatingQuests(OnDataChangedListener<List<RepeatingQuest>> listener);
@@ -30,7 +38,7 @@ public interface RepeatingQuestPersistenceService extends PersistenceService<Rep
 
     void save(Map<RepeatingQuest, List<Quest>> repeatingQuestToScheduledQuests);
 
-    void update(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToCreate);
+    void update(RepeatingQuest repeatingQuest, List<Quest> questsToRemove, List<Quest> questsToUpdate, List<Quest> questsToCreate);
 
     void update(RepeatingQuest repeatingQuest);
 
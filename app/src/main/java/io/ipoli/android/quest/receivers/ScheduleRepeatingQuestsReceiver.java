@@ -0,0 +1,53 @@
+package io.ipoli.android.quest.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import org.joda.time.LocalDate;
+
+import javax.inject.Inject;
+
+import io.ipoli.android.app.App;
+import io.ipoli.android.quest.persistence.RepeatingQuestPersistenceService;
+import io.ipoli.android.quest.schedulers.RepeatingQuestExpander;
+import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+
+/**
+ * Moves the scheduling watermark of repeating quests to the horizon. Only the repeating quests
+ * whose watermark is behind are read, and only their missing periods are scheduled, in parallel.
+ */
+public class ScheduleRepeatingQuestsReceiver extends BroadcastReceiver {
+
+    public static final String ACTION_SCHEDULE_REPEATING_QUESTS = "io.ipoli.android.intent.action.SCHEDULE_REPEATING_QUESTS";
+
+    private static final String TAG = "ScheduleRepeatingQuests";
+
+    @Inject
+    RepeatingQuestPersistenceService repeatingQuestPersistenceService;
+
+    @Inject
+    RepeatingQuestExpander repeatingQuestExpander;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        App.getAppComponent(context).inject(this);
+        PendingResult result = goAsync();
+        LocalDate today = LocalDate.now();
+        repeatingQuestPersistenceService.findNonAllDayActiveRepeatingQuestsScheduledBefore(RepeatingQuestScheduler.getHorizonEnd(today), repeatingQuests -> {
+            if (repeatingQuests == null || repeatingQuests.isEmpty()) {
+                result.finish();
+                return;
+            }
+            repeatingQuestExpander.expand(repeatingQuests, today, null, repeatingQuestToScheduledQuests -> {
+                Log.d(TAG, repeatingQuestExpander.getRunSummary());
+                try {
+                    repeatingQuestPersistenceService.saveScheduledRepeatingQuests(repeatingQuestToScheduledQuests);
+                } finally {
+                    result.finish();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,241 @@
+package io.ipoli.android.quest.schedulers;
+
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Date;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateList;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateTime;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Recur;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.WeekDay;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.parameter.Value;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An RRULE parsed once into a frequency, a weekday mask and a month day mask, so occurrences
+ * are found by arithmetic on days since the epoch. Rules that use anything else (intervals,
+ * counts, positions, month days the month may not have) keep being expanded by ical4j.
+ */
+public class CompiledRecurrence {
+
+    public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private static final int MAX_CACHED_RULES = 512;
+    private static final int MAX_SAFE_MONTH_DAY = 28;
+    private static final CompiledRecurrence INVALID = new CompiledRecurrence("", "", 0, 0, Long.MAX_VALUE, false);
+    private static final Map<String, CompiledRecurrence> cache = new ConcurrentHashMap<>();
+
+    private final String rrule;
+    private final String frequency;
+    private final int weekDayMask;
+    private final int monthDayMask;
+    private final long untilDay;
+    private final boolean expandedByRecur;
+
+    private CompiledRecurrence(String rrule, String frequency, int weekDayMask, int monthDayMask, long untilDay, boolean expandedByRecur) {
+        this.rrule = rrule;
+        this.frequency = frequency;
+        this.weekDayMask = weekDayMask;
+        this.monthDayMask = monthDayMask;
+        this.untilDay = untilDay;
+        this.expandedByRecur = expandedByRecur;
+    }
+
+    /**
+     * @return the compiled rule, shared by every recurrence with the same rrule, or null when
+     * the rrule is empty or can not be parsed
+     */
+    public static CompiledRecurrence compile(String rrule) {
+        if (rrule == null || rrule.isEmpty()) {
+            return null;
+        }
+        CompiledRecurrence compiled = cache.get(rrule);
+        if (compiled == null) {
+            if (cache.size() >= MAX_CACHED_RULES) {
+                cache.clear();
+            }
+            compiled = parse(rrule);
+            cache.put(rrule, compiled);
+        }
+        return compiled == INVALID ? null : compiled;
+    }
+
+    private static CompiledRecurrence parse(String rrule) {
+        Recur recur;
+        try {
+            recur = new Recur(rrule);
+        } catch (ParseException | IllegalArgumentException e) {
+            return INVALID;
+        }
+
+        int weekDayMask = 0;
+        boolean expandedByRecur = recur.getInterval() > 1 || recur.getCount() > 0
+                || !recur.getSetPosList().isEmpty() || !recur.getMonthList().isEmpty()
+                || !recur.getYearDayList().isEmpty() || !recur.getWeekNoList().isEmpty()
+                || !recur.getHourList().isEmpty() || !recur.getMinuteList().isEmpty()
+                || !recur.getSecondList().isEmpty();
+        for (Object obj : recur.getDayList()) {
+            WeekDay weekDay = (WeekDay) obj;
+            if (weekDay.getOffset() != 0) {
+                expandedByRecur = true;
+            }
+            weekDayMask |= 1 << (toDayOfWeek(weekDay) - 1);
+        }
+        int monthDayMask = 0;
+        for (Object obj : recur.getMonthDayList()) {
+            int monthDay = (Integer) obj;
+            if (monthDay < 1 || monthDay > MAX_SAFE_MONTH_DAY) {
+                expandedByRecur = true;
+            } else {
+                monthDayMask |= 1 << (monthDay - 1);
+            }
+        }
+
+        String frequency = recur.getFrequency();
+        if (Recur.DAILY.equals(frequency) || Recur.WEEKLY.equals(frequency)) {
+            expandedByRecur |= !recur.getMonthDayList().isEmpty();
+        } else if (Recur.MONTHLY.equals(frequency)) {
+            expandedByRecur |= weekDayMask != 0 && !recur.getMonthDayList().isEmpty();
+        } else {
+            expandedByRecur = true;
+        }
+
+        long untilDay = recur.getUntil() != null ? toEpochDay(recur.getUntil()) : Long.MAX_VALUE;
+        return new CompiledRecurrence(rrule, frequency, weekDayMask, monthDayMask, untilDay, expandedByRecur);
+    }
+
+    public boolean isYearly() {
+        return Recur.YEARLY.equals(frequency);
+    }
+
+    public String getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @param dayOfWeek 1 for Monday to 7 for Sunday, as in Joda
+     */
+    public boolean hasWeekDay(int dayOfWeek) {
+        return (weekDayMask & (1 << (dayOfWeek - 1))) != 0;
+    }
+
+    public int getWeekDayCount() {
+        return Integer.bitCount(weekDayMask);
+    }
+
+    /**
+     * @return days of the week from BYDAY, 1 for Monday to 7 for Sunday
+     */
+    public List<Integer> getWeekDays() {
+        List<Integer> weekDays = new ArrayList<>();
+        for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+            if (hasWeekDay(dayOfWeek)) {
+                weekDays.add(dayOfWeek);
+            }
+        }
+        return weekDays;
+    }
+
+    /**
+     * Same dates as ical4j Recur.getDates(seed, periodStart, periodEnd + 1 day, Value.DATE),
+     * all bounds are inclusive and all dates are at the start of the day in UTC
+     *
+     * @param until overrides the UNTIL of the rule when not null
+     */
+    public List<java.util.Date> getDates(java.util.Date seed, java.util.Date periodStart, java.util.Date periodEnd, java.util.Date until) {
+        long seedDay = toEpochDay(seed);
+        if (expandedByRecur || dependsOnMissingMonthDay(seedDay)) {
+            return getDatesWithRecur(seed, periodStart, periodEnd, until);
+        }
+
+        long fromDay = Math.max(seedDay, toEpochDay(periodStart));
+        long toDay = Math.min(toEpochDay(periodEnd), until != null ? toEpochDay(until) : untilDay);
+        int seedDayOfWeek = dayOfWeek(seedDay);
+        int seedDayOfMonth = dayOfMonth(seedDay);
+        List<java.util.Date> dates = new ArrayList<>();
+        for (long day = fromDay; day <= toDay; day++) {
+            if (matches(day, seedDayOfWeek, seedDayOfMonth)) {
+                dates.add(new java.util.Date(day * MILLIS_PER_DAY));
+            }
+        }
+        return dates;
+    }
+
+    private boolean matches(long day, int seedDayOfWeek, int seedDayOfMonth) {
+        switch (frequency) {
+            case Recur.DAILY:
+                return weekDayMask == 0 || hasWeekDay(dayOfWeek(day));
+            case Recur.WEEKLY:
+                return weekDayMask == 0 ? dayOfWeek(day) == seedDayOfWeek : hasWeekDay(dayOfWeek(day));
+            default:
+                if (weekDayMask != 0) {
+                    return hasWeekDay(dayOfWeek(day));
+                }
+                int dayOfMonth = dayOfMonth(day);
+                return monthDayMask == 0 ? dayOfMonth == seedDayOfMonth : (monthDayMask & (1 << (dayOfMonth - 1))) != 0;
+        }
+    }
+
+    /**
+     * A monthly rule without days repeats on the day of the seed, which not every month has
+     */
+    private boolean dependsOnMissingMonthDay(long seedDay) {
+        return Recur.MONTHLY.equals(frequency) && weekDayMask == 0 && monthDayMask == 0
+                && dayOfMonth(seedDay) > MAX_SAFE_MONTH_DAY;
+    }
+
+    private List<java.util.Date> getDatesWithRecur(java.util.Date seed, java.util.Date periodStart, java.util.Date periodEnd, java.util.Date until) {
+        List<java.util.Date> dates = new ArrayList<>();
+        Recur recur;
+        try {
+            recur = new Recur(rrule);
+        } catch (ParseException e) {
+            return dates;
+        }
+        if (until != null) {
+            recur.setUntil(new Date(until));
+        }
+        DateList dateList = recur.getDates(new Date(seed), new Date(periodStart),
+                new DateTime((toEpochDay(periodEnd) + 1) * MILLIS_PER_DAY), Value.DATE);
+        for (Object obj : dateList) {
+            dates.add(new java.util.Date(((Date) obj).getTime()));
+        }
+        return dates;
+    }
+
+    private static int toDayOfWeek(WeekDay weekDay) {
+        int calendarDay = WeekDay.getCalendarDay(weekDay);
+        return calendarDay == java.util.Calendar.SUNDAY ? 7 : calendarDay - 1;
+    }
+
+    public static long toEpochDay(java.util.Date date) {
+        return floorDiv(date.getTime(), MILLIS_PER_DAY);
+    }
+
+    /**
+     * 1 for Monday to 7 for Sunday, the epoch was a Thursday
+     */
+    static int dayOfWeek(long epochDay) {
+        return (int) (epochDay - floorDiv(epochDay + 3, 7) * 7 + 3) + 1;
+    }
+
+    /**
+     * Civil from days, counting in 400 year eras that start on March 1st
+     */
+    static int dayOfMonth(long epochDay) {
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        return (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+}
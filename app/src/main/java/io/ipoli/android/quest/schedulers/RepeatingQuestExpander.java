@@ -0,0 +1,195 @@
+package io.ipoli.android.quest.schedulers;
+
+import com.squareup.otto.Bus;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.ipoli.android.app.events.AppErrorEvent;
+import io.ipoli.android.app.exceptions.RepeatingQuestExpansionException;
+import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+
+/**
+ * Expands many repeating quests at once on a bounded pool of worker threads. Every repeating
+ * quest is scheduled by a single worker with its own random stream, so the result does not
+ * depend on the number of threads or on the order in which they finish. Results are merged in
+ * the order of the input, ready for a single write.
+ */
+public class RepeatingQuestExpander {
+
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    private final RepeatingQuestScheduler repeatingQuestScheduler;
+    private final ThreadPoolExecutor workers;
+    private final Executor callbackExecutor;
+    private final Bus eventBus;
+
+    private long runCount;
+    private long expandedRepeatingQuestCount;
+    private long failedRepeatingQuestCount;
+    private long createdQuestCount;
+    private long lastRunLatencyMillis;
+    private long totalRunLatencyMillis;
+    private long maxRunLatencyMillis;
+    private long maxRepeatingQuestLatencyMillis;
+
+    public interface OnProgressListener {
+        /**
+         * Called from the worker threads
+         */
+        void onProgress(int expandedCount, int totalCount);
+    }
+
+    /**
+     * @param callbackExecutor runs the listener that receives the merged result
+     * @param eventBus         receives an {@link AppErrorEvent} for every repeating quest that fails to expand
+     */
+    public RepeatingQuestExpander(RepeatingQuestScheduler repeatingQuestScheduler, int threadCount, Executor callbackExecutor, Bus eventBus) {
+        this.repeatingQuestScheduler = repeatingQuestScheduler;
+        this.callbackExecutor = callbackExecutor;
+        this.eventBus = eventBus;
+        this.workers = new ThreadPoolExecutor(threadCount, threadCount, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules every repeating quest ahead from date. A repeating quest that fails to expand is
+     * reported and left out of the result, so its watermark is not saved and it is expanded again
+     * next time.
+     *
+     * @param progressListener optional, called after each repeating quest
+     */
+    public void expand(List<RepeatingQuest> repeatingQuests, LocalDate date, OnProgressListener progressListener,
+                       OnDataChangedListener<Map<RepeatingQuest, List<Quest>>> listener) {
+        int totalCount = repeatingQuests.size();
+        long startTime = System.nanoTime();
+        if (totalCount == 0) {
+            onRunCompleted(0, 0, 0, startTime);
+            callbackExecutor.execute(() -> listener.onDataChanged(new LinkedHashMap<>()));
+            return;
+        }
+
+        List<List<Quest>> results = new ArrayList<>(totalCount);
+        for (int i = 0; i < totalCount; i++) {
+            results.add(null);
+        }
+        AtomicInteger expandedCount = new AtomicInteger();
+        for (int i = 0; i < totalCount; i++) {
+            int index = i;
+            workers.execute(() -> {
+                List<Quest> quests = null;
+                try {
+                    quests = expand(repeatingQuests.get(index), date);
+                } finally {
+                    // an Error still has to complete the run, or the listener is never called
+                    synchronized (results) {
+                        results.set(index, quests);
+                    }
+                    int expanded = expandedCount.incrementAndGet();
+                    if (progressListener != null) {
+                        progressListener.onProgress(expanded, totalCount);
+                    }
+                    if (expanded == totalCount) {
+                        Map<RepeatingQuest, List<Quest>> merged = merge(repeatingQuests, results, startTime);
+                        callbackExecutor.execute(() -> listener.onDataChanged(merged));
+                    }
+                }
+            });
+        }
+    }
+
+    private List<Quest> expand(RepeatingQuest repeatingQuest, LocalDate date) {
+        long startTime = System.nanoTime();
+        try {
+            return repeatingQuestScheduler.scheduleAhead(repeatingQuest, DateUtils.toStartOfDayUTC(date));
+        } catch (RuntimeException e) {
+            eventBus.post(new AppErrorEvent(new RepeatingQuestExpansionException(repeatingQuest.getId(), e)));
+            return null;
+        } finally {
+            onRepeatingQuestExpanded(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+    }
+
+    private Map<RepeatingQuest, List<Quest>> merge(List<RepeatingQuest> repeatingQuests, List<List<Quest>> results, long startTime) {
+        Map<RepeatingQuest, List<Quest>> merged = new LinkedHashMap<>();
+        int questCount = 0;
+        synchronized (results) {
+            for (int i = 0; i < repeatingQuests.size(); i++) {
+                List<Quest> quests = results.get(i);
+                if (quests != null) {
+                    merged.put(repeatingQuests.get(i), quests);
+                    questCount += quests.size();
+                }
+            }
+        }
+        onRunCompleted(merged.size(), repeatingQuests.size() - merged.size(), questCount, startTime);
+        return merged;
+    }
+
+    private synchronized void onRepeatingQuestExpanded(long latencyMillis) {
+        maxRepeatingQuestLatencyMillis = Math.max(maxRepeatingQuestLatencyMillis, latencyMillis);
+    }
+
+    private synchronized void onRunCompleted(int expandedCount, int failedCount, int questCount, long startTime) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        runCount++;
+        expandedRepeatingQuestCount += expandedCount;
+        failedRepeatingQuestCount += failedCount;
+        createdQuestCount += questCount;
+        lastRunLatencyMillis = latencyMillis;
+        totalRunLatencyMillis += latencyMillis;
+        maxRunLatencyMillis = Math.max(maxRunLatencyMillis, latencyMillis);
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    public synchronized long getExpandedRepeatingQuestCount() {
+        return expandedRepeatingQuestCount;
+    }
+
+    public synchronized long getFailedRepeatingQuestCount() {
+        return failedRepeatingQuestCount;
+    }
+
+    public synchronized long getCreatedQuestCount() {
+        return createdQuestCount;
+    }
+
+    public synchronized long getLastRunLatencyMillis() {
+        return lastRunLatencyMillis;
+    }
+
+    public synchronized double getAverageRunLatencyMillis() {
+        return runCount == 0 ? 0 : (double) totalRunLatencyMillis / runCount;
+    }
+
+    public synchronized long getMaxRunLatencyMillis() {
+        return maxRunLatencyMillis;
+    }
+
+    public synchronized long getMaxRepeatingQuestLatencyMillis() {
+        return maxRepeatingQuestLatencyMillis;
+    }
+
+    public synchronized String getRunSummary() {
+        return String.format(Locale.US, "runs=%d expanded=%d failed=%d created=%d lastMs=%d avgMs=%.1f maxMs=%d maxQuestMs=%d",
+                runCount, expandedRepeatingQuestCount, failedRepeatingQuestCount, createdQuestCount,
+                lastRunLatencyMillis, getAverageRunLatencyMillis(), maxRunLatencyMillis, maxRepeatingQuestLatencyMillis);
+    }
+}
@@ -5,15 +5,8 @@ import android.support.v4.util.Pair;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Date;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateList;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateTime;
 import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Recur;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.WeekDay;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.WeekDayList;
-import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.parameter.Value;
 
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -22,6 +15,7 @@ import java.util.Random;
 import java.util.Set;
 
 import io.ipoli.android.Constants;
+import io.ipoli.android.app.scheduling.SchedulingRandom;
 import io.ipoli.android.app.utils.DateUtils;
 import io.ipoli.android.quest.data.Quest;
 import io.ipoli.android.quest.data.Recurrence;
@@ -36,19 +30,40 @@ import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
  */
 public class RepeatingQuestScheduler {
 
-    private final long seed;
+    private final SchedulingRandom random;
 
     public RepeatingQuestScheduler() {
         this(System.currentTimeMillis());
     }
 
     public RepeatingQuestScheduler(long seed) {
-        this.seed = seed;
+        this.random = new SchedulingRandom(seed);
     }
 
+    /**
+     * Repeating quests are scheduled until the end of the week this many weeks ahead
+     */
+    public static final int HORIZON_WEEKS = 4;
+
+    public static java.util.Date getHorizonEnd(LocalDate currentDate) {
+        return toStartOfDayUTC(currentDate.plusWeeks(HORIZON_WEEKS - 1).dayOfWeek().withMaximumValue());
+    }
+
+    public static boolean isScheduledToHorizon(RepeatingQuest repeatingQuest, LocalDate currentDate) {
+        Long scheduledUntil = repeatingQuest.getScheduledUntil();
+        return scheduledUntil != null && scheduledUntil >= getHorizonEnd(currentDate).getTime();
+    }
+
+    /**
+     * Schedules the periods that end after the watermark of the repeating quest and start
+     * before the horizon, nothing when the watermark is already at the horizon
+     */
     public List<Quest> scheduleAhead(RepeatingQuest repeatingQuest, java.util.Date startDate) {
         LocalDate currentDate = new LocalDate(startDate, DateTimeZone.UTC);
         List<Quest> quests = new ArrayList<>();
+        if (isScheduledToHorizon(repeatingQuest, currentDate)) {
+            return quests;
+        }
         if (repeatingQuest.isFlexible()) {
             Recurrence.RecurrenceType recurrenceType = repeatingQuest.getRecurrence().getRecurrenceType();
             if (recurrenceType == Recurrence.RecurrenceType.MONTHLY) {
@@ -77,7 +92,12 @@ public class RepeatingQuestScheduler {
 
     private List<Quest> scheduleFlexibleForMonth(RepeatingQuest repeatingQuest, LocalDate currentDate) {
         LocalDate endOfMonth = currentDate.dayOfMonth().withMaximumValue();
-        return saveQuestsInRange(repeatingQuest, currentDate, endOfMonth);
+        List<Quest> quests = saveQuestsInRange(repeatingQuest, currentDate, endOfMonth);
+        LocalDate startOfNextMonth = endOfMonth.plusDays(1);
+        if (!toStartOfDayUTC(startOfNextMonth).after(getHorizonEnd(currentDate))) {
+            quests.addAll(saveQuestsInRange(repeatingQuest, startOfNextMonth, startOfNextMonth.dayOfMonth().withMaximumValue()));
+        }
+        return quests;
     }
 
     private List<Quest> scheduleFor4WeeksAhead(RepeatingQuest repeatingQuest, LocalDate currentDate) {
@@ -105,7 +125,7 @@ public class RepeatingQuestScheduler {
 
         List<Pair<LocalDate, LocalDate>> weekBounds = new ArrayList<>();
         weekBounds.add(new Pair<>(startOfWeek, endOfWeek));
-        for (int i = 0; i < 3; i++) {
+        for (int i = 1; i < HORIZON_WEEKS; i++) {
             startOfWeek = startOfWeek.plusDays(7);
             endOfWeek = endOfWeek.plusDays(7);
             weekBounds.add(new Pair<>(startOfWeek, endOfWeek));
@@ -132,7 +152,7 @@ public class RepeatingQuestScheduler {
     private List<Quest> scheduleMonthlyFlexibleQuest(RepeatingQuest repeatingQuest, java.util.Date startDate) {
         Recurrence recurrence = repeatingQuest.getRecurrence();
         LocalDate start = new LocalDate(startDate, DateTimeZone.UTC);
-        List<LocalDate> possibleDates = findMonthlyPossibleDates(recurrence, start);
+        List<LocalDate> possibleDates = findMonthlyPossibleDates(recurrence, start, createRandom(repeatingQuest, start));
         List<Quest> result = new ArrayList<>();
         for (LocalDate date : possibleDates) {
             result.add(createQuestFromRepeating(repeatingQuest, toStartOfDayUTC(date)));
@@ -144,20 +164,19 @@ public class RepeatingQuestScheduler {
     }
 
     @NonNull
-    private List<LocalDate> findMonthlyPossibleDates(Recurrence recurrence, LocalDate start) {
+    private List<LocalDate> findMonthlyPossibleDates(Recurrence recurrence, LocalDate start, Random random) {
         Set<LocalDate> possibleDates = new HashSet<>();
         List<LocalDate> allMonthDays = new ArrayList<>();
+        CompiledRecurrence compiled = CompiledRecurrence.compile(recurrence.getRrule());
         for (int i = start.dayOfMonth().withMinimumValue().getDayOfMonth(); i <= start.dayOfMonth().withMaximumValue().getDayOfMonth(); i++) {
-            WeekDayList weekDayList = getWeekDayList(recurrence.getRrule());
             LocalDate date = start.withDayOfMonth(i);
-            WeekDay weekDay = new WeekDay(date.dayOfWeek().getAsShortText().substring(0, 2).toUpperCase());
-            if (weekDayList.contains(weekDay)) {
+            if (compiled != null && compiled.hasWeekDay(date.getDayOfWeek())) {
                 possibleDates.add(date);
             }
             allMonthDays.add(date);
         }
         if (possibleDates.size() < recurrence.getFlexibleCount()) {
-            Collections.shuffle(allMonthDays, new Random(seed));
+            Collections.shuffle(allMonthDays, random);
             for (LocalDate monthDate : allMonthDays) {
                 possibleDates.add(monthDate);
                 if (possibleDates.size() == recurrence.getFlexibleCount()) {
@@ -166,7 +185,7 @@ public class RepeatingQuestScheduler {
             }
         }
         List<LocalDate> possibleDateList = new ArrayList<>(possibleDates);
-        Collections.shuffle(possibleDateList, new Random(seed));
+        Collections.shuffle(possibleDateList, random);
         possibleDateList = possibleDateList.subList(0, recurrence.getFlexibleCount());
 
         List<LocalDate> result = new ArrayList<>();
@@ -185,7 +204,7 @@ public class RepeatingQuestScheduler {
         LocalDate start = new LocalDate(startDate, DateTimeZone.UTC);
         List<LocalDate> possibleDates = findPossibleDates(recurrence.getRrule(), countForWeek, start);
 
-        Collections.shuffle(possibleDates, new Random(seed));
+        Collections.shuffle(possibleDates, createRandom(repeatingQuest, start));
 
         List<Quest> result = new ArrayList<>();
         for (LocalDate endDate : possibleDates) {
@@ -194,13 +213,23 @@ public class RepeatingQuestScheduler {
         return result;
     }
 
+    /**
+     * A stream of its own for every repeating quest and period, so flexible quests are spread
+     * independently of each other and of the order in which they are scheduled
+     */
+    private Random createRandom(RepeatingQuest repeatingQuest, LocalDate start) {
+        String key = repeatingQuest.getId() != null ? repeatingQuest.getId() : repeatingQuest.getRawText();
+        return random.split(key + "_" + start);
+    }
+
     @NonNull
     private List<LocalDate> findPossibleDates(String rrule, int countForWeek, LocalDate start) {
         Set<LocalDate> possibleDates = new HashSet<>();
 
-        WeekDayList weekDayList = getWeekDayList(rrule);
-        addPreferredDays(start, possibleDates, weekDayList);
-        if (weekDayList.size() < countForWeek) {
+        CompiledRecurrence compiled = CompiledRecurrence.compile(rrule);
+        List<Integer> weekDays = compiled != null ? compiled.getWeekDays() : new ArrayList<>();
+        addPreferredDays(start, possibleDates, weekDays);
+        if (weekDays.size() < countForWeek) {
             addAdditionalDays(countForWeek, start, possibleDates);
         }
 
@@ -216,15 +245,6 @@ public class RepeatingQuestScheduler {
         return result;
     }
 
-    private WeekDayList getWeekDayList(String rrule) {
-        try {
-            return new Recur(rrule).getDayList();
-
-        } catch (Exception e) {
-            return new WeekDayList();
-        }
-    }
-
     private void addAdditionalDays(int countForWeek, LocalDate start, Set<LocalDate> possibleDates) {
         for (int i = start.getDayOfWeek(); i <= start.dayOfWeek().withMaximumValue().getDayOfWeek(); i++) {
             possibleDates.add(start.withDayOfWeek(i));
@@ -234,60 +254,28 @@ public class RepeatingQuestScheduler {
         }
     }
 
-    private void addPreferredDays(LocalDate start, Set<LocalDate> possibleDates, WeekDayList weekDayList) {
-        for (Object weekDayObj : weekDayList) {
-            WeekDay weekDay = (WeekDay) weekDayObj;
-            int calendarDay = WeekDay.getCalendarDay(weekDay);
-            if (weekDay.equals(WeekDay.SU)) {
-                calendarDay = 7;
-            } else {
-                calendarDay--;
-            }
-            possibleDates.add(start.withDayOfWeek(calendarDay));
+    private void addPreferredDays(LocalDate start, Set<LocalDate> possibleDates, List<Integer> weekDays) {
+        for (int dayOfWeek : weekDays) {
+            possibleDates.add(start.withDayOfWeek(dayOfWeek));
         }
     }
 
     @NonNull
     private List<Quest> scheduleFixedQuest(RepeatingQuest repeatingQuest, java.util.Date startDate) {
         Recurrence recurrence = repeatingQuest.getRecurrence();
-        String rruleStr = recurrence.getRrule();
         List<Quest> res = new ArrayList<>();
-        if (rruleStr == null || rruleStr.isEmpty()) {
-            return res;
-        }
-        Recur recur;
-        try {
-            recur = new Recur(rruleStr);
-        } catch (ParseException e) {
-            return res;
-        }
-        if (recurrence.getDtendDate() != null) {
-            recur.setUntil(new Date(recurrence.getDtendDate()));
-        }
-
-        if (recur.getFrequency().equals(Recur.YEARLY)) {
+        CompiledRecurrence compiled = CompiledRecurrence.compile(recurrence.getRrule());
+        if (compiled == null || compiled.isYearly()) {
             return res;
         }
 
-        java.util.Date endDate = getEndDate(recur, startDate);
-        DateList dates = recur.getDates(new Date(startDate), new Date(recurrence.getDtstartDate()),
-                getPeriodEnd(endDate), Value.DATE);
-
-        for (Object obj : dates) {
-            res.add(createQuestFromRepeating(repeatingQuest, toJavaDate((Date) obj)));
+        java.util.Date endDate = getEndDate(compiled.getFrequency(), startDate);
+        for (java.util.Date date : compiled.getDates(startDate, recurrence.getDtstartDate(), endDate, recurrence.getDtendDate())) {
+            res.add(createQuestFromRepeating(repeatingQuest, date));
         }
         return res;
     }
 
-    private java.util.Date toJavaDate(Date date) {
-        return new java.util.Date(date.getTime());
-    }
-
-    @NonNull
-    private DateTime getPeriodEnd(java.util.Date endDate) {
-        return new DateTime(toStartOfDayUTC(new LocalDate(endDate.getTime(), DateTimeZone.UTC).plusDays(1)));
-    }
-
     private Quest createQuestFromRepeating(RepeatingQuest repeatingQuest, java.util.Date endDate) {
         Quest quest = new Quest();
         quest.setName(repeatingQuest.getName());
@@ -308,20 +296,21 @@ public class RepeatingQuestScheduler {
         quest.setCompletedCount(0);
         quest.setAllDay(false);
         quest.setTimesADay(repeatingQuest.getTimesADay());
+        quest.setReminders(createQuestReminders(repeatingQuest));
+        return quest;
+    }
+
+    static List<Reminder> createQuestReminders(RepeatingQuest repeatingQuest) {
         List<Reminder> questReminders = new ArrayList<>();
-        if (repeatingQuest.getReminders() != null) {
-            for (Reminder r : repeatingQuest.getReminders()) {
-                Reminder questReminder = new Reminder(r.getMinutesFromStart(), r.getNotificationId());
-                questReminder.setMessage(r.getMessage());
-                questReminders.add(questReminder);
-            }
-            quest.setReminders(questReminders);
+        for (Reminder r : repeatingQuest.getReminders()) {
+            Reminder questReminder = new Reminder(r.getMinutesFromStart(), r.getNotificationId());
+            questReminder.setMessage(r.getMessage());
+            questReminders.add(questReminder);
         }
-        return quest;
+        return questReminders;
     }
 
-    private java.util.Date getEndDate(Recur recur, java.util.Date startDate) {
-        String frequency = recur.getFrequency();
+    private java.util.Date getEndDate(String frequency, java.util.Date startDate) {
         LocalDate localStartDate = new LocalDate(startDate.getTime(), DateTimeZone.UTC);
         if (frequency.equals(Recur.WEEKLY)) {
             return toStartOfDayUTC(localStartDate.dayOfWeek().withMaximumValue());
@@ -334,27 +323,13 @@ public class RepeatingQuestScheduler {
 
     public List<Quest> scheduleForDateRange(RepeatingQuest repeatingQuest, java.util.Date from, java.util.Date to) {
         Recurrence recurrence = repeatingQuest.getRecurrence();
-        String rruleStr = recurrence.getRrule();
         List<Quest> res = new ArrayList<>();
-        if (rruleStr == null || rruleStr.isEmpty()) {
-            return res;
-        }
-        Recur recur;
-        try {
-            recur = new Recur(rruleStr);
-        } catch (ParseException e) {
+        CompiledRecurrence compiled = CompiledRecurrence.compile(recurrence.getRrule());
+        if (compiled == null || compiled.isYearly()) {
             return res;
         }
-        if (recur.getFrequency().equals(Recur.YEARLY)) {
-            return res;
-        }
-        DateList dates = recur.getDates(new Date(recurrence.getDtstartDate()),
-                new Date(from),
-                getPeriodEnd(to), Value.DATE);
-
-
-        for (Object obj : dates) {
-            res.add(createQuestFromRepeating(repeatingQuest, toJavaDate((Date) obj)));
+        for (java.util.Date date : compiled.getDates(recurrence.getDtstartDate(), from, to, null)) {
+            res.add(createQuestFromRepeating(repeatingQuest, date));
         }
         return res;
     }
@@ -0,0 +1,228 @@
+package io.ipoli.android.quest.schedulers;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.note.data.Note;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.data.SubQuest;
+import io.ipoli.android.reminder.data.Reminder;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * Works out the smallest change to the upcoming quests of an edited repeating quest. Quests that
+ * keep their date are patched in place, only the occurrences that the new recurrence adds or
+ * drops are created or removed, and completed quests are left as they are.
+ */
+public class RepeatingQuestUpdatePlanner {
+
+    private final RepeatingQuestScheduler repeatingQuestScheduler;
+
+    public RepeatingQuestUpdatePlanner(RepeatingQuestScheduler repeatingQuestScheduler) {
+        this.repeatingQuestScheduler = repeatingQuestScheduler;
+    }
+
+    public static class Plan {
+        private final List<Quest> questsToCreate = new ArrayList<>();
+        private final List<Quest> questsToUpdate = new ArrayList<>();
+        private final List<Quest> questsToRemove = new ArrayList<>();
+        private final List<Quest> questsWithChangedNotifications = new ArrayList<>();
+
+        public List<Quest> getQuestsToCreate() {
+            return questsToCreate;
+        }
+
+        public List<Quest> getQuestsToUpdate() {
+            return questsToUpdate;
+        }
+
+        public List<Quest> getQuestsToRemove() {
+            return questsToRemove;
+        }
+
+        /**
+         * Removed quests and quests whose time or reminders changed
+         */
+        public List<Quest> getQuestsWithChangedNotifications() {
+            return questsWithChangedNotifications;
+        }
+    }
+
+    /**
+     * @param upcomingQuests quests of the repeating quest from currentDate on and the unscheduled ones
+     */
+    public Plan plan(RepeatingQuest repeatingQuest, List<Quest> upcomingQuests, LocalDate currentDate) {
+        Plan plan = new Plan();
+        List<Quest> keptQuests = new ArrayList<>();
+        if (repeatingQuest.isRecurrenceChanged()) {
+            Date startDate = toStartOfDayUTC(currentDate);
+            repeatingQuest.removeScheduledPeriodEndDatesFrom(startDate);
+            Map<Long, List<Quest>> upcomingQuestsByDate = groupByOriginalDate(upcomingQuests);
+            for (Quest quest : repeatingQuestScheduler.scheduleAhead(repeatingQuest, startDate)) {
+                if (quest.getOriginalScheduled() < startDate.getTime()) {
+                    // past days of the current period were not removed, so they are not created again
+                    continue;
+                }
+                Quest existingQuest = removeFirst(upcomingQuestsByDate, quest.getOriginalScheduled());
+                if (existingQuest != null) {
+                    keptQuests.add(existingQuest);
+                } else {
+                    plan.questsToCreate.add(quest);
+                }
+            }
+            for (List<Quest> quests : upcomingQuestsByDate.values()) {
+                for (Quest quest : quests) {
+                    if (quest.isCompleted()) {
+                        continue;
+                    }
+                    plan.questsToRemove.add(quest);
+                    plan.questsWithChangedNotifications.add(quest);
+                }
+            }
+        } else {
+            keptQuests.addAll(upcomingQuests);
+        }
+
+        for (Quest quest : keptQuests) {
+            if (quest.isCompleted()) {
+                continue;
+            }
+            boolean notificationsChanged = quest.getStartMinute() != repeatingQuest.getStartMinute()
+                    || quest.getDuration() != repeatingQuest.getDuration()
+                    || !haveSameReminders(quest.getReminders(), repeatingQuest.getReminders());
+            if (patch(quest, repeatingQuest)) {
+                plan.questsToUpdate.add(quest);
+            }
+            if (notificationsChanged) {
+                plan.questsWithChangedNotifications.add(quest);
+            }
+        }
+        return plan;
+    }
+
+    private Map<Long, List<Quest>> groupByOriginalDate(List<Quest> quests) {
+        Map<Long, List<Quest>> questsByDate = new HashMap<>();
+        for (Quest quest : quests) {
+            Long date = quest.getOriginalScheduled() != null ? quest.getOriginalScheduled() : quest.getScheduled();
+            if (!questsByDate.containsKey(date)) {
+                questsByDate.put(date, new ArrayList<>());
+            }
+            questsByDate.get(date).add(quest);
+        }
+        return questsByDate;
+    }
+
+    private Quest removeFirst(Map<Long, List<Quest>> questsByDate, Long date) {
+        List<Quest> quests = questsByDate.get(date);
+        if (quests == null || quests.isEmpty()) {
+            return null;
+        }
+        return quests.remove(0);
+    }
+
+    /**
+     * Copies the fields a quest takes from its repeating quest, setting only the changed ones
+     * so they are the only ones written
+     *
+     * @return whether anything changed
+     */
+    private boolean patch(Quest quest, RepeatingQuest repeatingQuest) {
+        boolean changed = false;
+        if (!equals(quest.getName(), repeatingQuest.getName())) {
+            quest.setName(repeatingQuest.getName());
+            changed = true;
+        }
+        if (!equals(quest.getCategory(), repeatingQuest.getCategory())) {
+            quest.setCategory(repeatingQuest.getCategory());
+            changed = true;
+        }
+        if (quest.getDuration() != repeatingQuest.getDuration()) {
+            quest.setDuration(repeatingQuest.getDuration());
+            changed = true;
+        }
+        if (quest.getStartMinute() != repeatingQuest.getStartMinute()) {
+            quest.setStartMinute(repeatingQuest.getStartMinute());
+            changed = true;
+        }
+        if (!equals(quest.getChallengeId(), repeatingQuest.getChallengeId())) {
+            quest.setChallengeId(repeatingQuest.getChallengeId());
+            changed = true;
+        }
+        if (!equals(quest.getTimesADay(), repeatingQuest.getTimesADay())) {
+            quest.setTimesADay(repeatingQuest.getTimesADay());
+            changed = true;
+        }
+        if (!haveSameReminders(quest.getReminders(), repeatingQuest.getReminders())) {
+            quest.setReminders(RepeatingQuestScheduler.createQuestReminders(repeatingQuest));
+            changed = true;
+        }
+        if (!haveSameSubQuests(quest.getSubQuests(), repeatingQuest.getSubQuests())) {
+            quest.setSubQuests(repeatingQuest.getSubQuests());
+            changed = true;
+        }
+        if (!haveSameNotes(quest.getNotes(), repeatingQuest.getNotes())) {
+            quest.setNotes(repeatingQuest.getNotes());
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean haveSameReminders(List<Reminder> questReminders, List<Reminder> repeatingQuestReminders) {
+        if (questReminders.size() != repeatingQuestReminders.size()) {
+            return false;
+        }
+        for (int i = 0; i < questReminders.size(); i++) {
+            Reminder questReminder = questReminders.get(i);
+            Reminder repeatingQuestReminder = repeatingQuestReminders.get(i);
+            if (questReminder.getMinutesFromStart() != repeatingQuestReminder.getMinutesFromStart()
+                    || !equals(questReminder.getMessage(), repeatingQuestReminder.getMessage())
+                    || !equals(questReminder.getNotificationId(), repeatingQuestReminder.getNotificationId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sub quests are compared by name only, so their completion in the quest is kept
+     */
+    private boolean haveSameSubQuests(List<SubQuest> questSubQuests, List<SubQuest> repeatingQuestSubQuests) {
+        int repeatingQuestSubQuestCount = repeatingQuestSubQuests != null ? repeatingQuestSubQuests.size() : 0;
+        if (questSubQuests.size() != repeatingQuestSubQuestCount) {
+            return false;
+        }
+        for (int i = 0; i < questSubQuests.size(); i++) {
+            if (!equals(questSubQuests.get(i).getName(), repeatingQuestSubQuests.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean haveSameNotes(List<Note> questNotes, List<Note> repeatingQuestNotes) {
+        if (questNotes.size() != repeatingQuestNotes.size()) {
+            return false;
+        }
+        for (int i = 0; i < questNotes.size(); i++) {
+            Note questNote = questNotes.get(i);
+            Note repeatingQuestNote = repeatingQuestNotes.get(i);
+            if (!equals(questNote.getType(), repeatingQuestNote.getType())
+                    || !equals(questNote.getText(), repeatingQuestNote.getText())
+                    || !equals(questNote.getData(), repeatingQuestNote.getData())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
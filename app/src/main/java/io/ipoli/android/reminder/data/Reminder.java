@@ -7,12 +7,14 @@ import java.util.concurrent.TimeUnit;
 
 import io.ipoli.android.app.persistence.PersistedObject;
 import io.ipoli.android.app.utils.DateUtils;
+import io.ipoli.android.mapper.GenerateMapper;
 import io.ipoli.android.quest.data.Quest;
 
 /**
  * Created by Venelin Valkov <venelin@curiousily.com>
  * on 3/26/16.
  */
+@GenerateMapper
 public class Reminder extends PersistedObject {
 
     private String message;
@@ -0,0 +1,33 @@
+package io.ipoli.android.reward.persistence;
+
+import java.util.List;
+
+import io.ipoli.android.app.persistence.BaseInMemoryPersistenceService;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.quest.persistence.OnDataChangedListener;
+import io.ipoli.android.reward.data.Reward;
+
+/**
+ * {@link RewardPersistenceService} on top of an {@link InMemoryDatabase}
+ */
+public class InMemoryRewardPersistenceService extends BaseInMemoryPersistenceService<Reward> implements RewardPersistenceService {
+
+    public InMemoryRewardPersistenceService(InMemoryDatabase database, String playerId) {
+        super(database, playerId);
+    }
+
+    @Override
+    protected Class<Reward> getModelClass() {
+        return Reward.class;
+    }
+
+    @Override
+    protected String getCollectionName() {
+        return "rewards";
+    }
+
+    @Override
+    public void findAll(OnDataChangedListener<List<Reward>> listener) {
+        listenForListChange(getCollectionReference(), listener);
+    }
+}
@@ -0,0 +1,151 @@
+package io.ipoli.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.ipoli.android.app.ui.calendar.CalendarConflictIndex;
+import io.ipoli.android.app.ui.calendar.CalendarEvent;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CalendarConflictIndexTest {
+
+    private CalendarConflictIndex<TestEvent> index;
+
+    @Before
+    public void setUp() {
+        index = new CalendarConflictIndex<>(15);
+    }
+
+    @Test
+    public void shouldGroupEventsOverlappingThroughAnotherEvent() {
+        TestEvent first = add(60, 60);
+        TestEvent second = add(100, 60);
+        TestEvent third = add(150, 30);
+        TestEvent separate = add(180, 30);
+
+        assertThat(index.getConflicts().size(), is(1));
+        CalendarConflictIndex.OverlapGroup<TestEvent> group = index.getGroup(first);
+        assertThat(group.getEvents().size(), is(3));
+        assertThat(index.getGroup(third) == group, is(true));
+        assertThat(index.getGroup(separate).hasConflicts(), is(false));
+        assertThat(group.getColumnCount(), is(2));
+        assertThat(group.getColumn(first), is(0));
+        assertThat(group.getColumn(second), is(1));
+        assertThat(group.getColumn(third), is(0));
+    }
+
+    @Test
+    public void shouldSplitGroupWhenLinkingEventIsMoved() {
+        TestEvent first = add(60, 60);
+        TestEvent linking = add(100, 60);
+        TestEvent last = add(150, 30);
+
+        linking.setStartMinute(300);
+        index.update(linking);
+
+        assertThat(index.getConflicts().size(), is(0));
+        assertThat(index.getGroup(first).getEvents().size(), is(1));
+        assertThat(index.getGroup(last).getEvents().size(), is(1));
+        assertThat(index.getGroup(linking).getStartMinute(), is(300));
+    }
+
+    @Test
+    public void shouldUseMinDurationForShortEvents() {
+        TestEvent first = add(60, 5);
+        TestEvent second = add(70, 5);
+        assertThat(index.getGroup(first) == index.getGroup(second), is(true));
+
+        index.remove(second);
+        assertThat(index.getConflicts().size(), is(0));
+        assertThat(index.getGroup(second) == null, is(true));
+    }
+
+    @Test
+    public void shouldMatchFullRebuildAfterManyMoves() {
+        Random random = new Random(42);
+        List<TestEvent> events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            events.add(add(random.nextInt(20 * 60), 15 + random.nextInt(90)));
+        }
+        for (int i = 0; i < 500; i++) {
+            TestEvent event = events.get(random.nextInt(events.size()));
+            event.setStartMinute(random.nextInt(20 * 60));
+            index.update(event);
+        }
+
+        CalendarConflictIndex<TestEvent> rebuilt = new CalendarConflictIndex<>(15);
+        rebuilt.addAll(events);
+        for (TestEvent event : events) {
+            assertThat(index.getGroup(event).getEvents().size(), is(rebuilt.getGroup(event).getEvents().size()));
+            assertThat(index.getGroup(event).getStartMinute(), is(rebuilt.getGroup(event).getStartMinute()));
+        }
+        assertThat(index.getConflicts().size(), is(rebuilt.getConflicts().size()));
+    }
+
+    private TestEvent add(int startMinute, int duration) {
+        TestEvent event = new TestEvent(startMinute, duration);
+        index.add(event);
+        return event;
+    }
+
+    private static class TestEvent implements CalendarEvent {
+        private int startMinute;
+        private final int duration;
+
+        TestEvent(int startMinute, int duration) {
+            this.startMinute = startMinute;
+            this.duration = duration;
+        }
+
+        @Override
+        public int getStartMinute() {
+            return startMinute;
+        }
+
+        @Override
+        public int getDuration() {
+            return duration;
+        }
+
+        @Override
+        public void setStartMinute(int startMinute) {
+            this.startMinute = startMinute;
+        }
+
+        @Override
+        public int getBackgroundColor() {
+            return 0;
+        }
+
+        @Override
+        public int getDragBackgroundColor() {
+            return 0;
+        }
+
+        @Override
+        public boolean isRepeating() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "";
+        }
+
+        @Override
+        public boolean isMostImportant() {
+            return false;
+        }
+
+        @Override
+        public boolean isForChallenge() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.ipoli.android;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateList;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.DateTime;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Recur;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.parameter.Value;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import io.ipoli.android.quest.schedulers.CompiledRecurrence;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class CompiledRecurrenceTest {
+
+    private static final String[] RULES = {
+            "FREQ=DAILY",
+            "FREQ=DAILY;BYDAY=SA,SU",
+            "FREQ=WEEKLY",
+            "FREQ=WEEKLY;BYDAY=MO,WE,FR",
+            "FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR,SA,SU",
+            "FREQ=WEEKLY;INTERVAL=2;BYDAY=TU",
+            "FREQ=MONTHLY",
+            "FREQ=MONTHLY;BYMONTHDAY=1,15",
+            "FREQ=MONTHLY;BYMONTHDAY=31",
+            "FREQ=MONTHLY;BYDAY=TU"
+    };
+
+    @Test
+    public void createsSameDatesAsRecur() throws Exception {
+        LocalDate periodStart = new LocalDate(2017, 1, 1);
+        for (int seedOffset = 0; seedOffset < 60; seedOffset += 3) {
+            LocalDate seed = periodStart.plusDays(seedOffset);
+            LocalDate periodEnd = seed.plusDays(70);
+            for (String rule : RULES) {
+                List<Date> expected = new ArrayList<>();
+                DateList dates = new Recur(rule).getDates(new org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Date(toStartOfDayUTC(seed)),
+                        new org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Date(toStartOfDayUTC(periodStart)),
+                        new DateTime(toStartOfDayUTC(periodEnd.plusDays(1))), Value.DATE);
+                for (Object date : dates) {
+                    expected.add(new Date(((Date) date).getTime()));
+                }
+
+                List<Date> result = CompiledRecurrence.compile(rule).getDates(toStartOfDayUTC(seed),
+                        toStartOfDayUTC(periodStart), toStartOfDayUTC(periodEnd), null);
+                assertThat(rule + " from " + seed, result, is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void stopsAtUntil() {
+        LocalDate start = new LocalDate(2017, 1, 2);
+        List<Date> result = CompiledRecurrence.compile("FREQ=DAILY").getDates(toStartOfDayUTC(start),
+                toStartOfDayUTC(start), toStartOfDayUTC(start.plusDays(30)), toStartOfDayUTC(start.plusDays(4)));
+        assertThat(result.size(), is(5));
+    }
+
+    @Test
+    public void sharesCompiledRule() {
+        CompiledRecurrence first = CompiledRecurrence.compile("FREQ=WEEKLY;BYDAY=SU,MO");
+        assertThat(first == CompiledRecurrence.compile("FREQ=WEEKLY;BYDAY=SU,MO"), is(true));
+        assertThat(first.getWeekDayCount(), is(2));
+        assertThat(first.hasWeekDay(7), is(true));
+        assertThat(CompiledRecurrence.compile("not a rule"), is(nullValue()));
+    }
+}
@@ -0,0 +1,53 @@
+package io.ipoli.android;
+
+import org.junit.Test;
+
+import io.ipoli.android.app.scheduling.CompletionHistogram;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+public class CompletionHistogramTest {
+
+    private static final int MINUTES_IN_DAY = 24 * 60;
+
+    @Test
+    public void shouldFavourMinutesOfPastCompletions() {
+        CompletionHistogram histogram = new CompletionHistogram();
+        for (int day = 0; day < 20; day++) {
+            histogram.add(7 * 60 + 10, day);
+        }
+        double[] weights = histogram.createMinuteWeights(20, 10);
+        double sum = 0;
+        for (double weight : weights) {
+            assertThat(weight, greaterThan(0.0));
+            sum += weight;
+        }
+        assertThat(sum / MINUTES_IN_DAY, closeTo(1, 0.0001));
+        assertThat(weights[7 * 60 + 10], greaterThan(10 * weights[20 * 60]));
+    }
+
+    @Test
+    public void shouldDecayOldCompletions() {
+        CompletionHistogram histogram = new CompletionHistogram();
+        histogram.add(8 * 60, 0);
+        assertThat(histogram.getCount(CompletionHistogram.HALF_LIFE_DAYS), closeTo(0.5, 0.0001));
+
+        histogram.add(20 * 60, CompletionHistogram.HALF_LIFE_DAYS);
+        double[] weights = histogram.createMinuteWeights(CompletionHistogram.HALF_LIFE_DAYS, 0);
+        assertThat(weights[20 * 60], closeTo(2 * weights[8 * 60], 0.0001));
+    }
+
+    @Test
+    public void shouldKeepCountsAfterYearsOfCompletions() {
+        CompletionHistogram histogram = new CompletionHistogram();
+        for (int day = 0; day < 10 * 365; day++) {
+            histogram.add(12 * 60, day);
+        }
+        double expectedCount = 1 / (1 - Math.pow(2, -1.0 / CompletionHistogram.HALF_LIFE_DAYS));
+        assertThat(histogram.getCount(10 * 365 - 1), closeTo(expectedCount, 0.01));
+        assertThat(histogram.isEmpty(), is(false));
+    }
+}
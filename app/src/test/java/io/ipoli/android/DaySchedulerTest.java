@@ -0,0 +1,95 @@
+package io.ipoli.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import io.ipoli.android.app.scheduling.DayScheduler;
+import io.ipoli.android.app.scheduling.DiscreteDistribution;
+import io.ipoli.android.app.scheduling.SchedulingRandom;
+import io.ipoli.android.app.scheduling.Task;
+import io.ipoli.android.app.scheduling.TimeBlock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DaySchedulerTest {
+
+    @Test
+    public void shouldPlaceAllQuestsWithoutOverlap() {
+        SchedulingRandom random = new SchedulingRandom(42);
+        DayScheduler<String> scheduler = new DayScheduler<>(0, 2, new ArrayList<>(), 15, random);
+
+        List<DayScheduler.Request<String>> requests = new ArrayList<>();
+        requests.add(new DayScheduler.Request<>("anytime", "anytime", 30, createDistribution(0, 61, random)));
+        requests.add(new DayScheduler.Request<>("early", "early", 30, createDistribution(0, 31, random)));
+
+        List<DayScheduler.Proposal<String>> proposals = scheduler.schedule(requests, 100);
+
+        assertThat(proposals.size(), is(2));
+        TimeBlock anytime = proposals.get(0).getSlot();
+        TimeBlock early = proposals.get(1).getSlot();
+        assertThat(early.getStartMinute(), is(0));
+        assertThat(anytime.getStartMinute() >= early.getEndMinute(), is(true));
+    }
+
+    @Test
+    public void shouldLeaveOutQuestsThatDoNotFit() {
+        SchedulingRandom random = new SchedulingRandom(42);
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new Task(0, 45));
+        DayScheduler<String> scheduler = new DayScheduler<>(0, 1, tasks, 15, random);
+
+        List<DayScheduler.Request<String>> requests = new ArrayList<>();
+        requests.add(new DayScheduler.Request<>("fits", "fits", 15, createDistribution(0, 61, random)));
+        requests.add(new DayScheduler.Request<>("too long", "too long", 30, createDistribution(0, 61, random)));
+
+        List<DayScheduler.Proposal<String>> proposals = scheduler.schedule(requests, 100);
+
+        assertThat(proposals.size(), is(1));
+        assertThat(proposals.get(0).getItem(), is("fits"));
+        assertThat(proposals.get(0).getSlot().getStartMinute(), is(45));
+    }
+
+    @Test
+    public void shouldKeepSlotsOfRequestsWhenOrderChanges() {
+        List<DayScheduler.Request<String>> requests = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 4; i++) {
+            requests.add(new DayScheduler.Request<>("quest " + i, "quest " + i, 15, createDistribution(0, 24 * 60, random)));
+        }
+        List<DayScheduler.Request<String>> reversedRequests = new ArrayList<>(requests);
+        Collections.reverse(reversedRequests);
+
+        List<DayScheduler.Proposal<String>> proposals = new DayScheduler<String>(0, 24, new ArrayList<>(), 15,
+                new SchedulingRandom(42)).schedule(requests, 100);
+        List<DayScheduler.Proposal<String>> reversedProposals = new DayScheduler<String>(0, 24, new ArrayList<>(), 15,
+                new SchedulingRandom(42)).schedule(reversedRequests, 100);
+
+        assertThat(proposals.size(), is(4));
+        assertThat(reversedProposals.size(), is(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat(getStartMinutes(reversedProposals.get(3 - i)), is(getStartMinutes(proposals.get(i))));
+        }
+    }
+
+    private List<Integer> getStartMinutes(DayScheduler.Proposal<String> proposal) {
+        List<Integer> startMinutes = new ArrayList<>();
+        startMinutes.add(proposal.getSlot().getStartMinute());
+        for (TimeBlock alternative : proposal.getAlternatives()) {
+            startMinutes.add(alternative.getStartMinute());
+        }
+        return startMinutes;
+    }
+
+    private DiscreteDistribution createDistribution(int from, int to, Random random) {
+        double[] values = new double[24 * 60];
+        for (int i = from; i < to; i++) {
+            values[i] = 1;
+        }
+        return new DiscreteDistribution(values, random);
+    }
+}
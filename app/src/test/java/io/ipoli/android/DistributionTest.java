@@ -62,4 +62,34 @@ public class DistributionTest {
         DiscreteDistribution joint = dist.joint(dist1);
         assertThat(joint.at(0), closeTo(0.125, 0.000001));
     }
+
+    @Test
+    public void shouldSampleJointPosteriorByItsProbabilities() {
+        int minutesInDay = 24 * 60;
+        double[] sleep = new double[minutesInDay];
+        double[] work = new double[minutesInDay];
+        double[] productive = new double[minutesInDay];
+        for (int i = 0; i < minutesInDay; i++) {
+            sleep[i] = i > 6 * 60 && i < 23 * 60 ? 1 : 0;
+            work[i] = i > 9 * 60 && i < 18 * 60 ? 0 : 1;
+            productive[i] = i > 19 * 60 && i < 23 * 60 ? 10 : 1;
+        }
+        Random posteriorRandom = new Random(SEED);
+        DiscreteDistribution posterior = new DiscreteDistribution(sleep, posteriorRandom)
+                .joint(new DiscreteDistribution(work, posteriorRandom))
+                .joint(new DiscreteDistribution(productive, posteriorRandom));
+
+        int[] counts = new int[minutesInDay];
+        int sampleCount = 200000;
+        for (int i = 0; i < sampleCount; i++) {
+            counts[posterior.sample()]++;
+        }
+        for (int i = 0; i < minutesInDay; i++) {
+            if (posterior.at(i) == 0) {
+                assertThat(counts[i], is(0));
+            } else {
+                assertThat((double) counts[i] / sampleCount, closeTo(posterior.at(i), 0.001));
+            }
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package io.ipoli.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.FileDatabase;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FileDatabaseTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("database", ".json");
+        file.delete();
+        file.deleteOnExit();
+        FileDatabase.getLogFile(file).deleteOnExit();
+    }
+
+    @Test
+    public void shouldAppendUpdatesInsteadOfRewritingTheFile() {
+        FileDatabase database = new FileDatabase(file);
+        database.setValue("quests/a/name", "Read");
+        database.setValue("quests/b/name", "Run");
+
+        assertThat(file.exists(), is(false));
+        assertThat(FileDatabase.getLogFile(file).exists(), is(true));
+    }
+
+    @Test
+    public void shouldReplayTheLogWhenReopened() {
+        FileDatabase database = new FileDatabase(file);
+        Map<String, Object> data = new HashMap<>();
+        data.put("quests/a/name", "Read");
+        data.put("quests/b/name", "Run");
+        database.updateChildren("", data);
+        database.setValue("quests/a", null);
+
+        FileDatabase reopened = new FileDatabase(file);
+
+        assertThat(reopened.getValue("quests/a"), is(nullValue()));
+        assertThat(reopened.getValue("quests/b/name"), is("Run"));
+        assertThat(file.exists(), is(true));
+        assertThat(FileDatabase.getLogFile(file).exists(), is(false));
+        assertThat(new FileDatabase(file).getValue("quests/b/name"), is("Run"));
+    }
+
+    @Test
+    public void shouldSkipUpdateCutOffByCrash() throws IOException {
+        FileDatabase database = new FileDatabase(file);
+        database.setValue("quests/a/name", "Read");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(FileDatabase.getLogFile(file), true), "UTF-8")) {
+            writer.write("[[\"quests/b/name\",\"Ru");
+        }
+
+        FileDatabase reopened = new FileDatabase(file);
+        reopened.setValue("quests/c/name", "Write");
+
+        FileDatabase reopenedAgain = new FileDatabase(file);
+        assertThat(reopenedAgain.getValue("quests/a/name"), is("Read"));
+        assertThat(reopenedAgain.getValue("quests/b"), is(nullValue()));
+        assertThat(reopenedAgain.getValue("quests/c/name"), is("Write"));
+    }
+}
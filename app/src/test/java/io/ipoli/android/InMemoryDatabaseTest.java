@@ -0,0 +1,101 @@
+package io.ipoli.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class InMemoryDatabaseTest {
+
+    private InMemoryDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new InMemoryDatabase();
+        Map<String, Object> data = new HashMap<>();
+        data.put("/quests/a", createQuest(10L, false));
+        data.put("/quests/b", createQuest(null, true));
+        data.put("/quests/c", createQuest(30L, false));
+        database.updateChildren("players/p1", data);
+    }
+
+    @Test
+    public void shouldOrderByChildWithinBounds() {
+        Object value = database.getValue(database.getReference("players/p1/quests")
+                .orderByChild("scheduled").startAt(5).endAt(20));
+        assertThat(getKeys(value), contains("a"));
+    }
+
+    @Test
+    public void shouldPutMissingChildrenFirst() {
+        Object value = database.getValue(database.getReference("players/p1/quests")
+                .orderByChild("scheduled").limitToFirst(2));
+        assertThat(getKeys(value), contains("b", "a"));
+    }
+
+    @Test
+    public void shouldStartAtKeyAmongEqualValues() {
+        database.setValue("players/p1/quests/b/scheduled", 10L);
+        Object value = database.getValue(database.getReference("players/p1/quests")
+                .orderByChild("scheduled").startAt(10L, "b"));
+        assertThat(getKeys(value), contains("b", "c"));
+    }
+
+    @Test
+    public void shouldMatchBooleans() {
+        Object value = database.getValue(database.getReference("players/p1/quests")
+                .orderByChild("allDay").equalTo(false));
+        assertThat(getKeys(value), contains("a", "c"));
+    }
+
+    @Test
+    public void shouldNotifyOnlyAffectedListeners() {
+        List<Object> questEvents = new ArrayList<>();
+        List<Object> otherEvents = new ArrayList<>();
+        database.addValueListener(database.getReference("players/p1/quests/a"), questEvents::add);
+        database.addValueListener(database.getReference("players/p1/challenges"), otherEvents::add);
+
+        database.setValue("players/p1/quests/a/scheduled", 15);
+
+        assertThat(questEvents.size(), is(2));
+        assertThat(otherEvents.size(), is(1));
+    }
+
+    @Test
+    public void shouldRemoveEmptyParents() {
+        database.setValue("players/p1/quests/a", null);
+        database.setValue("players/p1/quests/b", null);
+        database.setValue("players/p1/quests/c", null);
+        assertThat(database.getValue("players"), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOverlappingPaths() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("/quests/a", null);
+        data.put("/quests/a/scheduled", 1);
+        database.updateChildren("players/p1", data);
+    }
+
+    private Map<String, Object> createQuest(Long scheduled, boolean allDay) {
+        Map<String, Object> quest = new HashMap<>();
+        quest.put("scheduled", scheduled);
+        quest.put("allDay", allDay);
+        return quest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getKeys(Object value) {
+        return value == null ? new ArrayList<>() : new ArrayList<>(((Map<String, Object>) value).keySet());
+    }
+}
@@ -0,0 +1,95 @@
+package io.ipoli.android;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.FirebaseExcludeStrategy;
+import io.ipoli.android.note.data.Note;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.Quest_Mapper;
+import io.ipoli.android.quest.data.SubQuest;
+import io.ipoli.android.reminder.data.Reminder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Checks the generated {@link Quest_Mapper} against reflective decoding of the same snapshot
+ * trees. The Firebase mapper needs a device, Gson stands in for it as the reflective decoder.
+ */
+public class ModelMapperTest {
+
+    private static final int QUEST_COUNT = 10;
+
+    private Gson gson;
+    private List<Map<String, Object>> snapshots;
+    private List<JsonElement> jsonSnapshots;
+
+    @Before
+    public void setUp() {
+        gson = new GsonBuilder().setExclusionStrategies(new FirebaseExcludeStrategy()).create();
+        snapshots = new ArrayList<>();
+        jsonSnapshots = new ArrayList<>();
+        for (int i = 0; i < QUEST_COUNT; i++) {
+            Map<String, Object> snapshot = Quest_Mapper.INSTANCE.toMap(createQuest(i));
+            snapshots.add(snapshot);
+            jsonSnapshots.add(gson.toJsonTree(snapshot));
+        }
+    }
+
+    @Test
+    public void shouldDecodeLikeReflection() {
+        Quest mapped = Quest_Mapper.INSTANCE.fromMap(snapshots.get(1));
+        Quest reflected = gson.fromJson(jsonSnapshots.get(1), Quest.class);
+
+        assertThat(mapped.getId(), is(reflected.getId()));
+        assertThat(mapped.getName(), is(reflected.getName()));
+        assertThat(mapped.getScheduled(), is(reflected.getScheduled()));
+        assertThat(mapped.getDuration(), is(reflected.getDuration()));
+        assertThat(mapped.isAllDay(), is(reflected.isAllDay()));
+        assertThat(mapped.getPriority(), is(reflected.getPriority()));
+        assertThat(mapped.getReminderStartTimes(), is(reflected.getReminderStartTimes()));
+        assertThat(mapped.getReminders().get(0).getNotificationId(), is(reflected.getReminders().get(0).getNotificationId()));
+        assertThat(mapped.getSubQuests().get(1).getName(), is(reflected.getSubQuests().get(1).getName()));
+        assertThat(mapped.getNotes().get(0).getText(), is(reflected.getNotes().get(0).getText()));
+        assertThat(Quest_Mapper.INSTANCE.toMap(mapped), is(snapshots.get(1)));
+    }
+
+    @Test
+    public void shouldReadWhatItWrites() {
+        for (Map<String, Object> snapshot : snapshots) {
+            Quest quest = Quest_Mapper.INSTANCE.fromMap(snapshot);
+            assertThat(Quest_Mapper.INSTANCE.toMap(quest), is(snapshot));
+        }
+    }
+
+    private Quest createQuest(int index) {
+        Quest quest = new Quest();
+        quest.setId("quest" + index);
+        quest.setName("Quest " + index);
+        quest.setCategory("WELLNESS");
+        quest.setCreatedAt(1483228800000L + index);
+        quest.setUpdatedAt(1483228800000L + index);
+        quest.setScheduled(1483228800000L);
+        quest.setStartMinute(index % 1440);
+        quest.setDuration(30);
+        quest.setAllDay(false);
+        quest.setPriority(index % 4);
+        quest.setCompletedCount(0);
+        quest.setTimesADay(1);
+        quest.setReminders(new ArrayList<>(Arrays.asList(new Reminder(-10, index))));
+        quest.setReminderStartTimes(new ArrayList<>(Arrays.asList(1483228800000L + index)));
+        quest.setSubQuests(new ArrayList<>(Arrays.asList(new SubQuest("first"), new SubQuest("second"))));
+        quest.setNotes(new ArrayList<>(Arrays.asList(new Note("Text note"))));
+        return quest;
+    }
+}
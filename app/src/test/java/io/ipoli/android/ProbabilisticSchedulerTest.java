@@ -12,6 +12,7 @@ import io.ipoli.android.app.scheduling.Task;
 import io.ipoli.android.app.scheduling.TimeBlock;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 
@@ -55,4 +56,26 @@ public class ProbabilisticSchedulerTest {
         List<TimeBlock> slots = scheduler.chooseSlotsFor(new Task(10), 15, dist);
         assertThat(slots.get(0).getProbability(), greaterThan(0.183));
     }
+
+    @Test
+    public void shouldChooseFirstSlotProportionallyToProbability() {
+        Random random = new Random(42);
+        double[] values = new double[60];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 30 ? 1 : 3;
+        }
+        DiscreteDistribution dist = new DiscreteDistribution(values, random);
+        ProbabilisticTaskScheduler scheduler = new ProbabilisticTaskScheduler(0, 1, new ArrayList<>(), random);
+
+        int runs = 20000;
+        int lateFirst = 0;
+        for (int i = 0; i < runs; i++) {
+            List<TimeBlock> slots = scheduler.chooseSlotsFor(new Task(10), 30, dist);
+            assertThat(slots.size(), is(2));
+            if (slots.get(0).getStartMinute() == 30) {
+                lateFirst++;
+            }
+        }
+        assertThat((double) lateFirst / runs, closeTo(0.75, 0.02));
+    }
 }
@@ -0,0 +1,113 @@
+package io.ipoli.android;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.persistence.InMemoryQuestPersistenceService;
+import io.ipoli.android.quest.persistence.QuestNameSearch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class QuestNameSearchTest {
+
+    private static final String PLAYER_ID = "p1";
+
+    private InMemoryDatabase database;
+    private InMemoryQuestPersistenceService questPersistenceService;
+
+    @Before
+    public void setUp() {
+        database = new InMemoryDatabase();
+        questPersistenceService = new InMemoryQuestPersistenceService(database, PLAYER_ID);
+    }
+
+    @Test
+    public void shouldSplitNamesIntoLowerCaseWords() {
+        assertThat(new ArrayList<>(QuestNameSearch.tokenize("Read a book. Read it!")), contains("read", "a", "book", "it"));
+        assertThat(QuestNameSearch.findSearchToken("a book"), is("book"));
+        assertThat(QuestNameSearch.findSearchToken(" - "), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFindQuestsByWordPrefix() {
+        Quest readBook = save("Read a book", null);
+        Quest writeReview = save("Write book review", null);
+        save("Run", null);
+        Quest challengeBook = save("Book a table", "c1");
+
+        assertThat(findNames("boo", "c2"), containsInAnyOrder(readBook.getName(), writeReview.getName(), challengeBook.getName()));
+        assertThat(findNames("boo", "c1"), containsInAnyOrder(readBook.getName(), writeReview.getName()));
+        assertThat(findNames("a book", "c1"), contains(readBook.getName()));
+    }
+
+    @Test
+    public void shouldDropTokensOfOldNameOnRename() {
+        Quest quest = save("Read a book", null);
+
+        Quest stored = findById(quest.getId());
+        stored.setName("Read a novel");
+        questPersistenceService.update(stored);
+
+        assertThat(findNames("book", "c1").isEmpty(), is(true));
+        assertThat(findNames("novel", "c1"), contains("Read a novel"));
+        assertThat(getTokenEntry("book", quest.getId()), is(nullValue()));
+        assertThat(getTokenEntry("read", quest.getId()) != null, is(true));
+    }
+
+    @Test
+    public void shouldDropTokensOfCompletedAndDeletedQuests() {
+        Quest completed = save("Read a book", null);
+        Quest deleted = save("Buy a book", null);
+
+        Quest stored = findById(completed.getId());
+        stored.setCompletedAtDate(new Date());
+        questPersistenceService.update(stored);
+        questPersistenceService.delete(findById(deleted.getId()));
+
+        assertThat(findNames("book", "c1").isEmpty(), is(true));
+        assertThat(database.getValue(database.getReference(Constants.API_VERSION).child("players").child(PLAYER_ID)
+                .child("questIndexes").child("nameTokens").getPath()), is(nullValue()));
+    }
+
+    private Quest save(String name, String challengeId) {
+        Quest quest = new Quest(name);
+        quest.setChallengeId(challengeId);
+        questPersistenceService.save(quest);
+        return quest;
+    }
+
+    private Quest findById(String questId) {
+        Quest[] result = new Quest[1];
+        questPersistenceService.findById(questId, quest -> result[0] = quest);
+        return result[0];
+    }
+
+    private List<String> findNames(String searchText, String challengeId) {
+        List<String> names = new ArrayList<>();
+        questPersistenceService.findIncompleteNotRepeatingNotForChallenge(searchText, challengeId, quests -> {
+            names.clear();
+            for (Quest quest : quests) {
+                names.add(quest.getName());
+            }
+        });
+        questPersistenceService.removeAllListeners();
+        return names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getTokenEntry(String token, String questId) {
+        return (Map<String, Object>) database.getValue(database.getReference(Constants.API_VERSION).child("players").child(PLAYER_ID)
+                .child("questIndexes").child("nameTokens").child(token).child(questId).getPath());
+    }
+}
@@ -0,0 +1,204 @@
+package io.ipoli.android;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import io.ipoli.android.app.persistence.FileDatabase;
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.persistence.InMemoryQuestPersistenceService;
+import io.ipoli.android.quest.persistence.QuestCursor;
+import io.ipoli.android.quest.persistence.QuestPage;
+import io.ipoli.android.quest.persistence.QuestProjection;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs the same quest queries against the memory backend, the file backend and a file backend
+ * reopened from its snapshot and log, and expects the same answers from all of them. The
+ * Firebase backend goes through the same QuestQueries for paging, counting, compacting,
+ * rebuilding the indexes and projecting quests.
+ */
+public class QuestPersistenceParityTest {
+
+    private static final String PLAYER_ID = "p1";
+
+    private static class Backend {
+        final InMemoryDatabase database;
+        final InMemoryQuestPersistenceService questPersistenceService;
+
+        Backend(InMemoryDatabase database) {
+            this.database = database;
+            this.questPersistenceService = new InMemoryQuestPersistenceService(database, PLAYER_ID);
+        }
+
+        Object getPlayerValue(String path) {
+            return database.getValue(database.getReference(Constants.API_VERSION).child("players").child(PLAYER_ID).child(path).getPath());
+        }
+
+        void setPlayerValue(String path, Object value) {
+            database.setValue(database.getReference(Constants.API_VERSION).child("players").child(PLAYER_ID).child(path).getPath(), value);
+        }
+    }
+
+    private List<Backend> backends;
+
+    @Before
+    public void setUp() throws IOException {
+        File file = createDatabaseFile();
+        File reopenedFile = createDatabaseFile();
+
+        backends = new ArrayList<>();
+        backends.add(new Backend(new InMemoryDatabase()));
+        backends.add(new Backend(new FileDatabase(file)));
+        backends.add(new Backend(new FileDatabase(reopenedFile)));
+        for (Backend backend : backends) {
+            saveQuests(backend);
+        }
+        backends.set(2, new Backend(new FileDatabase(reopenedFile)));
+    }
+
+    @Test
+    public void pagesCompletedQuestsAlike() {
+        for (Backend backend : backends) {
+            assertThat(readAllPages(backend, QuestProjection.FULL), contains(
+                    Arrays.asList("Run 4", "Read 3"),
+                    Arrays.asList("Write 2", "Run 1"),
+                    Arrays.asList("Read 0a", "Read 0b"),
+                    new ArrayList<String>()));
+        }
+        List<List<String>> chartPages = readAllPages(backends.get(0), QuestProjection.CHART);
+        for (Backend backend : backends) {
+            assertThat(readAllPages(backend, QuestProjection.CHART), is(chartPages));
+        }
+    }
+
+    @Test
+    public void countsCompletedWithPriorityAlike() {
+        for (Backend backend : backends) {
+            assertThat(countCompleted(backend, Quest.PRIORITY_IMPORTANT_URGENT), is(3L));
+            assertThat(countCompleted(backend, Quest.PRIORITY_NOT_IMPORTANT_URGENT), is(1L));
+            assertThat(countCompleted(backend, Quest.PRIORITY_IMPORTANT_NOT_URGENT), is(0L));
+        }
+    }
+
+    @Test
+    public void compactsAlike() {
+        String oldDay = String.valueOf(toStartOfDayUTC(LocalDate.now().minusDays(Constants.DAY_QUESTS_RETENTION_DAYS + 1)).getTime());
+        String oldReminderTime = String.valueOf(new Date().getTime() - 1000L * 60 * 60 * 24 * (Constants.QUEST_REMINDERS_RETENTION_DAYS + 1));
+        long oldDeletedAt = new Date().getTime() - 1000L * 60 * 60 * 24 * (Constants.DELETED_QUESTS_RETENTION_DAYS + 1);
+        for (Backend backend : backends) {
+            backend.setPlayerValue("dayQuests/" + oldDay + "/old", true);
+            backend.setPlayerValue("questReminders/" + oldReminderTime + "/old", true);
+            backend.setPlayerValue("deletedQuests/old", oldDeletedAt);
+            backend.setPlayerValue("deletedQuests/recent", new Date().getTime());
+
+            backend.questPersistenceService.compact();
+
+            assertThat(getKeys(backend.getPlayerValue("dayQuests")), contains(createDayKey(LocalDate.now())));
+            assertThat(backend.getPlayerValue("questReminders") == null, is(true));
+            assertThat(getKeys(backend.getPlayerValue("deletedQuests")), contains("recent"));
+        }
+    }
+
+    @Test
+    public void rebuildsIndexesAlike() {
+        for (Backend backend : backends) {
+            Object indexes = backend.getPlayerValue("questIndexes");
+            String completedDay = createDayKey(LocalDate.now());
+            backend.setPlayerValue("questIndexes/completed/" + completedDay + "/stale", Quest.PRIORITY_IMPORTANT_URGENT);
+            backend.setPlayerValue("questIndexes/nameTokens/stale/stale", true);
+            backend.setPlayerValue("questIndexes/incompleteNotRepeating", null);
+
+            Boolean[] result = new Boolean[1];
+            backend.questPersistenceService.rebuildIndexes(success -> result[0] = success);
+
+            assertThat(result[0], is(true));
+            assertThat(backend.getPlayerValue("questIndexes"), is(indexes));
+            assertThat(countCompleted(backend, Quest.PRIORITY_IMPORTANT_URGENT), is(3L));
+        }
+    }
+
+    private void saveQuests(Backend backend) {
+        save(backend, "Read 0a", 0, Quest.PRIORITY_IMPORTANT_URGENT);
+        save(backend, "Read 0b", 0, Quest.PRIORITY_NOT_IMPORTANT_URGENT);
+        save(backend, "Run 1", 1, Quest.PRIORITY_IMPORTANT_URGENT);
+        save(backend, "Write 2", 2, Quest.PRIORITY_NOT_IMPORTANT_NOT_URGENT);
+        save(backend, "Read 3", 3, Quest.PRIORITY_IMPORTANT_URGENT);
+        save(backend, "Run 4", 4, Quest.PRIORITY_NOT_IMPORTANT_NOT_URGENT);
+        Quest incomplete = new Quest("Plan the week");
+        backend.questPersistenceService.save(incomplete);
+    }
+
+    private void save(Backend backend, String name, int daysAgo, int priority) {
+        Quest quest = new Quest(name);
+        quest.setCategory(daysAgo % 2 == 0 ? Category.LEARNING.name() : Category.WELLNESS.name());
+        quest.setPriority(priority);
+        quest.setDuration(15 + daysAgo);
+        quest.setScheduledDate(toStartOfDayUTC(LocalDate.now()));
+        quest.setCompletedAtDate(LocalDate.now().minusDays(daysAgo).toDate());
+        quest.setCompletedAtMinute(600);
+        quest.setExperience(10L + daysAgo);
+        backend.questPersistenceService.save(quest);
+    }
+
+    private List<List<String>> readAllPages(Backend backend, QuestProjection projection) {
+        List<List<String>> pages = new ArrayList<>();
+        QuestCursor cursor = null;
+        do {
+            QuestPage page = readPage(backend, cursor, projection);
+            List<String> quests = new ArrayList<>();
+            for (Quest quest : page.getQuests()) {
+                quests.add(projection.isFull() ? quest.getName() :
+                        quest.getCompletedAt() + " " + quest.getCategory() + " " + quest.getExperience() + " " + quest.getDuration());
+            }
+            pages.add(quests);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return pages;
+    }
+
+    private QuestPage readPage(Backend backend, QuestCursor cursor, QuestProjection projection) {
+        QuestPage[] result = new QuestPage[1];
+        backend.questPersistenceService.findCompletedPage(LocalDate.now().minusDays(10), LocalDate.now().plusDays(1),
+                cursor, 2, projection, page -> result[0] = page);
+        return result[0];
+    }
+
+    private long countCompleted(Backend backend, int priority) {
+        Long[] result = new Long[1];
+        backend.questPersistenceService.countAllCompletedWithPriorityForDate(priority, LocalDate.now(), count -> result[0] = count);
+        return result[0];
+    }
+
+    private static String createDayKey(LocalDate date) {
+        return String.valueOf(toStartOfDayUTC(date).getTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getKeys(Object value) {
+        return value instanceof Map ? new ArrayList<>(new TreeSet<>(((Map<String, Object>) value).keySet())) : new ArrayList<>();
+    }
+
+    private static File createDatabaseFile() throws IOException {
+        File file = File.createTempFile("quests", ".json");
+        file.delete();
+        file.deleteOnExit();
+        FileDatabase.getLogFile(file).deleteOnExit();
+        return file;
+    }
+}
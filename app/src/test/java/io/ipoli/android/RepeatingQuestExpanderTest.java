@@ -0,0 +1,167 @@
+package io.ipoli.android;
+
+import com.squareup.otto.Bus;
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.ipoli.android.app.events.AppErrorEvent;
+import io.ipoli.android.app.exceptions.RepeatingQuestExpansionException;
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.Recurrence;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.schedulers.RepeatingQuestExpander;
+import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RepeatingQuestExpanderTest {
+
+    private static final int REPEATING_QUEST_COUNT = 40;
+    private static final LocalDate TODAY = new LocalDate(2017, 3, 8);
+
+    @Test
+    public void expandsLikeSerialScheduling() throws InterruptedException {
+        RepeatingQuestScheduler serialScheduler = new RepeatingQuestScheduler(42);
+        List<List<Date>> expected = new ArrayList<>();
+        for (RepeatingQuest repeatingQuest : createRepeatingQuests()) {
+            expected.add(toDates(serialScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(TODAY))));
+        }
+
+        RepeatingQuestExpander expander = new RepeatingQuestExpander(new RepeatingQuestScheduler(42), 4, Runnable::run, new Bus(ThreadEnforcer.ANY));
+        List<RepeatingQuest> repeatingQuests = createRepeatingQuests();
+        Map<RepeatingQuest, List<Quest>> result = expand(expander, repeatingQuests);
+
+        assertThat(result.size(), is(REPEATING_QUEST_COUNT));
+        for (int i = 0; i < REPEATING_QUEST_COUNT; i++) {
+            assertThat(toDates(result.get(repeatingQuests.get(i))), is(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void leavesOutAndReportsFailedRepeatingQuests() throws InterruptedException {
+        Bus eventBus = new Bus(ThreadEnforcer.ANY);
+        List<AppErrorEvent> errors = Collections.synchronizedList(new ArrayList<>());
+        eventBus.register(new Object() {
+            @Subscribe
+            public void onAppError(AppErrorEvent e) {
+                errors.add(e);
+            }
+        });
+        RepeatingQuestExpander expander = new RepeatingQuestExpander(new RepeatingQuestScheduler(42), 2, Runnable::run, eventBus);
+        List<RepeatingQuest> repeatingQuests = createRepeatingQuests();
+        repeatingQuests.get(3).setRecurrence(null);
+
+        Map<RepeatingQuest, List<Quest>> result = expand(expander, repeatingQuests);
+
+        assertThat(result.size(), is(REPEATING_QUEST_COUNT - 1));
+        assertThat(result.containsKey(repeatingQuests.get(3)), is(false));
+        assertThat(errors.size(), is(1));
+        assertThat(errors.get(0).exception instanceof RepeatingQuestExpansionException, is(true));
+        assertThat(expander.getFailedRepeatingQuestCount(), is(1L));
+    }
+
+    @Test
+    public void reportsProgressAndRunMetrics() throws InterruptedException {
+        RepeatingQuestExpander expander = new RepeatingQuestExpander(new RepeatingQuestScheduler(42), 4, Runnable::run, new Bus(ThreadEnforcer.ANY));
+        List<RepeatingQuest> repeatingQuests = createRepeatingQuests();
+        AtomicInteger maxExpandedCount = new AtomicInteger();
+        AtomicInteger progressCount = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Map<RepeatingQuest, List<Quest>>> result = new AtomicReference<>();
+
+        expander.expand(repeatingQuests, TODAY, (expandedCount, totalCount) -> {
+            progressCount.incrementAndGet();
+            maxExpandedCount.accumulateAndGet(expandedCount, Math::max);
+        }, scheduledQuests -> {
+            result.set(scheduledQuests);
+            latch.countDown();
+        });
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+        int createdQuestCount = 0;
+        for (List<Quest> quests : result.get().values()) {
+            createdQuestCount += quests.size();
+        }
+        assertThat(progressCount.get(), is(REPEATING_QUEST_COUNT));
+        assertThat(maxExpandedCount.get(), is(REPEATING_QUEST_COUNT));
+        assertThat(expander.getRunCount(), is(1L));
+        assertThat(expander.getExpandedRepeatingQuestCount(), is((long) REPEATING_QUEST_COUNT));
+        assertThat(expander.getFailedRepeatingQuestCount(), is(0L));
+        assertThat(expander.getCreatedQuestCount(), is((long) createdQuestCount));
+    }
+
+    @Test
+    public void completesRunWhenExpansionThrowsError() throws InterruptedException {
+        RepeatingQuestScheduler failingScheduler = new RepeatingQuestScheduler(42) {
+            @Override
+            public List<Quest> scheduleAhead(RepeatingQuest repeatingQuest, Date startDate) {
+                if (repeatingQuest.getId().equals("rq5")) {
+                    throw new StackOverflowError();
+                }
+                return super.scheduleAhead(repeatingQuest, startDate);
+            }
+        };
+        RepeatingQuestExpander expander = new RepeatingQuestExpander(failingScheduler, 2, Runnable::run, new Bus(ThreadEnforcer.ANY));
+        List<RepeatingQuest> repeatingQuests = createRepeatingQuests();
+
+        Map<RepeatingQuest, List<Quest>> result = expand(expander, repeatingQuests);
+
+        assertThat(result.size(), is(REPEATING_QUEST_COUNT - 1));
+        assertThat(result.containsKey(repeatingQuests.get(5)), is(false));
+    }
+
+    private Map<RepeatingQuest, List<Quest>> expand(RepeatingQuestExpander expander, List<RepeatingQuest> repeatingQuests) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Map<RepeatingQuest, List<Quest>>> result = new AtomicReference<>();
+        expander.expand(repeatingQuests, TODAY, null, scheduledQuests -> {
+            result.set(scheduledQuests);
+            latch.countDown();
+        });
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        return result.get();
+    }
+
+    private List<RepeatingQuest> createRepeatingQuests() {
+        String[] rrules = {"FREQ=WEEKLY;BYDAY=MO,WE,FR", "FREQ=WEEKLY;BYDAY=TU,TH", "FREQ=WEEKLY;BYDAY=SA,SU"};
+        List<RepeatingQuest> repeatingQuests = new ArrayList<>();
+        for (int i = 0; i < REPEATING_QUEST_COUNT; i++) {
+            RepeatingQuest repeatingQuest = new RepeatingQuest("Test " + i);
+            repeatingQuest.setId("rq" + i);
+            repeatingQuest.setCategory(Category.CHORES.name());
+            Recurrence recurrence = Recurrence.create();
+            recurrence.setDtstartDate(toStartOfDayUTC(TODAY.minusDays(10)));
+            recurrence.setRrule(rrules[i % rrules.length]);
+            if (i % 2 == 1) {
+                recurrence.setRecurrenceType(Recurrence.RecurrenceType.WEEKLY);
+                recurrence.setFlexibleCount(2);
+            }
+            repeatingQuest.setRecurrence(recurrence);
+            repeatingQuests.add(repeatingQuest);
+        }
+        return repeatingQuests;
+    }
+
+    private List<Date> toDates(List<Quest> quests) {
+        List<Date> dates = new ArrayList<>();
+        for (Quest quest : quests) {
+            dates.add(quest.getEndDate());
+        }
+        return dates;
+    }
+}
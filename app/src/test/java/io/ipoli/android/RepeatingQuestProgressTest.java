@@ -0,0 +1,96 @@
+package io.ipoli.android;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import io.ipoli.android.quest.data.QuestData;
+import io.ipoli.android.quest.data.Recurrence;
+import io.ipoli.android.quest.data.RepeatingQuestProgress;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RepeatingQuestProgressTest {
+
+    private static final LocalDate TODAY = new LocalDate(2017, 3, 8);
+
+    @Test
+    public void fixedStreakCountsQuestsCompletedOnTheirDay() {
+        RepeatingQuestProgress progress = new RepeatingQuestProgress(null);
+        progress.add(createQuestData(TODAY.minusDays(4), TODAY.minusDays(4), true));
+        progress.add(createQuestData(TODAY.minusDays(3), TODAY.minusDays(2), true));
+        progress.add(createQuestData(TODAY.minusDays(2), TODAY.minusDays(2), true));
+        progress.add(createQuestData(TODAY.minusDays(1), TODAY.minusDays(1), true));
+        progress.add(createQuestData(TODAY, TODAY, false));
+        progress.add(createQuestData(TODAY.plusDays(1), TODAY.plusDays(1), true));
+
+        assertThat(progress.getStreak(TODAY), is(2));
+    }
+
+    @Test
+    public void flexibleStreakCountsQuestsCompletedInTheirPeriod() {
+        RepeatingQuestProgress progress = new RepeatingQuestProgress(Recurrence.RecurrenceType.WEEKLY);
+        progress.add(createQuestData(TODAY.minusDays(9), TODAY.minusDays(9), false));
+        progress.add(createQuestData(TODAY.minusDays(2), TODAY.minusDays(1), true));
+        progress.add(createQuestData(TODAY.minusDays(1), TODAY, true));
+
+        assertThat(progress.getStreak(TODAY), is(2));
+    }
+
+    @Test
+    public void streakFollowsReplacedAndRemovedQuestData() {
+        RepeatingQuestProgress progress = new RepeatingQuestProgress(null);
+        QuestData missed = createQuestData(TODAY.minusDays(2), TODAY.minusDays(2), false);
+        progress.add(createQuestData(TODAY.minusDays(3), TODAY.minusDays(3), true));
+        progress.add(missed);
+        progress.add(createQuestData(TODAY.minusDays(1), TODAY.minusDays(1), true));
+        assertThat(progress.getStreak(TODAY), is(1));
+
+        QuestData completed = createQuestData(TODAY.minusDays(2), TODAY.minusDays(2), true);
+        progress.remove(missed);
+        progress.add(completed);
+        assertThat(progress.getStreak(TODAY), is(3));
+
+        progress.remove(completed);
+        assertThat(progress.getStreak(TODAY), is(2));
+        assertThat(progress.getQuestDataCount(), is(2));
+    }
+
+    @Test
+    public void nextScheduledDateSkipsCompletedQuests() {
+        RepeatingQuestProgress progress = new RepeatingQuestProgress(null);
+        progress.add(createQuestData(TODAY.minusDays(1), TODAY.minusDays(1), false));
+        progress.add(createQuestData(TODAY, TODAY, true));
+        progress.add(createQuestData(TODAY.plusDays(2), TODAY.plusDays(2), false));
+
+        assertThat(progress.getNextScheduledDate(TODAY), is(toStartOfDayUTC(TODAY.plusDays(2))));
+        progress.add(createQuestData(TODAY.plusDays(2), TODAY.plusDays(2), true));
+        progress.remove(createQuestData(TODAY.plusDays(2), TODAY.plusDays(2), false));
+        assertThat(progress.getNextScheduledDate(TODAY), is(nullValue()));
+    }
+
+    @Test
+    public void timeSpentCountsCompletedQuestsOnly() {
+        RepeatingQuestProgress progress = new RepeatingQuestProgress(null);
+        QuestData completed = createQuestData(TODAY, TODAY, true);
+        completed.setDuration(30);
+        QuestData incomplete = createQuestData(TODAY, TODAY, false);
+        incomplete.setDuration(20);
+        progress.add(completed);
+        progress.add(incomplete);
+        assertThat(progress.getTimeSpent(), is(30));
+
+        progress.remove(completed);
+        assertThat(progress.getTimeSpent(), is(0));
+    }
+
+    private QuestData createQuestData(LocalDate originalScheduledDate, LocalDate scheduledDate, boolean isComplete) {
+        QuestData questData = new QuestData();
+        questData.setOriginalScheduledDate(toStartOfDayUTC(originalScheduledDate).getTime());
+        questData.setScheduledDate(toStartOfDayUTC(scheduledDate).getTime());
+        questData.setComplete(isComplete);
+        return questData;
+    }
+}
@@ -468,6 +468,34 @@ public class RepeatingQuestSchedulerTest {
         assertThat(result.size(), is(15 * 3));
     }
 
+    @Test
+    public void scheduleAheadMovesWatermarkToHorizon() {
+        LocalDate monday = LocalDate.now().withDayOfWeek(DateTimeConstants.MONDAY);
+        RepeatingQuest repeatingQuest = createRepeatingQuest();
+        repeatingQuest.setRecurrence(createWeeklyRecurrence(toStartOfDayUTC(monday)));
+
+        List<Quest> result = repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(monday));
+        assertThat(result.size(), is(3 * RepeatingQuestScheduler.HORIZON_WEEKS));
+        assertThat(repeatingQuest.getScheduledUntilDate(), is(RepeatingQuestScheduler.getHorizonEnd(monday)));
+        assertThat(repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(monday.plusDays(6))).size(), is(0));
+
+        result = repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(monday.plusDays(7)));
+        assertThat(result.size(), is(3));
+        assertThat(repeatingQuest.getScheduledUntilDate(), is(RepeatingQuestScheduler.getHorizonEnd(monday.plusDays(7))));
+    }
+
+    @Test
+    public void removeScheduledPeriodsMovesWatermarkBack() {
+        LocalDate monday = LocalDate.now().withDayOfWeek(DateTimeConstants.MONDAY);
+        RepeatingQuest repeatingQuest = createRepeatingQuest();
+        repeatingQuest.setRecurrence(createWeeklyRecurrence(toStartOfDayUTC(monday)));
+        repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(monday.minusDays(7)));
+
+        repeatingQuest.removeScheduledPeriodEndDatesFrom(toStartOfDayUTC(monday));
+        assertThat(repeatingQuest.getScheduledUntilDate(), is(toStartOfDayUTC(monday.minusDays(1))));
+        assertThat(repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(monday)).size(), is(3 * RepeatingQuestScheduler.HORIZON_WEEKS));
+    }
+
     @NonNull
     private Recur createEveryDayRecur() {
         Recur recur = new Recur(Recur.WEEKLY, null);
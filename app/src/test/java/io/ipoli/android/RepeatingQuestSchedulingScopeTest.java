@@ -0,0 +1,115 @@
+package io.ipoli.android;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.ipoli.android.app.persistence.InMemoryDatabase;
+import io.ipoli.android.quest.data.Recurrence;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.persistence.InMemoryQuestPersistenceService;
+import io.ipoli.android.quest.persistence.InMemoryRepeatingQuestPersistenceService;
+import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class RepeatingQuestSchedulingScopeTest {
+
+    private static final String PLAYER_ID = "p1";
+
+    private InMemoryRepeatingQuestPersistenceService repeatingQuestPersistenceService;
+
+    @Before
+    public void setUp() {
+        InMemoryDatabase database = new InMemoryDatabase();
+        InMemoryQuestPersistenceService questPersistenceService = new InMemoryQuestPersistenceService(database, PLAYER_ID);
+        repeatingQuestPersistenceService = new InMemoryRepeatingQuestPersistenceService(database, PLAYER_ID, questPersistenceService);
+    }
+
+    @Test
+    public void stopsSchedulingOfAllDayRepeatingQuests() {
+        RepeatingQuest allDay = save("Birthday", true, null);
+        save("Workout", false, null);
+
+        assertThat(allDay.isSchedulingStopped(), is(true));
+        assertThat(findScheduledBeforeHorizon(), contains("Workout"));
+    }
+
+    @Test
+    public void stopsSchedulingOnceTheRecurrenceEnded() {
+        RepeatingQuest ending = save("Course", false, LocalDate.now().plusDays(2));
+        ending.getRecurrence().setDtendDate(toStartOfDayUTC(LocalDate.now().minusDays(1)));
+        saveAsIs(ending);
+
+        assertThat(findScheduledBeforeHorizon().isEmpty(), is(true));
+        assertThat(findById(ending.getId()).isSchedulingStopped(), is(true));
+        assertThat(findScheduledBeforeHorizon().isEmpty(), is(true));
+    }
+
+    @Test
+    public void resumesSchedulingWhenEditedBackIntoScope() {
+        RepeatingQuest repeatingQuest = create("Workout", true, null);
+        repeatingQuest.addScheduledPeriodEndDate(toStartOfDayUTC(LocalDate.now().minusDays(3)));
+        repeatingQuestPersistenceService.save(repeatingQuest, new ArrayList<>());
+        assertThat(findById(repeatingQuest.getId()).isSchedulingStopped(), is(true));
+
+        RepeatingQuest stored = findById(repeatingQuest.getId());
+        stored.setAllDay(false);
+        repeatingQuestPersistenceService.update(stored);
+
+        RepeatingQuest resumed = findById(repeatingQuest.getId());
+        assertThat(resumed.isSchedulingStopped(), is(false));
+        assertThat(resumed.getScheduledUntil(), is(toStartOfDayUTC(LocalDate.now().minusDays(3)).getTime()));
+        assertThat(findScheduledBeforeHorizon(), contains("Workout"));
+    }
+
+    private RepeatingQuest save(String name, boolean allDay, LocalDate dtend) {
+        RepeatingQuest repeatingQuest = create(name, allDay, dtend);
+        repeatingQuestPersistenceService.save(repeatingQuest, new ArrayList<>());
+        return repeatingQuest;
+    }
+
+    private RepeatingQuest create(String name, boolean allDay, LocalDate dtend) {
+        RepeatingQuest repeatingQuest = new RepeatingQuest(name);
+        repeatingQuest.setName(name);
+        repeatingQuest.setAllDay(allDay);
+        Recurrence recurrence = Recurrence.create();
+        recurrence.setRrule("FREQ=DAILY");
+        recurrence.setDtstartDate(toStartOfDayUTC(LocalDate.now().minusDays(7)));
+        if (dtend != null) {
+            recurrence.setDtendDate(toStartOfDayUTC(dtend));
+        }
+        repeatingQuest.setRecurrence(recurrence);
+        return repeatingQuest;
+    }
+
+    /**
+     * Writes the repeating quest without an edit, as if its recurrence ended after it was saved
+     */
+    private void saveAsIs(RepeatingQuest repeatingQuest) {
+        repeatingQuestPersistenceService.save(repeatingQuest);
+    }
+
+    private RepeatingQuest findById(String id) {
+        RepeatingQuest[] result = new RepeatingQuest[1];
+        repeatingQuestPersistenceService.findById(id, rq -> result[0] = rq);
+        return result[0];
+    }
+
+    private List<String> findScheduledBeforeHorizon() {
+        List<String> names = new ArrayList<>();
+        repeatingQuestPersistenceService.findNonAllDayActiveRepeatingQuestsScheduledBefore(
+                RepeatingQuestScheduler.getHorizonEnd(LocalDate.now()), repeatingQuests -> {
+                    for (RepeatingQuest rq : repeatingQuests) {
+                        names.add(rq.getName());
+                    }
+                });
+        return names;
+    }
+}
@@ -0,0 +1,122 @@
+package io.ipoli.android;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.Recurrence;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+import io.ipoli.android.quest.schedulers.RepeatingQuestUpdatePlanner;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RepeatingQuestUpdatePlannerTest {
+
+    private static final LocalDate TODAY = new LocalDate(2017, 3, 8);
+
+    private RepeatingQuestUpdatePlanner planner;
+    private RepeatingQuest repeatingQuest;
+    private List<Quest> upcomingQuests;
+
+    @Before
+    public void setUp() {
+        RepeatingQuestScheduler repeatingQuestScheduler = new RepeatingQuestScheduler(42);
+        planner = new RepeatingQuestUpdatePlanner(repeatingQuestScheduler);
+
+        repeatingQuest = new RepeatingQuest("Workout");
+        repeatingQuest.setId("rq");
+        repeatingQuest.setName("Workout");
+        repeatingQuest.setCategory(Category.WELLNESS.name());
+        repeatingQuest.setRecurrence(createRecurrence("FREQ=WEEKLY;BYDAY=MO,WE,FR"));
+
+        upcomingQuests = new ArrayList<>();
+        int id = 0;
+        for (Quest quest : repeatingQuestScheduler.scheduleAhead(repeatingQuest, toStartOfDayUTC(TODAY))) {
+            if (quest.getScheduled() >= toStartOfDayUTC(TODAY).getTime()) {
+                quest.setId("q" + id++);
+                quest.markClean();
+                upcomingQuests.add(quest);
+            }
+        }
+    }
+
+    @Test
+    public void patchesQuestsInPlaceWhenOnlyFieldsChange() {
+        repeatingQuest.setRecurrence(createRecurrence("FREQ=WEEKLY;BYDAY=MO,WE,FR"));
+        repeatingQuest.setName("Morning workout");
+
+        RepeatingQuestUpdatePlanner.Plan plan = planner.plan(repeatingQuest, upcomingQuests, TODAY);
+
+        assertThat(plan.getQuestsToCreate().isEmpty(), is(true));
+        assertThat(plan.getQuestsToRemove().isEmpty(), is(true));
+        assertThat(plan.getQuestsWithChangedNotifications().isEmpty(), is(true));
+        assertThat(plan.getQuestsToUpdate().size(), is(upcomingQuests.size()));
+        for (Quest quest : plan.getQuestsToUpdate()) {
+            assertThat(quest.getName(), is("Morning workout"));
+            assertThat(quest.getDirtyFields().containsKey("name"), is(true));
+            assertThat(quest.getDirtyFields().containsKey("scheduled"), is(false));
+        }
+    }
+
+    @Test
+    public void createsOnlyAddedOccurrences() {
+        repeatingQuest.setRecurrence(createRecurrence("FREQ=WEEKLY;BYDAY=MO,TU,WE,FR"));
+
+        RepeatingQuestUpdatePlanner.Plan plan = planner.plan(repeatingQuest, upcomingQuests, TODAY);
+
+        assertThat(plan.getQuestsToRemove().isEmpty(), is(true));
+        assertThat(plan.getQuestsToUpdate().isEmpty(), is(true));
+        assertThat(plan.getQuestsToCreate().size(), is(3));
+        for (Quest quest : plan.getQuestsToCreate()) {
+            assertThat(dayOfWeek(quest), is(DateTimeConstants.TUESDAY));
+        }
+    }
+
+    @Test
+    public void removesOnlyDroppedOccurrencesThatAreNotCompleted() {
+        Quest completedFriday = findFirst(DateTimeConstants.FRIDAY);
+        completedFriday.setCompletedAtDate(toStartOfDayUTC(TODAY));
+        repeatingQuest.setRecurrence(createRecurrence("FREQ=WEEKLY;BYDAY=MO,WE"));
+
+        RepeatingQuestUpdatePlanner.Plan plan = planner.plan(repeatingQuest, upcomingQuests, TODAY);
+
+        assertThat(plan.getQuestsToCreate().isEmpty(), is(true));
+        assertThat(plan.getQuestsToRemove().size(), is(3));
+        for (Quest quest : plan.getQuestsToRemove()) {
+            assertThat(dayOfWeek(quest), is(DateTimeConstants.FRIDAY));
+        }
+        assertThat(plan.getQuestsToRemove().contains(completedFriday), is(false));
+        assertThat(plan.getQuestsWithChangedNotifications(), is(plan.getQuestsToRemove()));
+    }
+
+    private Recurrence createRecurrence(String rrule) {
+        Recurrence recurrence = Recurrence.create();
+        recurrence.setRecurrenceType(Recurrence.RecurrenceType.WEEKLY);
+        recurrence.setDtstartDate(toStartOfDayUTC(TODAY.minusDays(10)));
+        recurrence.setRrule(rrule);
+        return recurrence;
+    }
+
+    private Quest findFirst(int dayOfWeek) {
+        for (Quest quest : upcomingQuests) {
+            if (dayOfWeek(quest) == dayOfWeek) {
+                return quest;
+            }
+        }
+        return null;
+    }
+
+    private int dayOfWeek(Quest quest) {
+        return new LocalDate(quest.getScheduled(), DateTimeZone.UTC).getDayOfWeek();
+    }
+}
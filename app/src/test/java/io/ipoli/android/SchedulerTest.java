@@ -57,4 +57,26 @@ public class SchedulerTest {
         List<TimeBlock> freeBlocks = scheduler.getFreeBlocksFor(new Task(15));
         assertThat(freeBlocks.size(), is(1));
     }
+
+    @Test
+    public void shouldKeepOverlappedMinutesBusyWhenTaskIsRemoved() {
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new Task(10, 20));
+        tasks.add(new Task(20, 20));
+        TaskScheduler scheduler = new TaskScheduler(0, 1, tasks);
+        scheduler.removeTask(new Task(10, 20));
+        List<TimeBlock> freeBlocks = scheduler.getFreeBlocks();
+        assertThat(freeBlocks.size(), is(2));
+        assertThat(freeBlocks.get(0).getEndMinute(), is(20));
+        assertThat(freeBlocks.get(1).getStartMinute(), is(40));
+    }
+
+    @Test
+    public void shouldMergeFreeBlocksWhenTaskIsRemoved() {
+        TaskScheduler scheduler = new TaskScheduler(0, 1);
+        Task task = new Task(10, 15);
+        scheduler.addTask(task);
+        scheduler.removeTask(task);
+        assertThat(scheduler.getFreeBlocks().size(), is(1));
+    }
 }
@@ -0,0 +1,45 @@
+package io.ipoli.android;
+
+import org.junit.Test;
+
+import io.ipoli.android.app.scheduling.SchedulingRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class SchedulingRandomTest {
+
+    @Test
+    public void shouldSplitTheSameStreamForTheSameKey() {
+        SchedulingRandom random = new SchedulingRandom(42);
+        long first = random.split("2017-01-16").nextLong();
+        random.nextLong();
+        random.split("2017-01-17").nextLong();
+        assertThat(random.split("2017-01-16").nextLong(), is(first));
+        assertThat(new SchedulingRandom(42).split("2017-01-16").nextLong(), is(first));
+    }
+
+    @Test
+    public void shouldSplitDifferentStreamsForDifferentKeys() {
+        SchedulingRandom random = new SchedulingRandom(42);
+        assertThat(random.split(1).nextLong(), is(not(random.split(2).nextLong())));
+        assertThat(random.split("quest").nextLong(), is(not(new SchedulingRandom(43).split("quest").nextLong())));
+    }
+
+    @Test
+    public void shouldDrawUniformDoubles() {
+        SchedulingRandom random = new SchedulingRandom(42).split("uniform");
+        int[] counts = new int[10];
+        int sampleCount = 100000;
+        for (int i = 0; i < sampleCount; i++) {
+            double value = random.nextDouble();
+            assertThat(value >= 0 && value < 1, is(true));
+            counts[(int) (value * counts.length)]++;
+        }
+        for (int count : counts) {
+            assertThat((double) count / sampleCount, closeTo(0.1, 0.005));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.ipoli.android.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import io.ipoli.android.Constants;
+import io.ipoli.android.app.scheduling.PosteriorEstimator;
+import io.ipoli.android.app.scheduling.Task;
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Seeded inputs shared by the benchmarks, so runs of different releases measure the same work
+ */
+final class BenchmarkData {
+
+    static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    static PosteriorEstimator.PosteriorSettings createPosteriorSettings() {
+        return PosteriorEstimator.PosteriorSettings.create()
+                .setWorkDays(new HashSet<>(Constants.DEFAULT_PLAYER_WORK_DAYS))
+                .setSleepStartMinute(Constants.DEFAULT_PLAYER_SLEEP_START_MINUTE)
+                .setSleepEndMinute(Constants.DEFAULT_PLAYER_SLEEP_END_MINUTE)
+                .setWorkStartMinute(Constants.DEFAULT_PLAYER_WORK_START_MINUTE)
+                .setWorkEndMinute(Constants.DEFAULT_PLAYER_WORK_END_MINUTE)
+                .setMostProductiveTimesOfDay(Constants.DEFAULT_PLAYER_PRODUCTIVE_TIME_NAMES);
+    }
+
+    static List<Quest> createQuests(int count, Random random) {
+        Category[] categories = Category.values();
+        List<Quest> quests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Quest quest = new Quest("Quest " + i);
+            quest.setCategoryType(categories[random.nextInt(categories.length)]);
+            quest.setDuration(15 + 15 * random.nextInt(6));
+            quests.add(quest);
+        }
+        return quests;
+    }
+
+    /**
+     * Tasks of 15 to 90 minutes spread over the waking hours. They may overlap, like
+     * quests in a crowded calendar do.
+     */
+    static List<Task> createTasks(int count, Random random) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int startMinute = Constants.DEFAULT_PLAYER_SLEEP_END_MINUTE + random.nextInt(15 * 60);
+            tasks.add(new Task(startMinute, 15 + 15 * random.nextInt(6)));
+        }
+        return tasks;
+    }
+}
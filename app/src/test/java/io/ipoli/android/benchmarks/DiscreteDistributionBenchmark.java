@@ -0,0 +1,123 @@
+package io.ipoli.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.app.scheduling.DiscreteDistribution;
+import io.ipoli.android.app.scheduling.WeightedRandomSampler;
+
+/**
+ * A day sized (1440 minutes) posterior built from two joints and sampled a few times, with
+ * {@link DiscreteDistribution} and with the boxed frequencies and {@link WeightedRandomSampler}
+ * it replaced. Run with -prof gc to compare the allocations too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscreteDistributionBenchmark {
+
+    private static final int MINUTES_IN_DAY = 24 * 60;
+    private static final int SAMPLES_PER_POSTERIOR = 10;
+
+    private Random random;
+    private double[] sleep;
+    private double[] work;
+    private double[] productive;
+
+    @Setup
+    public void setUp() {
+        random = new Random(BenchmarkData.SEED);
+        sleep = new double[MINUTES_IN_DAY];
+        work = new double[MINUTES_IN_DAY];
+        productive = new double[MINUTES_IN_DAY];
+        for (int i = 0; i < MINUTES_IN_DAY; i++) {
+            sleep[i] = i > 6 * 60 && i < 23 * 60 ? 1 : 0;
+            work[i] = i > 9 * 60 && i < 18 * 60 ? 0 : 1;
+            productive[i] = i > 19 * 60 && i < 23 * 60 ? 10 : 1;
+        }
+    }
+
+    @Benchmark
+    public int aliasTable() {
+        DiscreteDistribution posterior = new DiscreteDistribution(sleep, random)
+                .joint(new DiscreteDistribution(work, random))
+                .joint(new DiscreteDistribution(productive, random));
+        int sum = 0;
+        for (int i = 0; i < SAMPLES_PER_POSTERIOR; i++) {
+            sum += posterior.sample();
+        }
+        return sum;
+    }
+
+    /**
+     * The previous implementation: every distribution, joints included, kept boxed
+     * frequencies and filled a sampler right away
+     */
+    @Benchmark
+    public int treeMap() {
+        List<Double> posterior = createBoxedFrequencies(sleep);
+        createSampler(sleep);
+        List<Double> workFrequencies = createBoxedFrequencies(work);
+        createSampler(work);
+        posterior = createBoxedJoint(posterior, workFrequencies);
+        List<Double> productiveFrequencies = createBoxedFrequencies(productive);
+        createSampler(productive);
+        posterior = createBoxedJoint(posterior, productiveFrequencies);
+
+        double[] values = new double[posterior.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = posterior.get(i);
+        }
+        WeightedRandomSampler<Integer> sampler = createSampler(values);
+        int sum = 0;
+        for (int i = 0; i < SAMPLES_PER_POSTERIOR; i++) {
+            sum += sampler.sample();
+        }
+        return sum;
+    }
+
+    private List<Double> createBoxedJoint(List<Double> first, List<Double> second) {
+        double[] values = new double[first.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = first.get(i) * second.get(i);
+        }
+        createSampler(values);
+        return createBoxedFrequencies(values);
+    }
+
+    private List<Double> createBoxedFrequencies(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        List<Double> frequencies = new ArrayList<>();
+        for (double value : values) {
+            frequencies.add(value / total);
+        }
+        return frequencies;
+    }
+
+    private WeightedRandomSampler<Integer> createSampler(double[] values) {
+        WeightedRandomSampler<Integer> sampler = new WeightedRandomSampler<>(random);
+        for (int i = 0; i < values.length; i++) {
+            sampler.add(i, values[i]);
+        }
+        return sampler;
+    }
+}
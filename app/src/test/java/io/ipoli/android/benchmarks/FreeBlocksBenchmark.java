@@ -0,0 +1,53 @@
+package io.ipoli.android.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.app.scheduling.Task;
+import io.ipoli.android.app.scheduling.TaskScheduler;
+import io.ipoli.android.app.scheduling.TimeBlock;
+
+/**
+ * Free blocks of a day, including building the occupancy from the scheduled tasks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FreeBlocksBenchmark {
+
+    @Param({"8", "300"})
+    public int taskCount;
+
+    private List<Task> tasks;
+
+    @Setup
+    public void setUp() {
+        tasks = BenchmarkData.createTasks(taskCount, new Random(BenchmarkData.SEED));
+    }
+
+    @Benchmark
+    public List<TimeBlock> freeBlocks() {
+        return new TaskScheduler(0, 24, tasks).getFreeBlocksFor(new Task(30));
+    }
+
+    @Benchmark
+    public List<TimeBlock> availableSlots() {
+        return new TaskScheduler(0, 24, tasks).getAvailableSlotsFor(new Task(30), 15);
+    }
+}
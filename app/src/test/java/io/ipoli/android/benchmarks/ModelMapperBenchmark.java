@@ -0,0 +1,101 @@
+package io.ipoli.android.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.app.persistence.FirebaseExcludeStrategy;
+import io.ipoli.android.note.data.Note;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.Quest_Mapper;
+import io.ipoli.android.quest.data.SubQuest;
+import io.ipoli.android.reminder.data.Reminder;
+
+/**
+ * Decoding of quest snapshot trees with the generated {@link Quest_Mapper} and with reflection.
+ * The Firebase mapper needs a device, Gson stands in for it as the reflective decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelMapperBenchmark {
+
+    @Param({"10", "1000"})
+    public int questCount;
+
+    private Gson gson;
+    private List<Map<String, Object>> snapshots;
+    private List<JsonElement> jsonSnapshots;
+
+    @Setup
+    public void setUp() {
+        gson = new GsonBuilder().setExclusionStrategies(new FirebaseExcludeStrategy()).create();
+        snapshots = new ArrayList<>();
+        jsonSnapshots = new ArrayList<>();
+        for (int i = 0; i < questCount; i++) {
+            Map<String, Object> snapshot = Quest_Mapper.INSTANCE.toMap(createQuest(i));
+            snapshots.add(snapshot);
+            jsonSnapshots.add(gson.toJsonTree(snapshot));
+        }
+    }
+
+    @Benchmark
+    public List<Quest> decodeWithMapper() {
+        List<Quest> quests = new ArrayList<>(questCount);
+        for (Map<String, Object> snapshot : snapshots) {
+            quests.add(Quest_Mapper.INSTANCE.fromMap(snapshot));
+        }
+        return quests;
+    }
+
+    @Benchmark
+    public List<Quest> decodeWithReflection() {
+        List<Quest> quests = new ArrayList<>(questCount);
+        for (JsonElement snapshot : jsonSnapshots) {
+            quests.add(gson.fromJson(snapshot, Quest.class));
+        }
+        return quests;
+    }
+
+    private Quest createQuest(int index) {
+        Quest quest = new Quest();
+        quest.setId("quest" + index);
+        quest.setName("Quest " + index);
+        quest.setCategory("WELLNESS");
+        quest.setCreatedAt(1483228800000L + index);
+        quest.setUpdatedAt(1483228800000L + index);
+        quest.setScheduled(1483228800000L);
+        quest.setStartMinute(index % 1440);
+        quest.setDuration(30);
+        quest.setAllDay(false);
+        quest.setPriority(index % 4);
+        quest.setCompletedCount(0);
+        quest.setTimesADay(1);
+        quest.setReminders(new ArrayList<>(Arrays.asList(new Reminder(-10, index))));
+        quest.setReminderStartTimes(new ArrayList<>(Arrays.asList(1483228800000L + index)));
+        quest.setSubQuests(new ArrayList<>(Arrays.asList(new SubQuest("first"), new SubQuest("second"))));
+        quest.setNotes(new ArrayList<>(Arrays.asList(new Note("Text note"))));
+        return quest;
+    }
+}
@@ -0,0 +1,73 @@
+package io.ipoli.android.benchmarks;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.app.scheduling.PosteriorCache;
+import io.ipoli.android.app.scheduling.PosteriorEstimator;
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Posteriors for the unscheduled quests of a day, built from scratch (cold) and
+ * with the distributions of the previous day view still cached (warm)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PosteriorBenchmark {
+
+    @Param({"10", "200"})
+    public int questCount;
+
+    private PosteriorEstimator.PosteriorSettings settings;
+    private List<Quest> quests;
+    private PosteriorCache warmCache;
+    private LocalDate date;
+
+    @Setup
+    public void setUp() {
+        settings = BenchmarkData.createPosteriorSettings();
+        quests = BenchmarkData.createQuests(questCount, new Random(BenchmarkData.SEED));
+        date = new LocalDate(2017, 1, 16);
+        warmCache = new PosteriorCache();
+        PosteriorEstimator estimator = new PosteriorEstimator(settings, date, new Random(BenchmarkData.SEED), warmCache);
+        for (Quest quest : quests) {
+            estimator.posteriorFor(quest);
+        }
+    }
+
+    @Benchmark
+    public void cold(Blackhole blackhole) {
+        posteriorsFor(new PosteriorCache(), blackhole);
+    }
+
+    @Benchmark
+    public void warm(Blackhole blackhole) {
+        posteriorsFor(warmCache, blackhole);
+    }
+
+    private void posteriorsFor(PosteriorCache cache, Blackhole blackhole) {
+        PosteriorEstimator estimator = new PosteriorEstimator(settings, date, new Random(BenchmarkData.SEED), cache);
+        for (Quest quest : quests) {
+            blackhole.consume(estimator.posteriorFor(quest));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.ipoli.android.benchmarks;
+
+import org.ocpsoft.prettytime.nlp.PrettyTimeParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.quest.QuestParser;
+import io.ipoli.android.quest.data.Quest;
+import io.ipoli.android.quest.data.RepeatingQuest;
+
+/**
+ * Parsing of the text typed into the add quest screen, from a bare name to a long
+ * sentence with every part the parser understands
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuestParserBenchmark {
+
+    @Param({
+            "read book",
+            "read book for 30 minutes tomorrow at 10pm",
+            "workout every Mon and Wed for 1h at 7pm",
+            "prepare the quarterly report for the marketing team with the charts from the last three quarters and send it to everyone for 2 hours on 15 Feb at 9:30"
+    })
+    public String text;
+
+    private QuestParser questParser;
+
+    @Setup
+    public void setUp() {
+        questParser = new QuestParser(new PrettyTimeParser());
+    }
+
+    @Benchmark
+    public Quest parseQuest() {
+        return questParser.parseQuest(text);
+    }
+
+    @Benchmark
+    public RepeatingQuest parseRepeatingQuest() {
+        return questParser.parseRepeatingQuest(text);
+    }
+}
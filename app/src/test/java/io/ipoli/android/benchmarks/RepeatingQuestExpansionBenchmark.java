@@ -0,0 +1,101 @@
+package io.ipoli.android.benchmarks;
+
+import org.joda.time.LocalDate;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.Recur;
+import org.ocpsoft.prettytime.shade.net.fortuna.ical4j.model.WeekDay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.quest.data.Category;
+import io.ipoli.android.quest.data.Recurrence;
+import io.ipoli.android.quest.data.RepeatingQuest;
+import io.ipoli.android.quest.schedulers.RepeatingQuestScheduler;
+
+import static io.ipoli.android.app.utils.DateUtils.toStartOfDayUTC;
+
+/**
+ * The 4 weeks ahead expansion done when repeating quests are created or the app starts.
+ * Scheduling marks the periods of a repeating quest as scheduled, so every invocation
+ * expands freshly created repeating quests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepeatingQuestExpansionBenchmark {
+
+    @Param({"DAILY", "WEEKDAYS", "FLEXIBLE_WEEKLY", "FLEXIBLE_MONTHLY"})
+    public String recurrence;
+
+    @Param({"1", "50"})
+    public int repeatingQuestCount;
+
+    private RepeatingQuestScheduler scheduler;
+    private String rrule;
+    private Date startDate;
+
+    @Setup
+    public void setUp() {
+        scheduler = new RepeatingQuestScheduler(BenchmarkData.SEED);
+        startDate = toStartOfDayUTC(new LocalDate(2017, 1, 18));
+        rrule = createRecur().toString();
+    }
+
+    @Benchmark
+    public void scheduleAhead(Blackhole blackhole) {
+        for (int i = 0; i < repeatingQuestCount; i++) {
+            blackhole.consume(scheduler.scheduleAhead(createRepeatingQuest(i), startDate));
+        }
+    }
+
+    private RepeatingQuest createRepeatingQuest(int index) {
+        RepeatingQuest repeatingQuest = new RepeatingQuest("Repeating quest " + index);
+        repeatingQuest.setName("Repeating quest " + index);
+        repeatingQuest.setCategory(Category.WELLNESS.name());
+        repeatingQuest.setDuration(30);
+        Recurrence questRecurrence = Recurrence.create();
+        questRecurrence.setRrule(rrule);
+        questRecurrence.setDtstartDate(startDate);
+        if (recurrence.equals("FLEXIBLE_WEEKLY")) {
+            questRecurrence.setRecurrenceType(Recurrence.RecurrenceType.WEEKLY);
+            questRecurrence.setFlexibleCount(3);
+        } else if (recurrence.equals("FLEXIBLE_MONTHLY")) {
+            questRecurrence.setRecurrenceType(Recurrence.RecurrenceType.MONTHLY);
+            questRecurrence.setFlexibleCount(12);
+        }
+        repeatingQuest.setRecurrence(questRecurrence);
+        return repeatingQuest;
+    }
+
+    private Recur createRecur() {
+        if (recurrence.equals("FLEXIBLE_MONTHLY")) {
+            return new Recur(Recur.MONTHLY, null);
+        }
+        Recur recur = new Recur(Recur.WEEKLY, null);
+        recur.getDayList().add(WeekDay.MO);
+        recur.getDayList().add(WeekDay.TU);
+        recur.getDayList().add(WeekDay.WE);
+        recur.getDayList().add(WeekDay.TH);
+        recur.getDayList().add(WeekDay.FR);
+        if (!recurrence.equals("WEEKDAYS")) {
+            recur.getDayList().add(WeekDay.SA);
+            recur.getDayList().add(WeekDay.SU);
+        }
+        return recur;
+    }
+}
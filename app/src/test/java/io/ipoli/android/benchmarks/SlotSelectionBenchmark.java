@@ -0,0 +1,82 @@
+package io.ipoli.android.benchmarks;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.ipoli.android.app.scheduling.DayScheduler;
+import io.ipoli.android.app.scheduling.DiscreteDistribution;
+import io.ipoli.android.app.scheduling.PosteriorEstimator;
+import io.ipoli.android.app.scheduling.ProbabilisticTaskScheduler;
+import io.ipoli.android.app.scheduling.SchedulingRandom;
+import io.ipoli.android.app.scheduling.Task;
+import io.ipoli.android.app.scheduling.TimeBlock;
+import io.ipoli.android.quest.data.Quest;
+
+/**
+ * Slots for one quest and for all unscheduled quests of a day, next to a realistic
+ * and a crowded calendar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlotSelectionBenchmark {
+
+    private static final int MIN_TIME_INTERVAL = 15;
+
+    @Param({"8", "60"})
+    public int scheduledTaskCount;
+
+    @Param({"5", "50"})
+    public int unscheduledQuestCount;
+
+    private List<Task> scheduledTasks;
+    private List<DayScheduler.Request<Quest>> requests;
+    private Quest quest;
+    private DiscreteDistribution posterior;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        scheduledTasks = BenchmarkData.createTasks(scheduledTaskCount, random);
+        PosteriorEstimator estimator = new PosteriorEstimator(BenchmarkData.createPosteriorSettings(),
+                new LocalDate(2017, 1, 16), random);
+        requests = new ArrayList<>();
+        for (Quest quest : BenchmarkData.createQuests(unscheduledQuestCount, random)) {
+            requests.add(new DayScheduler.Request<>(quest, quest.getName(), quest.getDuration(), estimator.posteriorFor(quest)));
+        }
+        quest = requests.get(0).getItem();
+        posterior = estimator.posteriorFor(quest);
+    }
+
+    @Benchmark
+    public List<TimeBlock> singleQuest() {
+        ProbabilisticTaskScheduler scheduler = new ProbabilisticTaskScheduler(0, 24, scheduledTasks,
+                new Random(BenchmarkData.SEED));
+        return scheduler.chooseSlotsFor(new Task(quest.getDuration()), MIN_TIME_INTERVAL, posterior);
+    }
+
+    @Benchmark
+    public List<DayScheduler.Proposal<Quest>> wholeDay() {
+        DayScheduler<Quest> scheduler = new DayScheduler<>(0, 24, scheduledTasks, MIN_TIME_INTERVAL,
+                new SchedulingRandom(BenchmarkData.SEED));
+        return scheduler.schedule(requests, Long.MAX_VALUE / 2);
+    }
+}
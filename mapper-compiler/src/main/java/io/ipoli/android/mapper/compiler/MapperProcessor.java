@@ -0,0 +1,354 @@
+package io.ipoli.android.mapper.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import io.ipoli.android.mapper.GenerateMapper;
+
+/**
+ * Generates a {@code <Model>_Mapper} for every class annotated with {@link GenerateMapper}.
+ * Properties are discovered with the rules of the Firebase CustomClassMapper: public
+ * get/is/set methods that are not marked with @Exclude, named after the method with its
+ * leading capitals lowercased. Setter types drive reading, getter types drive writing.
+ */
+public class MapperProcessor extends AbstractProcessor {
+
+    private static final String EXCLUDE = "com.google.firebase.database.Exclude";
+    private static final String MAPPER_UTILS = "io.ipoli.android.mapper.MapperUtils";
+    private static final String MAPPER_SUFFIX = "_Mapper";
+
+    private Elements elements;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(GenerateMapper.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateMapper.class)) {
+            if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@GenerateMapper needs a concrete class", element);
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (!hasNoArgConstructor(type)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@GenerateMapper needs a non-private no-arg constructor", element);
+                continue;
+            }
+            try {
+                writeMapper(type);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Can't write mapper: " + e.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private void writeMapper(TypeElement type) throws IOException {
+        Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+        Map<String, ExecutableElement> setters = new LinkedHashMap<>();
+        collectProperties(type, getters, setters);
+
+        String packageName = getPackageName(type);
+        String mapperName = getMapperSimpleName(type);
+        String modelName = type.getQualifiedName().toString();
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by MapperProcessor, do not edit\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("public final class ").append(mapperName)
+                .append(" implements io.ipoli.android.mapper.ModelMapper<").append(modelName).append("> {\n\n");
+        out.append("    public static final ").append(mapperName).append(" INSTANCE = new ").append(mapperName).append("();\n\n");
+        out.append("    private ").append(mapperName).append("() {\n    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public ").append(modelName).append(" fromMap(java.util.Map<String, Object> map) {\n");
+        out.append("        if (map == null) {\n            return null;\n        }\n");
+        out.append("        ").append(modelName).append(" model = new ").append(modelName).append("();\n");
+        // setters run in the order of the snapshot, like they do in the Firebase mapper
+        out.append("        for (java.util.Map.Entry<String, Object> entry : map.entrySet()) {\n");
+        out.append("            Object value = entry.getValue();\n");
+        out.append("            if (value == null) {\n                continue;\n            }\n");
+        out.append("            switch (entry.getKey()) {\n");
+        for (Map.Entry<String, ExecutableElement> entry : setters.entrySet()) {
+            ExecutableElement setter = entry.getValue();
+            TypeMirror valueType = setter.getParameters().get(0).asType();
+            String read = readExpression(valueType, "value", 0);
+            if (read == null) {
+                warnUnsupported(setter, valueType);
+                continue;
+            }
+            out.append("                case \"").append(entry.getKey()).append("\":\n");
+            out.append("                    model.").append(setter.getSimpleName()).append("(").append(read).append(");\n");
+            out.append("                    break;\n");
+        }
+        out.append("            }\n        }\n");
+        out.append("        return model;\n    }\n\n");
+
+        out.append("    public ").append(modelName).append(" fromValue(Object value) {\n");
+        out.append("        return fromMap(").append(MAPPER_UTILS).append(".toMapValue(value));\n    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public java.util.Map<String, Object> toMap(").append(modelName).append(" model) {\n");
+        out.append("        if (model == null) {\n            return null;\n        }\n");
+        out.append("        java.util.Map<String, Object> map = new java.util.HashMap<>();\n");
+        for (Map.Entry<String, ExecutableElement> entry : getters.entrySet()) {
+            ExecutableElement getter = entry.getValue();
+            TypeMirror valueType = getter.getReturnType();
+            String write = writeExpression(valueType, "model." + getter.getSimpleName() + "()", 0);
+            if (write == null) {
+                warnUnsupported(getter, valueType);
+                continue;
+            }
+            out.append("        ").append(MAPPER_UTILS).append(".put(map, \"").append(entry.getKey()).append("\", ")
+                    .append(write).append(");\n");
+        }
+        out.append("        return map;\n    }\n}\n");
+
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    /**
+     * Walks the class and its superclasses, the most derived declaration of a property wins.
+     * A property marked with @Exclude anywhere in the hierarchy is skipped.
+     */
+    private void collectProperties(TypeElement type, Map<String, ExecutableElement> getters, Map<String, ExecutableElement> setters) {
+        Set<String> excluded = new HashSet<>();
+        TypeElement current = type;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)) {
+                    continue;
+                }
+                String name = method.getSimpleName().toString();
+                boolean isGetter = method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID
+                        && (name.startsWith("get") && name.length() > 3 || name.startsWith("is") && name.length() > 2);
+                boolean isSetter = method.getParameters().size() == 1 && name.startsWith("set") && name.length() > 3;
+                if (!isGetter && !isSetter) {
+                    continue;
+                }
+                String property = getPropertyName(name);
+                if (isExcluded(method)) {
+                    excluded.add(property);
+                    continue;
+                }
+                if (isGetter && !getters.containsKey(property)) {
+                    getters.put(property, method);
+                }
+                if (isSetter) {
+                    ExecutableElement existing = setters.get(property);
+                    if (existing == null) {
+                        setters.put(property, method);
+                    } else if (existing.getEnclosingElement().equals(method.getEnclosingElement())) {
+                        messager.printMessage(Diagnostic.Kind.WARNING, "Conflicting setters for property " + property + ", using the first one", method);
+                    }
+                }
+            }
+            for (Element field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                if (isExcluded(field)) {
+                    excluded.add(field.getSimpleName().toString());
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        getters.keySet().removeAll(excluded);
+        setters.keySet().removeAll(excluded);
+    }
+
+    private String readExpression(TypeMirror type, String value, int depth) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return MAPPER_UTILS + ".toBoolean(" + value + ")";
+            case INT:
+                return MAPPER_UTILS + ".toInteger(" + value + ")";
+            case LONG:
+                return MAPPER_UTILS + ".toLong(" + value + ")";
+            case DOUBLE:
+                return MAPPER_UTILS + ".toDouble(" + value + ")";
+            case FLOAT:
+                return MAPPER_UTILS + ".toFloat(" + value + ")";
+            case DECLARED:
+                break;
+            default:
+                return null;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        TypeElement element = (TypeElement) declaredType.asElement();
+        String name = element.getQualifiedName().toString();
+        switch (name) {
+            case "java.lang.Object":
+                return value;
+            case "java.lang.String":
+                return MAPPER_UTILS + ".toStringValue(" + value + ")";
+            case "java.lang.Boolean":
+                return MAPPER_UTILS + ".toBoolean(" + value + ")";
+            case "java.lang.Integer":
+                return MAPPER_UTILS + ".toInteger(" + value + ")";
+            case "java.lang.Long":
+                return MAPPER_UTILS + ".toLong(" + value + ")";
+            case "java.lang.Double":
+                return MAPPER_UTILS + ".toDouble(" + value + ")";
+            case "java.lang.Float":
+                return MAPPER_UTILS + ".toFloat(" + value + ")";
+        }
+        String item = "item" + depth;
+        List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+        if (name.equals("java.util.List") && typeArguments.size() == 1) {
+            String itemRead = readExpression(typeArguments.get(0), item, depth + 1);
+            return itemRead == null ? null : MAPPER_UTILS + ".<" + typeArguments.get(0) + ">toList(" + value + ", " + item + " -> " + itemRead + ")";
+        }
+        if (name.equals("java.util.Map") && typeArguments.size() == 2 && isString(typeArguments.get(0))) {
+            String itemRead = readExpression(typeArguments.get(1), item, depth + 1);
+            return itemRead == null ? null : MAPPER_UTILS + ".<" + typeArguments.get(1) + ">toMap(" + value + ", " + item + " -> " + itemRead + ")";
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            return MAPPER_UTILS + ".toEnum(" + value + ", " + name + ".class)";
+        }
+        if (element.getAnnotation(GenerateMapper.class) != null) {
+            return getMapperName(element) + ".INSTANCE.fromValue(" + value + ")";
+        }
+        return null;
+    }
+
+    private String writeExpression(TypeMirror type, String value, int depth) {
+        if (type.getKind().isPrimitive()) {
+            return value;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        TypeElement element = (TypeElement) declaredType.asElement();
+        String name = element.getQualifiedName().toString();
+        switch (name) {
+            case "java.lang.Object":
+            case "java.lang.String":
+            case "java.lang.Boolean":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Double":
+            case "java.lang.Float":
+                return value;
+        }
+        String item = "item" + depth;
+        List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+        if (name.equals("java.util.List") && typeArguments.size() == 1) {
+            String itemWrite = writeExpression(typeArguments.get(0), item, depth + 1);
+            return itemWrite == null ? null : MAPPER_UTILS + ".<" + typeArguments.get(0) + ">fromList(" + value + ", " + item + " -> " + itemWrite + ")";
+        }
+        if (name.equals("java.util.Map") && typeArguments.size() == 2 && isString(typeArguments.get(0))) {
+            String itemWrite = writeExpression(typeArguments.get(1), item, depth + 1);
+            return itemWrite == null ? null : MAPPER_UTILS + ".<" + typeArguments.get(1) + ">fromMap(" + value + ", " + item + " -> " + itemWrite + ")";
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            return MAPPER_UTILS + ".enumName(" + value + ")";
+        }
+        if (element.getAnnotation(GenerateMapper.class) != null) {
+            return getMapperName(element) + ".INSTANCE.toMap(" + value + ")";
+        }
+        return null;
+    }
+
+    private void warnUnsupported(ExecutableElement method, TypeMirror type) {
+        messager.printMessage(Diagnostic.Kind.WARNING, "Skipping " + method.getSimpleName() + ", unsupported type " + type, method);
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private boolean isExcluded(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(EXCLUDE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mappers live in the package of their model, so a package-private constructor is enough
+     */
+    private boolean hasNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement packageElement = elements.getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private String getMapperSimpleName(TypeElement type) {
+        String packageName = getPackageName(type);
+        String qualifiedName = type.getQualifiedName().toString();
+        String simpleName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+        return simpleName.replace('.', '_') + MAPPER_SUFFIX;
+    }
+
+    private String getMapperName(TypeElement type) {
+        String packageName = getPackageName(type);
+        return packageName.isEmpty() ? getMapperSimpleName(type) : packageName + "." + getMapperSimpleName(type);
+    }
+
+    static String getPropertyName(String methodName) {
+        String prefix = methodName.startsWith("is") ? "is" : methodName.substring(0, 3);
+        char[] chars = methodName.substring(prefix.length()).toCharArray();
+        for (int i = 0; i < chars.length && Character.isUpperCase(chars[i]); i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,16 @@
+package io.ipoli.android.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@code <Model>_Mapper} that converts the model to and from the plain maps
+ * of a Firebase snapshot without reflection. Properties follow the Firebase mapper rules:
+ * public getters and setters not marked with {@code @Exclude}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+}
@@ -0,0 +1,153 @@
+package io.ipoli.android.mapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversions used by the generated mappers. Values come in as Firebase hands them out:
+ * strings, booleans, longs, doubles, lists and maps.
+ */
+public final class MapperUtils {
+
+    public interface Converter<T> {
+        T convert(Object value);
+    }
+
+    public interface ValueWriter<T> {
+        Object write(T value);
+    }
+
+    private MapperUtils() {
+    }
+
+    public static String toStringValue(Object value) {
+        return value instanceof String ? (String) value : String.valueOf(value);
+    }
+
+    public static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return Boolean.valueOf(String.valueOf(value));
+    }
+
+    public static Long toLong(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.valueOf(String.valueOf(value));
+    }
+
+    public static Integer toInteger(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.valueOf(String.valueOf(value));
+    }
+
+    public static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.valueOf(String.valueOf(value));
+    }
+
+    public static Float toFloat(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        return Float.valueOf(String.valueOf(value));
+    }
+
+    public static <E extends Enum<E>> E toEnum(Object value, Class<E> enumClass) {
+        return Enum.valueOf(enumClass, toStringValue(value));
+    }
+
+    public static String enumName(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+
+    /**
+     * Firebase returns nodes with (mostly) consecutive integer keys as lists
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> toMapValue(Object value) {
+        if (value == null || value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        Map<String, Object> result = new HashMap<>();
+        List<Object> list = (List<Object>) value;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) != null) {
+                result.put(String.valueOf(i), list.get(i));
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> toList(Object value, Converter<T> converter) {
+        List<T> result = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object item : (List<Object>) value) {
+                result.add(item == null ? null : converter.convert(item));
+            }
+            return result;
+        }
+        Map<String, Object> map = (Map<String, Object>) value;
+        int maxIndex = -1;
+        for (String key : map.keySet()) {
+            maxIndex = Math.max(maxIndex, Integer.parseInt(key));
+        }
+        for (int i = 0; i <= maxIndex; i++) {
+            Object item = map.get(String.valueOf(i));
+            result.add(item == null ? null : converter.convert(item));
+        }
+        return result;
+    }
+
+    public static <T> Map<String, T> toMap(Object value, Converter<T> converter) {
+        Map<String, T> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : toMapValue(value).entrySet()) {
+            if (entry.getValue() != null) {
+                result.put(entry.getKey(), converter.convert(entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    public static <T> List<Object> fromList(List<T> list, ValueWriter<T> writer) {
+        if (list == null) {
+            return null;
+        }
+        List<Object> result = new ArrayList<>(list.size());
+        for (T item : list) {
+            result.add(item == null ? null : writer.write(item));
+        }
+        return result;
+    }
+
+    public static <T> Map<String, Object> fromMap(Map<String, T> map, ValueWriter<T> writer) {
+        if (map == null) {
+            return null;
+        }
+        Map<String, Object> result = new HashMap<>();
+        for (Map.Entry<String, T> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                result.put(entry.getKey(), writer.write(entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    public static void put(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package io.ipoli.android.mapper;
+
+import java.util.Map;
+
+public interface ModelMapper<T> {
+
+    T fromMap(Map<String, Object> map);
+
+    Map<String, Object> toMap(T model);
+}